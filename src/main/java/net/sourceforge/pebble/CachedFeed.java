@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/**
+ * A newsfeed that has been rendered and serialized, along with the
+ * information needed to answer conditional requests for it.
+ *
+ * @author    Simon Brown
+ */
+public class CachedFeed {
+
+  private final String contentType;
+  private final byte[] content;
+  private final Date lastModified;
+  private final String eTag;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param contentType   the content type (including the character encoding)
+   * @param content       the serialized feed
+   * @param lastModified  the date that the feed was last modified
+   */
+  public CachedFeed(String contentType, byte[] content, Date lastModified) {
+    this.contentType = contentType;
+    this.content = content;
+    this.lastModified = lastModified;
+    this.eTag = "\"" + hash(content) + "\"";
+  }
+
+  private static String hash(byte[] content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      return new String(Hex.encodeHex(digest.digest(content)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Gets the serialized feed; callers must not modify the array.
+   *
+   * @return  an array of bytes
+   */
+  public byte[] getContent() {
+    return content;
+  }
+
+  public Date getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Gets the strong entity tag for this feed, a hash of its content.
+   *
+   * @return  a quoted entity tag
+   */
+  public String getETag() {
+    return eTag;
+  }
+
+}
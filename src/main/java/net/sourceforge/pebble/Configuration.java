@@ -35,6 +35,7 @@ package net.sourceforge.pebble;
 import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.dao.file.FileDAOFactory;
 import net.sourceforge.pebble.security.SecurityRealm;
+import net.sourceforge.pebble.util.MailSpool;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -57,8 +58,12 @@ public class Configuration {
   private boolean virtualHostingSubdomain = true;
   private boolean userThemesEnabled = true;
   private String smtpHost = "java:comp/env/mail/Session";
+  private int mailThreads = MailSpool.DEFAULT_THREADS;
+  private int mailSpoolSize = MailSpool.DEFAULT_CAPACITY;
   private long fileUploadSize = 2048;
   private long fileUploadQuota = -1;
+  private long contentCacheSize = ContentCache.DEFAULT_MAXIMUM_SIZE;
+  private long contentCacheTimeToLive = ContentCache.DEFAULT_TIME_TO_LIVE;
   private DAOFactory daoFactory = new FileDAOFactory();
   private SecurityRealm securityRealm;
 
@@ -117,6 +122,33 @@ public class Configuration {
     this.smtpHost = smtpHost;
   }
 
+  /**
+   * Gets the number of threads used to send e-mail for each blog.
+   *
+   * @return  a number of threads
+   */
+  public int getMailThreads() {
+    return mailThreads;
+  }
+
+  public void setMailThreads(int mailThreads) {
+    this.mailThreads = mailThreads;
+  }
+
+  /**
+   * Gets the maximum number of e-mails that can be waiting to be sent for
+   * each blog.
+   *
+   * @return  a number of e-mails
+   */
+  public int getMailSpoolSize() {
+    return mailSpoolSize;
+  }
+
+  public void setMailSpoolSize(int mailSpoolSize) {
+    this.mailSpoolSize = mailSpoolSize;
+  }
+
   public long getFileUploadSize() {
     return fileUploadSize;
   }
@@ -133,6 +165,32 @@ public class Configuration {
     this.fileUploadQuota = fileUploadQuota;
   }
 
+  /**
+   * Gets the maximum size of the content cache.
+   *
+   * @return  a number of KB
+   */
+  public long getContentCacheSize() {
+    return contentCacheSize;
+  }
+
+  public void setContentCacheSize(long contentCacheSize) {
+    this.contentCacheSize = contentCacheSize;
+  }
+
+  /**
+   * Gets the time that content lives in the content cache for.
+   *
+   * @return  a number of seconds, 0 meaning forever
+   */
+  public long getContentCacheTimeToLive() {
+    return contentCacheTimeToLive;
+  }
+
+  public void setContentCacheTimeToLive(long contentCacheTimeToLive) {
+    this.contentCacheTimeToLive = contentCacheTimeToLive;
+  }
+
   public DAOFactory getDaoFactory() {
     return daoFactory;
   }
@@ -31,23 +31,31 @@
  */
 package net.sourceforge.pebble;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
-import java.util.Date;
-import java.util.Properties;
-import java.io.InputStream;
-import java.io.IOException;
-import java.net.URL;
-
-import net.sourceforge.pebble.util.RelativeDate;
 import net.sourceforge.pebble.domain.*;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A wrapper for a cache used to store blog entries and static pages.
+ * A cache used to store blog entries and static pages. The cache is
+ * concurrent (reads never block on a shared monitor) and is bounded by the
+ * estimated number of bytes held rather than by the number of elements,
+ * evicting (approximately) the least recently used content when it grows
+ * beyond the limit.
+ * Content doesn't expire by default; instead it's removed whenever it
+ * changes (see ContentCacheListener and the DAO implementations).
+ * <br />
+ * The instances held by the cache are read-only snapshots that are shared
+ * between readers - callers that are going to modify content (e.g. edit or
+ * decorate it) must take their own copy first, and the services remove
+ * content from the cache after it has been stored.
  *
  * @author    Simon Brown
  */
@@ -55,44 +63,104 @@ public class ContentCache {
 
   private static final ContentCache instance = new ContentCache();
 
-  /** the log used by this class */
-  private static Log log = LogFactory.getLog(ContentCache.class);
+  /** the default maximum size of the cache, in KB */
+  public static final long DEFAULT_MAXIMUM_SIZE = 16 * 1024;
+
+  /** the default time to live of cached content, in seconds (0 is forever) */
+  public static final long DEFAULT_TIME_TO_LIVE = 0;
+
+  /** approximate fixed cost of a cached piece of content, in bytes */
+  private static final long CONTENT_OVERHEAD = 512;
+
+  /** approximate fixed cost of a cached response, in bytes */
+  private static final long RESPONSE_OVERHEAD = 256;
 
-  private Cache cache;
+  /** the percentage of the maximum size to evict down to */
+  private static final int LOW_WATER_MARK = 90;
+
+  private final ConcurrentMap<String,CachedContent> cache = new ConcurrentHashMap<String,CachedContent>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicLong clock = new AtomicLong();
+  private final ConcurrentMap<String,AtomicLong> versions = new ConcurrentHashMap<String,AtomicLong>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private volatile long maximumSize;
+  private volatile long timeToLive;
 
   private ContentCache() {
-    URL url = BlogService.class.getResource("/ehcache.xml");
-    CacheManager cacheManager = new CacheManager(url);
-    cache = cacheManager.getCache("contentCache");
+    long maximumSizeInKB = DEFAULT_MAXIMUM_SIZE;
+    long timeToLiveInSeconds = DEFAULT_TIME_TO_LIVE;
 
-    // size the cache (number of blogs * max elements in memory configured in the ehcache.xml file)
-    // Fix: Previously the number of blogs was calculated through blogManager.getBlogs().getSize() which
-    // caused the blog to load and access the Cache that is just now being initialized.
-    // This lead to NPE because instance is not yet set to this instance.
-    cache.getCacheConfiguration().setMaxElementsInMemory(cache.getCacheConfiguration().getMaxElementsInMemory() * BlogManager.getInstance().getNumberOfBlogs());
+    // the configuration may not have been set yet (e.g. when running tests)
+    Configuration configuration = PebbleContext.getInstance().getConfiguration();
+    if (configuration != null) {
+      maximumSizeInKB = configuration.getContentCacheSize();
+      timeToLiveInSeconds = configuration.getContentCacheTimeToLive();
+    }
+
+    setMaximumSize(maximumSizeInKB * 1024);
+    setTimeToLive(timeToLiveInSeconds * 1000);
   }
 
   public static ContentCache getInstance() {
     return instance;
   }
 
-  public synchronized void putBlogEntry(BlogEntry blogEntry) {
-    Element element = new Element(getCompositeKeyForBlogEntry(blogEntry), blogEntry);
-    cache.put(element);
+  /**
+   * Gets the current version of a blog's content in the cache, which
+   * changes every time that something is removed for that blog. This should
+   * be called before content is loaded and passed back when the loaded
+   * content is put into the cache.
+   *
+   * @param blog    the Blog the content belongs to
+   * @return  a version number
+   */
+  public long getVersion(Blog blog) {
+    return getVersionCounter(blog.getId()).get();
   }
 
-  public synchronized BlogEntry getBlogEntry(Blog blog, String blogEntryId) {
-    BlogEntry blogEntry = null;
-    Element element = cache.get(getCompositeKeyForBlogEntry(blog, blogEntryId));
-    if (element != null) {
-      blogEntry = (BlogEntry)element.getValue(); 
+  private AtomicLong getVersionCounter(String blogId) {
+    AtomicLong version = versions.get(blogId);
+    if (version == null) {
+      AtomicLong newVersion = new AtomicLong();
+      version = versions.putIfAbsent(blogId, newVersion);
+      if (version == null) {
+        version = newVersion;
+      }
     }
 
-    return blogEntry;
+    return version;
   }
 
-  public synchronized void removeBlogEntry(BlogEntry blogEntry) {
-    cache.remove(getCompositeKeyForBlogEntry(blogEntry));
+  public void putBlogEntry(BlogEntry blogEntry) {
+    putBlogEntry(blogEntry, getVersion(blogEntry.getBlog()));
+  }
+
+  /**
+   * Puts a blog entry into the cache, providing that nothing has been
+   * removed from the cache since it was loaded.
+   *
+   * @param blogEntry   the BlogEntry to cache
+   * @param version     the version of the cache prior to the entry being loaded
+   */
+  public void putBlogEntry(BlogEntry blogEntry, long version) {
+    put(blogEntry.getBlog(), getCompositeKeyForBlogEntry(blogEntry), blogEntry, estimateSize(blogEntry), version);
+  }
+
+  public BlogEntry getBlogEntry(Blog blog, String blogEntryId) {
+    return (BlogEntry)get(getCompositeKeyForBlogEntry(blog, blogEntryId));
+  }
+
+  public void removeBlogEntry(BlogEntry blogEntry) {
+    remove(blogEntry.getBlog(), getCompositeKeyForBlogEntry(blogEntry));
+  }
+
+  public void removeBlogEntry(Blog blog, String blogEntryId) {
+    remove(blog, getCompositeKeyForBlogEntry(blog, blogEntryId));
   }
 
   private String getCompositeKeyForBlogEntry(BlogEntry blogEntry) {
@@ -103,23 +171,31 @@ public class ContentCache {
     return blog.getId() + "/blogEntry/" + blogEntryId;
   }
 
-  public synchronized void putStaticPage(StaticPage staticPage) {
-    Element element = new Element(getCompositeKeyForStaticPage(staticPage), staticPage);
-    cache.put(element);
+  public void putStaticPage(StaticPage staticPage) {
+    putStaticPage(staticPage, getVersion(staticPage.getBlog()));
   }
 
-  public synchronized StaticPage getStaticPage(Blog blog, String staticPageId) {
-    StaticPage staticPage = null;
-    Element element = cache.get(getCompositeKeyForStaticPage(blog, staticPageId));
-    if (element != null) {
-      staticPage = (StaticPage)element.getValue();
-    }
+  /**
+   * Puts a static page into the cache, providing that nothing has been
+   * removed from the cache since it was loaded.
+   *
+   * @param staticPage  the StaticPage to cache
+   * @param version     the version of the cache prior to the page being loaded
+   */
+  public void putStaticPage(StaticPage staticPage, long version) {
+    put(staticPage.getBlog(), getCompositeKeyForStaticPage(staticPage), staticPage, estimateSize(staticPage), version);
+  }
+
+  public StaticPage getStaticPage(Blog blog, String staticPageId) {
+    return (StaticPage)get(getCompositeKeyForStaticPage(blog, staticPageId));
+  }
 
-    return staticPage;
+  public void removeStaticPage(StaticPage staticPage) {
+    remove(staticPage.getBlog(), getCompositeKeyForStaticPage(staticPage));
   }
 
-  public synchronized void removeStaticPage(StaticPage staticPage) {
-    cache.remove(getCompositeKeyForStaticPage(staticPage));
+  public void removeStaticPage(Blog blog, String staticPageId) {
+    remove(blog, getCompositeKeyForStaticPage(blog, staticPageId));
   }
 
   private String getCompositeKeyForStaticPage(StaticPage staticPage) {
@@ -130,4 +206,243 @@ public class ContentCache {
     return blog.getId() + "/staticPage/" + staticPageId;
   }
 
-}
\ No newline at end of file
+  /**
+   * Removes all content from the cache.
+   */
+  public void clear() {
+    for (AtomicLong version : versions.values()) {
+      version.incrementAndGet();
+    }
+
+    for (String key : cache.keySet()) {
+      CachedContent cachedContent = cache.remove(key);
+      if (cachedContent != null) {
+        size.addAndGet(-cachedContent.size);
+      }
+    }
+  }
+
+  private Object get(String key) {
+    CachedContent cachedContent = cache.get(key);
+    if (cachedContent != null && cachedContent.isExpired(timeToLive)) {
+      if (cache.remove(key, cachedContent)) {
+        size.addAndGet(-cachedContent.size);
+      }
+      cachedContent = null;
+    }
+
+    if (cachedContent != null) {
+      hits.incrementAndGet();
+
+      // the clock only moves on when content is put, so hits just read it,
+      // ranking everything used since the last put as most recently used
+      long now = clock.get() + 1;
+      if (cachedContent.lastAccessed != now) {
+        cachedContent.lastAccessed = now;
+      }
+      return cachedContent.content;
+    } else {
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  private void put(Blog blog, String key, Object content, long contentSize, long expectedVersion) {
+    AtomicLong version = getVersionCounter(blog.getId());
+    if (version.get() != expectedVersion) {
+      // something was removed while the content was being loaded, so it may be stale
+      return;
+    }
+
+    CachedContent cachedContent = new CachedContent(content, contentSize, clock.incrementAndGet());
+    CachedContent previous = cache.put(key, cachedContent);
+    if (previous != null) {
+      size.addAndGet(cachedContent.size - previous.size);
+    } else {
+      size.addAndGet(cachedContent.size);
+    }
+
+    // and check again, in case of a removal that raced with the put above
+    if (version.get() != expectedVersion && cache.remove(key, cachedContent)) {
+      size.addAndGet(-cachedContent.size);
+      return;
+    }
+
+    if (size.get() > maximumSize) {
+      evict();
+    }
+  }
+
+  private void remove(Blog blog, String key) {
+    getVersionCounter(blog.getId()).incrementAndGet();
+    CachedContent cachedContent = cache.remove(key);
+    if (cachedContent != null) {
+      size.addAndGet(-cachedContent.size);
+    }
+  }
+
+  /**
+   * Evicts the least recently used content until the cache is back under
+   * the low water mark. Only one thread evicts at a time, other threads
+   * simply carry on.
+   */
+  private void evict() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+
+    try {
+      long target = (maximumSize / 100) * LOW_WATER_MARK;
+      if (size.get() <= target) {
+        return;
+      }
+
+      List<Map.Entry<String,CachedContent>> entries = new ArrayList<Map.Entry<String,CachedContent>>(cache.entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<String,CachedContent>>() {
+        public int compare(Map.Entry<String,CachedContent> e1, Map.Entry<String,CachedContent> e2) {
+          long a1 = e1.getValue().lastAccessed;
+          long a2 = e2.getValue().lastAccessed;
+          return (a1 < a2) ? -1 : ((a1 == a2) ? 0 : 1);
+        }
+      });
+
+      for (Map.Entry<String,CachedContent> entry : entries) {
+        if (size.get() <= target) {
+          break;
+        }
+
+        if (cache.remove(entry.getKey(), entry.getValue())) {
+          size.addAndGet(-entry.getValue().size);
+          evictions.incrementAndGet();
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Estimates the number of bytes used by the given blog entry, including
+   * its comments and TrackBacks.
+   */
+  static long estimateSize(BlogEntry blogEntry) {
+    long estimate = CONTENT_OVERHEAD;
+    estimate += sizeOf(blogEntry.getTitle());
+    estimate += sizeOf(blogEntry.getSubtitle());
+    estimate += sizeOf(blogEntry.getExcerpt());
+    estimate += sizeOf(blogEntry.getBody());
+    estimate += sizeOf(blogEntry.getTags());
+
+    for (Comment comment : blogEntry.getComments()) {
+      estimate += RESPONSE_OVERHEAD;
+      estimate += sizeOf(comment.getTitle());
+      estimate += sizeOf(comment.getBody());
+      estimate += sizeOf(comment.getAuthor());
+      estimate += sizeOf(comment.getEmail());
+      estimate += sizeOf(comment.getWebsite());
+    }
+
+    for (TrackBack trackBack : blogEntry.getTrackBacks()) {
+      estimate += RESPONSE_OVERHEAD;
+      estimate += sizeOf(trackBack.getTitle());
+      estimate += sizeOf(trackBack.getExcerpt());
+      estimate += sizeOf(trackBack.getUrl());
+      estimate += sizeOf(trackBack.getBlogName());
+    }
+
+    return estimate;
+  }
+
+  /**
+   * Estimates the number of bytes used by the given static page.
+   */
+  static long estimateSize(StaticPage staticPage) {
+    long estimate = CONTENT_OVERHEAD;
+    estimate += sizeOf(staticPage.getTitle());
+    estimate += sizeOf(staticPage.getSubtitle());
+    estimate += sizeOf(staticPage.getBody());
+    estimate += sizeOf(staticPage.getTags());
+    estimate += sizeOf(staticPage.getName());
+
+    return estimate;
+  }
+
+  private static long sizeOf(String s) {
+    return (s != null) ? 2L * s.length() : 0;
+  }
+
+  /**
+   * Gets the estimated number of bytes currently held by the cache.
+   */
+  public long getSize() {
+    return size.get();
+  }
+
+  /**
+   * Gets the number of items currently held by the cache.
+   */
+  public int getNumberOfElements() {
+    return cache.size();
+  }
+
+  public long getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Sets the maximum (estimated) size of the cache.
+   *
+   * @param maximumSize   a number of bytes
+   */
+  public void setMaximumSize(long maximumSize) {
+    this.maximumSize = maximumSize;
+  }
+
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * Sets the time that content lives in the cache for.
+   *
+   * @param timeToLive    a number of milliseconds, 0 meaning forever
+   */
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Represents a single piece of content held in the cache.
+   */
+  private static final class CachedContent {
+
+    private final Object content;
+    private final long size;
+    private final long created = System.currentTimeMillis();
+    private volatile long lastAccessed;
+
+    CachedContent(Object content, long size, long lastAccessed) {
+      this.content = content;
+      this.size = size;
+      this.lastAccessed = lastAccessed;
+    }
+
+    boolean isExpired(long timeToLive) {
+      return timeToLive > 0 && (System.currentTimeMillis() - created) > timeToLive;
+    }
+
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A per-blog cache of rendered newsfeeds, keyed by the parameters that
+ * affect the feed's content (flavor, tag, category, author and whether
+ * aggregated content is included, plus the scheme since links may be
+ * rewritten for secure requests). The cache is cleared whenever a blog
+ * entry or response changes (see ContentCacheListener).
+ *
+ * @author    Simon Brown
+ */
+public class FeedCache {
+
+  /** the maximum number of feeds that are kept */
+  public static final int MAXIMUM_SIZE = 100;
+
+  private final Map<String,CachedFeed> feeds = new LinkedHashMap<String,CachedFeed>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String,CachedFeed> eldest) {
+      return size() > MAXIMUM_SIZE;
+    }
+  };
+
+  /** changes every time the cache is cleared */
+  private long version;
+
+  /**
+   * Gets the key for a feed.
+   *
+   * @param scheme                    the scheme of the request (http or https)
+   * @param flavor                    the feed flavor (rss20, atom or rdf)
+   * @param tag                       the tag, or null
+   * @param category                  the category ID, or null
+   * @param author                    the author's username, or null
+   * @param includeAggregatedContent  whether aggregated blog entries are included
+   * @return  a String key
+   */
+  public static String getKey(String scheme, String flavor, String tag, String category, String author, boolean includeAggregatedContent) {
+    StringBuffer key = new StringBuffer();
+    key.append(scheme);
+    key.append(":");
+    key.append(flavor);
+    key.append("/t:");
+    key.append(tag != null ? tag : "");
+    key.append("/c:");
+    key.append(category != null ? category : "");
+    key.append("/a:");
+    key.append(author != null ? author : "");
+    key.append("/");
+    key.append(includeAggregatedContent);
+
+    return key.toString();
+  }
+
+  /**
+   * Gets the current version of the cache. This should be called before a
+   * feed is rendered and passed back when the feed is put into the cache.
+   *
+   * @return  a version number
+   */
+  public synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets a feed from the cache.
+   *
+   * @param key   the key, as returned by getKey()
+   * @return  a CachedFeed instance, or null if the feed isn't cached
+   */
+  public synchronized CachedFeed get(String key) {
+    return feeds.get(key);
+  }
+
+  /**
+   * Puts a feed into the cache, providing that the cache hasn't been
+   * cleared since the feed was rendered.
+   *
+   * @param key       the key, as returned by getKey()
+   * @param feed      the CachedFeed instance
+   * @param version   the version of the cache prior to the feed being rendered
+   */
+  public synchronized void put(String key, CachedFeed feed, long version) {
+    if (version == this.version) {
+      feeds.put(key, feed);
+    }
+  }
+
+  /**
+   * Removes all feeds from the cache.
+   */
+  public synchronized void clear() {
+    feeds.clear();
+    version++;
+  }
+
+  /**
+   * Gets the number of feeds in the cache.
+   *
+   * @return  the number of feeds
+   */
+  public synchronized int size() {
+    return feeds.size();
+  }
+
+}
@@ -167,6 +167,13 @@ public class PluginProperties {
         fout.flush();
         fout.close();
       }
+
+      // decorators may be configured by plugin properties
+      if (blog.getContentDecoratorChain() != null) {
+        blog.getContentDecoratorChain().invalidate();
+      }
+      blog.refreshSidebarSnapshot();
+      blog.getFeedCache().clear();
     } catch (FileNotFoundException fnfe) {
     } catch (IOException e) {
       log.error(e.getMessage());
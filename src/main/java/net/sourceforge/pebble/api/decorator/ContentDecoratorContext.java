@@ -49,6 +49,7 @@ public class ContentDecoratorContext {
 
   private int view = 0;
   private int media = 0;
+  private boolean cacheable = true;
 
   public ContentDecoratorContext() {
   }
@@ -69,4 +70,27 @@ public class ContentDecoratorContext {
     this.media = media;
   }
 
+  /**
+   * Determines whether the output of the decorators can be cached. Once any
+   * item decorated in this context was uncacheable, this stays false for
+   * the rest of the render, so that pages and feeds built from several
+   * items know not to cache the result.
+   *
+   * @return  true if the output can be cached, false otherwise
+   */
+  public boolean isCacheable() {
+    return cacheable;
+  }
+
+  /**
+   * Sets whether the output of the decorators can be cached. Decorators
+   * set this to false when their output is only provisional, for example
+   * while a thumbnail is still being created.
+   *
+   * @param cacheable   true if the output can be cached, false otherwise
+   */
+  public void setCacheable(boolean cacheable) {
+    this.cacheable = cacheable;
+  }
+
 }
\ No newline at end of file
@@ -59,6 +59,18 @@ public interface BlogEntryDAO {
    */
   public Collection<BlogEntry> loadBlogEntries(Blog blog) throws PersistenceException;
 
+  /**
+   * Loads the IDs of all blog entries, without loading the entries
+   * themselves. This allows callers to stream through a large blog one
+   * entry at a time.
+   *
+   * @param blog    the Blog to load all entry IDs for
+   * @return a Collection of blog entry IDs
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if the blog entry IDs cannot be loaded
+   */
+  public Collection<String> loadBlogEntryIds(Blog blog) throws PersistenceException;
+
   /**
    * Stores the specified blog entry.
    *
@@ -0,0 +1,581 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.file;
+
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.domain.*;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+/**
+ * Stores blog entries in a compact, versioned binary format alongside the
+ * regular XML files. Each blog entry is stored as yyyy/MM/dd/[id].dat
+ * and consists of a fixed size header (magic number, format version, the
+ * length and checksum of the XML file that it supersedes and the length of
+ * the data that follows) followed by length-prefixed UTF-8 strings and
+ * big-endian numbers, so that it can be read directly from a (memory mapped)
+ * ByteBuffer.
+ * <br />
+ * Blog entries that only exist as XML files are read from XML and converted
+ * the first time that they are loaded. Storing a blog entry removes its XML
+ * file, which would otherwise be out of date. If an XML file doesn't match
+ * the one recorded in the binary file (e.g. because it has been restored
+ * from a backup or edited using the FileBlogEntryDAO), the XML file is
+ * current and is converted again. Blog entries can be exported back to XML
+ * so that backups remain compatible with the FileBlogEntryDAO, which
+ * happens whenever the blog is backed up as a ZIP file.
+ *
+ * @author    Simon Brown
+ */
+public class BinaryBlogEntryDAO implements BlogEntryDAO {
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(BinaryBlogEntryDAO.class);
+
+  /** timezone to use for calculating paths on disk, etc */
+  private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+  static final String BINARY_FILE_EXTENSION = ".dat";
+  static final String XML_FILE_EXTENSION = ".xml";
+
+  /** "PBLE", the magic number at the start of every file */
+  static final int MAGIC_NUMBER = 0x50424C45;
+
+  /** the current version of the format */
+  static final int FORMAT_VERSION = 2;
+
+  /** the size of the header, in bytes */
+  private static final int HEADER_SIZE = 28;
+
+  /** the offset of the XML file's length and checksum in the header */
+  private static final int XML_LENGTH_OFFSET = 8;
+  private static final int XML_CHECKSUM_OFFSET = 16;
+
+  /** recorded in place of the length when there was no XML file */
+  private static final long NO_XML_FILE = -1;
+
+  private static final int NULL_LENGTH = -1;
+
+  /** the DAO used to read and write the XML files */
+  private final FileBlogEntryDAO xmlBlogEntryDAO = new FileBlogEntryDAO();
+
+  /**
+   * Loads a specific blog entry.
+   *
+   * @param blogEntryId   the blog entry ID
+   * @return a BlogEntry instance
+   * @throws PersistenceException
+   *          if the specified blog entry cannot be loaded
+   */
+  public BlogEntry loadBlogEntry(Blog blog, String blogEntryId) throws PersistenceException {
+    File path = new File(xmlBlogEntryDAO.getPath(blog, blogEntryId, GMT));
+    File binaryFile = new File(path, blogEntryId + BINARY_FILE_EXTENSION);
+    File xmlFile = new File(path, blogEntryId + XML_FILE_EXTENSION);
+
+    if (binaryFile.exists()) {
+      try {
+        ByteBuffer buffer = readFile(binaryFile);
+        if (!xmlFile.exists() || supersedes(buffer, xmlFile)) {
+          return readBlogEntry(blog, buffer);
+        }
+
+        log.info(xmlFile.getAbsolutePath() + " has changed since " + binaryFile.getAbsolutePath() + " was written, converting from XML again");
+      } catch (IOException ioe) {
+        if (!xmlFile.exists()) {
+          log.error(ioe.getMessage() + " while loading blog entry from " + binaryFile.getAbsolutePath(), ioe);
+          throw new PersistenceException(ioe.getMessage());
+        }
+
+        log.warn(binaryFile.getAbsolutePath() + " could not be read, converting from XML again", ioe);
+      }
+    }
+
+    BlogEntry blogEntry = xmlBlogEntryDAO.loadBlogEntry(blog, blogEntryId);
+    if (blogEntry != null) {
+      log.debug("Converting " + xmlFile.getAbsolutePath() + " to binary format");
+      writeBlogEntry(blogEntry, binaryFile, xmlFile);
+    }
+
+    return blogEntry;
+  }
+
+  /**
+   * Loads all blog entries.
+   *
+   * @param blog the Blog to load all entries for
+   * @return a List of BlogEntry objects
+   * @throws PersistenceException
+   *          if the blog entries cannot be loaded
+   */
+  public Collection<BlogEntry> loadBlogEntries(Blog blog) throws PersistenceException {
+    List<BlogEntry> list = new ArrayList<BlogEntry>();
+
+    for (String blogEntryId : loadBlogEntryIds(blog)) {
+      BlogEntry blogEntry = loadBlogEntry(blog, blogEntryId);
+      if (blogEntry != null) {
+        list.add(blogEntry);
+      }
+    }
+
+    return list;
+  }
+
+  /**
+   * Stores the specified blog entry.
+   *
+   * @param blogEntry the blog entry to store
+   * @throws PersistenceException if something goes wrong storing the entry
+   */
+  public void storeBlogEntry(BlogEntry blogEntry) throws PersistenceException {
+    File outputDir = new File(xmlBlogEntryDAO.getPath(blogEntry.getBlog(), blogEntry.getId(), GMT));
+    if (!outputDir.exists()) {
+      outputDir.mkdirs();
+    }
+
+    File xmlFile = new File(outputDir, blogEntry.getId() + XML_FILE_EXTENSION);
+    writeBlogEntry(blogEntry, new File(outputDir, blogEntry.getId() + BINARY_FILE_EXTENSION), xmlFile);
+
+    // the XML file is now out of date - if it can't be removed, the binary
+    // file has recorded that it supersedes it
+    if (xmlFile.exists() && !xmlFile.delete()) {
+      log.warn(xmlFile.getAbsolutePath() + " could not be removed");
+    }
+    ContentCache.getInstance().removeBlogEntry(blogEntry);
+  }
+
+  /**
+   * Removes the specified blog entry.
+   *
+   * @param blogEntry the blog entry to remove
+   * @throws PersistenceException if something goes wrong removing the entry
+   */
+  public void removeBlogEntry(BlogEntry blogEntry) throws PersistenceException {
+    File path = new File(xmlBlogEntryDAO.getPath(blogEntry.getBlog(), blogEntry.getId(), GMT));
+    File binaryFile = new File(path, blogEntry.getId() + BINARY_FILE_EXTENSION);
+    File xmlFile = new File(path, blogEntry.getId() + XML_FILE_EXTENSION);
+    log.debug("Removing " + blogEntry.getGuid());
+
+    boolean success = true;
+    if (binaryFile.exists()) {
+      success = binaryFile.delete();
+    }
+    if (xmlFile.exists()) {
+      success = xmlFile.delete() && success;
+    }
+    ContentCache.getInstance().removeBlogEntry(blogEntry);
+
+    if (!success) {
+      throw new PersistenceException("Deletion of blog entry " + blogEntry.getGuid() + " failed");
+    }
+  }
+
+  /**
+   * Exports the specified blog entry to the XML format used by the
+   * FileBlogEntryDAO.
+   *
+   * @param blogEntry the blog entry to export
+   * @throws PersistenceException if something goes wrong storing the entry
+   */
+  public void exportBlogEntry(BlogEntry blogEntry) throws PersistenceException {
+    xmlBlogEntryDAO.storeBlogEntry(blogEntry);
+
+    // record the new XML file, so that it isn't mistaken for a newer version
+    File path = new File(xmlBlogEntryDAO.getPath(blogEntry.getBlog(), blogEntry.getId(), GMT));
+    File xmlFile = new File(path, blogEntry.getId() + XML_FILE_EXTENSION);
+    writeBlogEntry(blogEntry, new File(path, blogEntry.getId() + BINARY_FILE_EXTENSION), xmlFile);
+  }
+
+  /**
+   * Exports all blog entries for the given blog to the XML format used by
+   * the FileBlogEntryDAO.
+   *
+   * @param blog    the Blog to export
+   * @throws PersistenceException if something goes wrong storing the entries
+   */
+  public void exportBlogEntries(Blog blog) throws PersistenceException {
+    // hold the same locks as BlogService.putBlogEntry(), so that a blog
+    // entry being stored isn't overwritten with an older copy
+    Lock structureLock = blog.getStructureLock().readLock();
+    structureLock.lock();
+    try {
+      for (String blogEntryId : loadBlogEntryIds(blog)) {
+        Lock lock = blog.getContentLock(blogEntryId);
+        lock.lock();
+        try {
+          BlogEntry blogEntry = loadBlogEntry(blog, blogEntryId);
+          if (blogEntry != null) {
+            exportBlogEntry(blogEntry);
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    } finally {
+      structureLock.unlock();
+    }
+  }
+
+  /**
+   * Loads the IDs of all blog entries stored in either format.
+   *
+   * @param blog the Blog to load all entry IDs for
+   * @return a Collection of blog entry IDs
+   */
+  public Collection<String> loadBlogEntryIds(Blog blog) {
+    Set<String> ids = new TreeSet<String>();
+
+    File root = new File(blog.getRoot());
+    File years[] = root.listFiles(new FourDigitFilenameFilter());
+    if (years == null) {
+      return ids;
+    }
+
+    FilenameFilter filter = new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.matches("\\d+(\\.xml|\\.dat)\\z");
+      }
+    };
+
+    for (File year : years) {
+      File months[] = year.listFiles(new TwoDigitFilenameFilter());
+      for (File month : months) {
+        File days[] = month.listFiles(new TwoDigitFilenameFilter());
+        for (File day : days) {
+          for (String name : day.list(filter)) {
+            ids.add(name.substring(0, name.indexOf('.')));
+          }
+        }
+      }
+    }
+
+    return ids;
+  }
+
+  /**
+   * Reads the specified binary file into a buffer.
+   */
+  private ByteBuffer readFile(File source) throws IOException {
+    log.debug("Loading " + source.getAbsolutePath());
+
+    ByteBuffer buffer;
+    FileInputStream in = new FileInputStream(source);
+    try {
+      FileChannel channel = in.getChannel();
+      buffer = ByteBuffer.allocate((int)channel.size());
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // keep reading until the buffer is full
+      }
+      buffer.flip();
+    } finally {
+      in.close();
+    }
+
+    return buffer;
+  }
+
+  /**
+   * Determines whether the binary file in the given buffer supersedes the
+   * specified XML file, because it was converted from, exported to or
+   * stored over exactly that XML file.
+   */
+  private boolean supersedes(ByteBuffer buffer, File xmlFile) throws IOException {
+    if (buffer.remaining() < HEADER_SIZE) {
+      return false;
+    }
+
+    long xmlLength = buffer.getLong(buffer.position() + XML_LENGTH_OFFSET);
+    long xmlChecksum = buffer.getLong(buffer.position() + XML_CHECKSUM_OFFSET);
+    return xmlLength == xmlFile.length() && xmlChecksum == checksum(xmlFile);
+  }
+
+  /**
+   * Calculates the CRC-32 checksum of the specified file.
+   */
+  private long checksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] bytes = new byte[8192];
+    FileInputStream in = new FileInputStream(file);
+    try {
+      int read;
+      while ((read = in.read(bytes)) != -1) {
+        crc.update(bytes, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+
+    return crc.getValue();
+  }
+
+  /**
+   * Reads a blog entry from the given buffer.
+   */
+  BlogEntry readBlogEntry(Blog blog, ByteBuffer buffer) throws IOException {
+    try {
+      if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC_NUMBER) {
+        throw new IOException("Not a blog entry file");
+      }
+
+      int version = buffer.getInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported format version " + version);
+      }
+
+      // the XML file that this supersedes is only needed by loadBlogEntry()
+      buffer.getLong();
+      buffer.getLong();
+
+      int length = buffer.getInt();
+      if (buffer.remaining() != length) {
+        throw new IOException("Expected " + length + " bytes, but found " + buffer.remaining());
+      }
+
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setTitle(getString(buffer));
+      blogEntry.setSubtitle(getString(buffer));
+      blogEntry.setExcerpt(getString(buffer));
+      blogEntry.setBody(getString(buffer));
+      blogEntry.setDate(new Date(buffer.getLong()));
+      blogEntry.setTimeZoneId(getString(buffer));
+      blogEntry.setPublished(!State.UNPUBLISHED.getName().equals(getString(buffer)));
+      blogEntry.setAuthor(getString(buffer));
+      blogEntry.setOriginalPermalink(getString(buffer));
+      blogEntry.setCommentsEnabled(buffer.get() != 0);
+      blogEntry.setTrackBacksEnabled(buffer.get() != 0);
+
+      int numberOfCategories = buffer.getInt();
+      for (int i = 0; i < numberOfCategories; i++) {
+        blogEntry.addCategory(blog.getCategory(getString(buffer)));
+      }
+
+      blogEntry.setTags(getString(buffer));
+
+      if (buffer.get() != 0) {
+        String url = getString(buffer);
+        long size = buffer.getLong();
+        String type = getString(buffer);
+        blogEntry.setAttachment(new Attachment(url, size, type));
+      }
+
+      int numberOfComments = buffer.getInt();
+      for (int i = 0; i < numberOfComments; i++) {
+        String title = getString(buffer);
+        String body = getString(buffer);
+        String author = getString(buffer);
+        String email = getString(buffer);
+        String website = getString(buffer);
+        String avatar = getString(buffer);
+        String ipAddress = getString(buffer);
+        Date date = new Date(buffer.getLong());
+        State state = State.getState(getString(buffer));
+        boolean authenticated = buffer.get() != 0;
+        long parent = buffer.getLong();
+
+        Comment comment = blogEntry.createComment(title, body, author, email, website, avatar, ipAddress, date, state);
+        if (parent != -1) {
+          comment.setParent(blogEntry.getComment(parent));
+        }
+        comment.setAuthenticated(authenticated);
+        blogEntry.addComment(comment);
+      }
+
+      int numberOfTrackBacks = buffer.getInt();
+      for (int i = 0; i < numberOfTrackBacks; i++) {
+        String title = getString(buffer);
+        String excerpt = getString(buffer);
+        String url = getString(buffer);
+        String blogName = getString(buffer);
+        String ipAddress = getString(buffer);
+        Date date = new Date(buffer.getLong());
+        State state = State.getState(getString(buffer));
+
+        blogEntry.addTrackBack(blogEntry.createTrackBack(title, excerpt, url, blogName, ipAddress, date, state));
+      }
+
+      return blogEntry;
+    } catch (RuntimeException re) {
+      // e.g. BufferUnderflowException for truncated files
+      IOException ioe = new IOException("Blog entry file is corrupt");
+      ioe.initCause(re);
+      throw ioe;
+    }
+  }
+
+  /**
+   * Writes a blog entry to the specified binary file, via a temporary file
+   * so that the existing file isn't corrupted if something goes wrong. The
+   * XML file, if it exists, is recorded as being superseded by the binary
+   * file.
+   */
+  private void writeBlogEntry(BlogEntry blogEntry, File destination, File xmlFile) throws PersistenceException {
+    File temporaryFile = new File(destination.getParentFile(), destination.getName() + ".tmp");
+    try {
+      byte[] bytes;
+      if (xmlFile.exists()) {
+        bytes = toByteArray(blogEntry, xmlFile.length(), checksum(xmlFile));
+      } else {
+        bytes = toByteArray(blogEntry, NO_XML_FILE, 0);
+      }
+
+      log.debug("Saving to " + destination.getAbsolutePath());
+      FileOutputStream out = new FileOutputStream(temporaryFile);
+      try {
+        out.write(bytes);
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+
+      if (!temporaryFile.renameTo(destination)) {
+        // some platforms won't rename over an existing file
+        destination.delete();
+        if (!temporaryFile.renameTo(destination)) {
+          throw new IOException("Could not rename " + temporaryFile.getAbsolutePath() + " to " + destination.getAbsolutePath());
+        }
+      }
+    } catch (IOException ioe) {
+      log.error(ioe.getMessage(), ioe);
+      temporaryFile.delete();
+      throw new PersistenceException(ioe.getMessage());
+    }
+  }
+
+  /**
+   * Converts a blog entry into its binary representation.
+   */
+  byte[] toByteArray(BlogEntry blogEntry, long xmlLength, long xmlChecksum) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream(4096);
+    DataOutputStream out = new DataOutputStream(data);
+
+    putString(out, blogEntry.getTitle());
+    putString(out, blogEntry.getSubtitle());
+    putString(out, blogEntry.getExcerpt());
+    putString(out, blogEntry.getBody());
+    out.writeLong(blogEntry.getDate().getTime());
+    putString(out, blogEntry.getTimeZoneId());
+    putString(out, blogEntry.getState().getName());
+    putString(out, blogEntry.getAuthor());
+    putString(out, blogEntry.isAggregated() ? blogEntry.getOriginalPermalink() : null);
+    out.writeBoolean(blogEntry.isCommentsEnabled());
+    out.writeBoolean(blogEntry.isTrackBacksEnabled());
+
+    Set<Category> categories = blogEntry.getCategories();
+    out.writeInt(categories.size());
+    for (Category category : categories) {
+      putString(out, category.getId());
+    }
+
+    putString(out, blogEntry.getTags());
+
+    Attachment attachment = blogEntry.getAttachment();
+    out.writeBoolean(attachment != null);
+    if (attachment != null) {
+      putString(out, attachment.getUrl());
+      out.writeLong(attachment.getSize());
+      putString(out, attachment.getType());
+    }
+
+    // comments are returned parents first, so parents can be found when reading
+    List<Comment> comments = blogEntry.getComments();
+    out.writeInt(comments.size());
+    for (Comment comment : comments) {
+      putString(out, comment.getTitle());
+      putString(out, comment.getBody());
+      putString(out, comment.getAuthor());
+      putString(out, comment.getEmail());
+      putString(out, comment.getWebsite());
+      putString(out, comment.getAvatar());
+      putString(out, comment.getIpAddress());
+      out.writeLong(comment.getDate().getTime());
+      putString(out, comment.getState().getName());
+      out.writeBoolean(comment.isAuthenticated());
+      out.writeLong(comment.getParent() != null ? comment.getParent().getId() : -1);
+    }
+
+    List<TrackBack> trackBacks = blogEntry.getTrackBacks();
+    out.writeInt(trackBacks.size());
+    for (TrackBack trackBack : trackBacks) {
+      putString(out, trackBack.getTitle());
+      putString(out, trackBack.getExcerpt());
+      putString(out, trackBack.getUrl());
+      putString(out, trackBack.getBlogName());
+      putString(out, trackBack.getIpAddress());
+      out.writeLong(trackBack.getDate().getTime());
+      putString(out, trackBack.getState().getName());
+    }
+
+    out.flush();
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream(HEADER_SIZE + data.size());
+    DataOutputStream header = new DataOutputStream(file);
+    header.writeInt(MAGIC_NUMBER);
+    header.writeInt(FORMAT_VERSION);
+    header.writeLong(xmlLength);
+    header.writeLong(xmlChecksum);
+    header.writeInt(data.size());
+    header.flush();
+    data.writeTo(file);
+
+    return file.toByteArray();
+  }
+
+  private void putString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(NULL_LENGTH);
+    } else {
+      byte[] bytes = s.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private String getString(ByteBuffer buffer) throws IOException {
+    int length = buffer.getInt();
+    if (length == NULL_LENGTH) {
+      return null;
+    }
+
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+}
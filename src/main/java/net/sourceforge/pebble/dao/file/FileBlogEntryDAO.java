@@ -32,6 +32,7 @@
 
 package net.sourceforge.pebble.dao.file;
 
+import net.sourceforge.pebble.ContentCache;
 import net.sourceforge.pebble.dao.BlogEntryDAO;
 import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.domain.*;
@@ -147,6 +148,36 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     return list;
   }
 
+  /**
+   * Loads the IDs of all blog entries, without loading the entries
+   * themselves.
+   *
+   * @param blog the Blog to load all entry IDs for
+   * @return a Collection of blog entry IDs
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if the blog entry IDs cannot be loaded
+   */
+  public Collection<String> loadBlogEntryIds(Blog blog) throws PersistenceException {
+    List<String> list = new ArrayList<String>();
+
+    File root = new File(blog.getRoot());
+    File years[] = root.listFiles(new FourDigitFilenameFilter());
+    for (File year : years) {
+      File months[] = year.listFiles(new TwoDigitFilenameFilter());
+      for (File month : months) {
+        File days[] = month.listFiles(new TwoDigitFilenameFilter());
+        for (File day : days) {
+          String blogEntryFiles[] = day.list(new BlogEntryFilenameFilter());
+          for (String blogEntryFile : blogEntryFiles) {
+            list.add(blogEntryFile.substring(0, blogEntryFile.indexOf('.')));
+          }
+        }
+      }
+    }
+
+    return list;
+  }
+
   /**
    * Stores the specified blog entry.
    *
@@ -161,6 +192,7 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
 
     File outputFile = new File(outputDir, blogEntry.getId() + ".xml");
     storeBlogEntry(blogEntry, outputFile);
+    ContentCache.getInstance().removeBlogEntry(blogEntry);
   }
 
 
@@ -437,6 +469,7 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     log.debug("Removing " + blogEntry.getGuid());
 
     boolean success = file.delete();
+    ContentCache.getInstance().removeBlogEntry(blogEntry);
     if (!success) {
       throw new PersistenceException("Deletion of blog entry " + blogEntry.getGuid() + " failed");
     }
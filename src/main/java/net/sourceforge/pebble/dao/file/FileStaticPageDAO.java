@@ -32,6 +32,7 @@
 
 package net.sourceforge.pebble.dao.file;
 
+import net.sourceforge.pebble.ContentCache;
 import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.dao.StaticPageDAO;
 import net.sourceforge.pebble.domain.Blog;
@@ -180,6 +181,7 @@ public class FileStaticPageDAO implements StaticPageDAO {
 
     File outputFile = new File(outputDir, staticPage.getId() + STATIC_PAGE_FILE_EXTENSION);
     storeStaticPage(staticPage, outputFile);
+    ContentCache.getInstance().removeStaticPage(staticPage);
   }
 
   /**
@@ -260,6 +262,7 @@ public class FileStaticPageDAO implements StaticPageDAO {
 
     log.debug("Archiving current version to " + backupFile.getAbsolutePath());
     boolean success = file.renameTo(backupFile);
+    ContentCache.getInstance().removeStaticPage(staticPage);
 
     if (!success) {
       throw new PersistenceException("Deletion of " + staticPage.getGuid() + " failed");
@@ -34,12 +34,19 @@ package net.sourceforge.pebble.decorator;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.api.decorator.ContentDecorator;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.UncachedContentDecorator;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.ListIterator;
 
 /**
- * Manages a list of content decorators at runtime.
+ * Manages a list of content decorators at runtime. The output of the
+ * decorators is cached, so that unchanged content isn't decorated again
+ * for every request. Decorators that implement UncachedContentDecorator
+ * are run every time, after the others, and a decorator can stop its
+ * output for a single item being cached by marking the context as not
+ * cacheable.
  *
  * @author    Simon Brown
  */
@@ -51,6 +58,15 @@ public class ContentDecoratorChain implements ContentDecorator {
   /** the list of decorators */
   private List<ContentDecorator> decorators = new ArrayList<ContentDecorator>();
 
+  /** the decorators whose output can be cached */
+  private List<ContentDecorator> cachedDecorators = new ArrayList<ContentDecorator>();
+
+  /** the decorators that must run every time */
+  private List<ContentDecorator> uncachedDecorators = new ArrayList<ContentDecorator>();
+
+  /** the output of the cached decorators */
+  private DecorationCache cache = new DecorationCache();
+
   /**
    * Creates a new chain.
    *
@@ -67,6 +83,30 @@ public class ContentDecoratorChain implements ContentDecorator {
    */
   public void add(ContentDecorator decorator) {
     decorators.add(decorator);
+    if (decorator instanceof UncachedContentDecorator) {
+      uncachedDecorators.add(decorator);
+    } else {
+      cachedDecorators.add(decorator);
+    }
+    cache.clear();
+  }
+
+  /**
+   * Removes a blog entry, and its responses, from the cache of decorated
+   * content.
+   *
+   * @param blogEntryId   the id of the blog entry
+   */
+  public void invalidate(String blogEntryId) {
+    cache.remove(blogEntryId);
+  }
+
+  /**
+   * Removes everything from the cache of decorated content, for example
+   * when the configuration of the decorators has changed.
+   */
+  public void invalidate() {
+    cache.clear();
   }
 
   /**
@@ -85,6 +125,79 @@ public class ContentDecoratorChain implements ContentDecorator {
    * @param blogEntry the blog entry to be decorated
    */
   public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
+    if (context.getView() == ContentDecoratorContext.PREVIEW) {
+      decorate(context, blogEntry, decorators);
+      return;
+    }
+
+    String key = DecorationCache.getKey(context, blogEntry);
+    if (!cache.apply(key, blogEntry)) {
+      boolean cacheable = context.isCacheable();
+      context.setCacheable(true);
+      decorate(context, blogEntry, cachedDecorators);
+      if (context.isCacheable()) {
+        cache.put(key, blogEntry, context.getView() == ContentDecoratorContext.DETAIL_VIEW);
+      }
+      context.setCacheable(cacheable && context.isCacheable());
+    }
+    decorate(context, blogEntry, uncachedDecorators);
+  }
+
+  /**
+   * Gets a decorated copy of the specified blog entry, leaving the blog entry
+   * itself untouched. Where possible, the copy is shared with other requests
+   * for the same blog entry instance, so it must not be modified.
+   *
+   * @param context   the context in which the decoration is running
+   * @param blogEntry the blog entry to be decorated
+   * @return  a decorated copy of the blog entry
+   */
+  public BlogEntry getDecoratedBlogEntry(ContentDecoratorContext context, BlogEntry blogEntry) {
+    if (context.getView() != ContentDecoratorContext.PREVIEW) {
+      String key = DecorationCache.getKey(context, blogEntry);
+      BlogEntry decorated = cache.get(key, blogEntry);
+      if (decorated == null) {
+        decorated = (BlogEntry)blogEntry.clone();
+        boolean cacheable = context.isCacheable();
+        context.setCacheable(true);
+        if (!cache.apply(key, decorated)) {
+          decorate(context, decorated, cachedDecorators);
+        }
+        boolean shared = context.isCacheable();
+        if (shared) {
+          cache.put(key, blogEntry, decorated, context.getView() == ContentDecoratorContext.DETAIL_VIEW);
+        }
+        context.setCacheable(cacheable && shared);
+
+        if (!shared) {
+          // nobody else has this copy, so it can be finished off in place
+          decorate(context, decorated, uncachedDecorators);
+          return decorated;
+        }
+      }
+
+      if (!isChangedByUncachedDecorators(context, decorated)) {
+        return decorated;
+      }
+    }
+
+    // the shared copy can't be changed, so decorate a copy of our own
+    BlogEntry copy = (BlogEntry)blogEntry.clone();
+    decorate(context, copy);
+    return copy;
+  }
+
+  private boolean isChangedByUncachedDecorators(ContentDecoratorContext context, BlogEntry blogEntry) {
+    for (ContentDecorator decorator : uncachedDecorators) {
+      if (((UncachedContentDecorator)decorator).appliesTo(context, blogEntry)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private void decorate(ContentDecoratorContext context, BlogEntry blogEntry, List<ContentDecorator> decorators) {
     for (ContentDecorator decorator : decorators) {
       decorator.decorate(context, blogEntry);
     }
@@ -92,11 +205,15 @@ public class ContentDecoratorChain implements ContentDecorator {
     // if the view is detail, decorate the comments and TrackBacks too
     if (context.getView() == ContentDecoratorContext.DETAIL_VIEW) {
       for (Comment comment : blogEntry.getComments()) {
-        decorate(context, comment);
+        for (ContentDecorator decorator : decorators) {
+          decorator.decorate(context, comment);
+        }
       }
 
       for (TrackBack trackBack : blogEntry.getTrackBacks()) {
-        decorate(context, trackBack);
+        for (ContentDecorator decorator : decorators) {
+          decorator.decorate(context, trackBack);
+        }
       }
     }
   }
@@ -108,7 +225,26 @@ public class ContentDecoratorChain implements ContentDecorator {
    * @param comment the comment to be decorated
    */
   public void decorate(ContentDecoratorContext context, Comment comment) {
-    for (ContentDecorator decorator : decorators) {
+    if (context.getView() == ContentDecoratorContext.PREVIEW) {
+      for (ContentDecorator decorator : decorators) {
+        decorator.decorate(context, comment);
+      }
+      return;
+    }
+
+    String key = DecorationCache.getKey(context, comment);
+    if (!cache.apply(key, comment)) {
+      boolean cacheable = context.isCacheable();
+      context.setCacheable(true);
+      for (ContentDecorator decorator : cachedDecorators) {
+        decorator.decorate(context, comment);
+      }
+      if (context.isCacheable()) {
+        cache.put(key, comment);
+      }
+      context.setCacheable(cacheable && context.isCacheable());
+    }
+    for (ContentDecorator decorator : uncachedDecorators) {
       decorator.decorate(context, comment);
     }
   }
@@ -132,7 +268,26 @@ public class ContentDecoratorChain implements ContentDecorator {
    * @param staticPage the static page to be decorated
    */
   public void decorate(ContentDecoratorContext context, StaticPage staticPage) {
-    for (ContentDecorator decorator : decorators) {
+    if (context.getView() == ContentDecoratorContext.PREVIEW) {
+      for (ContentDecorator decorator : decorators) {
+        decorator.decorate(context, staticPage);
+      }
+      return;
+    }
+
+    String key = DecorationCache.getKey(context, staticPage);
+    if (!cache.apply(key, staticPage)) {
+      boolean cacheable = context.isCacheable();
+      context.setCacheable(true);
+      for (ContentDecorator decorator : cachedDecorators) {
+        decorator.decorate(context, staticPage);
+      }
+      if (context.isCacheable()) {
+        cache.put(key, staticPage);
+      }
+      context.setCacheable(cacheable && context.isCacheable());
+    }
+    for (ContentDecorator decorator : uncachedDecorators) {
       decorator.decorate(context, staticPage);
     }
   }
@@ -165,15 +320,19 @@ public class ContentDecoratorChain implements ContentDecorator {
   }
 
   /**
-   * Decorates the specified blog entries.
+   * Decorates the specified blog entries. Since the blog entries may be the
+   * shared instances held by the content cache, each is replaced in the
+   * list by a decorated copy, which may itself be shared with other requests.
    *
    * @param context       the context
    * @param blogEntries   a List of BlogEntry instances
    */
   public static void decorate(ContentDecoratorContext context, List<BlogEntry> blogEntries) {
     if (blogEntries != null) {
-      for (BlogEntry blogEntry : blogEntries) {
-        blogEntry.getBlog().getContentDecoratorChain().decorate(context, blogEntry);
+      ListIterator<BlogEntry> it = blogEntries.listIterator();
+      while (it.hasNext()) {
+        BlogEntry blogEntry = it.next();
+        it.set(blogEntry.getBlog().getContentDecoratorChain().getDecoratedBlogEntry(context, blogEntry));
       }
     }
   }
@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.StaticPage;
+import net.sourceforge.pebble.domain.TrackBack;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the output of the cacheable content decorators, so that the
+ * same content doesn't have to be decorated again on every request. Keys
+ * are made up of the content's id, a fingerprint of its undecorated state
+ * and the view and media it is being decorated for, so changed content
+ * simply misses the cache.
+ *
+ * @author    Simon Brown
+ */
+class DecorationCache {
+
+  /** the maximum number of decorated items that are kept */
+  static final int MAXIMUM_SIZE = 500;
+
+  private final Map<String,Object> entries = new LinkedHashMap<String,Object>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String,Object> eldest) {
+      return size() > MAXIMUM_SIZE;
+    }
+  };
+
+  /**
+   * Gets the key for a decorated blog entry.
+   */
+  static String getKey(ContentDecoratorContext context, BlogEntry blogEntry) {
+    StringBuffer key = new StringBuffer("E/");
+    key.append(blogEntry.getId());
+    key.append("/");
+    appendContext(key, context);
+    key.append(blogEntry.getLastModified() != null ? blogEntry.getLastModified().getTime() : 0);
+    key.append("/");
+    key.append(hash(blogEntry.getBody()));
+    key.append("/");
+    key.append(hash(blogEntry.getExcerpt()));
+    key.append("/");
+    key.append(blogEntry.isCommentsEnabled());
+    key.append(blogEntry.isTrackBacksEnabled());
+    key.append("/");
+    key.append(blogEntry.getAttachment() != null ? hash(blogEntry.getAttachment().getUrl()) : 0);
+
+    return key.toString();
+  }
+
+  /**
+   * Gets the key for a decorated comment.
+   */
+  static String getKey(ContentDecoratorContext context, Comment comment) {
+    StringBuffer key = new StringBuffer("C/");
+    key.append(comment.getBlogEntry() != null ? comment.getBlogEntry().getId() : "");
+    key.append("/");
+    appendContext(key, context);
+    key.append(comment.getId());
+    key.append("/");
+    key.append(hash(comment.getTitle()));
+    key.append("/");
+    key.append(hash(comment.getBody()));
+    key.append("/");
+    key.append(hash(comment.getAuthor()));
+    key.append("/");
+    key.append(hash(comment.getEmail()));
+    key.append("/");
+    key.append(hash(comment.getWebsite()));
+
+    return key.toString();
+  }
+
+  /**
+   * Gets the key for a decorated static page.
+   */
+  static String getKey(ContentDecoratorContext context, StaticPage staticPage) {
+    StringBuffer key = new StringBuffer("P/");
+    key.append(staticPage.getId());
+    key.append("/");
+    appendContext(key, context);
+    key.append(staticPage.getLastModified() != null ? staticPage.getLastModified().getTime() : 0);
+    key.append("/");
+    key.append(hash(staticPage.getBody()));
+
+    return key.toString();
+  }
+
+  private static void appendContext(StringBuffer key, ContentDecoratorContext context) {
+    key.append(context.getView());
+    key.append("/");
+    key.append(context.getMedia());
+    key.append("/");
+  }
+
+  private static int hash(String s) {
+    return s == null ? 0 : s.hashCode();
+  }
+
+  /**
+   * Applies a previously decorated blog entry, if there is one.
+   *
+   * @return  true if the blog entry was found in the cache, false otherwise
+   */
+  boolean apply(String key, BlogEntry blogEntry) {
+    DecoratedBlogEntry decorated = (DecoratedBlogEntry)get(key);
+    if (decorated == null || !decorated.isApplicableTo(blogEntry)) {
+      return false;
+    }
+
+    blogEntry.setBody(decorated.body);
+    blogEntry.setExcerpt(decorated.excerpt);
+    blogEntry.setCommentsEnabled(decorated.commentsEnabled);
+    blogEntry.setTrackBacksEnabled(decorated.trackBacksEnabled);
+    if (blogEntry.getAttachment() != null) {
+      blogEntry.getAttachment().setUrl(decorated.attachmentUrl);
+    }
+    if (decorated.comments != null) {
+      for (Comment comment : blogEntry.getComments()) {
+        decorated.comments.get(comment.getId()).applyTo(comment);
+      }
+      for (TrackBack trackBack : blogEntry.getTrackBacks()) {
+        decorated.trackBacks.get(trackBack.getId()).applyTo(trackBack);
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Gets a previously decorated copy of a blog entry, if there is one that
+   * was made from the same blog entry instance. Blog entry instances are
+   * replaced rather than changed when they are updated, so the copy is
+   * current, responses included.
+   *
+   * @return  the shared decorated copy, or null if there isn't one
+   */
+  BlogEntry get(String key, BlogEntry blogEntry) {
+    DecoratedBlogEntry decorated = (DecoratedBlogEntry)get(key);
+    if (decorated == null || decorated.source != blogEntry) {
+      return null;
+    }
+
+    return decorated.copy;
+  }
+
+  /**
+   * Applies a previously decorated comment, if there is one.
+   *
+   * @return  true if the comment was found in the cache, false otherwise
+   */
+  boolean apply(String key, Comment comment) {
+    DecoratedComment decorated = (DecoratedComment)get(key);
+    if (decorated == null || !decorated.reusable) {
+      return false;
+    }
+
+    decorated.applyTo(comment);
+    return true;
+  }
+
+  /**
+   * Applies a previously decorated static page, if there is one.
+   *
+   * @return  true if the static page was found in the cache, false otherwise
+   */
+  boolean apply(String key, StaticPage staticPage) {
+    String body = (String)get(key);
+    if (body == null) {
+      return false;
+    }
+
+    staticPage.setBody(body);
+    return true;
+  }
+
+  /**
+   * Remembers a decorated blog entry, optionally along with its responses.
+   */
+  void put(String key, BlogEntry blogEntry, boolean includeResponses) {
+    put(key, new DecoratedBlogEntry(blogEntry, includeResponses));
+  }
+
+  /**
+   * Remembers a decorated copy of a blog entry, optionally along with its
+   * responses, so that the copy can be shared by later requests for the
+   * same blog entry instance.
+   */
+  void put(String key, BlogEntry blogEntry, BlogEntry copy, boolean includeResponses) {
+    DecoratedBlogEntry decorated = new DecoratedBlogEntry(copy, includeResponses);
+    decorated.source = blogEntry;
+    decorated.copy = copy;
+    put(key, decorated);
+  }
+
+  /**
+   * Remembers a decorated comment.
+   */
+  void put(String key, Comment comment) {
+    put(key, new DecoratedComment(comment));
+  }
+
+  /**
+   * Remembers a decorated static page.
+   */
+  void put(String key, StaticPage staticPage) {
+    put(key, staticPage.getBody());
+  }
+
+  private synchronized Object get(String key) {
+    return entries.get(key);
+  }
+
+  private synchronized void put(String key, Object decorated) {
+    entries.put(key, decorated);
+  }
+
+  /**
+   * Removes a blog entry, and any of its comments, from the cache.
+   *
+   * @param blogEntryId   the id of the blog entry
+   */
+  synchronized void remove(String blogEntryId) {
+    String blogEntryPrefix = "E/" + blogEntryId + "/";
+    String commentPrefix = "C/" + blogEntryId + "/";
+    Iterator<String> it = entries.keySet().iterator();
+    while (it.hasNext()) {
+      String key = it.next();
+      if (key.startsWith(blogEntryPrefix) || key.startsWith(commentPrefix)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Removes everything from the cache.
+   */
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private static class DecoratedBlogEntry {
+
+    private String body;
+    private String excerpt;
+    private boolean commentsEnabled;
+    private boolean trackBacksEnabled;
+    private String attachmentUrl;
+    private Map<Long,DecoratedComment> comments;
+    private Map<Long,DecoratedTrackBack> trackBacks;
+
+    /** the blog entry that was decorated, and the decorated copy of it */
+    private BlogEntry source;
+    private BlogEntry copy;
+
+    /**
+     * Determines whether every response on the given blog entry can be
+     * restored from this copy.
+     */
+    boolean isApplicableTo(BlogEntry blogEntry) {
+      if (comments == null) {
+        return true;
+      }
+      for (Comment comment : blogEntry.getComments()) {
+        DecoratedComment decoratedComment = comments.get(comment.getId());
+        if (decoratedComment == null || !decoratedComment.reusable) {
+          return false;
+        }
+      }
+      for (TrackBack trackBack : blogEntry.getTrackBacks()) {
+        if (!trackBacks.containsKey(trackBack.getId())) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    DecoratedBlogEntry(BlogEntry blogEntry, boolean includeResponses) {
+      this.body = blogEntry.getBody();
+      this.excerpt = blogEntry.getExcerpt();
+      this.commentsEnabled = blogEntry.isCommentsEnabled();
+      this.trackBacksEnabled = blogEntry.isTrackBacksEnabled();
+      if (blogEntry.getAttachment() != null) {
+        this.attachmentUrl = blogEntry.getAttachment().getUrl();
+      }
+
+      if (includeResponses) {
+        comments = new HashMap<Long,DecoratedComment>();
+        for (Comment comment : blogEntry.getComments()) {
+          comments.put(comment.getId(), new DecoratedComment(comment));
+        }
+        trackBacks = new HashMap<Long,DecoratedTrackBack>();
+        for (TrackBack trackBack : blogEntry.getTrackBacks()) {
+          trackBacks.put(trackBack.getId(), new DecoratedTrackBack(trackBack));
+        }
+      }
+    }
+  }
+
+  private static class DecoratedComment {
+
+    private String title;
+    private String body;
+    private String author;
+    private String email;
+    private String website;
+
+    /**
+     * setEmail() escapes its value, so an e-mail address that has already
+     * been escaped can't be set again without changing it
+     */
+    private boolean reusable;
+
+    DecoratedComment(Comment comment) {
+      this.title = comment.getTitle();
+      this.body = comment.getBody();
+      this.author = comment.getAuthor();
+      this.email = comment.getEmail();
+      this.website = comment.getWebsite();
+      this.reusable = email == null || email.indexOf('&') == -1;
+    }
+
+    void applyTo(Comment comment) {
+      comment.setTitle(title);
+      comment.setBody(body);
+      comment.setAuthor(author);
+      comment.setEmail(email);
+      comment.setWebsite(website);
+    }
+  }
+
+  private static class DecoratedTrackBack {
+
+    private String title;
+    private String excerpt;
+    private String url;
+    private String blogName;
+
+    DecoratedTrackBack(TrackBack trackBack) {
+      this.title = trackBack.getTitle();
+      this.excerpt = trackBack.getExcerpt();
+      this.url = trackBack.getUrl();
+      this.blogName = trackBack.getBlogName();
+    }
+
+    void applyTo(TrackBack trackBack) {
+      trackBack.setTitle(title);
+      trackBack.setExcerpt(excerpt);
+      trackBack.setUrl(url);
+      trackBack.setBlogName(blogName);
+    }
+  }
+
+}
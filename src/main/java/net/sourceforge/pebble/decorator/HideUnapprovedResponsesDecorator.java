@@ -37,6 +37,7 @@ import net.sourceforge.pebble.domain.Comment;
 import net.sourceforge.pebble.domain.TrackBack;
 import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.UncachedContentDecorator;
 
 import java.util.List;
 
@@ -46,7 +47,7 @@ import java.util.List;
  * 
  * @author Simon Brown
  */
-public class HideUnapprovedResponsesDecorator extends ContentDecoratorSupport {
+public class HideUnapprovedResponsesDecorator extends ContentDecoratorSupport implements UncachedContentDecorator {
 
   /**
    * Decorates the specified blog entry.
@@ -74,4 +75,32 @@ public class HideUnapprovedResponsesDecorator extends ContentDecoratorSupport {
     }
   }
 
+  /**
+   * Determines whether this decorator would change the specified blog entry,
+   * which is only the case when it has unapproved responses that the current
+   * user isn't allowed to see.
+   *
+   * @param context   the context in which the decoration is running
+   * @param blogEntry the decorated blog entry
+   * @return  true if decorate() would change the blog entry, false otherwise
+   */
+  public boolean appliesTo(ContentDecoratorContext context, BlogEntry blogEntry) {
+    if (SecurityUtils.isUserAuthorisedForBlogAsBlogContributor(blogEntry.getBlog())) {
+      return false;
+    }
+
+    for (Comment comment : blogEntry.getComments()) {
+      if (!comment.isApproved()) {
+        return true;
+      }
+    }
+    for (TrackBack trackBack : blogEntry.getTrackBacks()) {
+      if (!trackBack.isApproved()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
 }
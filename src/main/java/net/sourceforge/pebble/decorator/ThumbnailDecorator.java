@@ -32,30 +32,19 @@
 
 package net.sourceforge.pebble.decorator;
 
-import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.StaticPage;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.FileImageOutputStream;
 import net.sourceforge.pebble.PluginProperties;
 import net.sourceforge.pebble.domain.Blog;
 
 /**
- * Converts &lt;thumbnail&gt; tags into image thumbnails.
+ * Converts &lt;thumbnail&gt; tags into image thumbnails. Thumbnails are
+ * created in the background by the {@link ThumbnailPipeline}, and the
+ * original image is shown (scaled by the browser) until they're ready.
  * @author Alan Burlison
  */
 public class ThumbnailDecorator extends ContentDecoratorSupport {
@@ -69,8 +58,8 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
     @Override
     public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
         Blog blog = blogEntry.getBlog();
-        blogEntry.setBody(replaceTags(blogEntry.getBody(), blog));
-        blogEntry.setExcerpt(replaceTags(blogEntry.getExcerpt(), blog));
+        blogEntry.setBody(replaceTags(context, blogEntry.getBody(), blog));
+        blogEntry.setExcerpt(replaceTags(context, blogEntry.getExcerpt(), blog));
 
     }
 
@@ -83,17 +72,19 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
     @Override
     public void decorate(ContentDecoratorContext context,
       StaticPage staticPage) {
-        staticPage.setBody(replaceTags(staticPage.getContent(),
+        staticPage.setBody(replaceTags(context, staticPage.getContent(),
           staticPage.getBlog()));
     }
 
     /**
      * Find all the thumbnail tags and replace them with the equivalent HTML.
+     * @param context the context in which the decoration is running.
      * @param content the page content
      * @param blog the current blog.
      * @return the decorated content.
      */
-    private String replaceTags(String content, Blog blog) {
+    private String replaceTags(ContentDecoratorContext context,
+      String content, Blog blog) {
 
         // Check there is something to do.
         if (content == null || content.length() == 0) {
@@ -101,25 +92,8 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
         }
 
         // Establish default sizes.
-        int defaultThumbSize = 200;
-        int defaultPopupSize = 640;
-        PluginProperties props = blog.getPluginProperties();
-        if (props.hasProperty(thumbSizeProp)) {
-            try {
-                defaultThumbSize =
-                  Integer.parseInt(props.getProperty(thumbSizeProp));
-            } catch (NumberFormatException nfe) {
-                // Ignore.
-            }
-        }
-        if (props.hasProperty(popupSizeProp)) {
-            try {
-                defaultPopupSize =
-                  Integer.parseInt(props.getProperty(popupSizeProp));
-            } catch (NumberFormatException nfe) {
-                // Ignore.
-            }
-        }
+        int defaultThumbSize = getThumbnailSize(blog);
+        int defaultPopupSize = getSize(blog, popupSizeProp, 640);
 
         // Find all the thumbnail tags.
         Matcher tagM = tagRE.matcher(content);
@@ -165,7 +139,8 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
                     "<!-- ERROR: missing thumbnail src -->"));
             } else {
                 tagM.appendReplacement(sb,
-                  renderTag(new File(src), thumbSize, popupSize, alt, blog));
+                  renderTag(context, new File(src), thumbSize, popupSize,
+                    alt, blog));
             }
         }
         tagM.appendTail(sb);
@@ -173,8 +148,38 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
     }
 
     /**
-     * Render a thumbnail tag into the equivalent HTML, also creating and
-     * caching the thumbnail as appropriate.
+     * Get the default thumbnail size for a blog.
+     * @param blog the blog.
+     * @return the maximum dimension of thumbnails.
+     */
+    public static int getThumbnailSize(Blog blog) {
+        return getSize(blog, thumbSizeProp, 200);
+    }
+
+    /**
+     * Get a size from the plugin properties of a blog.
+     * @param blog the blog.
+     * @param prop the property name.
+     * @param defaultSize the size to use if the property isn't valid.
+     * @return the size.
+     */
+    private static int getSize(Blog blog, String prop, int defaultSize) {
+        PluginProperties props = blog.getPluginProperties();
+        if (props.hasProperty(prop)) {
+            try {
+                return Integer.parseInt(props.getProperty(prop));
+            } catch (NumberFormatException nfe) {
+                // Ignore.
+            }
+        }
+        return defaultSize;
+    }
+
+    /**
+     * Render a thumbnail tag into the equivalent HTML, scheduling the
+     * thumbnail to be created in the background if it isn't up to date.
+     * The HTML isn't cacheable until the thumbnail is ready.
+     * @param context the context in which the decoration is running.
      * @param src image source.
      * @param thumbSize required thumbmail size, maximum dimension.
      * @param popupSize required popup size, maximum dimension.
@@ -182,8 +187,8 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
      * @param blog the current blog.
      * @return the equivalent HTML.
      */
-    private String renderTag(File src, int thumbSize, int popupSize,
-      String alt, Blog blog) {
+    private String renderTag(ContentDecoratorContext context, File src,
+      int thumbSize, int popupSize, String alt, Blog blog) {
 
         // Check the image exists.
         File img = new File(blog.getRoot(), src.getPath());
@@ -192,38 +197,36 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
               "<!-- ERROR: invalid thumbnail src \"%s\" -->", src);
         }
 
-        // Check the thumbnail directory exists.
-        File thumbDir = new File(img.getParent(), "thumbnails");
-        if (!thumbDir.isDirectory()) {
-            if (!thumbDir.mkdir()) {
-                return String.format(
-                  "<!-- ERROR: can't create thumbnail directory -->",
-                  thumbDir.toString());
-            }
-        }
-
-        // Check that an up-to-date thumbnail exists.
-        File thumb = new File(thumbDir, img.getName());
-        if (!thumb.isFile() || thumb.lastModified() < img.lastModified()) {
-            if (! createThumbnail(img, thumb, thumbSize)) {
-                return String.format(
-                  "<!-- ERROR: can't create thumbnail \"%s\" -->", thumb);
-            }
+        // Check that an up-to-date thumbnail exists, without waiting for it.
+        ThumbnailPipeline pipeline = ThumbnailPipeline.getInstance();
+        String imgStyle = "";
+        File tsrc;
+        if (pipeline.getThumbnail(img, thumbSize) != null) {
+            tsrc = ThumbnailPipeline.getThumbnailFile(src, thumbSize);
+        } else if (pipeline.hasFailed(img, thumbSize)) {
+            return String.format(
+              "<!-- ERROR: can't create thumbnail \"%s\" -->",
+              ThumbnailPipeline.getThumbnailFile(img, thumbSize));
+        } else {
+            // Show the original image until the thumbnail is ready, and
+            // don't let this be cached in the meantime.
+            context.setCacheable(false);
+            tsrc = src;
+            imgStyle = String.format(
+              " style=\"max-width:%1$dpx;max-height:%1$dpx\"", thumbSize);
         }
 
         // Build the replacement HTML & return it.
-        File tsrc = new File(new File(src.getParent(), "thumbnails"),
-          src.getName());
         return String.format("<a href=\"%1$s\" onclick=\"window.open(" +
           "'%1$s','popup','width=%4$d,height=%4$d,toolbar=no,directories=no," +
           "location=no,menubar=no,status=no'); return false\" " +
           "class=\"thumbnailLink\"><img src=\"%2$s\" alt=\"%3$s\" " +
-          "class=\"thumbnailImage\"/></a>",
-          src, tsrc, alt, popupSize);
+          "class=\"thumbnailImage\"%5$s/></a>",
+          src, tsrc, alt, popupSize, imgStyle);
     }
 
     /**
-     * Create a new thumbnail from an image.
+     * Create a new thumbnail from an image, synchronously.
      * @param imgFile the image to thumbnail.
      * @param thumbFile the thumbnail to create.
      * @param thumbSize the maximum dimension of the thumbnail.
@@ -231,73 +234,10 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
      */
     public boolean createThumbnail(File imgFile, File thumbFile,
       int thumbSize) {
-        // Work out the image file suffix.
-        String suffix = imgFile.getName();
-        int dot = suffix.lastIndexOf('.');
-        if (dot < 1) {
-            return false;
-        }
-        suffix = suffix.substring(dot + 1);
-
-        try {
-            // Read in the image.
-            BufferedImage img = ImageIO.read(imgFile);
-            if (img == null) {
-                return false;
-            }
-
-            // Calcuate the scaling.
-            int ih = img.getHeight();
-            int iw = img.getWidth();
-            int thumbH, thumbW;
-            float scale;
-            if (iw > ih) {
-                scale = (float) thumbSize / (float) iw;
-                thumbW = thumbSize;
-                thumbH = Math.round(ih * scale);
-            } else {
-                scale = (float) thumbSize / (float) ih;
-                thumbH = thumbSize;
-                thumbW = Math.round(iw * scale);
-            }
-
-            // Scale the image.
-            BufferedImage thumb =
-              new BufferedImage(thumbW, thumbH, img.getType());
-            AffineTransform at =
-              AffineTransform.getScaleInstance(scale, scale);
-            AffineTransformOp ato = new AffineTransformOp(at, renderHints);
-            ato.filter(img, thumb);
-
-            // Save the image.
-            Iterator<ImageWriter> iwi =
-              ImageIO.getImageWritersBySuffix(suffix);
-            if (! iwi.hasNext()) {
-                return false;
-            }
-            ImageWriter thumbWriter = iwi.next();
-            ImageWriteParam iwp = thumbWriter.getDefaultWriteParam();
-            if (iwp.canWriteCompressed()) {
-                String ct[] = iwp.getCompressionTypes();
-                if (ct != null) {
-                    iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                    iwp.setCompressionType(ct[0]);
-                    iwp.setCompressionQuality(0.8F);
-                }
-            }
-            FileImageOutputStream thumbOut =
-              new FileImageOutputStream(thumbFile);
-            thumbWriter.setOutput(thumbOut);
-            thumbWriter.write(null, new IIOImage(thumb, null, null), iwp);
-            thumbWriter.dispose();
-            thumbOut.close();
-            
-        } catch (IOException ex) {
-            return false;
-        }
-        return true;
+        return ThumbnailPipeline.createThumbnail(imgFile, thumbFile,
+          thumbSize);
     }
-    
+
     /** Default thumbnail size property name. */
     private static final String thumbSizeProp = "Thumbnail.thumbnailSize";
     /** Default popup window size property name. */
@@ -310,27 +250,4 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
     private static Pattern attrRE = Pattern.compile(
       "([\\w_-]+)\\s*=\\s*\"([^\"]+)\"",
       Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-    /** Image transform hints. */
-    private static final RenderingHints renderHints;
-
-    // Initialise rendering hints.
-    static {
-        Map<RenderingHints.Key, Object> hintMap =
-          new HashMap<RenderingHints.Key, Object>();
-        hintMap.put(RenderingHints.KEY_ALPHA_INTERPOLATION,
-          RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        hintMap.put(RenderingHints.KEY_ANTIALIASING,
-          RenderingHints.VALUE_ANTIALIAS_ON);
-        hintMap.put(RenderingHints.KEY_COLOR_RENDERING,
-          RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        hintMap.put(RenderingHints.KEY_DITHERING,
-          RenderingHints.VALUE_DITHER_DISABLE);
-        hintMap.put(RenderingHints.KEY_INTERPOLATION,
-          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        hintMap.put(RenderingHints.KEY_ALPHA_INTERPOLATION,
-          RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        hintMap.put(RenderingHints.KEY_COLOR_RENDERING,
-          RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        renderHints = new RenderingHints(hintMap);
-    }
 }
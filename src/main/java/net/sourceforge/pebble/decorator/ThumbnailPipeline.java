@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates image thumbnails in the background, so that decorating content
+ * never has to wait for an image to be read and scaled. Jobs are keyed by
+ * the image, its last modified time and the thumbnail size, so a thumbnail
+ * that's requested many times at once is only created once.
+ *
+ * @author    Simon Brown
+ */
+public class ThumbnailPipeline {
+
+  private static final Log log = LogFactory.getLog(ThumbnailPipeline.class);
+
+  /** the name of the directory, next to the images, that thumbnails are written to */
+  public static final String THUMBNAILS_DIRECTORY = "thumbnails";
+
+  /** the number of threads creating thumbnails */
+  private static final int NUMBER_OF_THREADS = 2;
+
+  /** the maximum number of thumbnails waiting to be created */
+  private static final int QUEUE_CAPACITY = 200;
+
+  /** the number of images that couldn't be thumbnailed that are remembered */
+  private static final int MAXIMUM_FAILURES = 1000;
+
+  /** the quality used when writing compressed thumbnails */
+  private static final float COMPRESSION_QUALITY = 0.8F;
+
+  private static final ThumbnailPipeline instance = new ThumbnailPipeline(NUMBER_OF_THREADS, QUEUE_CAPACITY);
+
+  /** image transform hints */
+  private static final RenderingHints renderHints;
+
+  static {
+    Map<RenderingHints.Key, Object> hintMap = new HashMap<RenderingHints.Key, Object>();
+    hintMap.put(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+    hintMap.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    hintMap.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+    hintMap.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+    hintMap.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    renderHints = new RenderingHints(hintMap);
+  }
+
+  private final ThreadPoolExecutor executor;
+
+  /** the jobs that are queued or running */
+  private final ConcurrentMap<String,Boolean> pending = new ConcurrentHashMap<String,Boolean>();
+
+  /** the jobs that failed, so that they aren't retried until the image changes */
+  private final Map<String,Boolean> failed = Collections.synchronizedMap(new LinkedHashMap<String,Boolean>() {
+    protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest) {
+      return size() > MAXIMUM_FAILURES;
+    }
+  });
+
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong rejections = new AtomicLong();
+
+  ThumbnailPipeline(int threads, int capacity) {
+    executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pebble-thumbnails-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+        });
+  }
+
+  /**
+   * Gets the shared instance of this class.
+   *
+   * @return  a ThumbnailPipeline instance
+   */
+  public static ThumbnailPipeline getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the file that the thumbnail of an image is written to.
+   *
+   * @param image   the image file
+   * @param size    the maximum dimension of the thumbnail
+   * @return  a File, which may not exist yet
+   */
+  public static File getThumbnailFile(File image, int size) {
+    File directory = new File(new File(image.getParentFile(), THUMBNAILS_DIRECTORY), String.valueOf(size));
+    return new File(directory, image.getName());
+  }
+
+  /**
+   * Gets the thumbnail of an image if it's up to date, otherwise schedules
+   * it to be created. This never blocks.
+   *
+   * @param image   the image file
+   * @param size    the maximum dimension of the thumbnail
+   * @return  the thumbnail file, or null if it isn't ready yet
+   */
+  public File getThumbnail(File image, int size) {
+    File thumbnail = getThumbnailFile(image, size);
+    if (isUpToDate(image, thumbnail)) {
+      return thumbnail;
+    }
+
+    submit(image, size);
+    return null;
+  }
+
+  /**
+   * Determines whether the thumbnail of an image couldn't be created, since
+   * the image was last modified.
+   *
+   * @param image   the image file
+   * @param size    the maximum dimension of the thumbnail
+   * @return  true if creating the thumbnail failed, false otherwise
+   */
+  public boolean hasFailed(File image, int size) {
+    return failed.containsKey(getKey(image, size));
+  }
+
+  /**
+   * Schedules the thumbnail of an image to be created, unless the same job
+   * is already queued or has failed.
+   *
+   * @param image   the image file
+   * @param size    the maximum dimension of the thumbnail
+   * @return  true if the thumbnail is (or was already) scheduled, false otherwise
+   */
+  public boolean submit(final File image, final int size) {
+    final String key = getKey(image, size);
+    if (failed.containsKey(key)) {
+      return false;
+    }
+    if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+      return true;
+    }
+
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            File thumbnail = getThumbnailFile(image, size);
+            if (isUpToDate(image, thumbnail)) {
+              return;
+            }
+
+            if (createThumbnail(image, thumbnail, size)) {
+              created.incrementAndGet();
+            } else {
+              failures.incrementAndGet();
+              failed.put(key, Boolean.TRUE);
+            }
+          } catch (RuntimeException re) {
+            log.warn("Could not create thumbnail of " + image, re);
+            failures.incrementAndGet();
+            failed.put(key, Boolean.TRUE);
+          } finally {
+            pending.remove(key);
+          }
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException ree) {
+      // the queue is full - the thumbnail will be requested again next time
+      pending.remove(key);
+      rejections.incrementAndGet();
+      return false;
+    }
+  }
+
+  private static boolean isUpToDate(File image, File thumbnail) {
+    return thumbnail.isFile() && thumbnail.lastModified() >= image.lastModified();
+  }
+
+  private static String getKey(File image, int size) {
+    return image.getAbsolutePath() + "|" + image.lastModified() + "|" + size;
+  }
+
+  /**
+   * Creates a new thumbnail from an image. The thumbnail is written to a
+   * temporary file first, so that it's never served half written.
+   *
+   * @param imageFile       the image to thumbnail
+   * @param thumbnailFile   the thumbnail to create
+   * @param size            the maximum dimension of the thumbnail
+   * @return  true if the thumbnail was created successfully
+   */
+  public static boolean createThumbnail(File imageFile, File thumbnailFile, int size) {
+    // work out the image file suffix
+    String suffix = imageFile.getName();
+    int dot = suffix.lastIndexOf('.');
+    if (dot < 1) {
+      return false;
+    }
+    suffix = suffix.substring(dot + 1);
+
+    File directory = thumbnailFile.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      log.warn("Could not create thumbnail directory " + directory);
+      return false;
+    }
+    File tmp = new File(directory, "." + thumbnailFile.getName() + ".tmp");
+
+    try {
+      BufferedImage image = ImageIO.read(imageFile);
+      if (image == null) {
+        return false;
+      }
+
+      // calculate the scaling
+      int height = image.getHeight();
+      int width = image.getWidth();
+      int thumbnailHeight, thumbnailWidth;
+      float scale;
+      if (width > height) {
+        scale = (float)size / (float)width;
+        thumbnailWidth = size;
+        thumbnailHeight = Math.max(1, Math.round(height * scale));
+      } else {
+        scale = (float)size / (float)height;
+        thumbnailHeight = size;
+        thumbnailWidth = Math.max(1, Math.round(width * scale));
+      }
+
+      // scale the image
+      int type = image.getType();
+      if (type == BufferedImage.TYPE_CUSTOM) {
+        type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+      }
+      BufferedImage thumbnail = new BufferedImage(thumbnailWidth, thumbnailHeight, type);
+      AffineTransformOp op = new AffineTransformOp(AffineTransform.getScaleInstance(scale, scale), renderHints);
+      op.filter(image, thumbnail);
+
+      // and save it
+      Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(suffix);
+      if (!writers.hasNext()) {
+        return false;
+      }
+      ImageWriter writer = writers.next();
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      if (param.canWriteCompressed()) {
+        String compressionTypes[] = param.getCompressionTypes();
+        if (compressionTypes != null) {
+          param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+          param.setCompressionType(compressionTypes[0]);
+          param.setCompressionQuality(COMPRESSION_QUALITY);
+        }
+      }
+
+      tmp.delete();
+      FileImageOutputStream out = new FileImageOutputStream(tmp);
+      try {
+        writer.setOutput(out);
+        writer.write(null, new IIOImage(thumbnail, null, null), param);
+      } finally {
+        writer.dispose();
+        out.close();
+      }
+
+      thumbnailFile.delete();
+      if (!tmp.renameTo(thumbnailFile)) {
+        log.warn("Could not rename " + tmp + " to " + thumbnailFile);
+        return false;
+      }
+
+      return true;
+    } catch (IOException ioe) {
+      log.warn("Could not create thumbnail of " + imageFile + " - " + ioe.getMessage());
+      return false;
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Waits until there are no thumbnails queued or being created.
+   *
+   * @param timeout   the maximum time to wait, in milliseconds
+   * @return  true if the pipeline is idle, false if the timeout expired
+   */
+  boolean awaitIdle(long timeout) throws InterruptedException {
+    long end = System.currentTimeMillis() + timeout;
+    while (!pending.isEmpty()) {
+      if (System.currentTimeMillis() > end) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+
+    return true;
+  }
+
+  /**
+   * Gets the number of thumbnails waiting to be created.
+   */
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Gets the number of thumbnails created.
+   */
+  public long getCreated() {
+    return created.get();
+  }
+
+  /**
+   * Gets the number of images that couldn't be thumbnailed.
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * Gets the number of thumbnails that couldn't be scheduled because the queue was full.
+   */
+  public long getRejections() {
+    return rejections.get();
+  }
+
+}
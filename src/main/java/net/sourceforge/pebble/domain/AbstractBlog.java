@@ -436,6 +436,15 @@ public abstract class AbstractBlog extends TimePeriod {
     return getRoot() + File.separator + "logs";
   }
 
+  /**
+   * Gets the location where outgoing e-mails are spooled.
+   *
+   * @return    an absolute, local path on the filing system
+   */
+  public String getMailSpoolDirectory() {
+    return getRoot() + File.separator + "mail";
+  }
+
   /**
    * Gets the most recent blog entries, the number
    * of which is specified.
@@ -49,12 +49,17 @@ import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.servlet.http.HttpServletRequest;
 
 import net.sourceforge.pebble.BlogCompanion;
 import net.sourceforge.pebble.Configuration;
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
 import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.PluginProperties;
 import net.sourceforge.pebble.aggregator.NewsFeedCache;
@@ -79,6 +84,8 @@ import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.decorator.ContentDecoratorChain;
 import net.sourceforge.pebble.decorator.HideUnapprovedResponsesDecorator;
 import net.sourceforge.pebble.event.AuditListener;
+import net.sourceforge.pebble.event.ContentCacheListener;
+import net.sourceforge.pebble.event.SidebarSnapshotListener;
 import net.sourceforge.pebble.event.DefaultEventDispatcher;
 import net.sourceforge.pebble.event.EventListenerList;
 import net.sourceforge.pebble.event.blogentry.EmailSubscriptionListener;
@@ -86,6 +93,7 @@ import net.sourceforge.pebble.index.AuthorIndex;
 import net.sourceforge.pebble.index.AuthorIndexListener;
 import net.sourceforge.pebble.index.BlogEntryIndex;
 import net.sourceforge.pebble.index.BlogEntryIndexListener;
+import net.sourceforge.pebble.index.BlogEntryReindexer;
 import net.sourceforge.pebble.index.CategoryIndex;
 import net.sourceforge.pebble.index.CategoryIndexListener;
 import net.sourceforge.pebble.index.EmailSubscriptionList;
@@ -100,6 +108,7 @@ import net.sourceforge.pebble.logging.AbstractLogger;
 import net.sourceforge.pebble.logging.CombinedLogFormatLogger;
 import net.sourceforge.pebble.permalink.DefaultPermalinkProvider;
 import net.sourceforge.pebble.util.StringUtils;
+import net.sourceforge.pebble.util.MailUtils;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.logging.Log;
@@ -177,6 +186,15 @@ public class Blog extends AbstractBlog {
   /** the event listener list */
   private EventListenerList eventListenerList;
 
+  /** the listener that keeps cached content up to date */
+  private ContentCacheListener contentCacheListener;
+
+  /** the listener that keeps the sidebar snapshot up to date */
+  private SidebarSnapshotListener sidebarSnapshotListener;
+
+  /** the rendered newsfeeds */
+  private FeedCache feedCache = new FeedCache();
+
   /** the plugin properties */
   private PluginProperties pluginProperties;
 
@@ -191,12 +209,26 @@ public class Blog extends AbstractBlog {
   private AuthorIndex authorIndex;
   private StaticPageIndex staticPageIndex;
 
+  private FileUsageLedger fileUsageLedger;
+
   private final List<PageDecorator> pageDecorators = new CopyOnWriteArrayList<PageDecorator>();
   private final List<OpenIdCommentAuthorProvider> openIdCommentAuthorProviders = new CopyOnWriteArrayList<OpenIdCommentAuthorProvider>();
   private final List<FeedDecorator> feedDecorators = new CopyOnWriteArrayList<FeedDecorator>();
 
   private EmailSubscriptionList emailSubscriptionList;
 
+  /** the number of locks that writes to blog entries and static pages are striped across */
+  private static final int NUMBER_OF_CONTENT_LOCKS = 32;
+
+  /** the striped locks guarding writes to individual blog entries and static pages */
+  private final Lock[] contentLocks = createLocks(NUMBER_OF_CONTENT_LOCKS);
+
+  /**
+   * the lock guarding structural changes, such as categories and reindexing;
+   * writes to blog entries and static pages hold the read side
+   */
+  private final ReadWriteLock structureLock = new ReentrantReadWriteLock();
+
   /** the ApplicationContext to instantiate plugins with */
   private final AutowireCapableBeanFactory beanFactory;
 
@@ -260,6 +292,7 @@ public class Blog extends AbstractBlog {
     categoryIndex = new CategoryIndex(this);
     authorIndex = new AuthorIndex(this);
     staticPageIndex = new StaticPageIndex(this);
+    fileUsageLedger = new FileUsageLedger(this);
 
     decoratorChain = new ContentDecoratorChain(this);
 
@@ -329,6 +362,8 @@ public class Blog extends AbstractBlog {
     }
 
     eventDispatcher.setEventListenerList(eventListenerList);
+    contentCacheListener = new ContentCacheListener();
+    sidebarSnapshotListener = new SidebarSnapshotListener(this);
   }
 
   /**
@@ -347,6 +382,9 @@ public class Blog extends AbstractBlog {
         log.error("Blog listener " + className + " could not be registered", e);
       }
     }
+
+    eventListenerList.addBlogListener(contentCacheListener);
+    eventListenerList.addBlogListener(sidebarSnapshotListener);
   }
 
   /**
@@ -373,6 +411,8 @@ public class Blog extends AbstractBlog {
     eventListenerList.addBlogEntryListener(new AuthorIndexListener());
     eventListenerList.addBlogEntryListener(new SearchIndexListener());
     eventListenerList.addBlogEntryListener(new AuditListener());
+    eventListenerList.addBlogEntryListener(contentCacheListener);
+    eventListenerList.addBlogEntryListener(sidebarSnapshotListener);
     try {
       eventListenerList.addBlogEntryListener(new EmailSubscriptionListener());
     } catch (Throwable t) {
@@ -407,6 +447,8 @@ public class Blog extends AbstractBlog {
 
     eventListenerList.addCommentListener(new ResponseIndexListener());
     eventListenerList.addCommentListener(new AuditListener());
+    eventListenerList.addCommentListener(contentCacheListener);
+    eventListenerList.addCommentListener(sidebarSnapshotListener);
   }
 
   /**
@@ -428,6 +470,8 @@ public class Blog extends AbstractBlog {
 
     eventListenerList.addTrackBackListener(new ResponseIndexListener());
     eventListenerList.addTrackBackListener(new AuditListener());
+    eventListenerList.addTrackBackListener(contentCacheListener);
+    eventListenerList.addTrackBackListener(sidebarSnapshotListener);
   }
 
   /**
@@ -1263,6 +1307,32 @@ public class Blog extends AbstractBlog {
     return blogEntries;
   }
 
+  /**
+   * Gets the published blog entries that are most closely related to the
+   * specified blog entry, by the tags that they share.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @param number      the maximum number of blog entries to get
+   * @return a List containing the related blog entries, most related first
+   */
+  public List<BlogEntry> getRelatedBlogEntries(BlogEntry blogEntry, int number) {
+    BlogService service = new BlogService();
+    List<String> blogEntryIds = tagIndex.getRelatedBlogEntries(blogEntry, number);
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    for (String blogEntryId : blogEntryIds) {
+      try {
+        BlogEntry related = service.getBlogEntry(this, blogEntryId);
+        if (related != null && related.isPublished()) {
+          blogEntries.add(related);
+        }
+      } catch (BlogServiceException e) {
+        log.error("Exception encountered", e);
+      }
+    }
+
+    return blogEntries;
+  }
+
   /**
    * Gets the most recent responses.
    *
@@ -1360,13 +1430,13 @@ public class Blog extends AbstractBlog {
    * @return  a Date instance representing the time of the most recent entry
    */
   public Date getLastModified() {
-    Date date = new Date(0);
-    List blogEntries = getRecentPublishedBlogEntries(1);
-    if (blogEntries.size() == 1) {
-      date = ((BlogEntry)blogEntries.get(0)).getDate();
+    // blog entry IDs are their dates, so there's no need to load the blog entry
+    String blogEntryId = blogEntryIndex.getMostRecentPublishedBlogEntry();
+    if (blogEntryId != null) {
+      return new Date(Long.parseLong(blogEntryId));
+    } else {
+      return new Date(0);
     }
-
-    return date;
   }
 
   /**
@@ -1471,10 +1541,15 @@ public class Blog extends AbstractBlog {
    *
    * @param category    the Category to be added
    */
-  public synchronized void addCategory(Category category) {
-    if (getCategory(category.getId()) == null) {
-      CategoryBuilder builder = new CategoryBuilder(this, rootCategory);
-      builder.addCategory(category);
+  public void addCategory(Category category) {
+    structureLock.writeLock().lock();
+    try {
+      if (getCategory(category.getId()) == null) {
+        CategoryBuilder builder = new CategoryBuilder(this, rootCategory);
+        builder.addCategory(category);
+      }
+    } finally {
+      structureLock.writeLock().unlock();
     }
   }
 
@@ -1483,11 +1558,51 @@ public class Blog extends AbstractBlog {
    *
    * @param category    the Category to be removed
    */
-  public synchronized void removeCategory(Category category) {
-    if (getCategory(category.getId()) != null) {
-      CategoryBuilder builder = new CategoryBuilder(this, rootCategory);
-      builder.removeCategory(category);
+  public void removeCategory(Category category) {
+    structureLock.writeLock().lock();
+    try {
+      if (getCategory(category.getId()) != null) {
+        CategoryBuilder builder = new CategoryBuilder(this, rootCategory);
+        builder.removeCategory(category);
+      }
+    } finally {
+      structureLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the lock that guards writes to the blog entry or static page with
+   * the specified ID. Locks are striped, so writes to different content
+   * can proceed in parallel while writes to the same content are serialized.
+   * Reads don't need to take this lock.
+   *
+   * @param id    the ID of a blog entry or static page
+   * @return  a Lock instance
+   */
+  public Lock getContentLock(String id) {
+    return contentLocks[(id.hashCode() & 0x7fffffff) % contentLocks.length];
+  }
+
+  /**
+   * Gets the lock that guards structural changes to this blog, such as
+   * adding and removing categories or reindexing. These hold the write side,
+   * while writes to individual blog entries and static pages hold the read
+   * side (before taking their content lock), so that they can't interleave
+   * with a reindex.
+   *
+   * @return  a ReadWriteLock instance
+   */
+  public ReadWriteLock getStructureLock() {
+    return structureLock;
+  }
+
+  private static Lock[] createLocks(int number) {
+    Lock[] locks = new Lock[number];
+    for (int i = 0; i < number; i++) {
+      locks[i] = new ReentrantLock();
     }
+
+    return locks;
   }
 
   /**
@@ -1527,6 +1642,15 @@ public class Blog extends AbstractBlog {
     return this.searchIndex;
   }
 
+  /**
+   * Gets the ledger recording the space used by images, files and theme.
+   *
+   * @return  a FileUsageLedger instance
+   */
+  FileUsageLedger getFileUsageLedger() {
+    return this.fileUsageLedger;
+  }
+
   /**
    * Gets the blog entry index.
    *
@@ -1586,7 +1710,7 @@ public class Blog extends AbstractBlog {
    *
    * @param request   the HttpServletRequest instance for this request
    */
-  public synchronized void log(HttpServletRequest request, int status) {
+  public void log(HttpServletRequest request, int status) {
     String externalUri = (String)request.getAttribute(Constants.EXTERNAL_URI);
     if (externalUri.matches("/images/.+")) {
       // do nothing, we don't want to log the following types of requests
@@ -1700,6 +1824,10 @@ public class Blog extends AbstractBlog {
 
     logger.start();
     editableTheme.restore();
+    fileUsageLedger.start();
+
+    // send any e-mails that were still spooled when the blog was last stopped
+    MailUtils.recoverMailSpool(this);
 
     // call blog listeners
     eventDispatcher.fireBlogEvent(new BlogEvent(this, BlogEvent.BLOG_STARTED));
@@ -1714,9 +1842,13 @@ public class Blog extends AbstractBlog {
 
     logger.stop();
     editableTheme.backup();
+    fileUsageLedger.stop();
 
-    // call blog listeners
+    // call blog listeners (which also waits for queued events to be delivered)
     eventDispatcher.fireBlogEvent(new BlogEvent(this, BlogEvent.BLOG_STOPPED));
+
+    // and only then close the indexes, since some of those events update them
+    searchIndex.close();
     log.info("Stopped blog with ID " + getId());
   }
 
@@ -1747,6 +1879,45 @@ public class Blog extends AbstractBlog {
     return this.decoratorChain;
   }
 
+  /**
+   * Gets the precomputed information shown in the sidebar of this blog.
+   *
+   * @return  a SidebarSnapshot instance
+   */
+  public SidebarSnapshot getSidebarSnapshot() {
+    return sidebarSnapshotListener.getSnapshot();
+  }
+
+  /**
+   * Gets the cache of rendered newsfeeds for this blog.
+   *
+   * @return  a FeedCache instance
+   */
+  public FeedCache getFeedCache() {
+    return this.feedCache;
+  }
+
+  /**
+   * Requests that the sidebar snapshot is rebuilt, for example because
+   * the properties or plugins that affect it have changed.
+   */
+  public void refreshSidebarSnapshot() {
+    if (sidebarSnapshotListener != null) {
+      sidebarSnapshotListener.scheduleRebuild();
+    }
+  }
+
+  /**
+   * Stores the properties associated with this blog, rebuilding the sidebar
+   * and newsfeeds since properties such as the number of recent blog entries
+   * affect them.
+   */
+  public void storeProperties() throws BlogServiceException {
+    super.storeProperties();
+    refreshSidebarSnapshot();
+    feedCache.clear();
+  }
+
   /**
    * Gets the list of blog listeners as strings.
    *
@@ -1887,35 +2058,37 @@ public class Blog extends AbstractBlog {
   public void reindex() {
     log.info("Reindexing blog with ID " + getId());
 
-    reindexBlogEntries();
-    reindexStaticPages();
+    structureLock.writeLock().lock();
+    try {
+      reindexBlogEntries();
+      reindexStaticPages();
+    } finally {
+      structureLock.writeLock().unlock();
+    }
   }
 
   public void reindexBlogEntries() {
-    blogEntryIndex.clear();
-    responseIndex.clear();
-    tagIndex.clear();
-    categoryIndex.clear();
-    authorIndex.clear();
-    searchIndex.clear();
-
+    structureLock.writeLock().lock();
     try {
-      // to reindex all blog entries, we need to load them via the DAO
-      Collection<BlogEntry> blogEntries = DAOFactory.getConfiguredFactory().getBlogEntryDAO().loadBlogEntries(this);
-      blogEntryIndex.index(blogEntries);
-      responseIndex.index(blogEntries);
-      tagIndex.index(blogEntries);
-      categoryIndex.index(blogEntries);
-      authorIndex.index(blogEntries);
-      searchIndex.indexBlogEntries(blogEntries);
-      info("Blog entries reindexed.");
+      blogEntryIndex.clear();
+      responseIndex.clear();
+      tagIndex.clear();
+      categoryIndex.clear();
+      authorIndex.clear();
+      searchIndex.clear();
+
+      // stream the blog entries through the DAO rather than loading them all at once
+      new BlogEntryReindexer(this).reindex();
     } catch (Exception e) {
       error(e.getClass().getName() + " reindexing blog entries - " + StringUtils.transformHTML(e.getMessage()));
       log.error("Error reindexing blog entries", e);
+    } finally {
+      structureLock.writeLock().unlock();
     }
   }
 
   public void reindexStaticPages() {
+    structureLock.writeLock().lock();
     try {
       // to reindex all static pages, we need to load them via the DAO
       Collection<StaticPage> staticPages = DAOFactory.getConfiguredFactory().getStaticPageDAO().loadStaticPages(this);
@@ -1925,6 +2098,8 @@ public class Blog extends AbstractBlog {
     } catch (Exception e) {
       error(e.getClass().getName() + " reindexing static pages - " + StringUtils.transformHTML(e.getMessage()));
       log.error("Error reindexing static pages", e);
+    } finally {
+      structureLock.writeLock().unlock();
     }
   }
 
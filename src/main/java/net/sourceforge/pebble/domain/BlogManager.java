@@ -59,6 +59,9 @@ public class BlogManager {
   /** the blogs that are currently being managed */
   private Map<String,Blog> blogs = new HashMap<String,Blog>();
 
+  /** the public blogs, ordered by last modified date (null if not yet calculated) */
+  private volatile List<Blog> publicBlogsByLastModifiedDate;
+
   private boolean multiBlog = false;
 
   /**
@@ -159,6 +162,7 @@ public class BlogManager {
 
     blog.start();
     blogs.put(blog.getId(), blog);
+    invalidatePublicBlogs();
 
     // which version are we at and do we need to upgrade?
     File versionFile = new File(blogDir, "pebble.version");
@@ -213,10 +217,12 @@ public class BlogManager {
 
   public void addBlog(Blog blog) {
     blogs.put(blog.getId(), blog);
+    invalidatePublicBlogs();
   }
 
   public void removeAllBlogs() {
     blogs = new HashMap<String,Blog>();
+    invalidatePublicBlogs();
   }
 
   /**
@@ -257,6 +263,32 @@ public class BlogManager {
     return list;
   }
 
+  /**
+   * Gets the public blogs, ordered by the date they were last modified.
+   * The ordering is computed once and reused until a blog changes.
+   *
+   * @return  an unmodifiable List of Blog instances
+   */
+  public List<Blog> getPublicBlogsByLastModifiedDate() {
+    List<Blog> list = publicBlogsByLastModifiedDate;
+    if (list == null) {
+      list = getPublicBlogs();
+      Collections.sort(list, new BlogByLastModifiedDateComparator());
+      list = Collections.unmodifiableList(list);
+      publicBlogsByLastModifiedDate = list;
+    }
+
+    return list;
+  }
+
+  /**
+   * Discards the ordered list of public blogs, so that it is recalculated
+   * the next time it is needed.
+   */
+  public void invalidatePublicBlogs() {
+    publicBlogsByLastModifiedDate = null;
+  }
+
   /**
    * Determines whether there is a blog with the specified ID.
    *
@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Service that encompasses all functionality related to getting, putting
@@ -57,43 +58,76 @@ public class BlogService {
   private static final Log log = LogFactory.getLog(BlogService.class);
 
   /**
-   * Gets the blog entry with the specified id.
+   * Gets the blog entry with the specified id. The instance returned is
+   * the shared, cached snapshot and must not be modified - use
+   * getBlogEntryForUpdate() if the blog entry is going to be changed, or
+   * ContentDecoratorChain.getDecoratedBlogEntry() to decorate it.
    *
    * @param blogEntryId   the id of the blog entry
    * @return  a BlogEntry instance, or null if the entry couldn't be found
    */
   public BlogEntry getBlogEntry(Blog blog, String blogEntryId) throws BlogServiceException {
-    BlogEntry blogEntry = null;
+    BlogEntry blogEntry;
     ContentCache cache = ContentCache.getInstance();
 
-    // is the blog entry already in the cache?                                                  
+    // is the blog entry already in the cache?
     blogEntry = cache.getBlogEntry(blog, blogEntryId);
     if (blogEntry != null) {
       log.debug("Got blog entry " + blogEntryId + " from cache");
     } else {
       log.debug("Loading blog entry " + blogEntryId + " from disk");
       BlogEntryDAO dao = DAOFactory.getConfiguredFactory().getBlogEntryDAO();
+      long version = cache.getVersion(blog);
       try {
         blogEntry = dao.loadBlogEntry(blog, blogEntryId);
 
         if (blogEntry != null) {
+          blogEntry.setPersistent(true);
+
           // place in the cache for faster lookup next time
-          cache.putBlogEntry(blogEntry);
+          cache.putBlogEntry(blogEntry, version);
         }
       } catch (PersistenceException pe) {
         throw new BlogServiceException(blog, pe);
       }
     }
 
+    return blogEntry;
+  }
+
+  /**
+   * Gets a copy of the blog entry with the specified id that can be
+   * modified and then stored with putBlogEntry().
+   *
+   * @param blogEntryId   the id of the blog entry
+   * @return  a BlogEntry instance, or null if the entry couldn't be found
+   */
+  public BlogEntry getBlogEntryForUpdate(Blog blog, String blogEntryId) throws BlogServiceException {
+    BlogEntry blogEntry = getBlogEntry(blog, blogEntryId);
+
     if (blogEntry != null) {
-      blogEntry = (BlogEntry)blogEntry.clone();
-      blogEntry.setEventsEnabled(true);
-      blogEntry.setPersistent(true);
+      blogEntry = getBlogEntryForUpdate(blogEntry);
     }
 
     return blogEntry;
   }
 
+  /**
+   * Gets a copy of the specified blog entry, which may be a shared instance
+   * (e.g. from one of the lists provided by Blog), that can be modified and
+   * then stored with putBlogEntry().
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @return  a copy of the BlogEntry instance
+   */
+  public BlogEntry getBlogEntryForUpdate(BlogEntry blogEntry) {
+    BlogEntry copy = (BlogEntry)blogEntry.clone();
+    copy.setEventsEnabled(true);
+    copy.setPersistent(true);
+
+    return copy;
+  }
+
   public List<BlogEntry> getBlogEntries(Blog blog, int year, int month, int day) throws BlogServiceException {
     Day d = blog.getBlogForDay(year, month, day);
     List<String> blogEntryIds = d.getBlogEntries();
@@ -139,7 +173,10 @@ public class BlogService {
   }
 
   /**
-   * Puts the blog entry with the specified id.
+   * Puts the blog entry with the specified id. Only the lock for the blog
+   * entry's ID (and the read side of the blog's structure lock, to keep out
+   * reindexing) is held while it's stored and listeners are fired, so writes
+   * to different blog entries don't block one another.
    */
   public void putBlogEntry(BlogEntry blogEntry) throws BlogServiceException {
     DAOFactory factory = DAOFactory.getConfiguredFactory();
@@ -147,16 +184,23 @@ public class BlogService {
     Blog blog = blogEntry.getBlog();
     ContentCache cache = ContentCache.getInstance();
 
-    synchronized (blog) {
-      try {
-        BlogEntry be = getBlogEntry(blog, blogEntry.getId());
-
-        if (!blogEntry.isPersistent() && be != null) {
-          // the blog entry is new but one exists with the same ID already
-          // - increment the date/ID and try again
-          blogEntry.setDate(new Date(blogEntry.getDate().getTime() + 1));
-          putBlogEntry(blogEntry);
-        } else {
+    Lock structureLock = blog.getStructureLock().readLock();
+    structureLock.lock();
+    try {
+      while (true) {
+        Lock lock = blog.getContentLock(blogEntry.getId());
+        lock.lock();
+        try {
+          // only the existence of the entry is needed here
+          BlogEntry be = getBlogEntry(blog, blogEntry.getId());
+
+          if (!blogEntry.isPersistent() && be != null) {
+            // the blog entry is new but one exists with the same ID already
+            // - increment the date/ID and try again, under the lock for the new ID
+            blogEntry.setDate(new Date(blogEntry.getDate().getTime() + 1));
+            continue;
+          }
+
           if (!blogEntry.isPersistent()) {
             dao.storeBlogEntry(blogEntry);
             blogEntry.insertEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
@@ -179,16 +223,20 @@ public class BlogService {
           // and store the blog entry now that listeners have been fired
           dao.storeBlogEntry(blogEntry);
           cache.removeBlogEntry(blogEntry);
-        }
 
-        blogEntry.setPersistent(true);
-      } catch (PersistenceException pe) {
-        throw new BlogServiceException(blog, pe);
-      } finally {
-        blogEntry.clearPropertyChangeEvents();
-        blogEntry.clearEvents();
-        blogEntry.setEventsEnabled(true);
+          blogEntry.setPersistent(true);
+          return;
+        } finally {
+          lock.unlock();
+        }
       }
+    } catch (PersistenceException pe) {
+      throw new BlogServiceException(blog, pe);
+    } finally {
+      structureLock.unlock();
+      blogEntry.clearPropertyChangeEvents();
+      blogEntry.clearEvents();
+      blogEntry.setEventsEnabled(true);
     }
   }
 
@@ -199,6 +247,8 @@ public class BlogService {
     Blog blog = blogEntry.getBlog();
     ContentCache cache = ContentCache.getInstance();
 
+    Lock structureLock = blog.getStructureLock().readLock();
+    structureLock.lock();
     try {
       DAOFactory factory = DAOFactory.getConfiguredFactory();
       BlogEntryDAO dao = factory.getBlogEntryDAO();
@@ -222,11 +272,14 @@ public class BlogService {
       blogEntry.getBlog().getEventDispatcher().fireEvents(blogEntry);
     } catch (PersistenceException pe) {
       throw new BlogServiceException(blogEntry.getBlog(), pe);
+    } finally {
+      structureLock.unlock();
     }
   }
 
   /**
-   * Gets the blog entry with the specified id.
+   * Gets the response with the specified id, from the shared snapshot of
+   * its blog entry.
    *
    * @param responseId    the id of the response
    * @return  a response instance, or null if the entry couldn't be found
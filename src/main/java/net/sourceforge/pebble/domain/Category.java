@@ -36,6 +36,7 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.sourceforge.pebble.comparator.ReverseBlogEntryIdComparator;
 
@@ -71,7 +72,7 @@ public class Category implements Permalinkable, Comparable, Serializable {
   private List tagsAsList = new ArrayList();
 
   /** the sub-categories */
-  private List subCategories = new ArrayList();
+  private List subCategories = new CopyOnWriteArrayList();
 
   /** the blog entries associated with this category */
   private List<String> blogEntries = new ArrayList<String>();
@@ -210,9 +210,13 @@ public class Day extends TimePeriod implements Permalinkable {
   }
 
   public synchronized void removeBlogEntry(BlogEntry blogEntry) {
-    publishedBlogEntries.remove(blogEntry.getId());
-    unpublishedBlogEntries.remove(blogEntry.getId());
-    blogEntries.remove(blogEntry.getId());
+    removeBlogEntry(blogEntry.getId());
+  }
+
+  public synchronized void removeBlogEntry(String blogEntryId) {
+    publishedBlogEntries.remove(blogEntryId);
+    unpublishedBlogEntries.remove(blogEntryId);
+    blogEntries.remove(blogEntryId);
   }
 
 //  /**
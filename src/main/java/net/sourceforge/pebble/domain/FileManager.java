@@ -52,6 +52,9 @@ import java.util.*;
  */
 public class FileManager {
 
+  /** the blog whose files are being managed */
+  private Blog blog;
+
   /** the type of files being managed */
   private String type;
 
@@ -65,6 +68,7 @@ public class FileManager {
    * @param type    the type of files to manage
    */
   public FileManager(Blog blog, String type) {
+    this.blog = blog;
     this.type = type;
 
     // which directory are we looking at?
@@ -228,7 +232,12 @@ public class FileManager {
         throw new IllegalFileAccessException();
       }
 
-      FileUtils.copyFile(originalFile, newFile);
+      long previousLength = newFile.length();
+      try {
+        FileUtils.copyFile(originalFile, newFile);
+      } finally {
+        updateUsage(newFile, previousLength);
+      }
 
       return newFile;
     } else {
@@ -257,7 +266,16 @@ public class FileManager {
         throw new IllegalFileAccessException();
       }
 
-      originalFile.renameTo(newFile);
+      // only a move into or out of the counted directories changes the usage
+      FileUsageLedger ledger = blog.getFileUsageLedger();
+      boolean wasCounted = ledger.isCounted(originalFile);
+      boolean isCounted = ledger.isCounted(newFile);
+      long size = (wasCounted != isCounted) ? FileUsageLedger.getSize(originalFile) : 0;
+
+      if (originalFile.renameTo(newFile) && wasCounted != isCounted) {
+        ledger.adjust(originalFile, -size);
+        ledger.adjust(newFile, size);
+      }
       return newFile;
     } else {
       return null;
@@ -278,7 +296,18 @@ public class FileManager {
       throw new IllegalFileAccessException();
     }
 
-    FileUtils.deleteFile(fileToDelete);
+    FileUsageLedger ledger = blog.getFileUsageLedger();
+    if (ledger.isCounted(fileToDelete)) {
+      long size = FileUsageLedger.getSize(fileToDelete);
+      try {
+        FileUtils.deleteFile(fileToDelete);
+      } finally {
+        // anything that couldn't be deleted is still in use
+        ledger.adjust(fileToDelete, FileUsageLedger.getSize(fileToDelete) - size);
+      }
+    } else {
+      FileUtils.deleteFile(fileToDelete);
+    }
   }
 
   /**
@@ -334,6 +363,7 @@ public class FileManager {
       throw new IllegalFileAccessException();
     }
 
+    long previousLength = fileToSave.length();
     BufferedWriter writer = null;
     try {
       writer = new BufferedWriter(new FileWriter(fileToSave));
@@ -341,6 +371,7 @@ public class FileManager {
       writer.flush();
     } finally {
       IOUtils.closeQuietly(writer);
+      updateUsage(fileToSave, previousLength);
     }
   }
 
@@ -359,6 +390,7 @@ public class FileManager {
       throw new IllegalFileAccessException();
     }
 
+    long previousLength = fileToSave.length();
     BufferedOutputStream out = null;
     try {
       out = new BufferedOutputStream(new FileOutputStream(fileToSave));
@@ -366,11 +398,24 @@ public class FileManager {
       out.flush();
     } finally {
       IOUtils.closeQuietly(out);
+      updateUsage(fileToSave, previousLength);
     }
 
     return file;
   }
 
+  /**
+   * Updates the space used after a file has been written, for files that
+   * are written directly rather than through this class.
+   *
+   * @param file            the File that has been written
+   * @param previousLength  the length of the file before it was written,
+   *                        or 0 if it didn't exist
+   */
+  public void updateUsage(File file, long previousLength) {
+    blog.getFileUsageLedger().adjust(file, file.length() - previousLength);
+  }
+
   /**
    * Gets a list of files that reside under a given path.
    *
@@ -433,17 +478,14 @@ public class FileManager {
 
   /**
    * Determines how much space is being used in files, images and theme.
+   * This comes from the blog's running total rather than sizing the
+   * directory trees.
    *
    * @param blog    the blog to check against
    * @return  the number of KB
    */
   public static double getCurrentUsage(Blog blog) {
-    FileManager imagesFileManager = new FileManager(blog, FileMetaData.BLOG_IMAGE);
-    FileManager filesFileManager = new FileManager(blog, FileMetaData.BLOG_FILE);
-    FileManager themeFileManager = new FileManager(blog, FileMetaData.THEME_FILE);
-    return  imagesFileManager.getFileMetaData("/").getSizeInKB() +
-            filesFileManager.getFileMetaData("/").getSizeInKB() +
-            themeFileManager.getFileMetaData("/").getSizeInKB();
+    return blog.getFileUsageLedger().getUsage() / 1024.0;
   }
 
 
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import net.sourceforge.pebble.util.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a running total of the space used by a blog's images, files and
+ * theme, so that quotas can be checked without sizing the directory trees
+ * on every upload. The total is loaded from a snapshot (or calculated) when
+ * the blog starts, adjusted as files are changed through the FileManager
+ * and periodically reconciled against the filing system in the background,
+ * which corrects any drift caused by changes made elsewhere.
+ *
+ * @author Simon Brown
+ */
+class FileUsageLedger {
+
+  private static final Log log = LogFactory.getLog(FileUsageLedger.class);
+
+  /** the name of the file, in the blog's root directory, holding the snapshot */
+  static final String SNAPSHOT_FILENAME = "file-usage.properties";
+
+  private static final String USAGE_KEY = "usage";
+
+  /** how long to wait after starting before the first reconciliation, in milliseconds */
+  private static final long RECONCILIATION_DELAY = 60 * 1000;
+
+  /** how often the usage is reconciled, in milliseconds */
+  private static final long RECONCILIATION_PERIOD = 60 * 60 * 1000;
+
+  private static final Timer timer = new Timer(true);
+
+  private final Blog blog;
+  private final AtomicLong usage = new AtomicLong();
+  private volatile boolean loaded = false;
+  private TimerTask reconciliationTask;
+
+  FileUsageLedger(Blog blog) {
+    this.blog = blog;
+  }
+
+  /**
+   * Loads the usage from the snapshot, calculating it if there isn't one,
+   * and schedules the periodic reconciliation.
+   */
+  synchronized void start() {
+    if (!load()) {
+      reconcile();
+    }
+
+    if (reconciliationTask == null) {
+      reconciliationTask = new TimerTask() {
+        public void run() {
+          reconcile();
+        }
+      };
+      timer.schedule(reconciliationTask, RECONCILIATION_DELAY, RECONCILIATION_PERIOD);
+    }
+  }
+
+  /**
+   * Cancels the periodic reconciliation and saves a snapshot of the usage.
+   */
+  synchronized void stop() {
+    if (reconciliationTask != null) {
+      reconciliationTask.cancel();
+      reconciliationTask = null;
+    }
+
+    if (loaded) {
+      save();
+    }
+  }
+
+  /**
+   * Gets the space currently in use.
+   *
+   * @return  the number of bytes
+   */
+  long getUsage() {
+    if (!loaded) {
+      synchronized (this) {
+        if (!loaded) {
+          reconcile();
+        }
+      }
+    }
+
+    return usage.get();
+  }
+
+  /**
+   * Adjusts the usage after a file or directory has been changed. Changes
+   * outside of the images, files and theme directories are ignored.
+   *
+   * @param file    the File that has changed
+   * @param delta   the change in size, in bytes
+   */
+  void adjust(File file, long delta) {
+    if (delta != 0 && isCounted(file)) {
+      usage.addAndGet(delta);
+    }
+  }
+
+  /**
+   * Determines whether a file counts towards the usage.
+   *
+   * @param file    a File
+   * @return  true if the file is underneath the images, files or theme directory
+   */
+  boolean isCounted(File file) {
+    for (File root : getRootDirectories()) {
+      if (FileUtils.underneathRoot(root, file)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Schedules a reconciliation to happen as soon as possible, for use after
+   * files have been changed without going through the FileManager.
+   */
+  void reconcileLater() {
+    timer.schedule(new TimerTask() {
+      public void run() {
+        reconcile();
+      }
+    }, 0);
+  }
+
+  /**
+   * Recalculates the usage by sizing the directory trees, replacing the
+   * running total and saving a new snapshot.
+   *
+   * @return  the number of bytes in use
+   */
+  synchronized long reconcile() {
+    long size = 0;
+    for (File root : getRootDirectories()) {
+      size += getSize(root);
+    }
+
+    long drift = size - usage.getAndSet(size);
+    if (loaded && drift != 0) {
+      log.info("Corrected file usage for blog " + blog.getId() + " by " + drift + " bytes");
+    }
+    loaded = true;
+    save();
+
+    return size;
+  }
+
+  private List<File> getRootDirectories() {
+    List<File> roots = new ArrayList<File>(3);
+    roots.add(new File(blog.getImagesDirectory()));
+    roots.add(new File(blog.getFilesDirectory()));
+    if (blog.getEditableTheme() != null) {
+      roots.add(blog.getEditableTheme().getPathToLiveTheme());
+    }
+
+    return roots;
+  }
+
+  /**
+   * Gets the size of a file, or the total size of the files underneath a
+   * directory.
+   *
+   * @param file    a File
+   * @return  the number of bytes
+   */
+  static long getSize(File file) {
+    if (!file.isDirectory()) {
+      return file.length();
+    }
+
+    long size = 0;
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        size += getSize(f);
+      }
+    }
+
+    return size;
+  }
+
+  private boolean load() {
+    File file = new File(blog.getRoot(), SNAPSHOT_FILENAME);
+    if (!file.exists()) {
+      return false;
+    }
+
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      Properties properties = new Properties();
+      properties.load(in);
+      usage.set(Long.parseLong(properties.getProperty(USAGE_KEY)));
+      loaded = true;
+    } catch (Exception e) {
+      log.warn("Could not read " + file.getAbsolutePath() + ", recalculating file usage", e);
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ioe) {
+          // ignore
+        }
+      }
+    }
+
+    return loaded;
+  }
+
+  private void save() {
+    File file = new File(blog.getRoot(), SNAPSHOT_FILENAME);
+    File tmp = new File(blog.getRoot(), SNAPSHOT_FILENAME + ".tmp");
+    try {
+      Properties properties = new Properties();
+      properties.setProperty(USAGE_KEY, "" + usage.get());
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        properties.store(out, "Space used by images, files and theme, in bytes");
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        tmp.renameTo(file);
+      }
+    } catch (IOException ioe) {
+      log.error("Could not save " + file.getAbsolutePath(), ioe);
+    }
+  }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.comparator.BlogEntryComparator;
+import net.sourceforge.pebble.decorator.ContentDecoratorChain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, precomputed view of the information shown in the sidebar of
+ * a blog (recent blog entries and responses, tags and archives), so that
+ * it doesn't need to be loaded and decorated on every request.
+ *
+ * @author    Simon Brown
+ */
+public class SidebarSnapshot {
+
+  /** the age (in milliseconds) after which a snapshot should be rebuilt */
+  public static final long MAXIMUM_AGE = 1000 * 60 * 10;
+
+  private final List<BlogEntry> recentBlogEntries;
+  private final List<Response> recentResponses;
+  private final List<Tag> tags;
+  private final List<Year> archives;
+  private final long created;
+
+  private SidebarSnapshot(List<BlogEntry> recentBlogEntries, List<Response> recentResponses, List<Tag> tags, List<Year> archives) {
+    this.recentBlogEntries = Collections.unmodifiableList(recentBlogEntries);
+    this.recentResponses = Collections.unmodifiableList(recentResponses);
+    this.tags = Collections.unmodifiableList(tags);
+    this.archives = Collections.unmodifiableList(archives);
+    this.created = System.currentTimeMillis();
+  }
+
+  /**
+   * Builds a new snapshot of the sidebar for the specified blog.
+   *
+   * @param blog    a Blog instance
+   * @return  a SidebarSnapshot instance
+   */
+  public static SidebarSnapshot build(Blog blog) {
+    ContentDecoratorContext context = new ContentDecoratorContext();
+    context.setView(ContentDecoratorContext.SUMMARY_VIEW);
+    context.setMedia(ContentDecoratorContext.HTML_PAGE);
+
+    List<BlogEntry> blogEntries = blog.getRecentPublishedBlogEntries();
+    ContentDecoratorChain.decorate(context, blogEntries);
+    Collections.sort(blogEntries, new BlogEntryComparator());
+
+    // the responses belong to shared blog entries, so decorate copies of them
+    List<Response> responses = new ArrayList<Response>();
+    for (Response response : blog.getRecentApprovedResponses()) {
+      if (response instanceof Comment) {
+        Comment comment = (Comment)((Comment)response).clone();
+        blog.getContentDecoratorChain().decorate(context, comment);
+        responses.add(comment);
+      } else if (response instanceof TrackBack) {
+        TrackBack trackBack = (TrackBack)((TrackBack)response).clone();
+        blog.getContentDecoratorChain().decorate(context, trackBack);
+        responses.add(trackBack);
+      }
+    }
+
+    return new SidebarSnapshot(blogEntries, responses, blog.getTags(), blog.getArchives());
+  }
+
+  /**
+   * Gets the most recent published blog entries, decorated and in
+   * reverse date order.
+   *
+   * @return  an unmodifiable List of BlogEntry instances
+   */
+  public List<BlogEntry> getRecentBlogEntries() {
+    return recentBlogEntries;
+  }
+
+  /**
+   * Gets the most recent approved responses, decorated.
+   *
+   * @return  an unmodifiable List of Response instances
+   */
+  public List<Response> getRecentResponses() {
+    return recentResponses;
+  }
+
+  /**
+   * Gets the tags associated with the blog.
+   *
+   * @return  an unmodifiable List of Tag instances
+   */
+  public List<Tag> getTags() {
+    return tags;
+  }
+
+  /**
+   * Gets the archives (years) for the blog, in reverse order.
+   *
+   * @return  an unmodifiable List of Year instances
+   */
+  public List<Year> getArchives() {
+    return archives;
+  }
+
+  /**
+   * Gets the time at which this snapshot was built.
+   *
+   * @return  the time in milliseconds
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  /**
+   * Determines whether this snapshot is old enough that it should be
+   * rebuilt, regardless of whether anything has changed (e.g. so that the
+   * archives pick up a new year).
+   *
+   * @return  true if this snapshot is older than MAXIMUM_AGE, false otherwise
+   */
+  public boolean isStale() {
+    return (System.currentTimeMillis() - created) > MAXIMUM_AGE;
+  }
+
+}
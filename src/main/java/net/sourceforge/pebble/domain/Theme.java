@@ -129,6 +129,9 @@ public class Theme {
     FileUtils.deleteFile(blogTheme);
     FileUtils.deleteFile(getPathToLiveTheme());
     restore(themeName);
+
+    // the theme has been replaced wholesale, so recalculate the file usage
+    blog.getFileUsageLedger().reconcileLater();
   }
 
   /**
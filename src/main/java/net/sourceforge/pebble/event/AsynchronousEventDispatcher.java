@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.api.event.AsynchronousListener;
+import net.sourceforge.pebble.api.event.PebbleEvent;
+import net.sourceforge.pebble.api.event.RetryableListener;
+import net.sourceforge.pebble.api.event.blog.BlogEvent;
+import net.sourceforge.pebble.api.event.blog.BlogListener;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
+import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.api.event.comment.CommentListener;
+import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
+import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.TrackBack;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches events to registered listeners in the order they were added,
+ * except that listeners implementing {@link AsynchronousListener} are called
+ * on a background thread once all of the other listeners have run (and only
+ * if none of them vetoed the event). Events are split across a small number
+ * of lanes by blog entry, each served by a single thread, so that the events
+ * for any one blog entry are always delivered in the order they were fired.
+ * When a lane is full, firing an event waits for space in it, and the event
+ * is dropped if none becomes free in time.
+ * Asynchronous listeners are given a copy of the blog entry, comment or
+ * TrackBack taken when the event was fired, and only those implementing
+ * {@link RetryableListener} are called again if they throw an exception.
+ * <br /><br />
+ * To use this dispatcher, set the eventDispatcher property of the blog to
+ * net.sourceforge.pebble.event.AsynchronousEventDispatcher.
+ *
+ * @author Simon Brown
+ */
+public class AsynchronousEventDispatcher extends DefaultEventDispatcher {
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(AsynchronousEventDispatcher.class);
+
+  /** the number of lanes that events are split across */
+  static final int NUMBER_OF_LANES = 4;
+
+  /** the number of events that can be waiting in each lane */
+  static final int LANE_CAPACITY = 250;
+
+  /** the number of times a retryable listener is called before its event is dropped */
+  static final int MAXIMUM_ATTEMPTS = 3;
+
+  /** how long to wait for space in a full lane before an event is dropped, in milliseconds */
+  private static final long SUBMIT_TIMEOUT = 5 * 1000;
+
+  /** how long to wait for outstanding events when the blog is stopped */
+  private static final long SHUTDOWN_TIMEOUT = 30 * 1000;
+
+  /** the lanes, each with a single thread */
+  private final ThreadPoolExecutor[] lanes;
+
+  /** the delay before a listener is retried, multiplied by the attempt number */
+  private long retryDelay = 1000;
+
+  /** how long to wait for space in a full lane */
+  private long submitTimeout = SUBMIT_TIMEOUT;
+
+  /** the number of events waiting to be, or being, delivered */
+  private final AtomicInteger queueDepth = new AtomicInteger();
+
+  /** the highest number of events that have been waiting at once */
+  private final AtomicInteger maximumQueueDepth = new AtomicInteger();
+
+  /** the number of events delivered to asynchronous listeners */
+  private final AtomicLong deliveries = new AtomicLong();
+
+  /** the number of times an asynchronous listener has been retried */
+  private final AtomicLong retries = new AtomicLong();
+
+  /** the number of events dropped after their listener failed */
+  private final AtomicLong failures = new AtomicLong();
+
+  /** the number of events dropped because their lane stayed full */
+  private final AtomicLong rejections = new AtomicLong();
+
+  public AsynchronousEventDispatcher() {
+    lanes = new ThreadPoolExecutor[NUMBER_OF_LANES];
+    for (int i = 0; i < lanes.length; i++) {
+      final String name = "Pebble event dispatcher lane " + i;
+      lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(LANE_CAPACITY),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, name);
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+      // events are put straight onto the queue when a lane is full, so the
+      // thread has to be running already
+      lanes[i].prestartAllCoreThreads();
+    }
+  }
+
+  /**
+   * Fires a blog event to registered listeners. Stopping the blog waits for
+   * any outstanding events to be delivered, after which all events are
+   * delivered on the calling thread.
+   *
+   * @param event   the BlogEvent instance
+   */
+  public void fireBlogEvent(final BlogEvent event) {
+    List<Object> asynchronousListeners = new ArrayList<Object>();
+    Iterator it = getEventListenerList().getBlogListeners().iterator();
+    while (it.hasNext()) {
+      BlogListener listener = (BlogListener)it.next();
+      if (listener instanceof AsynchronousListener) {
+        asynchronousListeners.add(listener);
+      } else {
+        dispatch(listener, event);
+      }
+
+      // has the event been vetoed?
+      if (event.isVetoed()) {
+        break;
+      }
+    }
+
+    if (!event.isVetoed() && !asynchronousListeners.isEmpty()) {
+      Blog blog = (Blog)event.getSource();
+      submit(blog.getId(), new Delivery(event, asynchronousListeners) {
+        protected void deliver(Object listener) {
+          dispatch((BlogListener)listener, event);
+        }
+      });
+    }
+
+    if (event.getType() == BlogEvent.BLOG_STOPPED) {
+      shutdown();
+    }
+  }
+
+  /**
+   * Fires a blog entry event to registered listeners.
+   *
+   * @param event   the BlogEntryEvent instance
+   */
+  public void fireBlogEntryEvent(final BlogEntryEvent event) {
+    List<Object> asynchronousListeners = new ArrayList<Object>();
+    Iterator it = getEventListenerList().getBlogEntryListeners().iterator();
+    while (it.hasNext()) {
+      BlogEntryListener listener = (BlogEntryListener)it.next();
+      if (listener instanceof AsynchronousListener) {
+        asynchronousListeners.add(listener);
+      } else {
+        dispatch(listener, event);
+      }
+
+      // has the event been vetoed?
+      if (event.isVetoed()) {
+        break;
+      }
+    }
+
+    if (!event.isVetoed() && !asynchronousListeners.isEmpty()) {
+      final BlogEntryEvent snapshot = snapshot(event);
+      submit(event.getBlogEntry().getId(), new Delivery(snapshot, asynchronousListeners) {
+        protected void deliver(Object listener) {
+          dispatch((BlogEntryListener)listener, snapshot);
+        }
+      });
+    }
+  }
+
+  /**
+   * Fires a comment event to registered listeners.
+   *
+   * @param event   the CommentEvent instance
+   */
+  public void fireCommentEvent(final CommentEvent event) {
+    List<Object> asynchronousListeners = new ArrayList<Object>();
+    Iterator it = getEventListenerList().getCommentListeners().iterator();
+    while (it.hasNext()) {
+      CommentListener listener = (CommentListener)it.next();
+      if (listener instanceof AsynchronousListener) {
+        asynchronousListeners.add(listener);
+      } else {
+        dispatch(listener, event);
+      }
+
+      // has the event been vetoed?
+      if (event.isVetoed()) {
+        break;
+      }
+    }
+
+    if (!event.isVetoed() && !asynchronousListeners.isEmpty()) {
+      final CommentEvent snapshot = snapshot(event);
+      submit(event.getComment().getBlogEntry().getId(), new Delivery(snapshot, asynchronousListeners) {
+        protected void deliver(Object listener) {
+          dispatch((CommentListener)listener, snapshot);
+        }
+      });
+    }
+  }
+
+  /**
+   * Fires a TrackBack event to registered listeners.
+   *
+   * @param event   the TrackBackEvent instance
+   */
+  public void fireTrackBackEvent(final TrackBackEvent event) {
+    List<Object> asynchronousListeners = new ArrayList<Object>();
+    Iterator it = getEventListenerList().getTrackBackListeners().iterator();
+    while (it.hasNext()) {
+      TrackBackListener listener = (TrackBackListener)it.next();
+      if (listener instanceof AsynchronousListener) {
+        asynchronousListeners.add(listener);
+      } else {
+        dispatch(listener, event);
+      }
+
+      // has the event been vetoed?
+      if (event.isVetoed()) {
+        break;
+      }
+    }
+
+    if (!event.isVetoed() && !asynchronousListeners.isEmpty()) {
+      final TrackBackEvent snapshot = snapshot(event);
+      submit(event.getTrackBack().getBlogEntry().getId(), new Delivery(snapshot, asynchronousListeners) {
+        protected void deliver(Object listener) {
+          dispatch((TrackBackListener)listener, snapshot);
+        }
+      });
+    }
+  }
+
+  /**
+   * Copies the blog entry that an event is about, so that asynchronous
+   * listeners see it as it was when the event was fired.
+   *
+   * @param event   the BlogEntryEvent instance
+   * @return  an equivalent event for a copy of the blog entry
+   */
+  private BlogEntryEvent snapshot(BlogEntryEvent event) {
+    BlogEntry blogEntry = (BlogEntry)event.getBlogEntry().clone();
+    if (event.getPropertyChangeEvents() != null) {
+      return new BlogEntryEvent(blogEntry, event.getPropertyChangeEvents());
+    } else {
+      return new BlogEntryEvent(blogEntry, event.getType());
+    }
+  }
+
+  /**
+   * Copies the comment (and its blog entry) that an event is about.
+   *
+   * @param event   the CommentEvent instance
+   * @return  an equivalent event for a copy of the comment
+   */
+  private CommentEvent snapshot(CommentEvent event) {
+    Comment comment = event.getComment();
+    BlogEntry blogEntry = (BlogEntry)comment.getBlogEntry().clone();
+    Comment copy = blogEntry.getComment(comment.getId());
+    if (copy == null) {
+      // the comment is no longer part of the blog entry (e.g. it's been removed)
+      copy = (Comment)comment.clone();
+    }
+
+    return new CommentEvent(copy, event.getType());
+  }
+
+  /**
+   * Copies the TrackBack (and its blog entry) that an event is about.
+   *
+   * @param event   the TrackBackEvent instance
+   * @return  an equivalent event for a copy of the TrackBack
+   */
+  private TrackBackEvent snapshot(TrackBackEvent event) {
+    TrackBack trackBack = event.getTrackBack();
+    BlogEntry blogEntry = (BlogEntry)trackBack.getBlogEntry().clone();
+    TrackBack copy = blogEntry.getTrackBack(trackBack.getId());
+    if (copy == null) {
+      // the TrackBack is no longer part of the blog entry (e.g. it's been removed)
+      copy = (TrackBack)trackBack.clone();
+    }
+
+    return new TrackBackEvent(copy, event.getType());
+  }
+
+  /**
+   * Queues a delivery on the lane for the given key, waiting for space if
+   * that lane is full, or runs it on the calling thread once the lane has
+   * been shut down (and so drained). A delivery is never run ahead of those
+   * already queued on its lane.
+   *
+   * @param key         the key (blog entry ID) used to pick a lane
+   * @param delivery    the Delivery to run
+   */
+  private void submit(String key, Delivery delivery) {
+    int depth = queueDepth.incrementAndGet();
+    int maximum = maximumQueueDepth.get();
+    while (depth > maximum && !maximumQueueDepth.compareAndSet(maximum, depth)) {
+      maximum = maximumQueueDepth.get();
+    }
+
+    ThreadPoolExecutor lane = lanes[(key.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    try {
+      lane.execute(delivery);
+      return;
+    } catch (RejectedExecutionException ree) {
+      if (lane.isShutdown()) {
+        delivery.run();
+        return;
+      }
+    }
+
+    // the lane is full, so wait for space in it rather than overtaking the
+    // events already queued
+    boolean queued = false;
+    try {
+      queued = lane.getQueue().offer(delivery, submitTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (queued && lane.isShutdown() && lane.remove(delivery)) {
+      // the lane was shut down while waiting, and may have already finished
+      delivery.run();
+    } else if (!queued) {
+      queueDepth.decrementAndGet();
+      rejections.incrementAndGet();
+      log.error("Event queue full (" + depth + " events waiting) - dropping " + delivery.pebbleEvent);
+    }
+  }
+
+  /**
+   * Stops accepting events, and waits for those already queued to be
+   * delivered.
+   */
+  private void shutdown() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+
+    long timeout = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+    try {
+      for (ThreadPoolExecutor lane : lanes) {
+        long remaining = timeout - System.currentTimeMillis();
+        if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+          log.warn(queueDepth.get() + " events were still waiting to be delivered when the blog was stopped");
+          break;
+        }
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Gets the number of events waiting to be, or being, delivered to
+   * asynchronous listeners.
+   *
+   * @return  the number of events
+   */
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  /**
+   * Gets the highest number of events that have been waiting at once.
+   *
+   * @return  the number of events
+   */
+  public int getMaximumQueueDepth() {
+    return maximumQueueDepth.get();
+  }
+
+  /**
+   * Gets the number of times an event has been delivered to an asynchronous
+   * listener.
+   *
+   * @return  the number of deliveries
+   */
+  public long getDeliveries() {
+    return deliveries.get();
+  }
+
+  /**
+   * Gets the number of times a retryable listener has been retried after
+   * throwing an exception.
+   *
+   * @return  the number of retries
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /**
+   * Gets the number of times an event has been dropped because an
+   * asynchronous listener failed, on every attempt if it was retryable.
+   *
+   * @return  the number of failures
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * Gets the number of events that were dropped because their lane stayed
+   * full.
+   *
+   * @return  the number of rejections
+   */
+  public long getRejections() {
+    return rejections.get();
+  }
+
+  void setRetryDelay(long retryDelay) {
+    this.retryDelay = retryDelay;
+  }
+
+  void setSubmitTimeout(long submitTimeout) {
+    this.submitTimeout = submitTimeout;
+  }
+
+  /**
+   * Delivers a single event to a number of asynchronous listeners in turn,
+   * retrying each retryable listener that throws an exception.
+   */
+  private abstract class Delivery implements Runnable {
+
+    private final PebbleEvent pebbleEvent;
+    private final List<Object> listeners;
+
+    Delivery(PebbleEvent pebbleEvent, List<Object> listeners) {
+      this.pebbleEvent = pebbleEvent;
+      this.listeners = listeners;
+    }
+
+    protected abstract void deliver(Object listener);
+
+    public void run() {
+      try {
+        for (Object listener : listeners) {
+          if (!deliverWithRetries(listener)) {
+            return;
+          }
+        }
+      } finally {
+        queueDepth.decrementAndGet();
+      }
+    }
+
+    private boolean deliverWithRetries(Object listener) {
+      for (int attempt = 1; ; attempt++) {
+        try {
+          deliver(listener);
+          deliveries.incrementAndGet();
+          return true;
+        } catch (RuntimeException e) {
+          if (!(listener instanceof RetryableListener)) {
+            failures.incrementAndGet();
+            log.error(listener.getClass().getName() + " failed to handle " + pebbleEvent, e);
+            return true;
+          } else if (attempt >= MAXIMUM_ATTEMPTS) {
+            failures.incrementAndGet();
+            log.error(listener.getClass().getName() + " failed to handle " + pebbleEvent + " after " + attempt + " attempts", e);
+            return true;
+          }
+
+          retries.incrementAndGet();
+          log.warn(listener.getClass().getName() + " failed to handle " + pebbleEvent + " - retrying", e);
+          try {
+            Thread.sleep(retryDelay * attempt);
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
+        }
+      }
+    }
+
+  }
+
+}
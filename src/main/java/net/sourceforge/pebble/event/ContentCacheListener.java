@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.api.event.blog.BlogEvent;
+import net.sourceforge.pebble.api.event.blog.BlogListener;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
+import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.api.event.comment.CommentListener;
+import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
+import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
+import net.sourceforge.pebble.dao.file.BlogEntryFilenameFilter;
+import net.sourceforge.pebble.dao.file.FourDigitFilenameFilter;
+import net.sourceforge.pebble.dao.file.TwoDigitFilenameFilter;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Keeps the content cache, the cache of decorated content and the cache of
+ * rendered newsfeeds up to date by removing blog entries whenever they, or
+ * their responses, change. While the blog is running, the data directory
+ * is also checked periodically so that files changed outside of Pebble
+ * (e.g. by hand or by a restore) are picked up.
+ *
+ * @author Simon Brown
+ */
+public class ContentCacheListener implements BlogListener, BlogEntryListener, CommentListener, TrackBackListener {
+
+  private static final Log log = LogFactory.getLog(ContentCacheListener.class);
+
+  /** how often the data directory is checked for changes */
+  private static final int CHECK_INTERVAL = 1000 * 60;
+
+  private static final String STATIC_PAGES_DIRECTORY_NAME = "pages";
+  private static final String XML_FILE_EXTENSION = ".xml";
+
+  private Blog blog;
+  private Timer timer;
+
+  /** the time at which the data directory was last checked */
+  private long lastChecked;
+
+  /** the files found when the data directory was last checked */
+  private Set<File> knownFiles = new HashSet<File>();
+
+  /**
+   * Called when a blog has been started.
+   *
+   * @param event   a BlogEvent instance
+   */
+  public synchronized void blogStarted(BlogEvent event) {
+    this.blog = event.getBlog();
+    this.lastChecked = System.currentTimeMillis();
+    this.knownFiles = findFiles();
+
+    timer = new Timer(true);
+    timer.schedule(new TimerTask() {
+      public void run() {
+        try {
+          checkForChanges();
+        } catch (RuntimeException e) {
+          // an uncaught exception would kill the timer, and with it any further checks
+          log.error("Could not check " + blog.getRoot() + " for changes", e);
+        }
+      }
+    }, CHECK_INTERVAL, CHECK_INTERVAL);
+  }
+
+  /**
+   * Called when a blog has been stopped.
+   *
+   * @param event   a BlogEvent instance
+   */
+  public synchronized void blogStopped(BlogEvent event) {
+    if (timer != null) {
+      timer.cancel();
+      timer = null;
+    }
+  }
+
+  /**
+   * Removes any blog entries or static pages that have been added, changed
+   * or removed on disk since the last check from the cache.
+   */
+  synchronized void checkForChanges() {
+    ContentCache cache = ContentCache.getInstance();
+    long checkStarted = System.currentTimeMillis();
+    Set<File> files = findFiles();
+
+    for (File file : files) {
+      if (file.lastModified() >= lastChecked || !knownFiles.contains(file)) {
+        remove(cache, file);
+      }
+    }
+
+    for (File file : knownFiles) {
+      if (!files.contains(file)) {
+        remove(cache, file);
+      }
+    }
+
+    this.knownFiles = files;
+    this.lastChecked = checkStarted;
+  }
+
+  private void remove(ContentCache cache, File file) {
+    String name = file.getName();
+    String id = name.substring(0, name.length() - XML_FILE_EXTENSION.length());
+    log.debug(file.getAbsolutePath() + " has changed on disk");
+
+    if (STATIC_PAGES_DIRECTORY_NAME.equals(file.getParentFile().getParentFile().getName())) {
+      cache.removeStaticPage(blog, id);
+    } else {
+      cache.removeBlogEntry(blog, id);
+    }
+    blog.getContentDecoratorChain().invalidate();
+    blog.getFeedCache().clear();
+  }
+
+  /**
+   * Finds all of the blog entry and static page files for the blog.
+   */
+  private Set<File> findFiles() {
+    Set<File> files = new HashSet<File>();
+    File root = new File(blog.getRoot());
+
+    // any of these directories may be removed while they are being listed
+    File years[] = root.listFiles(new FourDigitFilenameFilter());
+    if (years != null) {
+      for (File year : years) {
+        File months[] = year.listFiles(new TwoDigitFilenameFilter());
+        if (months == null) {
+          continue;
+        }
+
+        for (File month : months) {
+          File days[] = month.listFiles(new TwoDigitFilenameFilter());
+          if (days == null) {
+            continue;
+          }
+
+          for (File day : days) {
+            File blogEntryFiles[] = day.listFiles(new BlogEntryFilenameFilter());
+            if (blogEntryFiles != null) {
+              for (File blogEntryFile : blogEntryFiles) {
+                files.add(blogEntryFile);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    File staticPages[] = new File(root, STATIC_PAGES_DIRECTORY_NAME).listFiles(new FileFilter() {
+      public boolean accept(File file) {
+        return file.isDirectory() && file.getName().matches("\\d+");
+      }
+    });
+    if (staticPages != null) {
+      for (File staticPage : staticPages) {
+        File file = new File(staticPage, staticPage.getName() + XML_FILE_EXTENSION);
+        if (file.exists()) {
+          files.add(file);
+        }
+      }
+    }
+
+    return files;
+  }
+
+  /**
+   * Called when a blog entry has been added.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryAdded(BlogEntryEvent event) {
+    removeAll(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been removed.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryRemoved(BlogEntryEvent event) {
+    removeAll(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been changed.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryChanged(BlogEntryEvent event) {
+    removeAll(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been published.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryPublished(BlogEntryEvent event) {
+    removeAll(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been unpublished.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryUnpublished(BlogEntryEvent event) {
+    removeAll(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a comment has been added.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentAdded(CommentEvent event) {
+    remove(event.getComment().getBlogEntry());
+  }
+
+  /**
+   * Called when a comment has been removed.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentRemoved(CommentEvent event) {
+    remove(event.getComment().getBlogEntry());
+  }
+
+  /**
+   * Called when a comment has been approved.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentApproved(CommentEvent event) {
+    remove(event.getComment().getBlogEntry());
+  }
+
+  /**
+   * Called when a comment has been rejected.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentRejected(CommentEvent event) {
+    remove(event.getComment().getBlogEntry());
+  }
+
+  /**
+   * Called when a TrackBack has been added.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackAdded(TrackBackEvent event) {
+    remove(event.getTrackBack().getBlogEntry());
+  }
+
+  /**
+   * Called when a TrackBack has been removed.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackRemoved(TrackBackEvent event) {
+    remove(event.getTrackBack().getBlogEntry());
+  }
+
+  /**
+   * Called when a TrackBack has been approved.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackApproved(TrackBackEvent event) {
+    remove(event.getTrackBack().getBlogEntry());
+  }
+
+  /**
+   * Called when a TrackBack has been rejected.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackRejected(TrackBackEvent event) {
+    remove(event.getTrackBack().getBlogEntry());
+  }
+
+  private void remove(BlogEntry blogEntry) {
+    if (blogEntry != null) {
+      ContentCache.getInstance().removeBlogEntry(blogEntry);
+      blogEntry.getBlog().getContentDecoratorChain().invalidate(blogEntry.getId());
+      blogEntry.getBlog().getFeedCache().clear();
+    }
+  }
+
+  /**
+   * Removes a blog entry from the content cache, and clears all decorated
+   * content, since decorators such as related posts and categories
+   * include details of other blog entries.
+   */
+  private void removeAll(BlogEntry blogEntry) {
+    if (blogEntry != null) {
+      ContentCache.getInstance().removeBlogEntry(blogEntry);
+      blogEntry.getBlog().getContentDecoratorChain().invalidate();
+      blogEntry.getBlog().getFeedCache().clear();
+    }
+  }
+
+}
@@ -60,11 +60,7 @@ public class DefaultEventDispatcher extends EventDispatcher {
     Iterator it = getEventListenerList().getBlogListeners().iterator();
     while (it.hasNext()) {
       BlogListener listener = (BlogListener)it.next();
-      if (event.getType() == BlogEvent.BLOG_STARTED) {
-        listener.blogStarted(event);
-      } else if (event.getType() == BlogEvent.BLOG_STOPPED) {
-        listener.blogStopped(event);
-      }
+      dispatch(listener, event);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -82,17 +78,7 @@ public class DefaultEventDispatcher extends EventDispatcher {
     Iterator it = getEventListenerList().getBlogEntryListeners().iterator();
     while (it.hasNext()) {
       BlogEntryListener listener = (BlogEntryListener)it.next();
-      if (event.getType() == BlogEntryEvent.BLOG_ENTRY_ADDED) {
-        listener.blogEntryAdded(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_REMOVED) {
-        listener.blogEntryRemoved(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_CHANGED) {
-        listener.blogEntryChanged(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_PUBLISHED) {
-        listener.blogEntryPublished(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED) {
-        listener.blogEntryUnpublished(event);
-      }
+      dispatch(listener, event);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -110,15 +96,7 @@ public class DefaultEventDispatcher extends EventDispatcher {
     Iterator it = getEventListenerList().getCommentListeners().iterator();
     while (it.hasNext()) {
       CommentListener listener = (CommentListener)it.next();
-      if (event.getType() == CommentEvent.COMMENT_ADDED) {
-        listener.commentAdded(event);
-      } else if (event.getType() == CommentEvent.COMMENT_REMOVED) {
-        listener.commentRemoved(event);
-      } else if (event.getType() == CommentEvent.COMMENT_APPROVED) {
-        listener.commentApproved(event);
-      } else if (event.getType() == CommentEvent.COMMENT_REJECTED) {
-        listener.commentRejected(event);
-      }
+      dispatch(listener, event);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -136,15 +114,7 @@ public class DefaultEventDispatcher extends EventDispatcher {
     Iterator it = getEventListenerList().getTrackBackListeners().iterator();
     while (it.hasNext()) {
       TrackBackListener listener = (TrackBackListener)it.next();
-      if (event.getType() == TrackBackEvent.TRACKBACK_ADDED) {
-        listener.trackBackAdded(event);
-      } else if (event.getType() == TrackBackEvent.TRACKBACK_REMOVED) {
-        listener.trackBackRemoved(event);
-      } else if (event.getType() == TrackBackEvent.TRACKBACK_APPROVED) {
-        listener.trackBackApproved(event);
-      } else if (event.getType() == TrackBackEvent.TRACKBACK_REJECTED) {
-        listener.trackBackRejected(event);
-      }
+      dispatch(listener, event);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -153,4 +123,74 @@ public class DefaultEventDispatcher extends EventDispatcher {
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * Dispatches a blog event to a single blog listener.
+   *
+   * @param listener  the BlogListener instance
+   * @param event     the BlogEvent instance
+   */
+  protected void dispatch(BlogListener listener, BlogEvent event) {
+    if (event.getType() == BlogEvent.BLOG_STARTED) {
+      listener.blogStarted(event);
+    } else if (event.getType() == BlogEvent.BLOG_STOPPED) {
+      listener.blogStopped(event);
+    }
+  }
+
+  /**
+   * Dispatches a blog entry event to a single blog entry listener.
+   *
+   * @param listener  the BlogEntryListener instance
+   * @param event     the BlogEntryEvent instance
+   */
+  protected void dispatch(BlogEntryListener listener, BlogEntryEvent event) {
+    if (event.getType() == BlogEntryEvent.BLOG_ENTRY_ADDED) {
+      listener.blogEntryAdded(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_REMOVED) {
+      listener.blogEntryRemoved(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_CHANGED) {
+      listener.blogEntryChanged(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_PUBLISHED) {
+      listener.blogEntryPublished(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED) {
+      listener.blogEntryUnpublished(event);
+    }
+  }
+
+  /**
+   * Dispatches a comment event to a single comment listener.
+   *
+   * @param listener  the CommentListener instance
+   * @param event     the CommentEvent instance
+   */
+  protected void dispatch(CommentListener listener, CommentEvent event) {
+    if (event.getType() == CommentEvent.COMMENT_ADDED) {
+      listener.commentAdded(event);
+    } else if (event.getType() == CommentEvent.COMMENT_REMOVED) {
+      listener.commentRemoved(event);
+    } else if (event.getType() == CommentEvent.COMMENT_APPROVED) {
+      listener.commentApproved(event);
+    } else if (event.getType() == CommentEvent.COMMENT_REJECTED) {
+      listener.commentRejected(event);
+    }
+  }
+
+  /**
+   * Dispatches a TrackBack event to a single TrackBack listener.
+   *
+   * @param listener  the TrackBackListener instance
+   * @param event     the TrackBackEvent instance
+   */
+  protected void dispatch(TrackBackListener listener, TrackBackEvent event) {
+    if (event.getType() == TrackBackEvent.TRACKBACK_ADDED) {
+      listener.trackBackAdded(event);
+    } else if (event.getType() == TrackBackEvent.TRACKBACK_REMOVED) {
+      listener.trackBackRemoved(event);
+    } else if (event.getType() == TrackBackEvent.TRACKBACK_APPROVED) {
+      listener.trackBackApproved(event);
+    } else if (event.getType() == TrackBackEvent.TRACKBACK_REJECTED) {
+      listener.trackBackRejected(event);
+    }
+  }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.api.event.blog.BlogEvent;
+import net.sourceforge.pebble.api.event.blog.BlogListener;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
+import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.api.event.comment.CommentListener;
+import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
+import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogManager;
+import net.sourceforge.pebble.domain.SidebarSnapshot;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Maintains the sidebar snapshot for a blog, rebuilding it in the background
+ * whenever blog entries or responses change. Requests simply pick up the
+ * most recently built snapshot.
+ *
+ * @author Simon Brown
+ */
+public class SidebarSnapshotListener implements BlogListener, BlogEntryListener, CommentListener, TrackBackListener {
+
+  private static final Log log = LogFactory.getLog(SidebarSnapshotListener.class);
+
+  /** how long to wait after a change before rebuilding, so that bursts of events result in a single rebuild */
+  static final long REBUILD_DELAY = 500;
+
+  /** the timer used to rebuild snapshots, shared between all blogs */
+  private static final Timer timer = new Timer(true);
+
+  private final Blog blog;
+
+  /** the current snapshot */
+  private volatile SidebarSnapshot snapshot;
+
+  /** the rebuild that has been scheduled, but not yet run */
+  private TimerTask pendingRebuild;
+
+  /**
+   * Creates a new instance for the specified blog.
+   *
+   * @param blog    a Blog instance
+   */
+  public SidebarSnapshotListener(Blog blog) {
+    this.blog = blog;
+  }
+
+  /**
+   * Gets the current snapshot, building it if one doesn't yet exist.
+   *
+   * @return  a SidebarSnapshot instance
+   */
+  public SidebarSnapshot getSnapshot() {
+    SidebarSnapshot s = snapshot;
+    if (s == null) {
+      s = rebuild();
+    } else if (s.isStale()) {
+      scheduleRebuild();
+    }
+
+    return s;
+  }
+
+  /**
+   * Schedules the snapshot to be rebuilt in the background, unless a
+   * rebuild is already pending.
+   */
+  public synchronized void scheduleRebuild() {
+    if (pendingRebuild == null) {
+      pendingRebuild = new TimerTask() {
+        public void run() {
+          synchronized (SidebarSnapshotListener.this) {
+            pendingRebuild = null;
+          }
+          try {
+            rebuild();
+          } catch (Exception e) {
+            log.error("Could not rebuild sidebar for " + blog.getId(), e);
+          }
+        }
+      };
+      timer.schedule(pendingRebuild, REBUILD_DELAY);
+    }
+  }
+
+  /**
+   * Builds a new snapshot and publishes it.
+   */
+  SidebarSnapshot rebuild() {
+    SidebarSnapshot s = SidebarSnapshot.build(blog);
+    this.snapshot = s;
+
+    // the last modified date of this blog may have changed
+    BlogManager.getInstance().invalidatePublicBlogs();
+
+    return s;
+  }
+
+  /**
+   * Called when a blog has been started.
+   *
+   * @param event   a BlogEvent instance
+   */
+  public void blogStarted(BlogEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a blog has been stopped.
+   *
+   * @param event   a BlogEvent instance
+   */
+  public synchronized void blogStopped(BlogEvent event) {
+    if (pendingRebuild != null) {
+      pendingRebuild.cancel();
+      pendingRebuild = null;
+    }
+  }
+
+  /**
+   * Called when a blog entry has been added.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryAdded(BlogEntryEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a blog entry has been removed.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryRemoved(BlogEntryEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a blog entry has been changed.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryChanged(BlogEntryEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a blog entry has been published.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryPublished(BlogEntryEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a blog entry has been unpublished.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryUnpublished(BlogEntryEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a comment has been added.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentAdded(CommentEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a comment has been removed.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentRemoved(CommentEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a comment has been approved.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentApproved(CommentEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a comment has been rejected.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentRejected(CommentEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a TrackBack has been added.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackAdded(TrackBackEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a TrackBack has been removed.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackRemoved(TrackBackEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a TrackBack has been approved.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackApproved(TrackBackEvent event) {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called when a TrackBack has been rejected.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackRejected(TrackBackEvent event) {
+    scheduleRebuild();
+  }
+
+}
@@ -126,7 +126,7 @@ public abstract class PebbleAPIBlogEntryAggregator extends TimerTask implements
         log.info("Aggregating " + title + " [ " + id + " | " + permalink + " ]");
 
         BlogService service = new BlogService();
-        BlogEntry blogEntry = service.getBlogEntry(blog, id);
+        BlogEntry blogEntry = service.getBlogEntryForUpdate(blog, id);
         if (blogEntry == null) {
           // create a new blog entry if one doesn't exist
           blogEntry = new BlogEntry(blog);
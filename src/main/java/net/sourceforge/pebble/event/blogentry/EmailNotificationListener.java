@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event.blogentry;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
@@ -45,7 +46,7 @@ import java.util.HashSet;
  *
  * @author Simon Brown
  */
-public class EmailNotificationListener extends BlogEntryListenerSupport {
+public class EmailNotificationListener extends BlogEntryListenerSupport implements AsynchronousListener {
 
   /**
    * Called when a blog entry has been added.
@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event.blogentry;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.domain.Blog;
@@ -47,7 +48,7 @@ import java.util.List;
  *
  * @author Simon Brown
  */
-public class EmailSubscriptionListener extends BlogEntryListenerSupport {
+public class EmailSubscriptionListener extends BlogEntryListenerSupport implements AsynchronousListener {
 
   /** a token to be replaced when sending e-mails */
   private static final String EMAIL_ADDRESS_TOKEN = "EMAIL_ADDRESS";
@@ -96,10 +97,18 @@ public class EmailSubscriptionListener extends BlogEntryListenerSupport {
     // that left a comment specifying their e-mail address
     try {
       Session session = MailUtils.createSession();
+
+      // split the message around the opt-out token once, rather than
+      // searching it again for every subscriber
+      String[] parts = message.split(EMAIL_ADDRESS_TOKEN, -1);
       for (String emailAddress : to) {
         // customize the opt-out link and send the message
-        MailUtils.sendMail(session, blog, emailAddress, subject,
-            message.replaceAll(EMAIL_ADDRESS_TOKEN, emailAddress));
+        StringBuffer personalizedMessage = new StringBuffer(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+          personalizedMessage.append(emailAddress);
+          personalizedMessage.append(parts[i]);
+        }
+        MailUtils.sendMail(session, blog, emailAddress, subject, personalizedMessage.toString());
       }
     } catch (Exception e) {
         e.printStackTrace();
@@ -39,6 +39,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.PluginProperties;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
@@ -57,7 +58,7 @@ import twitter4j.Twitter;
  * 
  * @author Steve Carton, Olaf Kock
  */
-public class PostToTwitterBlogEntryListener extends BlogEntryListenerSupport {
+public class PostToTwitterBlogEntryListener extends BlogEntryListenerSupport implements AsynchronousListener {
 
 	/** the log used by this class */
 	private static final Log log = LogFactory
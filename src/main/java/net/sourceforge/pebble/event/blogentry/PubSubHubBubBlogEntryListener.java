@@ -31,35 +31,28 @@
  */
 package net.sourceforge.pebble.event.blogentry;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
-import net.sourceforge.pebble.audit.AuditTrail;
 import net.sourceforge.pebble.decorator.PubSubHubBubFeedDecorator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Category;
 import net.sourceforge.pebble.domain.Tag;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import net.sourceforge.pebble.webservice.NotificationFanOut;
 
-import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Listener that posts to a PubSubHubBub Hub when a blog entry is added/published/changed.
  *
  * @author James Roper
  */
-public class PubSubHubBubBlogEntryListener extends BlogEntryListenerSupport {
-  private final static String HUB_MODE_PARAM = "hub.mode";
-  private final static String HUB_URL_PARAM = "hub.url";
-  private final static String HUB_MODE = "publish";
+public class PubSubHubBubBlogEntryListener extends BlogEntryListenerSupport implements AsynchronousListener {
   private final static String ATOM_XML = "atom.xml";
-  private static final Log log = LogFactory.getLog(PubSubHubBubBlogEntryListener.class);
 
   @Override
   public void blogEntryAdded(BlogEntryEvent event) {
@@ -95,33 +88,25 @@ public class PubSubHubBubBlogEntryListener extends BlogEntryListenerSupport {
   private void postToHubs(BlogEntryEvent event) {
     BlogEntry entry = event.getBlogEntry();
     Blog blog = entry.getBlog();
+    Collection<String> hubs = getHubs(blog);
+    if (hubs.isEmpty()) {
+      return;
+    }
+
+    // Add every feed that might have this
     String blogUrl = blog.getUrl();
-    for (String hub : getHubs(blog)) {
-      HttpClient httpClient = new HttpClient();
-      PostMethod method = new PostMethod(hub);
-      method.addParameter(HUB_MODE_PARAM, HUB_MODE);
-      // Add every feed that might have this
-      method.addParameter(HUB_URL_PARAM, blogUrl + ATOM_XML);
-      for (Category category : entry.getCategories()) {
-        method.addParameter(HUB_URL_PARAM, category.getPermalink() + ATOM_XML);
-      }
-      for (Tag tag : entry.getAllTags()) {
-        method.addParameter(HUB_URL_PARAM, tag.getPermalink() + ATOM_XML);
-      }
-      method.addParameter(HUB_URL_PARAM, blogUrl + "authors/" + entry.getAuthor() + "/" + ATOM_XML);
-      try {
-        int rc = httpClient.executeMethod(method);
-        if (rc != HttpServletResponse.SC_NO_CONTENT) {
-          String errorMessage = "Unexpected response code received from hub: " + hub + " - " + rc + " " +
-              method.getStatusText();
-          log.warn(errorMessage);
-          blog.warn(errorMessage);
-        }
-      } catch (IOException e) {
-        log.error("Error posting to hub: " + hub, e);
-        blog.warn("Error publishing to hub: " + hub + ". Message: " + e.getMessage());
-      }
+    List<String> topics = new ArrayList<String>();
+    topics.add(blogUrl + ATOM_XML);
+    for (Category category : entry.getCategories()) {
+      topics.add(category.getPermalink() + ATOM_XML);
     }
+    for (Tag tag : entry.getAllTags()) {
+      topics.add(tag.getPermalink() + ATOM_XML);
+    }
+    topics.add(blogUrl + "authors/" + entry.getAuthor() + "/" + ATOM_XML);
+
+    // the hubs are notified in the background, with rapid updates coalesced
+    NotificationFanOut.getInstance().publish(blog, hubs, topics);
   }
 
   private Collection<String> getHubs(Blog blog) {
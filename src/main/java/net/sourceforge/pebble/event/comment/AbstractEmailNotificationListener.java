@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event.comment;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.Comment;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
@@ -53,7 +54,7 @@ import java.util.Map;
  *
  * @author Simon Brown
  */
-public abstract class AbstractEmailNotificationListener extends CommentListenerSupport {
+public abstract class AbstractEmailNotificationListener extends CommentListenerSupport implements AsynchronousListener {
 
   /**
    * a token to be replaced when sending e-mails
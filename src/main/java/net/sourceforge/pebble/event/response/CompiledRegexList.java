@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A comma separated list of regular expressions, compiled once so that the
+ * matches in a piece of text can be counted cheaply. Entries that are plain
+ * words or phrases (the vast majority of a typical spam list) are built into
+ * a single Aho-Corasick automaton and found in one pass over the text,
+ * leaving only the real regular expressions to be run one by one. Matches
+ * are counted exactly as if every entry had been compiled with
+ * CASE_INSENSITIVE and DOTALL and its non-overlapping matches found in turn.
+ *
+ * @author Simon Brown
+ */
+public class CompiledRegexList {
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(CompiledRegexList.class);
+
+  /** the characters that make an entry a regular expression rather than a literal */
+  private static final String REGEX_CHARACTERS = "\\[](){}.*+?^$|";
+
+  /** the list this instance was compiled from */
+  private final String source;
+
+  /** the root of the automaton for the literal entries */
+  private final Node root = new Node();
+
+  /** the lengths of the literal entries, indexed by entry */
+  private final int[] literalLengths;
+
+  /** the remaining entries, compiled as regular expressions */
+  private final Pattern[] patterns;
+
+  /**
+   * Compiles the given list.
+   *
+   * @param source    a comma separated list of regular expressions,
+   *                  or null for an empty list
+   */
+  public CompiledRegexList(String source) {
+    this.source = source;
+
+    List<String> literals = new ArrayList<String>();
+    List<Pattern> regexes = new ArrayList<Pattern>();
+    if (source != null) {
+      for (String entry : source.split(",")) {
+        entry = entry.trim();
+        if (entry.length() == 0) {
+          continue;
+        } else if (isLiteral(entry)) {
+          literals.add(entry);
+        } else {
+          try {
+            regexes.add(Pattern.compile(entry, Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
+          } catch (PatternSyntaxException pse) {
+            log.error("Ignoring invalid regular expression " + entry + " : " + pse.getMessage());
+          }
+        }
+      }
+    }
+
+    this.literalLengths = new int[literals.size()];
+    for (int i = 0; i < literals.size(); i++) {
+      String literal = literals.get(i);
+      literalLengths[i] = literal.length();
+
+      Node node = root;
+      for (int j = 0; j < literal.length(); j++) {
+        char c = fold(literal.charAt(j));
+        Node next = node.children.get(c);
+        if (next == null) {
+          next = new Node();
+          node.children.put(c, next);
+        }
+        node = next;
+      }
+      node.addOutput(i);
+    }
+    linkFailures();
+
+    this.patterns = regexes.toArray(new Pattern[regexes.size()]);
+  }
+
+  /**
+   * Gets the list that this instance was compiled from.
+   *
+   * @return  a comma separated list, or null
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * Counts the matches of all entries in the given text, stopping as soon as
+   * the count exceeds the given limit.
+   *
+   * @param content   the text to search, may be null
+   * @param limit     the count after which searching can stop
+   * @return  the number of matches, which is at most limit + 1
+   */
+  public int countMatches(String content, int limit) {
+    if (content == null) {
+      return 0;
+    }
+
+    int count = 0;
+    if (literalLengths.length > 0) {
+      // the end of the last counted match of each literal, so that the
+      // matches of any one entry don't overlap (as with Matcher.find())
+      int[] lastEnd = new int[literalLengths.length];
+      Node node = root;
+      for (int i = 0; i < content.length(); i++) {
+        char c = fold(content.charAt(i));
+        Node next = node.children.get(c);
+        while (next == null && node != root) {
+          node = node.failure;
+          next = node.children.get(c);
+        }
+        node = (next != null) ? next : root;
+
+        for (int entry : node.outputs) {
+          int start = i + 1 - literalLengths[entry];
+          if (start >= lastEnd[entry]) {
+            lastEnd[entry] = i + 1;
+            count++;
+            if (count > limit) {
+              return count;
+            }
+          }
+        }
+      }
+    }
+
+    for (Pattern pattern : patterns) {
+      Matcher m = pattern.matcher(content);
+      while (m.find()) {
+        count++;
+        if (count > limit) {
+          return count;
+        }
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Builds the failure links of the automaton breadth first, merging the
+   * outputs of each node's failure into its own.
+   */
+  private void linkFailures() {
+    LinkedList<Node> queue = new LinkedList<Node>();
+    for (Node child : root.children.values()) {
+      child.failure = root;
+      queue.add(child);
+    }
+
+    while (!queue.isEmpty()) {
+      Node node = queue.removeFirst();
+      for (Map.Entry<Character,Node> entry : node.children.entrySet()) {
+        Node child = entry.getValue();
+        Node failure = node.failure;
+        Node next = failure.children.get(entry.getKey());
+        while (next == null && failure != root) {
+          failure = failure.failure;
+          next = failure.children.get(entry.getKey());
+        }
+        child.failure = (next != null) ? next : root;
+        for (int output : child.failure.outputs) {
+          child.addOutput(output);
+        }
+        queue.add(child);
+      }
+    }
+  }
+
+  private static boolean isLiteral(String entry) {
+    for (int i = 0; i < entry.length(); i++) {
+      if (REGEX_CHARACTERS.indexOf(entry.charAt(i)) > -1) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Folds the case of a character in the same way as Pattern.CASE_INSENSITIVE,
+   * which only considers US-ASCII characters.
+   */
+  private static char fold(char c) {
+    if (c >= 'A' && c <= 'Z') {
+      return (char)(c + ('a' - 'A'));
+    } else {
+      return c;
+    }
+  }
+
+  /**
+   * A state in the automaton.
+   */
+  private static class Node {
+
+    private final Map<Character,Node> children = new HashMap<Character,Node>();
+    private Node failure;
+    private int[] outputs = new int[0];
+
+    private void addOutput(int entry) {
+      int[] newOutputs = new int[outputs.length + 1];
+      System.arraycopy(outputs, 0, newOutputs, 0, outputs.length);
+      newOutputs[outputs.length] = entry;
+      outputs = newOutputs;
+    }
+
+  }
+
+}
@@ -36,9 +36,6 @@ import net.sourceforge.pebble.domain.Response;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Checks comment and TrackBack content for specified regexs and sets
  * the state of such responses to pending. This includes all user-definable
@@ -64,6 +61,9 @@ public class ContentSpamListener extends BlogEntryResponseListenerSupport {
   /** the name of the threshold property */
   public static final String THRESHOLD_KEY = "ContentSpamListener.threshold";
 
+  /** the regex list, compiled when it was last seen to change */
+  private volatile CompiledRegexList regexes = new CompiledRegexList(null);
+
   /**
    * Called when a comment or TrackBack has been added.
    *
@@ -71,13 +71,7 @@ public class ContentSpamListener extends BlogEntryResponseListenerSupport {
    */
   protected void blogEntryResponseAdded(Response response) {
     PluginProperties props = response.getBlogEntry().getBlog().getPluginProperties();
-    String regexList = props.getProperty(REGEX_LIST_KEY);
-    String regexes[] = null;
-    if (regexList != null) {
-      regexes = regexList.split(",");
-    } else {
-      regexes = new String[0];
-    }
+    CompiledRegexList regexes = getRegexes(props.getProperty(REGEX_LIST_KEY));
 
     int threshold = DEFAULT_THRESHOLD;
     if (props.hasProperty(THRESHOLD_KEY)) {
@@ -112,25 +106,30 @@ public class ContentSpamListener extends BlogEntryResponseListenerSupport {
     }
   }
 
-  private boolean contentWithinThreshold(String content, String regexes[], int threshold) {
-    if (content == null || content.trim().length() == 0) {
-      return true;
+  /**
+   * Gets the compiled form of the given regex list, only compiling it if
+   * the list has changed since it was last compiled.
+   *
+   * @param regexList   a comma separated list of regexes
+   * @return  a CompiledRegexList instance
+   */
+  private CompiledRegexList getRegexes(String regexList) {
+    CompiledRegexList compiled = this.regexes;
+    if (regexList == null ? compiled.getSource() != null : !regexList.equals(compiled.getSource())) {
+      compiled = new CompiledRegexList(regexList);
+      this.regexes = compiled;
     }
 
-    int count = 0;
-    for (int i = 0; i < regexes.length; i++) {
-      Pattern p = Pattern.compile(regexes[i].trim(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-      Matcher m = p.matcher(content);
-      while (m.find()) {
-        count++;
+    return compiled;
+  }
 
-        if (count > threshold) {
-          return false;
-        }
-      }
+  private boolean contentWithinThreshold(String content, CompiledRegexList regexes, int threshold) {
+    if (content == null || content.trim().length() == 0) {
+      return true;
     }
 
-    return true;
+    int count = regexes.countMatches(content, threshold);
+    return count <= threshold;
   }
 
 }
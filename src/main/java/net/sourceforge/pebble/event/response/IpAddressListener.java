@@ -36,6 +36,13 @@ import net.sourceforge.pebble.domain.Response;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Checks comment and TrackBack IP address against a whitelist and a blacklist.
  * If in the whitelist, the response is left as-is. If in the blacklist,
@@ -57,6 +64,9 @@ public class IpAddressListener extends BlogEntryResponseListenerSupport {
   /** the name of the blacklist property */
   public static final String BLACKLIST_KEY = "IpAddressListener.blacklist";
 
+  /** the most recently parsed lists, keyed by their comma separated form */
+  private final Map<String,Set<String>> parsedLists = new ConcurrentHashMap<String,Set<String>>();
+
   /**
    * Called when a comment or TrackBack has been added.
    *
@@ -92,11 +102,15 @@ public class IpAddressListener extends BlogEntryResponseListenerSupport {
     synchronized (props) {
       String whitelist = props.getProperty(WHITELIST_KEY);
       String blacklist = props.getProperty(BLACKLIST_KEY);
-      whitelist = addIpAddress(response, whitelist);
-      blacklist = removeIpAddress(response, blacklist);
-      props.setProperty(WHITELIST_KEY, whitelist);
-      props.setProperty(BLACKLIST_KEY, blacklist);
-      props.store();
+      String newWhitelist = addIpAddress(response, whitelist);
+      String newBlacklist = removeIpAddress(response, blacklist);
+
+      // only rewrite the plugin properties if the lists have changed
+      if (!newWhitelist.equals(whitelist) || !newBlacklist.equals(blacklist)) {
+        props.setProperty(WHITELIST_KEY, newWhitelist);
+        props.setProperty(BLACKLIST_KEY, newBlacklist);
+        props.store();
+      }
     }
   }
 
@@ -115,11 +129,15 @@ public class IpAddressListener extends BlogEntryResponseListenerSupport {
     synchronized (props) {
       String blacklist = props.getProperty(BLACKLIST_KEY);
       String whitelist = props.getProperty(WHITELIST_KEY);
-      blacklist = addIpAddress(response, blacklist);
-      whitelist = removeIpAddress(response, whitelist);
-      props.setProperty(BLACKLIST_KEY, blacklist);
-      props.setProperty(WHITELIST_KEY, whitelist);
-      props.store();
+      String newBlacklist = addIpAddress(response, blacklist);
+      String newWhitelist = removeIpAddress(response, whitelist);
+
+      // only rewrite the plugin properties if the lists have changed
+      if (!newBlacklist.equals(blacklist) || !newWhitelist.equals(whitelist)) {
+        props.setProperty(BLACKLIST_KEY, newBlacklist);
+        props.setProperty(WHITELIST_KEY, newWhitelist);
+        props.store();
+      }
     }
   }
 
@@ -137,20 +155,32 @@ public class IpAddressListener extends BlogEntryResponseListenerSupport {
       return false;
     }
 
-    String ipAddresses[] = null;
-    if (list != null) {
-      ipAddresses = list.split(",");
-    } else {
-      ipAddresses = new String[0];
+    return parse(list).contains(response.getIpAddress());
+  }
+
+  /**
+   * Parses a comma separated list of IP addresses into a set, reusing the
+   * result of the last parse while the list remains the same.
+   *
+   * @param list        a list of IP addresses, comma separated
+   * @return  a Set of IP addresses
+   */
+  private Set<String> parse(String list) {
+    if (list == null) {
+      return Collections.emptySet();
     }
 
-    for (int i = 0; i < ipAddresses.length; i++) {
-      if (response.getIpAddress().equals(ipAddresses[i])) {
-        return true;
+    Set<String> ipAddresses = parsedLists.get(list);
+    if (ipAddresses == null) {
+      ipAddresses = new HashSet<String>(Arrays.asList(list.split(",")));
+      if (parsedLists.size() >= 2) {
+        // only the whitelist and blacklist are ever parsed
+        parsedLists.clear();
       }
+      parsedLists.put(list, ipAddresses);
     }
 
-    return false;
+    return ipAddresses;
   }
 
   /**
@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event.trackback;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.TrackBack;
 import net.sourceforge.pebble.util.MailUtils;
@@ -49,7 +50,7 @@ import java.util.Map;
  *
  * @author Simon Brown
  */
-public abstract class AbstractEmailNotificationListener extends TrackBackListenerSupport {
+public abstract class AbstractEmailNotificationListener extends TrackBackListenerSupport implements AsynchronousListener {
 
   /**
    * Called when a TrackBack has been added.
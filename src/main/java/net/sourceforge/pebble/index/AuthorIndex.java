@@ -42,6 +42,7 @@ import java.util.*;
 
 /**
  * Keeps an index of all blog entries from a specific author, allowing efficient access at runtime.
+ * Changes are appended to a journal rather than rewriting the index file each time.
  *
  * @author    Simon Brown
  */
@@ -49,23 +50,34 @@ public class AuthorIndex {
 
   private static final Log log = LogFactory.getLog(AuthorIndex.class);
 
+  private static final String ADDED = "A";
+  private static final String REMOVED = "R";
+
   private Blog blog;
 
   /** the map containing the tags */
-  private Map<String,List<String>> authors = new HashMap<String,List<String>>();
+  private Map<String,SortedSet<String>> authors = new HashMap<String,SortedSet<String>>();
+
+  private IndexJournal journal;
 
   public AuthorIndex(Blog blog) {
     this.blog = blog;
+    this.journal = new IndexJournal(new File(blog.getIndexesDirectory(), "authors.journal"), new Runnable() {
+      public void run() {
+        flush();
+      }
+    });
 
     readIndex();
+    replayJournal();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
-    authors = new HashMap<String,List<String>>();
-    writeIndex();
+  public synchronized void clear() {
+    authors = new HashMap<String,SortedSet<String>>();
+    flush();
   }
 
   /**
@@ -74,15 +86,30 @@ public class AuthorIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    add(blogEntries);
+    flush();
+  }
+
+  /**
+   * Adds one or more blog entries to the in-memory index, without writing
+   * the index file.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  synchronized void add(Collection<BlogEntry> blogEntries) {
     for (BlogEntry blogEntry : blogEntries) {
       if (blogEntry.isPublished()) {
-        List<String> blogEntryIds = getBlogEntries(blogEntry.getAuthor());
-        blogEntryIds.add(blogEntry.getId());
-        Collections.sort(blogEntryIds, new ReverseBlogEntryIdComparator());
+        getBlogEntries(blogEntry.getAuthor()).add(blogEntry.getId());
       }
     }
+  }
 
+  /**
+   * Writes the index to disk and clears the journal.
+   */
+  synchronized void flush() {
     writeIndex();
+    journal.clear();
   }
 
   /**
@@ -92,11 +119,8 @@ public class AuthorIndex {
    */
   public synchronized void index(BlogEntry blogEntry) {
     if (blogEntry.isPublished()) {
-      List<String> blogEntryIds = getBlogEntries(blogEntry.getAuthor());
-      blogEntryIds.add(blogEntry.getId());
-      Collections.sort(blogEntryIds, new ReverseBlogEntryIdComparator());
-
-      writeIndex();
+      getBlogEntries(blogEntry.getAuthor()).add(blogEntry.getId());
+      journal.append(ADDED, blogEntry.getId(), blogEntry.getAuthor());
     }
   }
 
@@ -106,16 +130,19 @@ public class AuthorIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
-    List<String> blogEntries = authors.get(blogEntry.getAuthor());
+    remove(blogEntry.getAuthor(), blogEntry.getId());
+    journal.append(REMOVED, blogEntry.getId(), blogEntry.getAuthor());
+  }
+
+  private void remove(String author, String blogEntryId) {
+    SortedSet<String> blogEntries = authors.get(author);
     if (blogEntries != null) {
-      blogEntries.remove(blogEntry.getId());
+      blogEntries.remove(blogEntryId);
 
       if (blogEntries.isEmpty()) {
-        authors.remove(blogEntry.getAuthor());
+        authors.remove(author);
       }
     }
-
-    writeIndex();
   }
 
   /**
@@ -130,7 +157,7 @@ public class AuthorIndex {
         while (indexEntry != null) {
           String[] tuple = indexEntry.split("=");
           String author = tuple[0];
-          List<String> blogEntries = getBlogEntries(author);
+          SortedSet<String> blogEntries = getBlogEntries(author);
 
           if (tuple.length > 1 && tuple[1] != null) {
             String[] blogEntryIds = tuple[1].split(",");
@@ -149,38 +176,49 @@ public class AuthorIndex {
     }
   }
 
+  /**
+   * Applies the changes made since the index file was last written.
+   */
+  private void replayJournal() {
+    for (String[] change : journal.read()) {
+      if (change.length < 3) {
+        continue;
+      }
+
+      if (change[0].equals(ADDED)) {
+        getBlogEntries(change[2]).add(change[1]);
+      } else if (change[0].equals(REMOVED)) {
+        remove(change[2], change[1]);
+      }
+    }
+  }
+
   /**
    * Helper method to write out the index to disk.
    */
   private void writeIndex() {
     try {
-      File indexFile = new File(blog.getIndexesDirectory(), "authors.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
+      List<String> lines = new ArrayList<String>();
       for (String author : authors.keySet()) {
-        writer.write(author);
-        writer.write("=");
-        List<String> blogEntries = authors.get(author);
-        if (blogEntries != null) {
-          for (String blogEntry : blogEntries) {
-            writer.write(blogEntry);
-            writer.write(",");
-          }
+        StringBuffer line = new StringBuffer(author);
+        line.append("=");
+        for (String blogEntry : authors.get(author)) {
+          line.append(blogEntry);
+          line.append(",");
         }
-        writer.newLine();
+        lines.add(line.toString());
       }
 
-      writer.flush();
-      writer.close();
+      IndexJournal.replace(new File(blog.getIndexesDirectory(), "authors.index"), lines);
     } catch (Exception e) {
       log.error("Error while writing index", e);
     }
   }
 
-  private synchronized List<String> getBlogEntries(String author) {
-    List<String> blogEntries = authors.get(author);
+  private synchronized SortedSet<String> getBlogEntries(String author) {
+    SortedSet<String> blogEntries = authors.get(author);
     if (blogEntries == null) {
-      blogEntries = new LinkedList<String>();
+      blogEntries = new TreeSet<String>(new ReverseBlogEntryIdComparator());
       authors.put(author, blogEntries);
     }
 
@@ -190,7 +228,7 @@ public class AuthorIndex {
   /**
    * Gets the list of authors associated with this blog.
    */
-  public List<String> getAuthors() {
+  public synchronized List<String> getAuthors() {
     return new LinkedList<String>(authors.keySet());
   }
 
@@ -200,8 +238,8 @@ public class AuthorIndex {
    * @param username    a username (String)
    * @return  a List of blog entry IDs
    */
-  public List<String> getRecentBlogEntries(String username) {
-    List<String> blogEntries = authors.get(username);
+  public synchronized List<String> getRecentBlogEntries(String username) {
+    SortedSet<String> blogEntries = authors.get(username);
     if (blogEntries == null) {
       return new LinkedList<String>();
     } else {
@@ -209,4 +247,4 @@ public class AuthorIndex {
     }
   }
 
-}
\ No newline at end of file
+}
@@ -44,6 +44,8 @@ import java.util.*;
 
 /**
  * Keeps an index of all blog entries, allowing efficient access at runtime.
+ * Blog entry IDs are kept in sorted sets, and changes are appended to a
+ * journal rather than rewriting the index files each time.
  *
  * @author    Simon Brown
  */
@@ -51,28 +53,39 @@ public class BlogEntryIndex {
 
   private static final Log log = LogFactory.getLog(BlogEntryIndex.class);
 
+  private static final String PUBLISHED = "P";
+  private static final String UNPUBLISHED = "U";
+  private static final String REMOVED = "R";
+
   private Blog blog;
 
-  private List<String> indexEntries = new ArrayList<String>();
-  private List<String> publishedIndexEntries = new ArrayList<String>();
-  private List<String> unpublishedIndexEntries = new ArrayList<String>();
+  private SortedSet<String> indexEntries = new TreeSet<String>(new ReverseBlogEntryIdComparator());
+  private SortedSet<String> publishedIndexEntries = new TreeSet<String>(new ReverseBlogEntryIdComparator());
+  private SortedSet<String> unpublishedIndexEntries = new TreeSet<String>(new ReverseBlogEntryIdComparator());
+
+  private IndexJournal journal;
 
   public BlogEntryIndex(Blog blog) {
     this.blog = blog;
+    this.journal = new IndexJournal(new File(blog.getIndexesDirectory(), "blogentries.journal"), new Runnable() {
+      public void run() {
+        flush();
+      }
+    });
 
     readIndex(true);
     readIndex(false);
+    replayJournal();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
-    indexEntries = new ArrayList<String>();
-    publishedIndexEntries = new ArrayList<String>();
-    unpublishedIndexEntries = new ArrayList<String>();
-    writeIndex(true);
-    writeIndex(false);
+  public synchronized void clear() {
+    indexEntries.clear();
+    publishedIndexEntries.clear();
+    unpublishedIndexEntries.clear();
+    flush();
   }
 
   /**
@@ -81,24 +94,30 @@ public class BlogEntryIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    add(blogEntries);
+    flush();
+  }
+
+  /**
+   * Adds one or more blog entries to the in-memory index, without writing
+   * the index files. Used when streaming a full reindex, which calls
+   * {@link #flush()} once at the end.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  synchronized void add(Collection<BlogEntry> blogEntries) {
     for (BlogEntry blogEntry : blogEntries) {
-      Day day = blog.getBlogForDay(blogEntry.getDate());
-      if (blogEntry.isPublished()) {
-        publishedIndexEntries.add(blogEntry.getId());
-        day.addPublishedBlogEntry(blogEntry.getId());
-      } else {
-        unpublishedIndexEntries.add(blogEntry.getId());
-        day.addUnpublishedBlogEntry(blogEntry.getId());
-      }
-      indexEntries.add(blogEntry.getId());
+      add(blogEntry.getId(), blogEntry.isPublished());
     }
+  }
 
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
-
+  /**
+   * Writes the index files to disk and clears the journal.
+   */
+  synchronized void flush() {
     writeIndex(true);
     writeIndex(false);
+    journal.clear();
   }
 
   /**
@@ -107,21 +126,8 @@ public class BlogEntryIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void index(BlogEntry blogEntry) {
-    Day day = blog.getBlogForDay(blogEntry.getDate());
-    if (blogEntry.isPublished()) {
-      publishedIndexEntries.add(blogEntry.getId());
-      day.addPublishedBlogEntry(blogEntry.getId());
-      writeIndex(true);
-    } else {
-      unpublishedIndexEntries.add(blogEntry.getId());
-      day.addUnpublishedBlogEntry(blogEntry.getId());
-      writeIndex(false);
-    }
-    indexEntries.add(blogEntry.getId());
-
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
+    add(blogEntry.getId(), blogEntry.isPublished());
+    journal.append(blogEntry.isPublished() ? PUBLISHED : UNPUBLISHED, blogEntry.getId());
   }
 
   /**
@@ -130,47 +136,42 @@ public class BlogEntryIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
-    Day day = blog.getBlogForDay(blogEntry.getDate());
-    day.removeBlogEntry(blogEntry);
+    remove(blogEntry.getId());
+    journal.append(REMOVED, blogEntry.getId());
+  }
 
-    indexEntries.remove(blogEntry.getId());
-    publishedIndexEntries.remove(blogEntry.getId());
-    unpublishedIndexEntries.remove(blogEntry.getId());
+  private void add(String blogEntryId, boolean published) {
+    Day day = blog.getBlogForDay(new Date(Long.parseLong(blogEntryId)));
+    if (published) {
+      publishedIndexEntries.add(blogEntryId);
+      day.addPublishedBlogEntry(blogEntryId);
+    } else {
+      unpublishedIndexEntries.add(blogEntryId);
+      day.addUnpublishedBlogEntry(blogEntryId);
+    }
+    indexEntries.add(blogEntryId);
+  }
 
-    writeIndex(true);
-    writeIndex(false);
+  private void remove(String blogEntryId) {
+    Day day = blog.getBlogForDay(new Date(Long.parseLong(blogEntryId)));
+    day.removeBlogEntry(blogEntryId);
+
+    indexEntries.remove(blogEntryId);
+    publishedIndexEntries.remove(blogEntryId);
+    unpublishedIndexEntries.remove(blogEntryId);
   }
 
   /**
    * Helper method to load the index.
    */
   private void readIndex(boolean published) {
-    File indexFile;
-    if (published) {
-      indexFile = new File(blog.getIndexesDirectory(), "blogentries-published.index");
-    } else {
-      indexFile = new File(blog.getIndexesDirectory(), "blogentries-unpublished.index");
-    }
-
+    File indexFile = getIndexFile(published);
     if (indexFile.exists()) {
       try {
         BufferedReader reader = new BufferedReader(new FileReader(indexFile));
         String indexEntry = reader.readLine();
         while (indexEntry != null) {
-          indexEntries.add(indexEntry);
-
-          // and add it to the internal memory structures
-          Date date = new Date(Long.parseLong(indexEntry));
-          Day day = blog.getBlogForDay(date);
-
-          if (published) {
-            publishedIndexEntries.add(indexEntry);
-            day.addPublishedBlogEntry(indexEntry);
-          } else {
-            unpublishedIndexEntries.add(indexEntry);
-            day.addUnpublishedBlogEntry(indexEntry);
-          }
-
+          add(indexEntry, published);
           indexEntry = reader.readLine();
         }
 
@@ -179,10 +180,25 @@ public class BlogEntryIndex {
         log.error("Error while reading index", e);
       }
     }
+  }
 
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
+  /**
+   * Applies the changes made since the index files were last written.
+   */
+  private void replayJournal() {
+    for (String[] change : journal.read()) {
+      try {
+        if (change[0].equals(PUBLISHED)) {
+          add(change[1], true);
+        } else if (change[0].equals(UNPUBLISHED)) {
+          add(change[1], false);
+        } else if (change[0].equals(REMOVED)) {
+          remove(change[1]);
+        }
+      } catch (Exception e) {
+        log.warn("Ignoring invalid change in blog entry index journal", e);
+      }
+    }
   }
 
   /**
@@ -190,39 +206,30 @@ public class BlogEntryIndex {
    */
   private void writeIndex(boolean published) {
     try {
-      File indexFile;
       if (published) {
-        indexFile = new File(blog.getIndexesDirectory(), "blogentries-published.index");
+        IndexJournal.replace(getIndexFile(true), publishedIndexEntries);
       } else {
-        indexFile = new File(blog.getIndexesDirectory(), "blogentries-unpublished.index");
+        IndexJournal.replace(getIndexFile(false), unpublishedIndexEntries);
       }
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
-      if (published) {
-        for (String indexEntry : publishedIndexEntries) {
-          writer.write(indexEntry);
-          writer.newLine();
-        }
-      } else {
-        for (String indexEntry : unpublishedIndexEntries) {
-          writer.write(indexEntry);
-          writer.newLine();
-        }
-      }
-
-      writer.flush();
-      writer.close();
     } catch (Exception e) {
       log.error("Error while writing index", e);
     }
   }
 
+  private File getIndexFile(boolean published) {
+    if (published) {
+      return new File(blog.getIndexesDirectory(), "blogentries-published.index");
+    } else {
+      return new File(blog.getIndexesDirectory(), "blogentries-unpublished.index");
+    }
+  }
+
   /**
    * Gets the number of blog entries for this blog.
    *
    * @return  an int
    */
-  public int getNumberOfBlogEntries() {
+  public synchronized int getNumberOfBlogEntries() {
     return indexEntries.size();
   }
 
@@ -231,7 +238,7 @@ public class BlogEntryIndex {
    *
    * @return  an int
    */
-  public int getNumberOfPublishedBlogEntries() {
+  public synchronized int getNumberOfPublishedBlogEntries() {
     return publishedIndexEntries.size();
   }
 
@@ -240,7 +247,7 @@ public class BlogEntryIndex {
    *
    * @return  an int
    */
-  public int getNumberOfUnpublishedBlogEntries() {
+  public synchronized int getNumberOfUnpublishedBlogEntries() {
     return unpublishedIndexEntries.size();
   }
 
@@ -249,7 +256,7 @@ public class BlogEntryIndex {
    *
    * @return  a List of blog entry IDs
    */
-  public List<String> getBlogEntries() {
+  public synchronized List<String> getBlogEntries() {
     return new ArrayList<String>(indexEntries);
   }
 
@@ -258,17 +265,30 @@ public class BlogEntryIndex {
    *
    * @return  a List of blog entry IDs
    */
-  public List<String> getPublishedBlogEntries() {
+  public synchronized List<String> getPublishedBlogEntries() {
     return new ArrayList<String>(publishedIndexEntries);
   }
 
+  /**
+   * Gets the most recent published blog entry.
+   *
+   * @return  a blog entry ID, or null if there are no published blog entries
+   */
+  public synchronized String getMostRecentPublishedBlogEntry() {
+    if (publishedIndexEntries.isEmpty()) {
+      return null;
+    } else {
+      return publishedIndexEntries.first();
+    }
+  }
+
   /**
    * Gets the full list of unpublished blog entries.
    *
    * @return  a List of blog entry IDs
    */
-  public List<String> getUnpublishedBlogEntries() {
+  public synchronized List<String> getUnpublishedBlogEntries() {
     return new ArrayList<String>(unpublishedIndexEntries);
   }
 
-}
\ No newline at end of file
+}
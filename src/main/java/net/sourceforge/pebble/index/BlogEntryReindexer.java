@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.IndexWriter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rebuilds all of the blog entry indexes for a blog in a single pass.
+ * Blog entries are streamed from the DAO by a small pool of loader threads
+ * into a bounded queue, and each batch taken from that queue is applied to
+ * the blog entry, response, tag, category, author and search indexes
+ * concurrently. Only a bounded number of blog entries are held in memory
+ * at any one time, and the index files are written once, at the end.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntryReindexer {
+
+  private static final Log log = LogFactory.getLog(BlogEntryReindexer.class);
+
+  /** the number of blog entries applied to the indexes at a time */
+  static final int BATCH_SIZE = 100;
+
+  /** the number of progress messages reported during a reindex */
+  private static final int PROGRESS_STEPS = 4;
+
+  /** how long to wait for a loaded blog entry before checking the loaders */
+  private static final long POLL_INTERVAL = 100;
+
+  private final Blog blog;
+  private final int loaderThreads;
+
+  /**
+   * Creates a new reindexer that uses one loader thread per processor.
+   *
+   * @param blog    the Blog to reindex
+   */
+  public BlogEntryReindexer(Blog blog) {
+    this(blog, Runtime.getRuntime().availableProcessors());
+  }
+
+  BlogEntryReindexer(Blog blog, int loaderThreads) {
+    this.blog = blog;
+    this.loaderThreads = Math.max(1, loaderThreads);
+  }
+
+  /**
+   * Reindexes all blog entries, reporting progress and throughput through
+   * the blog's message log. The indexes are expected to have been cleared
+   * beforehand.
+   *
+   * @return  the number of blog entries that were indexed
+   * @throws Exception  if the blog entries can't be reindexed
+   */
+  public int reindex() throws Exception {
+    long start = System.currentTimeMillis();
+
+    Collection<String> blogEntryIds = DAOFactory.getConfiguredFactory().getBlogEntryDAO().loadBlogEntryIds(blog);
+    int total = blogEntryIds.size();
+    int progressInterval = total / PROGRESS_STEPS;
+    if (progressInterval < BATCH_SIZE) {
+      progressInterval = Integer.MAX_VALUE;
+    }
+
+    Queue<String> pending = new ConcurrentLinkedQueue<String>(blogEntryIds);
+    BlockingQueue<BlogEntry> loaded = new ArrayBlockingQueue<BlogEntry>(BATCH_SIZE * 2);
+    AtomicInteger failures = new AtomicInteger();
+    int threads = Math.max(1, Math.min(loaderThreads, total));
+    CountDownLatch loadersFinished = new CountDownLatch(threads);
+
+    ExecutorService loaders = Executors.newFixedThreadPool(threads);
+    ExecutorService indexers = Executors.newFixedThreadPool(6);
+    IndexWriter writer = blog.getSearchIndex().openIndexWriter(false);
+    boolean flushed = false;
+    int count = 0;
+
+    try {
+      for (int i = 0; i < threads; i++) {
+        loaders.execute(new Loader(pending, loaded, failures, loadersFinished));
+      }
+
+      int nextProgress = progressInterval;
+      List<BlogEntry> batch = new ArrayList<BlogEntry>(BATCH_SIZE);
+      while (loadersFinished.getCount() > 0 || !loaded.isEmpty()) {
+        BlogEntry blogEntry = loaded.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        if (blogEntry != null) {
+          batch.add(blogEntry);
+          loaded.drainTo(batch, BATCH_SIZE - batch.size());
+        }
+
+        if (batch.size() >= BATCH_SIZE) {
+          index(batch, writer, indexers);
+          count += batch.size();
+          batch = new ArrayList<BlogEntry>(BATCH_SIZE);
+
+          if (count >= nextProgress && count < total) {
+            blog.info("Reindexed " + count + " of " + total + " blog entries (" + getThroughput(count, start) + " per second).");
+            nextProgress += progressInterval;
+          }
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        index(batch, writer, indexers);
+        count += batch.size();
+      }
+
+      flush(indexers);
+      flushed = true;
+    } finally {
+      loaders.shutdownNow();
+      indexers.shutdownNow();
+
+      try {
+        blog.getSearchIndex().closeIndexWriter(writer);
+      } catch (Exception e) {
+        if (flushed) {
+          throw e;
+        } else {
+          log.warn("Error closing search index writer", e);
+        }
+      }
+    }
+
+    if (failures.get() > 0) {
+      blog.warn(failures.get() + " blog entries could not be loaded and have not been reindexed - see the log for details.");
+    }
+
+    long duration = System.currentTimeMillis() - start;
+    blog.info("Blog entries reindexed - " + count + " entries in " + (duration / 1000.0) + " seconds (" + getThroughput(count, start) + " per second).");
+
+    return count;
+  }
+
+  /**
+   * Applies a batch of blog entries to all six indexes concurrently, and
+   * waits until they have all finished.
+   */
+  private void index(List<BlogEntry> batch, final IndexWriter writer, ExecutorService indexers) throws Exception {
+    final Collection<BlogEntry> blogEntries = Collections.unmodifiableList(batch);
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getBlogEntryIndex().add(blogEntries);
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getResponseIndex().add(blogEntries);
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getTagIndex().add(blogEntries);
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getCategoryIndex().add(blogEntries);
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getAuthorIndex().add(blogEntries);
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        SearchIndex searchIndex = blog.getSearchIndex();
+        for (BlogEntry blogEntry : blogEntries) {
+          searchIndex.index(blogEntry, writer);
+        }
+      }
+    }));
+
+    waitFor(futures);
+  }
+
+  /**
+   * Writes the other five indexes to disk concurrently, and waits until
+   * they have all finished. The search index is written when its writer is
+   * closed.
+   */
+  private void flush(ExecutorService indexers) throws Exception {
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getBlogEntryIndex().flush();
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getResponseIndex().flush();
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getTagIndex().flush();
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getCategoryIndex().flush();
+      }
+    }));
+    futures.add(indexers.submit(new Runnable() {
+      public void run() {
+        blog.getAuthorIndex().flush();
+      }
+    }));
+    waitFor(futures);
+  }
+
+  private void waitFor(List<Future<?>> futures) throws Exception {
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception)cause;
+        } else {
+          throw ee;
+        }
+      }
+    }
+  }
+
+  private long getThroughput(int count, long start) {
+    long duration = Math.max(1, System.currentTimeMillis() - start);
+    return (count * 1000L) / duration;
+  }
+
+  /**
+   * Takes blog entry IDs from the shared queue, loads the blog entries and
+   * hands them to the indexing side, blocking while the queue is full.
+   */
+  private class Loader implements Runnable {
+
+    private final Queue<String> pending;
+    private final BlockingQueue<BlogEntry> loaded;
+    private final AtomicInteger failures;
+    private final CountDownLatch finished;
+
+    Loader(Queue<String> pending, BlockingQueue<BlogEntry> loaded, AtomicInteger failures, CountDownLatch finished) {
+      this.pending = pending;
+      this.loaded = loaded;
+      this.failures = failures;
+      this.finished = finished;
+    }
+
+    public void run() {
+      try {
+        String blogEntryId = pending.poll();
+        while (blogEntryId != null) {
+          try {
+            BlogEntry blogEntry = DAOFactory.getConfiguredFactory().getBlogEntryDAO().loadBlogEntry(blog, blogEntryId);
+            if (blogEntry != null) {
+              loaded.put(blogEntry);
+            } else {
+              failures.incrementAndGet();
+            }
+          } catch (PersistenceException pe) {
+            log.error("Error loading blog entry " + blogEntryId + " for reindexing", pe);
+            failures.incrementAndGet();
+          }
+
+          blogEntryId = pending.poll();
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      } finally {
+        finished.countDown();
+      }
+    }
+
+  }
+
+}
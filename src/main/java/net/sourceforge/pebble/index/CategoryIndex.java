@@ -43,7 +43,8 @@ import java.util.Collection;
 import java.io.*;
 
 /**
- * Represents the category index for a blog.
+ * Represents the category index for a blog. Changes are appended to a
+ * journal rather than rewriting the index file each time.
  *
  * @author    Simon Brown
  */
@@ -51,27 +52,38 @@ public class CategoryIndex {
 
   private static final Log log = LogFactory.getLog(CategoryIndex.class);
 
+  private static final String ADDED = "A";
+  private static final String REMOVED = "R";
+
   private Blog blog;
 
+  private IndexJournal journal;
+
   public CategoryIndex(Blog blog) {
     this.blog = blog;
+    this.journal = new IndexJournal(new File(blog.getIndexesDirectory(), "categories.journal"), new Runnable() {
+      public void run() {
+        flush();
+      }
+    });
 
 //    File indexes = new File(blog.getIndexesDirectory());
 //    if (!indexes.exists()) {
 //      indexes.mkdir();
 //    }
     readIndex();
+    replayJournal();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     for (Category category : blog.getCategories()) {
       category.removeAllBlogEntries();
     }
 
-    writeIndex();
+    flush();
   }
 
   /**
@@ -80,6 +92,17 @@ public class CategoryIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    add(blogEntries);
+    flush();
+  }
+
+  /**
+   * Adds one or more blog entries to the in-memory index, without writing
+   * the index file.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  synchronized void add(Collection<BlogEntry> blogEntries) {
     for (BlogEntry blogEntry : blogEntries) {
       if (blogEntry.isPublished()) {
         for (Category category: blogEntry.getCategories()) {
@@ -87,8 +110,14 @@ public class CategoryIndex {
         }
       }
     }
+  }
 
+  /**
+   * Writes the index to disk and clears the journal.
+   */
+  synchronized void flush() {
     writeIndex();
+    journal.clear();
   }
 
   /**
@@ -100,9 +129,8 @@ public class CategoryIndex {
     if (blogEntry.isPublished()) {
       for (Category category : blogEntry.getCategories()) {
         category.addBlogEntry(blogEntry.getId());
+        journal.append(ADDED, blogEntry.getId(), category.getId());
       }
-
-      writeIndex();
     }
   }
 
@@ -112,11 +140,30 @@ public class CategoryIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
+    remove(blogEntry.getId());
+    journal.append(REMOVED, blogEntry.getId());
+  }
+
+  private void remove(String blogEntryId) {
     for (Category category : blog.getCategories()) {
-      category.removeBlogEntry(blogEntry.getId());
+      category.removeBlogEntry(blogEntryId);
     }
+  }
 
-    writeIndex();
+  /**
+   * Applies the changes made since the index file was last written.
+   */
+  private void replayJournal() {
+    for (String[] change : journal.read()) {
+      if (change[0].equals(ADDED) && change.length > 2) {
+        Category category = blog.getCategory(change[2]);
+        if (category != null) {
+          category.addBlogEntry(change[1]);
+        }
+      } else if (change[0].equals(REMOVED) && change.length > 1) {
+        remove(change[1]);
+      }
+    }
   }
 
   /**
@@ -154,21 +201,18 @@ public class CategoryIndex {
    */
   private void writeIndex() {
     try {
-      File indexFile = new File(blog.getIndexesDirectory(), "categories.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
+      List<String> lines = new ArrayList<String>();
       for (Category category : blog.getCategories()) {
-        writer.write(category.getId());
-        writer.write("=");
+        StringBuffer line = new StringBuffer(category.getId());
+        line.append("=");
         for (String blogEntry : category.getBlogEntries()) {
-          writer.write(blogEntry);
-          writer.write(",");
+          line.append(blogEntry);
+          line.append(",");
         }
-        writer.newLine();
+        lines.add(line.toString());
       }
 
-      writer.flush();
-      writer.close();
+      IndexJournal.replace(new File(blog.getIndexesDirectory(), "categories.index"), lines);
     } catch (Exception e) {
       log.error("Error while writing index", e);
     }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * An append-only journal of the changes made to an index since its files
+ * were last written out in full. Recording a change appends a single line,
+ * rather than rewriting the whole index. Once enough changes have built up,
+ * the owning index is asked to compact itself in the background; it rewrites
+ * its files using {@link #replace(File, Collection)} and then clears the
+ * journal. Changes are replayed as set operations, so replaying a journal
+ * that has already been applied (e.g. after a crash between rewriting the
+ * files and clearing the journal) is harmless.
+ *
+ * @author    Simon Brown
+ */
+class IndexJournal {
+
+  private static final Log log = LogFactory.getLog(IndexJournal.class);
+
+  /** the number of changes after which the index is compacted */
+  static final int COMPACTION_THRESHOLD = 500;
+
+  /** how long to wait before compacting, in milliseconds */
+  private static final long COMPACTION_DELAY = 10 * 1000;
+
+  /** separates the fields of a change */
+  private static final char SEPARATOR = '\t';
+
+  /** the timer used to compact the indexes of all blogs */
+  private static final Timer timer = new Timer(true);
+
+  private final File file;
+  private final Runnable compaction;
+
+  /** the writer used to append changes, opened lazily */
+  private Writer writer;
+
+  private int numberOfChanges = 0;
+  private boolean compactionScheduled = false;
+
+  /**
+   * Creates a new journal.
+   *
+   * @param file          the journal file
+   * @param compaction    rewrites the owning index and clears this journal
+   */
+  IndexJournal(File file, Runnable compaction) {
+    this.file = file;
+    this.compaction = compaction;
+  }
+
+  /**
+   * Reads the changes recorded in the journal. A partially written last
+   * line (e.g. from a crash) is ignored.
+   *
+   * @return  a List of changes, each of which is an array of fields
+   */
+  synchronized List<String[]> read() {
+    List<String[]> changes = new ArrayList<String[]>();
+    if (!file.exists()) {
+      return changes;
+    }
+
+    try {
+      Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+      StringBuffer buf = new StringBuffer();
+      try {
+        char[] chars = new char[4096];
+        int read = reader.read(chars);
+        while (read != -1) {
+          buf.append(chars, 0, read);
+          read = reader.read(chars);
+        }
+      } finally {
+        reader.close();
+      }
+
+      int start = 0;
+      int end = buf.indexOf("\n");
+      while (end != -1) {
+        if (end > start) {
+          changes.add(buf.substring(start, end).split(String.valueOf(SEPARATOR), -1));
+        }
+        start = end + 1;
+        end = buf.indexOf("\n", start);
+      }
+    } catch (IOException ioe) {
+      log.error("Error while reading " + file.getAbsolutePath(), ioe);
+    }
+
+    numberOfChanges = changes.size();
+    return changes;
+  }
+
+  /**
+   * Appends a change to the journal, scheduling a compaction if enough
+   * changes have built up.
+   *
+   * @param fields    the fields that make up the change
+   */
+  synchronized void append(String... fields) {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0) {
+        buf.append(SEPARATOR);
+      }
+      buf.append(fields[i]);
+    }
+    buf.append('\n');
+
+    try {
+      if (writer == null) {
+        writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+      }
+      writer.write(buf.toString());
+      writer.flush();
+    } catch (IOException ioe) {
+      log.error("Error while writing " + file.getAbsolutePath(), ioe);
+      closeWriter();
+    }
+
+    numberOfChanges++;
+    if (numberOfChanges >= COMPACTION_THRESHOLD && !compactionScheduled) {
+      compactionScheduled = true;
+      timer.schedule(new TimerTask() {
+        public void run() {
+          try {
+            compaction.run();
+          } catch (Exception e) {
+            log.error("Error while compacting index", e);
+          }
+        }
+      }, COMPACTION_DELAY);
+    }
+  }
+
+  /**
+   * Clears the journal, once the owning index has been written out in full.
+   */
+  synchronized void clear() {
+    closeWriter();
+    if (file.exists() && !file.delete()) {
+      log.warn("Could not delete " + file.getAbsolutePath());
+    }
+
+    numberOfChanges = 0;
+    compactionScheduled = false;
+  }
+
+  /**
+   * Gets the number of changes recorded in the journal.
+   *
+   * @return  an int
+   */
+  synchronized int getNumberOfChanges() {
+    return numberOfChanges;
+  }
+
+  private void closeWriter() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException ioe) {
+        // can't do much now! ;-)
+      }
+      writer = null;
+    }
+  }
+
+  /**
+   * Replaces an index file with the given lines. The lines are written to a
+   * temporary file, which is synced to disk and then renamed over the
+   * original, so a crash never leaves a partially written index behind.
+   *
+   * @param indexFile   the index file to replace
+   * @param lines       the lines to write
+   * @throws IOException  if the file can't be written
+   */
+  static void replace(File indexFile, Collection<String> lines) throws IOException {
+    File tmp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+    FileOutputStream out = new FileOutputStream(tmp);
+    try {
+      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
+      for (String line : lines) {
+        writer.write(line);
+        writer.newLine();
+      }
+      writer.flush();
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+
+    if (!tmp.renameTo(indexFile)) {
+      // some platforms won't rename over an existing file
+      indexFile.delete();
+      if (!tmp.renameTo(indexFile)) {
+        throw new IOException("Could not replace " + indexFile.getAbsolutePath());
+      }
+    }
+  }
+
+}
@@ -37,7 +37,9 @@ import net.sourceforge.pebble.comparator.ReverseBlogEntryIdComparator;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Collections;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
  * Represents a tag.
@@ -47,7 +49,7 @@ import java.util.Collections;
 public class IndexedTag extends Tag {
 
   /** the blog entries associated with this tag */
-  private List<String> blogEntries = new ArrayList<String>();
+  private SortedSet<String> blogEntries = new TreeSet<String>(new ReverseBlogEntryIdComparator());
 
   /**
    * Creates a new tag with the specified properties.
@@ -64,7 +66,7 @@ public class IndexedTag extends Tag {
    *
    * @return  a Collection of BlogEntry instances
    */
-  public List<String> getBlogEntries() {
+  public synchronized List<String> getBlogEntries() {
     return new ArrayList<String>(blogEntries);
   }
 
@@ -74,9 +76,8 @@ public class IndexedTag extends Tag {
    * @param blogEntryId   a blog entry ID
    */
   public synchronized void addBlogEntry(String blogEntryId) {
-    if (blogEntryId != null && !blogEntries.contains(blogEntryId)) {
+    if (blogEntryId != null) {
       blogEntries.add(blogEntryId);
-      Collections.sort(blogEntries, new ReverseBlogEntryIdComparator());
     }
   }
 
@@ -91,12 +92,33 @@ public class IndexedTag extends Tag {
     }
   }
 
+  /**
+   * Adds the weight of this tag to the score of each blog entry that it's
+   * associated with, walking the posting list in place rather than copying it.
+   *
+   * @param scores          the scores, keyed by blog entry ID
+   * @param weight          the weight of this tag
+   * @param excludedId      a blog entry ID to skip
+   */
+  synchronized void addScores(Map<String,float[]> scores, float weight, String excludedId) {
+    for (String blogEntryId : blogEntries) {
+      if (!blogEntryId.equals(excludedId)) {
+        float[] score = scores.get(blogEntryId);
+        if (score == null) {
+          score = new float[1];
+          scores.put(blogEntryId, score);
+        }
+        score[0] += weight;
+      }
+    }
+  }
+
   /**
    * Gets the number of blog entries associated with this tag.
    *
    * @return  an int
    */
-  public int getNumberOfBlogEntries() {
+  public synchronized int getNumberOfBlogEntries() {
     return blogEntries.size();
   }
 
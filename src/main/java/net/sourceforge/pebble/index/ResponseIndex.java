@@ -41,13 +41,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Collection;
+import java.util.*;
 
 /**
- * Keeps an index of all responses.
+ * Keeps an index of all responses. Response IDs are kept in sorted sets,
+ * and changes are appended to a journal rather than rewriting the index
+ * files each time.
  *
  * @author    Simon Brown
  */
@@ -55,32 +54,51 @@ public class ResponseIndex {
 
   private static final Log log = LogFactory.getLog(ResponseIndex.class);
 
+  private static final String REMOVED = "removed";
+
+  /** orders responses newest first, falling back to the full ID for ties */
+  private static final Comparator<String> RESPONSE_ORDER = new Comparator<String>() {
+    private final Comparator comparator = new ReverseResponseIdComparator();
+
+    public int compare(String s1, String s2) {
+      int result = comparator.compare(s1, s2);
+      if (result == 0) {
+        result = s1.compareTo(s2);
+      }
+      return result;
+    }
+  };
+
   private Blog blog;
 
-  private List<String> approvedResponses = new ArrayList<String>();
-  private List<String> pendingResponses = new ArrayList<String>();
-  private List<String> rejectedResponses = new ArrayList<String>();
+  private SortedSet<String> approvedResponses = new TreeSet<String>(RESPONSE_ORDER);
+  private SortedSet<String> pendingResponses = new TreeSet<String>(RESPONSE_ORDER);
+  private SortedSet<String> rejectedResponses = new TreeSet<String>(RESPONSE_ORDER);
+
+  private IndexJournal journal;
 
   public ResponseIndex(Blog blog) {
     this.blog = blog;
+    this.journal = new IndexJournal(new File(blog.getIndexesDirectory(), "responses.journal"), new Runnable() {
+      public void run() {
+        flush();
+      }
+    });
 
-    approvedResponses = readIndex(State.APPROVED);
-    pendingResponses = readIndex(State.PENDING);
-    rejectedResponses = readIndex(State.REJECTED);
+    readIndex(State.APPROVED);
+    readIndex(State.PENDING);
+    readIndex(State.REJECTED);
+    replayJournal();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
-    approvedResponses = new ArrayList<String>();
-    writeIndex(State.APPROVED);
-
-    pendingResponses = new ArrayList<String>();
-    writeIndex(State.PENDING);
-
-    rejectedResponses = new ArrayList<String>();
-    writeIndex(State.REJECTED);
+  public synchronized void clear() {
+    approvedResponses.clear();
+    pendingResponses.clear();
+    rejectedResponses.clear();
+    flush();
   }
 
   /**
@@ -89,24 +107,32 @@ public class ResponseIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    add(blogEntries);
+    flush();
+  }
+
+  /**
+   * Adds the responses of one or more blog entries to the in-memory index,
+   * without writing the index files.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  synchronized void add(Collection<BlogEntry> blogEntries) {
     for (BlogEntry blogEntry : blogEntries) {
       for (Response response : blogEntry.getResponses()) {
-        if (response.isApproved()) {
-          approvedResponses.add(response.getGuid());
-        } else if (response.isPending()) {
-          pendingResponses.add(response.getGuid());
-        } else if (response.isRejected()) {
-          rejectedResponses.add(response.getGuid());
-        }
+        add(response.getGuid(), response.getState());
       }
     }
+  }
 
-    Collections.sort(approvedResponses, new ReverseResponseIdComparator());
-    Collections.sort(pendingResponses, new ReverseResponseIdComparator());
-    Collections.sort(rejectedResponses, new ReverseResponseIdComparator());
+  /**
+   * Writes the index files to disk and clears the journal.
+   */
+  synchronized void flush() {
     writeIndex(State.APPROVED);
     writeIndex(State.PENDING);
     writeIndex(State.REJECTED);
+    journal.clear();
   }
 
   /**
@@ -115,18 +141,8 @@ public class ResponseIndex {
    * @param response    a Response instance
    */
   public synchronized void index(Response response) {
-    if (response.isApproved()) {
-      approvedResponses.add(response.getGuid());
-      Collections.sort(approvedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.APPROVED);
-    } else if (response.isPending()) {
-      pendingResponses.add(response.getGuid());
-      Collections.sort(pendingResponses, new ReverseResponseIdComparator());
-      writeIndex(State.PENDING);
-    } else if (response.isRejected()) {
-      rejectedResponses.add(response.getGuid());
-      Collections.sort(rejectedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.REJECTED);
+    if (add(response.getGuid(), response.getState())) {
+      journal.append(response.getState().getName(), response.getGuid());
     }
   }
 
@@ -136,39 +152,54 @@ public class ResponseIndex {
    * @param response    a Response instance
    */
   public synchronized void unindex(Response response) {
-    if (approvedResponses.contains(response.getGuid())) {
-      approvedResponses.remove(response.getGuid());
-      writeIndex(State.APPROVED);
-    } else if (pendingResponses.contains(response.getGuid())) {
-      pendingResponses.remove(response.getGuid());
-      writeIndex(State.PENDING);
-    } else if (rejectedResponses.contains(response.getGuid())) {
-      rejectedResponses.remove(response.getGuid());
-      writeIndex(State.REJECTED);
+    if (remove(response.getGuid())) {
+      journal.append(REMOVED, response.getGuid());
     }
   }
 
+  private boolean add(String response, State state) {
+    SortedSet<String> responses = getResponses(state);
+    if (responses != null) {
+      responses.add(response);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  private boolean remove(String response) {
+    return approvedResponses.remove(response)
+        | pendingResponses.remove(response)
+        | rejectedResponses.remove(response);
+  }
+
+  private SortedSet<String> getResponses(State state) {
+    if (State.APPROVED.equals(state)) {
+      return approvedResponses;
+    } else if (State.PENDING.equals(state)) {
+      return pendingResponses;
+    } else if (State.REJECTED.equals(state)) {
+      return rejectedResponses;
+    } else {
+      return null;
+    }
+  }
+
+  private File getIndexFile(State state) {
+    return new File(blog.getIndexesDirectory(), "responses-" + state.getName() + ".index");
+  }
+
   /**
    * Helper method to load the index.
    */
-  private List<String> readIndex(State state) {
-    String filename = null;
-    List<String> responses = new ArrayList<String>();
-    if (state == State.APPROVED) {
-        filename = "responses-approved.index";
-    } else if (state == State.PENDING) {
-      filename = "responses-pending.index";
-    } else if (state == State.REJECTED) {
-      filename = "responses-rejected.index";
-    }
-
-    File indexFile = new File(blog.getIndexesDirectory(), filename);
+  private void readIndex(State state) {
+    File indexFile = getIndexFile(state);
     if (indexFile.exists()) {
       try {
         BufferedReader reader = new BufferedReader(new FileReader(indexFile));
         String response = reader.readLine();
         while (response != null) {
-          responses.add(response);
+          add(response, state);
           response = reader.readLine();
         }
 
@@ -177,40 +208,31 @@ public class ResponseIndex {
         log.error("Error while reading index", e);
       }
     }
+  }
 
-    Collections.sort(responses, new ReverseResponseIdComparator());
+  /**
+   * Applies the changes made since the index files were last written.
+   */
+  private void replayJournal() {
+    for (String[] change : journal.read()) {
+      if (change.length < 2) {
+        continue;
+      }
 
-    return responses;
+      if (change[0].equals(REMOVED)) {
+        remove(change[1]);
+      } else {
+        add(change[1], State.getState(change[0]));
+      }
+    }
   }
 
   /**
    * Helper method to write out the index to disk.
    */
   private void writeIndex(State state) {
-    String filename = null;
-    List<String> responses = null;
-    if (state == State.APPROVED) {
-        filename = "responses-approved.index";
-        responses = approvedResponses;
-    } else if (state == State.PENDING) {
-      filename = "responses-pending.index";
-      responses = pendingResponses;
-    } else if (state == State.REJECTED) {
-      filename = "responses-rejected.index";
-      responses = rejectedResponses;
-    }
-
     try {
-      File indexFile = new File(blog.getIndexesDirectory(), filename);
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
-      for (String response : responses) {
-        writer.write(response);
-        writer.newLine();
-      }
-
-      writer.flush();
-      writer.close();
+      IndexJournal.replace(getIndexFile(state), getResponses(state));
     } catch (Exception e) {
       log.error("Error while writing index", e);
     }
@@ -221,7 +243,7 @@ public class ResponseIndex {
    *
    * @return  an int
    */
-  public int getNumberOfApprovedResponses() {
+  public synchronized int getNumberOfApprovedResponses() {
     return approvedResponses.size();
   }
 
@@ -230,7 +252,7 @@ public class ResponseIndex {
    *
    * @return  an int
    */
-  public int getNumberOfPendingResponses() {
+  public synchronized int getNumberOfPendingResponses() {
     return pendingResponses.size();
   }
 
@@ -239,7 +261,7 @@ public class ResponseIndex {
    *
    * @return  an int
    */
-  public int getNumberOfRejectedResponses() {
+  public synchronized int getNumberOfRejectedResponses() {
     return rejectedResponses.size();
   }
 
@@ -248,7 +270,7 @@ public class ResponseIndex {
    *
    * @return  an int
    */
-  public int getNumberOfResponses() {
+  public synchronized int getNumberOfResponses() {
     return getNumberOfApprovedResponses() + getNumberOfPendingResponses() + getNumberOfRejectedResponses();
   }
 
@@ -266,12 +288,14 @@ public class ResponseIndex {
    *
    * @return  a List of response IDs
    */
-  public List<String> getRecentApprovedResponses(int number) {
-    if (approvedResponses.size() >= number) {
-      return approvedResponses.subList(0, number);
-    } else {
-      return approvedResponses;
+  public synchronized List<String> getRecentApprovedResponses(int number) {
+    List<String> responses = new ArrayList<String>();
+    Iterator<String> it = approvedResponses.iterator();
+    while (it.hasNext() && responses.size() < number) {
+      responses.add(it.next());
     }
+
+    return responses;
   }
 
   /**
@@ -279,7 +303,7 @@ public class ResponseIndex {
    *
    * @return  a List of response IDs
    */
-  public List<String> getApprovedResponses() {
+  public synchronized List<String> getApprovedResponses() {
     return new ArrayList<String>(approvedResponses);
   }
 
@@ -288,7 +312,7 @@ public class ResponseIndex {
    *
    * @return  a List of response IDs
    */
-  public List<String> getPendingResponses() {
+  public synchronized List<String> getPendingResponses() {
     return new ArrayList<String>(pendingResponses);
   }
 
@@ -297,8 +321,8 @@ public class ResponseIndex {
    *
    * @return  a List of response IDs
    */
-  public List<String> getRejectedResponses() {
+  public synchronized List<String> getRejectedResponses() {
     return new ArrayList<String>(rejectedResponses);
   }
 
-}
\ No newline at end of file
+}
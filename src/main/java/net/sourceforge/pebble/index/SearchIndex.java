@@ -49,17 +49,30 @@ import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.Hits;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Collection;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Wraps up the functionality to index blog entries. This is really just
  * a convenient wrapper around Lucene.
+ * <br /><br />
+ * Changes to individual blog entries and static pages are queued and
+ * committed to the index in batches by a background task, so that neither
+ * posting a comment nor searching has to wait for the index to be
+ * rewritten. Searches share a single
+ * IndexSearcher that is reopened whenever the index changes, and neither
+ * searching nor indexing synchronizes on the blog.
  *
  * @author    Simon Brown
  */
@@ -68,8 +81,32 @@ public class SearchIndex {
   /** the log used by this class */
   private static final Log log = LogFactory.getLog(SearchIndex.class);
 
+  /** how long updates are queued for before being committed, in milliseconds */
+  static final long COMMIT_DELAY = 2 * 1000;
+
+  /** the number of queries whose hits are cached with each searcher */
+  static final int CACHED_QUERIES = 32;
+
+  /** the timer used to commit queued updates for all blogs */
+  private static final Timer timer = new Timer(true);
+
   private final Blog blog;
 
+  /** serializes all modifications to the underlying Lucene index */
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  /** queued updates, keyed on ID; a null value means delete only */
+  private final Map<String,PageBasedContent> pendingUpdates = new LinkedHashMap<String,PageBasedContent>();
+
+  /** whether a background commit has been scheduled */
+  private boolean commitScheduled = false;
+
+  /** guards the shared searcher */
+  private final Object searcherLock = new Object();
+
+  /** the searcher currently used for queries, or null if it needs opening */
+  private SharedSearcher searcher;
+
   public SearchIndex(Blog blog) {
     this.blog = blog;
   }
@@ -83,14 +120,20 @@ public class SearchIndex {
       searchDirectory.mkdirs();
     }
 
-    synchronized (blog) {
-      try {
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(searchDirectory, analyzer, true);
-        writer.close();
-      } catch (Exception e) {
-        log.error(e.getMessage(), e);
+    writeLock.lock();
+    try {
+      synchronized (pendingUpdates) {
+        pendingUpdates.clear();
       }
+
+      Analyzer analyzer = getAnalyzer();
+      IndexWriter writer = new IndexWriter(searchDirectory, analyzer, true);
+      writer.close();
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      invalidateSearcher();
+      writeLock.unlock();
     }
   }
 
@@ -98,19 +141,21 @@ public class SearchIndex {
    * Allows a collection of blog entries to be indexed.
    */
   public void indexBlogEntries(Collection<BlogEntry> blogEntries) {
-    synchronized (blog) {
-      try {
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
-
-        for (BlogEntry blogEntry : blogEntries) {
-          index(blogEntry, writer);
-        }
+    writeLock.lock();
+    try {
+      Analyzer analyzer = getAnalyzer();
+      IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
 
-        writer.close();
-      } catch (Exception e) {
-        log.error(e.getMessage(), e);
+      for (BlogEntry blogEntry : blogEntries) {
+        index(blogEntry, writer);
       }
+
+      writer.close();
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      invalidateSearcher();
+      writeLock.unlock();
     }
   }
 
@@ -118,66 +163,44 @@ public class SearchIndex {
    * Allows a collection of static pages to be indexed.
    */
   public void indexStaticPages(Collection<StaticPage> staticPages) {
-    synchronized (blog) {
-      try {
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
-
-        for (StaticPage staticPage : staticPages) {
-          index(staticPage, writer);
-        }
+    writeLock.lock();
+    try {
+      Analyzer analyzer = getAnalyzer();
+      IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
 
-        writer.close();
-      } catch (Exception e) {
-        log.error(e.getMessage(), e);
+      for (StaticPage staticPage : staticPages) {
+        index(staticPage, writer);
       }
+
+      writer.close();
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      invalidateSearcher();
+      writeLock.unlock();
     }
   }
 
   /**
    * Allows a single blog entry to be (re)indexed. If the entry is already
-   * indexed, this method deletes the previous index before adding the new
-   * one.
+   * indexed, the previous index is deleted before adding the new one. The
+   * change is queued and committed to the index shortly afterwards.
    *
    * @param blogEntry   the BlogEntry instance to index
    */
   public void index(BlogEntry blogEntry) {
-    try {
-      synchronized (blog) {
-        // first delete the blog entry from the index (if it was there)
-        unindex(blogEntry);
-
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
-        index(blogEntry, writer);
-        writer.close();
-      }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
-    }
+    queue(blogEntry.getId(), blogEntry);
   }
 
   /**
    * Allows a single static page to be (re)indexed. If the page is already
-   * indexed, this method deletes the previous index before adding the new
-   * one.
+   * indexed, the previous index is deleted before adding the new one. The
+   * change is queued and committed to the index shortly afterwards.
    *
    * @param staticPage    the StaticPage instance to index
    */
   public void index(StaticPage staticPage) {
-    try {
-      synchronized (blog) {
-        // first delete the static page from the index (if it was there)
-        unindex(staticPage);
-
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
-        index(staticPage, writer);
-        writer.close();
-      }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
-    }
+    queue(staticPage.getId(), staticPage);
   }
 
   /**
@@ -197,17 +220,7 @@ public class SearchIndex {
    * @param blogEntry   the BlogEntry instance to be removed
    */
   public void unindex(BlogEntry blogEntry) {
-    try {
-      synchronized (blog) {
-        log.debug("Attempting to delete index for " + blogEntry.getTitle());
-        IndexReader reader = IndexReader.open(blog.getSearchIndexDirectory());
-        Term term = new Term("id", blogEntry.getId());
-        log.debug("Deleted " + reader.delete(term) + " document(s) from the index");
-        reader.close();
-      }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
-    }
+    queue(blogEntry.getId(), null);
   }
 
   /**
@@ -216,16 +229,227 @@ public class SearchIndex {
    * @param staticPage    the StaticPage instance to be removed
    */
   public void unindex(StaticPage staticPage) {
+    queue(staticPage.getId(), null);
+  }
+
+  /**
+   * Queues an update to the index, scheduling a background commit if one
+   * isn't already pending.
+   *
+   * @param id        the ID of the blog entry or static page
+   * @param content   the content to (re)index, or null to just delete it
+   */
+  private void queue(String id, PageBasedContent content) {
+    synchronized (pendingUpdates) {
+      // remove first so that the latest update is also the last to be applied
+      pendingUpdates.remove(id);
+      pendingUpdates.put(id, content);
+
+      if (!commitScheduled) {
+        commitScheduled = true;
+        scheduleCommit();
+      }
+    }
+  }
+
+  /**
+   * Schedules a background commit. If the index is busy (e.g. being
+   * rebuilt) when the commit is due, it is rescheduled rather than making
+   * the timer wait.
+   */
+  private void scheduleCommit() {
+    timer.schedule(new TimerTask() {
+      public void run() {
+        // the timer is shared between blogs, so don't let it die
+        try {
+          if (!commitIfIdle()) {
+            scheduleCommit();
+          }
+        } catch (Exception e) {
+          log.error("Error committing search index updates for " + blog.getId(), e);
+        }
+      }
+    }, COMMIT_DELAY);
+  }
+
+  /**
+   * Commits queued updates, but only if nothing else is modifying the index.
+   *
+   * @return  true if the updates were committed, false if the index was busy
+   */
+  private boolean commitIfIdle() {
+    if (writeLock.tryLock()) {
+      try {
+        commit();
+      } finally {
+        writeLock.unlock();
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Commits all queued updates to the index and, if anything changed,
+   * reopens the shared searcher.
+   */
+  public void commit() {
+    writeLock.lock();
     try {
-      synchronized (blog) {
-        log.debug("Attempting to delete index for " + staticPage.getTitle());
+      Map<String,PageBasedContent> updates;
+      synchronized (pendingUpdates) {
+        commitScheduled = false;
+        if (pendingUpdates.isEmpty()) {
+          return;
+        }
+
+        updates = new LinkedHashMap<String,PageBasedContent>(pendingUpdates);
+        pendingUpdates.clear();
+      }
+
+      log.debug("Committing " + updates.size() + " update(s) to the search index");
+      try {
+        // Lucene only allows deletes through an IndexReader, so delete the
+        // old documents first and then add the new ones with one writer
         IndexReader reader = IndexReader.open(blog.getSearchIndexDirectory());
-        Term term = new Term("id", staticPage.getId());
-        log.debug("Deleted " + reader.delete(term) + " document(s) from the index");
-        reader.close();
+        try {
+          for (String id : updates.keySet()) {
+            reader.delete(new Term("id", id));
+          }
+        } finally {
+          reader.close();
+        }
+
+        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), getAnalyzer(), false);
+        try {
+          for (PageBasedContent content : updates.values()) {
+            if (content instanceof BlogEntry) {
+              index((BlogEntry)content, writer);
+            } else if (content instanceof StaticPage) {
+              index((StaticPage)content, writer);
+            }
+          }
+        } finally {
+          writer.close();
+        }
+      } catch (Exception e) {
+        log.error(e.getMessage(), e);
+      }
+
+      invalidateSearcher();
+    } finally {
+      writeLock.unlock();
+    }
+
+    // reopen now, so that the next query doesn't have to
+    try {
+      releaseSearcher(acquireSearcher());
+    } catch (IOException e) {
+      log.warn("Could not reopen the search index - " + e.getMessage());
+    }
+  }
+
+  /**
+   * Commits any queued updates and closes the shared searcher. Called when
+   * the blog is stopped.
+   */
+  public void close() {
+    commit();
+    invalidateSearcher();
+  }
+
+  /**
+   * Gets the shared searcher, opening a new one if the index has changed
+   * since it was last opened. Callers must release it when finished.
+   */
+  private SharedSearcher acquireSearcher() throws IOException {
+    synchronized (searcherLock) {
+      if (searcher == null) {
+        searcher = new SharedSearcher(new IndexSearcher(blog.getSearchIndexDirectory()));
+      }
+
+      searcher.references++;
+      return searcher;
+    }
+  }
+
+  /**
+   * Releases a shared searcher, closing it if it has been replaced and is
+   * no longer in use.
+   */
+  private void releaseSearcher(SharedSearcher sharedSearcher) {
+    synchronized (searcherLock) {
+      sharedSearcher.references--;
+      if (sharedSearcher.references == 0 && sharedSearcher != searcher) {
+        try {
+          sharedSearcher.searcher.close();
+        } catch (IOException e) {
+          // can't do much now! ;-)
+        }
+      }
+    }
+  }
+
+  /**
+   * Discards the shared searcher so that the next search sees the latest
+   * version of the index. It is closed once any searches using it finish.
+   */
+  void invalidateSearcher() {
+    synchronized (searcherLock) {
+      if (searcher != null) {
+        SharedSearcher old = searcher;
+        searcher = null;
+        if (old.references == 0) {
+          try {
+            old.searcher.close();
+          } catch (IOException e) {
+            // can't do much now! ;-)
+          }
+        }
       }
+    }
+  }
+
+  /**
+   * Opens a new IndexWriter on the search index. Used when streaming a full
+   * reindex, where a single writer is kept open for the whole run. Other
+   * modifications to the index are held back until the writer is passed
+   * to {@link #closeIndexWriter(IndexWriter)}, which must be called from
+   * the same thread.
+   *
+   * @param create    true to create a new (empty) index, false to append
+   * @return  an IndexWriter instance
+   * @throws Exception  if the writer cannot be opened
+   */
+  IndexWriter openIndexWriter(boolean create) throws Exception {
+    File searchDirectory = new File(blog.getSearchIndexDirectory());
+    if (!searchDirectory.exists()) {
+      searchDirectory.mkdirs();
+    }
+
+    writeLock.lock();
+    try {
+      return new IndexWriter(searchDirectory, getAnalyzer(), create);
     } catch (Exception e) {
-      log.error(e.getMessage(), e);
+      writeLock.unlock();
+      throw e;
+    }
+  }
+
+  /**
+   * Closes an IndexWriter opened with {@link #openIndexWriter(boolean)},
+   * making the changes visible to subsequent searches.
+   *
+   * @param writer    the IndexWriter to close
+   * @throws IOException  if the writer cannot be closed
+   */
+  void closeIndexWriter(IndexWriter writer) throws IOException {
+    try {
+      writer.close();
+    } finally {
+      invalidateSearcher();
+      writeLock.unlock();
     }
   }
 
@@ -235,7 +459,7 @@ public class SearchIndex {
    * @param blogEntry   the BlogEntry instance to index
    * @param writer      the IndexWriter to index with
    */
-  private void index(BlogEntry blogEntry, IndexWriter writer) {
+  void index(BlogEntry blogEntry, IndexWriter writer) {
     if (!blogEntry.isPublished()) {
       return;
     }
@@ -361,7 +585,34 @@ public class SearchIndex {
     }
   }
 
+  /**
+   * Performs a search, returning all of the hits ordered by relevance.
+   *
+   * @param queryString   the query
+   * @return  a SearchResults instance
+   * @throws SearchException  if the search cannot be performed
+   */
   public SearchResults search(String queryString) throws SearchException {
+    return search(queryString, false, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Performs a search, returning a single page of hits. Only the stored
+   * fields for the hits on that page are loaded. The ranked hits for recent
+   * queries are cached with the searcher, so paging through the results or
+   * repeating a query doesn't run the search again; the cache is discarded
+   * along with the searcher whenever the index changes.
+   *
+   * @param queryString   the query
+   * @param sortByDate    true to order by date (newest first), false to
+   *                      order by relevance
+   * @param offset        the (zero based) index of the first hit to return
+   * @param limit         the maximum number of hits to return
+   * @return  a SearchResults instance containing the hits for the page and
+   *          the total number of hits
+   * @throws SearchException  if the search cannot be performed
+   */
+  public SearchResults search(String queryString, boolean sortByDate, int offset, int limit) throws SearchException {
 
     log.debug("Performing search : " + queryString);
 
@@ -369,25 +620,33 @@ public class SearchIndex {
     searchResults.setQuery(queryString);
 
     if (queryString != null && queryString.length() > 0) {
-      Searcher searcher = null;
+      // queued changes are left to the background commit, which reopens the
+      // searcher, so searching never has to write to the index
+      SharedSearcher sharedSearcher = null;
 
       try {
-        searcher = new IndexSearcher(blog.getSearchIndexDirectory());
-        Query query = QueryParser.parse(queryString, "blogEntry", getAnalyzer());
-        Hits hits = searcher.search(query);
-
-        for (int i = 0; i < hits.length(); i++) {
-          Document doc = hits.doc(i);
-          SearchHit result = new SearchHit(
-              blog,
-              doc.get("id"),
-              doc.get("permalink"),
-              doc.get("title"),
-              doc.get("subtitle"),
-              doc.get("truncatedBody"),
-              DateField.stringToDate(doc.get("date")),
-              hits.score(i));
-          searchResults.add(result);
+        sharedSearcher = acquireSearcher();
+        Hits hits = getHits(sharedSearcher, queryString, sortByDate);
+
+        // Hits loads documents lazily and isn't thread-safe
+        synchronized (hits) {
+          searchResults.setNumberOfHits(hits.length());
+
+          int end = (int)Math.min((long)offset + limit, hits.length());
+          for (int i = Math.max(offset, 0); i < end; i++) {
+            Document doc = hits.doc(i);
+            SearchHit result = new SearchHit(
+                blog,
+                doc.get("id"),
+                doc.get("permalink"),
+                doc.get("title"),
+                doc.get("subtitle"),
+                doc.get("truncatedBody"),
+                DateField.stringToDate(doc.get("date")),
+                hits.score(i));
+            result.setNumber(i + 1);
+            searchResults.add(result);
+          }
         }
       } catch (ParseException pe) {
         pe.printStackTrace();
@@ -396,12 +655,8 @@ public class SearchIndex {
         e.printStackTrace();
         throw new SearchException(e.getMessage());
       } finally {
-        if (searcher != null) {
-          try {
-            searcher.close();
-          } catch (IOException e) {
-            // can't do much now! ;-)
-          }
+        if (sharedSearcher != null) {
+          releaseSearcher(sharedSearcher);
         }
       }
     }
@@ -409,5 +664,55 @@ public class SearchIndex {
     return searchResults;
   }
 
-}
+  /**
+   * Gets the ranked hits for a query, from the searcher's cache if possible.
+   */
+  private Hits getHits(SharedSearcher sharedSearcher, String queryString, boolean sortByDate) throws Exception {
+    String key = (sortByDate ? "date:" : "score:") + queryString.trim().replaceAll("\\s+", " ");
+
+    synchronized (sharedSearcher.results) {
+      Hits hits = sharedSearcher.results.get(key);
+      if (hits != null) {
+        return hits;
+      }
+    }
+
+    Query query = QueryParser.parse(queryString, "blogEntry", getAnalyzer());
+    Hits hits;
+    if (sortByDate) {
+      // blog entry and static page IDs are their creation times
+      hits = sharedSearcher.searcher.search(query, new Sort(new SortField("id", SortField.STRING, true)));
+    } else {
+      hits = sharedSearcher.searcher.search(query);
+    }
+
+    synchronized (sharedSearcher.results) {
+      sharedSearcher.results.put(key, hits);
+    }
+
+    return hits;
+  }
 
+  /**
+   * An IndexSearcher shared between concurrent searches, along with the
+   * number of searches currently using it and the hits for recent queries.
+   */
+  private static class SharedSearcher {
+
+    private final IndexSearcher searcher;
+    private int references = 0;
+
+    /** the hits for recent queries, least recently used first */
+    private final Map<String,Hits> results = new LinkedHashMap<String,Hits>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String,Hits> eldest) {
+        return size() > CACHED_QUERIES;
+      }
+    };
+
+    SharedSearcher(IndexSearcher searcher) {
+      this.searcher = searcher;
+    }
+
+  }
+
+}
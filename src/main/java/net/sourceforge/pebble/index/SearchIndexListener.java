@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.index;
 
+import net.sourceforge.pebble.api.event.RetryableListener;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
@@ -40,7 +41,7 @@ import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
  *
  * @author    Simon Brown
  */
-public class SearchIndexListener implements BlogEntryListener {
+public class SearchIndexListener implements BlogEntryListener, RetryableListener {
 
   /**
    * Called when a blog entry has been added.
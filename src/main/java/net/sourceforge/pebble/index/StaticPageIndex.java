@@ -129,16 +129,32 @@ public class StaticPageIndex {
   }
 
   /**
-   * Unindexes a single page.
+   * Unindexes a single page, rebuilding the index if it can't be locked.
    *
    * @param staticPage    a Page instance
    */
-  public synchronized void unindex(StaticPage staticPage) {
+  public void unindex(StaticPage staticPage) {
+    if (!unindexIfLocked(staticPage)) {
+      // reindexing takes the blog's structure lock, so this mustn't be done
+      // while holding this index's monitor - writers hold that lock while
+      // they wait for the monitor
+      blog.reindexStaticPages();
+    }
+  }
+
+  /**
+   * Unindexes a single page, if the index can be locked.
+   *
+   * @param staticPage    a Page instance
+   * @return  true if the page was unindexed, false otherwise
+   */
+  private synchronized boolean unindexIfLocked(StaticPage staticPage) {
     if (lock()) {
       readIndex();
       index.remove(staticPage.getName());
       writeIndex();
       unlock();
+      return true;
     } else {
       if (lockAttempts <= MAXIMUM_LOCK_ATTEMPTS) {
         try {
@@ -146,9 +162,9 @@ public class StaticPageIndex {
         } catch (InterruptedException ie) {
           // ignore
         }
-        unindex(staticPage);
+        return unindexIfLocked(staticPage);
       } else {
-        blog.reindexStaticPages();
+        return false;
       }
     }
   }
@@ -41,7 +41,8 @@ import java.io.*;
 import java.util.*;
 
 /**
- * Represents the tag index for a blog.
+ * Represents the tag index for a blog. Changes are appended to a journal
+ * rather than rewriting the index file each time.
  *
  * @author    Simon Brown
  */
@@ -49,6 +50,9 @@ public class TagIndex {
 
   private static final Log log = LogFactory.getLog(TagIndex.class);
 
+  private static final String ADDED = "A";
+  private static final String REMOVED = "R";
+
   private Blog blog;
 
   /** the map containing the tags */
@@ -57,19 +61,39 @@ public class TagIndex {
   /** a view onto the map, ordered by tag name */
   private List<Tag> orderedTags = new ArrayList<Tag>();
 
+  /** the maximum number of related blog entry lists that are kept */
+  static final int MAXIMUM_RELATED_CACHE_SIZE = 1000;
+
+  /** related blog entries, keyed by blog entry and its tags - cleared whenever the tagging changes */
+  private Map<String,List<String>> relatedBlogEntries = new LinkedHashMap<String,List<String>>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String,List<String>> eldest) {
+      return size() > MAXIMUM_RELATED_CACHE_SIZE;
+    }
+  };
+
+  private IndexJournal journal;
+
   public TagIndex(Blog blog) {
     this.blog = blog;
+    this.journal = new IndexJournal(new File(blog.getIndexesDirectory(), "tags.journal"), new Runnable() {
+      public void run() {
+        compact();
+      }
+    });
 
     readIndex();
+    replayJournal();
     recalculateTagRankings();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     tags = new HashMap<String,IndexedTag>();
+    relatedBlogEntries.clear();
     writeIndex();
+    journal.clear();
   }
 
   /**
@@ -78,6 +102,17 @@ public class TagIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    add(blogEntries);
+    flush();
+  }
+
+  /**
+   * Adds one or more blog entries to the in-memory index, without writing
+   * the index file or recalculating the tag rankings.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  synchronized void add(Collection<BlogEntry> blogEntries) {
     for (BlogEntry blogEntry : blogEntries) {
       if (blogEntry.isPublished()) {
         for (Tag tag : blogEntry.getAllTags()) {
@@ -86,8 +121,14 @@ public class TagIndex {
         }
       }
     }
+  }
 
-    writeIndex();
+  /**
+   * Writes the index to disk, clears the journal and recalculates the tag
+   * rankings.
+   */
+  synchronized void flush() {
+    compact();
     recalculateTagRankings();
   }
 
@@ -101,9 +142,9 @@ public class TagIndex {
       for (Tag tag : blogEntry.getAllTags()) {
         IndexedTag t = getTag(tag.getName());
         t.addBlogEntry(blogEntry.getId());
+        journal.append(ADDED, blogEntry.getId(), tag.getName());
       }
 
-      writeIndex();
       recalculateTagRankings();
     }
   }
@@ -114,13 +155,36 @@ public class TagIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
-    for (Tag tag : tags.values()) {
-      IndexedTag t = getTag(tag.getName());
-      t.removeBlogEntry(blogEntry.getId());
+    remove(blogEntry.getId());
+    journal.append(REMOVED, blogEntry.getId());
+    recalculateTagRankings();
+  }
+
+  private void remove(String blogEntryId) {
+    for (IndexedTag tag : tags.values()) {
+      tag.removeBlogEntry(blogEntryId);
     }
+  }
 
+  /**
+   * Writes the index to disk and clears the journal.
+   */
+  private synchronized void compact() {
     writeIndex();
-    recalculateTagRankings();
+    journal.clear();
+  }
+
+  /**
+   * Applies the changes made since the index file was last written.
+   */
+  private void replayJournal() {
+    for (String[] change : journal.read()) {
+      if (change[0].equals(ADDED) && change.length > 2) {
+        getTag(change[2]).addBlogEntry(change[1]);
+      } else if (change[0].equals(REMOVED) && change.length > 1) {
+        remove(change[1]);
+      }
+    }
   }
 
   /**
@@ -158,21 +222,18 @@ public class TagIndex {
    */
   private void writeIndex() {
     try {
-      File indexFile = new File(blog.getIndexesDirectory(), "tags.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
+      List<String> lines = new ArrayList<String>();
       for (IndexedTag tag : tags.values()) {
-        writer.write(tag.getName());
-        writer.write("=");
+        StringBuffer line = new StringBuffer(tag.getName());
+        line.append("=");
         for (String blogEntry : tag.getBlogEntries()) {
-          writer.write(blogEntry);
-          writer.write(",");
+          line.append(blogEntry);
+          line.append(",");
         }
-        writer.newLine();
+        lines.add(line.toString());
       }
 
-      writer.flush();
-      writer.close();
+      IndexJournal.replace(new File(blog.getIndexesDirectory(), "tags.index"), lines);
     } catch (Exception e) {
       log.error("Error while writing index", e);
     }
@@ -195,6 +256,9 @@ public class TagIndex {
   }
 
   private synchronized void recalculateTagRankings() {
+    // the tagging has changed, so related blog entries may have too
+    relatedBlogEntries.clear();
+
     if (tags.size() > 0) {
       // find the maximum
       int maxBlogEntries = 0;
@@ -232,6 +296,77 @@ public class TagIndex {
     return new ArrayList<Tag>(orderedTags);
   }
 
+  /**
+   * Gets the published blog entries that are most closely related to the
+   * specified blog entry, by the tags they share. Each shared tag scores
+   * more the fewer blog entries it has, ties are broken in favour of the
+   * most recent blog entry, and the results are cached until the tagging
+   * changes.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @param number      the maximum number of blog entries to return
+   * @return  a List of blog entry IDs, most related first
+   */
+  public synchronized List<String> getRelatedBlogEntries(BlogEntry blogEntry, int number) {
+    List<Tag> blogEntryTags = blogEntry.getAllTags();
+
+    StringBuffer key = new StringBuffer(blogEntry.getId());
+    key.append("/");
+    key.append(number);
+    for (Tag tag : blogEntryTags) {
+      key.append("/");
+      key.append(tag.getName());
+    }
+
+    List<String> related = relatedBlogEntries.get(key.toString());
+    if (related == null) {
+      related = findRelatedBlogEntries(blogEntry.getId(), blogEntryTags, number);
+      relatedBlogEntries.put(key.toString(), related);
+    }
+
+    return new ArrayList<String>(related);
+  }
+
+  private List<String> findRelatedBlogEntries(String blogEntryId, List<Tag> blogEntryTags, int number) {
+    if (number <= 0) {
+      return new ArrayList<String>();
+    }
+
+    Map<String,float[]> scores = new HashMap<String,float[]>();
+    for (Tag tag : blogEntryTags) {
+      IndexedTag indexedTag = tags.get(Tag.encode(tag.getName()));
+      if (indexedTag != null && indexedTag.getNumberOfBlogEntries() > 0) {
+        float weight = (float)(1.0 / Math.log(1 + indexedTag.getNumberOfBlogEntries()));
+        indexedTag.addScores(scores, weight, blogEntryId);
+      }
+    }
+
+    // keep the top N in a min-heap, so the least related is evicted first
+    Comparator<Map.Entry<String,float[]>> comparator = new Comparator<Map.Entry<String,float[]>>() {
+      public int compare(Map.Entry<String,float[]> e1, Map.Entry<String,float[]> e2) {
+        int result = Float.compare(e1.getValue()[0], e2.getValue()[0]);
+        if (result == 0) {
+          result = Long.valueOf(e1.getKey()).compareTo(Long.valueOf(e2.getKey()));
+        }
+        return result;
+      }
+    };
+    PriorityQueue<Map.Entry<String,float[]>> heap = new PriorityQueue<Map.Entry<String,float[]>>(number + 1, comparator);
+    for (Map.Entry<String,float[]> entry : scores.entrySet()) {
+      heap.offer(entry);
+      if (heap.size() > number) {
+        heap.poll();
+      }
+    }
+
+    LinkedList<String> related = new LinkedList<String>();
+    while (!heap.isEmpty()) {
+      related.addFirst(heap.poll().getKey());
+    }
+
+    return new ArrayList<String>(related);
+  }
+
   /**
    * Gets the blog entries for a given tag.
    *
@@ -150,6 +150,53 @@ public abstract class AbstractLogger {
     return new Log(blog, logEntries);
   }
 
+  /**
+   * Gets the statistics for a given year, month and day. By default these
+   * are calculated from the log, but loggers may override this to use
+   * pre-aggregated statistics.
+   *
+   * @param year    the year to get statistics for
+   * @param month   the month to get statistics for
+   * @param day     the day to get statistics for
+   * @return    a LogStatistics object
+   */
+  public LogStatistics getLogStatistics(int year, int month, int day) {
+    LogStatistics statistics = new LogStatistics(blog);
+    statistics.add(getLog(year, month, day).getLogEntries());
+
+    return statistics;
+  }
+
+  /**
+   * Gets the statistics for today.
+   *
+   * @return    a LogStatistics object
+   */
+  public LogStatistics getLogStatistics() {
+    Calendar cal = blog.getCalendar();
+    return getLogStatistics(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH)+1, cal.get(Calendar.DAY_OF_MONTH));
+  }
+
+  /**
+   * Gets the statistics for a given year and month.
+   *
+   * @param year    the year to get statistics for
+   * @param month   the month to get statistics for
+   * @return    a LogStatistics object
+   */
+  public LogStatistics getLogStatistics(int year, int month) {
+    LogStatistics statistics = new LogStatistics(blog);
+    Calendar cal = blog.getCalendar();
+    cal.set(Calendar.YEAR, year);
+    cal.set(Calendar.DAY_OF_MONTH, 1);
+    cal.set(Calendar.MONTH, month-1);
+    for (int day = 1; day <= cal.getActualMaximum(Calendar.DAY_OF_MONTH); day++) {
+      statistics.add(getLogStatistics(year, month, day));
+    }
+
+    return statistics;
+  }
+
   /**
    * Gets the log summary information for the given year, month and day.
    *
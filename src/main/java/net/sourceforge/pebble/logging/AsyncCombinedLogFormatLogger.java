@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.domain.Blog;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Combined Log Format logger that doesn't write to disk on the request
+ * thread. Entries are handed to a bounded buffer and a background thread
+ * drains them in batches, keeping the current day's log file open between
+ * batches. The buffer size and what happens when it's full (drop the entry,
+ * or block until there's space) can be configured with the
+ * <code>AsyncCombinedLogFormatLogger.bufferSize</code> and
+ * <code>AsyncCombinedLogFormatLogger.overflowPolicy</code> plugin properties.
+ *
+ * @author    Simon Brown
+ */
+public class AsyncCombinedLogFormatLogger extends CombinedLogFormatLogger {
+
+  private static final org.apache.commons.logging.Log log = LogFactory.getLog(AsyncCombinedLogFormatLogger.class);
+
+  public static final String BUFFER_SIZE_KEY = "AsyncCombinedLogFormatLogger.bufferSize";
+  public static final String OVERFLOW_POLICY_KEY = "AsyncCombinedLogFormatLogger.overflowPolicy";
+
+  /** drops entries when the buffer is full */
+  public static final String DROP_POLICY = "drop";
+
+  /** blocks the request thread until there is space in the buffer */
+  public static final String BLOCK_POLICY = "block";
+
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+  static final int BATCH_SIZE = 256;
+
+  /** how long the writer waits for entries before flushing, in milliseconds */
+  private static final long FLUSH_INTERVAL = 1000;
+
+  private final ConcurrentLinkedQueue<LogEntry> buffer = new ConcurrentLinkedQueue<LogEntry>();
+
+  /** replaced (under the lock on this logger) only while it's stopped */
+  private volatile Semaphore capacity;
+  private volatile boolean block;
+
+  private final AtomicLong entriesWritten = new AtomicLong();
+  private final AtomicLong entriesDropped = new AtomicLong();
+
+  private volatile Thread writerThread;
+  private volatile boolean running;
+
+  /** set once stop() has been called, until the logger is started again */
+  private volatile boolean stopped;
+
+  /** only used by the writer thread */
+  private final SimpleDateFormat filenameFormat = new SimpleDateFormat("'blog-'yyyyMMdd'.log'");
+  private final CombinedFormatLogEntryFormat format;
+  private BufferedWriter writer;
+  private String currentFilename;
+
+  public AsyncCombinedLogFormatLogger(Blog blog) {
+    super(blog);
+    filenameFormat.setTimeZone(blog.getTimeZone());
+    format = new CombinedFormatLogEntryFormat(blog);
+    configure(DEFAULT_BUFFER_SIZE, DROP_POLICY);
+  }
+
+  /**
+   * Sets the size of the buffer and the policy used when it is full. This
+   * should only be called while the logger is stopped.
+   *
+   * @param bufferSize      the maximum number of entries waiting to be written
+   * @param overflowPolicy  DROP_POLICY or BLOCK_POLICY
+   */
+  synchronized void configure(int bufferSize, String overflowPolicy) {
+    this.capacity = new Semaphore(bufferSize - buffer.size());
+    this.block = BLOCK_POLICY.equalsIgnoreCase(overflowPolicy);
+  }
+
+  /**
+   * Logs a HTTP request.
+   *
+   * @param request   a HttpServletRequest
+   */
+  public void log(HttpServletRequest request, int status) {
+    LogEntry entry = createLogEntry(request, status);
+
+    Semaphore capacity = this.capacity;
+    if (capacity.tryAcquire()) {
+      enqueue(entry, capacity);
+    } else if (block && running) {
+      // the buffer is full, so make sure the writer is awake before waiting
+      LockSupport.unpark(writerThread);
+      capacity.acquireUninterruptibly();
+      enqueue(entry, capacity);
+    } else {
+      entriesDropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Adds an entry to the buffer. If the logger has been stopped, the entry
+   * may have missed the final drain, so it's taken back out and counted as
+   * dropped (unless the writer got to it first).
+   */
+  private void enqueue(LogEntry entry, Semaphore capacity) {
+    buffer.offer(entry);
+
+    if (stopped && buffer.remove(entry)) {
+      capacity.release();
+      entriesDropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Called to start this logger.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+
+    int bufferSize = DEFAULT_BUFFER_SIZE;
+    String value = blog.getPluginProperties().getProperty(BUFFER_SIZE_KEY);
+    if (value != null && value.trim().length() > 0) {
+      try {
+        bufferSize = Math.max(1, Integer.parseInt(value.trim()));
+      } catch (NumberFormatException nfe) {
+        blog.warn("Access log buffer size \"" + value + "\" isn't a number, using " + DEFAULT_BUFFER_SIZE + ".");
+      }
+    }
+    configure(bufferSize, blog.getPluginProperties().getProperty(OVERFLOW_POLICY_KEY));
+
+    stopped = false;
+    running = true;
+    writerThread = new Thread(new Runnable() {
+      public void run() {
+        while (running) {
+          if (drain() == 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL));
+          }
+        }
+      }
+    }, "pebble-access-log-" + blog.getId());
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Called to stop this logger, writing any buffered entries and closing
+   * the log file.
+   */
+  public synchronized void stop() {
+    Thread thread = writerThread;
+    stopped = true;
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      try {
+        thread.join();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      writerThread = null;
+    }
+
+    // write anything left over and release the file
+    while (drain() > 0);
+    closeWriter();
+    statistics.save();
+  }
+
+  /**
+   * Gets the number of entries that have been written to the log files.
+   *
+   * @return  a count of entries
+   */
+  public long getNumberOfEntriesWritten() {
+    return entriesWritten.get();
+  }
+
+  /**
+   * Gets the number of entries that have been dropped because the
+   * buffer was full.
+   *
+   * @return  a count of entries
+   */
+  public long getNumberOfEntriesDropped() {
+    return entriesDropped.get();
+  }
+
+  /**
+   * Writes a batch of buffered entries to the log file, rolling over to a
+   * new file when the day changes.
+   *
+   * @return  the number of entries taken from the buffer
+   */
+  private int drain() {
+    int count = 0;
+    int written = 0;
+    try {
+      LogEntry entry = buffer.poll();
+      while (entry != null) {
+        count++;
+        String filename = filenameFormat.format(entry.getDate());
+        if (writer == null || !filename.equals(currentFilename)) {
+          closeWriter();
+          currentFilename = filename;
+          writer = new BufferedWriter(new FileWriter(new File(blog.getLogsDirectory(), filename), true));
+        }
+        String line = format.format(entry);
+        statistics.add(entry, line);
+        writer.write(line);
+        writer.newLine();
+        written++;
+
+        if (count == BATCH_SIZE) {
+          break;
+        }
+        entry = buffer.poll();
+      }
+
+      if (writer != null && count > 0) {
+        writer.flush();
+      }
+    } catch (IOException ioe) {
+      log.error("Could not write to access log for " + blog.getId(), ioe);
+      entriesDropped.addAndGet(count - written);
+      closeWriter();
+    } finally {
+      entriesWritten.addAndGet(written);
+      capacity.release(count);
+    }
+
+    return count;
+  }
+
+  private void closeWriter() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException ioe) {
+        log.warn("Could not close access log for " + blog.getId(), ioe);
+      }
+      writer = null;
+    }
+  }
+
+}
@@ -58,9 +58,13 @@ public class CombinedLogFormatLogger extends AbstractLogger {
 
   private List entries = new ArrayList();
 
+  /** statistics kept up to date as entries are written */
+  final LogStatisticsStore statistics;
+
   public CombinedLogFormatLogger(Blog blog) {
     super(blog);
     filenameFormat.setTimeZone(blog.getTimeZone());
+    statistics = new LogStatisticsStore(blog);
   }
 
   /**
@@ -69,6 +73,21 @@ public class CombinedLogFormatLogger extends AbstractLogger {
    * @param request   a HttpServletRequest
    */
   public synchronized void log(HttpServletRequest request, int status) {
+    entries.add(createLogEntry(request, status));
+
+    if (entries.size() >= FLUSH_SIZE) {
+      flush();
+    }
+  }
+
+  /**
+   * Creates a log entry representing a HTTP request.
+   *
+   * @param request   a HttpServletRequest
+   * @param status    the HTTP status code of the response
+   * @return  a LogEntry instance
+   */
+  protected LogEntry createLogEntry(HttpServletRequest request, int status) {
     String externalUri = (String)request.getAttribute(Constants.EXTERNAL_URI);
     LogEntry entry = new LogEntry();
     entry.setHost(request.getRemoteAddr());
@@ -81,11 +100,8 @@ public class CombinedLogFormatLogger extends AbstractLogger {
     entry.setRequest(buf.toString());
     entry.setReferer(request.getHeader(REFERER_HEADER));
     entry.setAgent(request.getHeader(USER_AGENT_HEADER));
-    entries.add(entry);
 
-    if (entries.size() >= FLUSH_SIZE) {
-      flush();
-    }
+    return entry;
   }
 
   private void flush() {
@@ -108,6 +124,7 @@ public class CombinedLogFormatLogger extends AbstractLogger {
    */
   public synchronized void stop() {
     flush();
+    statistics.save();
   }
 
   /**
@@ -184,27 +201,24 @@ public class CombinedLogFormatLogger extends AbstractLogger {
     cal.set(Calendar.YEAR, year);
     cal.set(Calendar.MONTH, month-1);
     cal.set(Calendar.DAY_OF_MONTH, day);
-    int totalRequests = 0;
-
-    try {
-      // read the file a line at a time
-      File file = new File(blog.getLogsDirectory(), getFilename(year, month, day));
-      if (file.exists()) {
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line = reader.readLine();
-        while (line != null) {
-          totalRequests++;
-          line = reader.readLine();
-        }
-        reader.close();
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    int totalRequests = statistics.getLogStatistics(year, month, day).getTotalRequests();
 
     return new LogSummaryItem(blog, cal.getTime(), totalRequests);
   }
 
+  /**
+   * Gets the statistics for a given year, month and day, from the
+   * pre-aggregated statistics where they exist.
+   *
+   * @param year    the year to get statistics for
+   * @param month   the month to get statistics for
+   * @param day     the day to get statistics for
+   * @return    a LogStatistics object
+   */
+  public LogStatistics getLogStatistics(int year, int month, int day) {
+    return statistics.getLogStatistics(year, month, day);
+  }
+
   /**
    * Determines the name of the log file.
    *
@@ -251,7 +265,9 @@ public class CombinedLogFormatLogger extends AbstractLogger {
           writer = new BufferedWriter(new FileWriter(file, true));
         }
 
-      writer.write(format.format(entry));
+      String line = format.format(entry);
+      statistics.add(entry, line);
+      writer.write(line);
       writer.newLine();
     }
 
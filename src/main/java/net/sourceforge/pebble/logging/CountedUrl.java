@@ -57,6 +57,9 @@ public abstract class CountedUrl {
   /** the collection of log entries that relate to this url */
   private List<LogEntry> logEntries = new LinkedList<LogEntry>();
 
+  /** the number of requests for this url */
+  private int count;
+
   private boolean newsFeed = false;
   private boolean pageView = false;
   private boolean fileDownload = false;
@@ -141,6 +144,17 @@ public abstract class CountedUrl {
    */
   public void addLogEntry(LogEntry logEntry) {
     logEntries.add(logEntry);
+    count++;
+  }
+
+  /**
+   * Adds to the count without the individual log entries, as used when
+   * the count comes from pre-aggregated log statistics.
+   *
+   * @param count   the number of requests to add
+   */
+  public void addCount(int count) {
+    this.count += count;
   }
 
   /**
@@ -158,7 +172,7 @@ public abstract class CountedUrl {
    * @return    the count as an int
    */
   public int getCount() {
-    return logEntries.size();
+    return count;
   }
 
   /**
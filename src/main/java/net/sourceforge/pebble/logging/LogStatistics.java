@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.domain.Blog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Pre-aggregated statistics for a period of a log - the number of requests,
+ * referers, user agents, hosts and requests per hour. These can be
+ * kept up to date as entries are logged, so that reports don't have to
+ * parse the underlying log files.
+ *
+ * @author    Simon Brown
+ */
+public class LogStatistics {
+
+  /** the value used to represent a null referer or request */
+  private static final String NONE = "-";
+
+  private static final int REQUESTS = 0;
+  private static final int NEWS_FEEDS = 1;
+  private static final int PAGE_VIEWS = 2;
+  private static final int FILE_DOWNLOADS = 3;
+  private static final int HOURS = 4;
+
+  /** the blog that this instance is associated with */
+  private Blog blog;
+
+  private int totalRequests;
+  private int[] requestsPerHour = new int[24];
+  private Map<String,Integer> referers = new HashMap<String,Integer>();
+  private Map<String,Integer> requests = new HashMap<String,Integer>();
+  private Map<String,Integer> userAgents = new HashMap<String,Integer>();
+
+  /** requests, news feeds, page views, file downloads and a bit mask of hours, per host */
+  private Map<String,int[]> hosts = new HashMap<String,int[]>();
+
+  private Calendar calendar;
+
+  /**
+   * Creates a new, empty, instance associated with the given blog.
+   *
+   * @param blog    a Blog instance
+   */
+  LogStatistics(Blog blog) {
+    this.blog = blog;
+  }
+
+  /**
+   * Adds a log entry to these statistics.
+   *
+   * @param logEntry    a LogEntry instance
+   */
+  void add(LogEntry logEntry) {
+    if (calendar == null) {
+      calendar = blog.getCalendar();
+    }
+    calendar.setTime(logEntry.getDate());
+    int hour = calendar.get(Calendar.HOUR_OF_DAY);
+
+    String uri = null;
+    if (logEntry.getRequest() != null && logEntry.getRequest().indexOf("/") > -1) {
+      uri = logEntry.getRequestUri();
+    }
+    String userAgent = logEntry.getAgent();
+    if (userAgent == null) {
+      userAgent = "";
+    }
+
+    totalRequests++;
+    requestsPerHour[hour]++;
+    increment(referers, logEntry.getReferer() != null ? logEntry.getReferer() : NONE, 1);
+    increment(requests, uri != null ? uri : NONE, 1);
+    increment(userAgents, userAgent, 1);
+
+    int[] host = getHost(logEntry.getHost() != null ? logEntry.getHost() : NONE);
+    host[REQUESTS]++;
+    host[HOURS] |= (1 << hour);
+    Request request = new Request(uri, blog);
+    if (request.isNewsFeed()) {
+      host[NEWS_FEEDS]++;
+    } else if (request.isPageView()) {
+      host[PAGE_VIEWS]++;
+    } else if (request.isFileDownload()) {
+      host[FILE_DOWNLOADS]++;
+    }
+  }
+
+  /**
+   * Adds a collection of log entries to these statistics.
+   *
+   * @param logEntries    a Collection of LogEntry instances
+   */
+  void add(Collection<LogEntry> logEntries) {
+    for (LogEntry logEntry : logEntries) {
+      add(logEntry);
+    }
+  }
+
+  /**
+   * Adds another set of statistics to this one.
+   *
+   * @param statistics    a LogStatistics instance
+   */
+  void add(LogStatistics statistics) {
+    totalRequests += statistics.totalRequests;
+    for (int hour = 0; hour < 24; hour++) {
+      requestsPerHour[hour] += statistics.requestsPerHour[hour];
+    }
+    for (String referer : statistics.referers.keySet()) {
+      increment(referers, referer, statistics.referers.get(referer));
+    }
+    for (String uri : statistics.requests.keySet()) {
+      increment(requests, uri, statistics.requests.get(uri));
+    }
+    for (String userAgent : statistics.userAgents.keySet()) {
+      increment(userAgents, userAgent, statistics.userAgents.get(userAgent));
+    }
+    for (String name : statistics.hosts.keySet()) {
+      int[] from = statistics.hosts.get(name);
+      int[] to = getHost(name);
+      to[REQUESTS] += from[REQUESTS];
+      to[NEWS_FEEDS] += from[NEWS_FEEDS];
+      to[PAGE_VIEWS] += from[PAGE_VIEWS];
+      to[FILE_DOWNLOADS] += from[FILE_DOWNLOADS];
+      to[HOURS] |= from[HOURS];
+    }
+  }
+
+  /**
+   * Gets the total number of requests.
+   *
+   * @return  the total number as an int
+   */
+  public int getTotalRequests() {
+    return totalRequests;
+  }
+
+  /**
+   * Gets the number of requests in each hour of the day.
+   *
+   * @return  an array of 24 ints
+   */
+  public int[] getRequestsPerHour() {
+    return requestsPerHour.clone();
+  }
+
+  /**
+   * Gets the number of unique hosts making requests in each hour of the day.
+   *
+   * @return  an array of 24 ints
+   */
+  public int[] getUniqueIpsPerHour() {
+    int[] uniqueIpsPerHour = new int[24];
+    for (int[] host : hosts.values()) {
+      for (int hour = 0; hour < 24; hour++) {
+        if ((host[HOURS] & (1 << hour)) != 0) {
+          uniqueIpsPerHour[hour]++;
+        }
+      }
+    }
+
+    return uniqueIpsPerHour;
+  }
+
+  /**
+   * Gets the referers, along with their counts.
+   *
+   * @return    a Collection of Referer instances
+   */
+  public Collection<Referer> getReferers() {
+    List<Referer> list = new ArrayList<Referer>();
+    for (String url : referers.keySet()) {
+      Referer referer = new Referer(NONE.equals(url) ? null : url);
+      referer.addCount(referers.get(url));
+      list.add(referer);
+    }
+
+    return list;
+  }
+
+  /**
+   * Gets the requests, along with their counts.
+   *
+   * @return    a Collection of Request instances
+   */
+  public Collection<Request> getRequests() {
+    List<Request> list = new ArrayList<Request>();
+    for (String url : requests.keySet()) {
+      Request request = new Request(NONE.equals(url) ? null : url, blog);
+      request.addCount(requests.get(url));
+      list.add(request);
+    }
+
+    return list;
+  }
+
+  /**
+   * Gets the user agents and the number of requests made by each.
+   *
+   * @return    a Map of user agent to count
+   */
+  public Map<String,Integer> getUserAgents() {
+    return new HashMap<String,Integer>(userAgents);
+  }
+
+  /**
+   * Gets the user agents, consolidated into families, and the number of
+   * requests made by each.
+   *
+   * @return    a Map of consolidated user agent to count
+   */
+  public Map<String,Integer> getConsolidatedUserAgents() {
+    Map<String,Integer> consolidated = new HashMap<String,Integer>();
+    for (String userAgent : userAgents.keySet()) {
+      increment(consolidated, UserAgentConsolidator.consolidate(userAgent), userAgents.get(userAgent));
+    }
+
+    return consolidated;
+  }
+
+  /**
+   * Gets the hosts that made requests.
+   *
+   * @return    a Set of host addresses
+   */
+  public Set<String> getHosts() {
+    return Collections.unmodifiableSet(hosts.keySet());
+  }
+
+  /**
+   * Gets the number of news feed requests made by the given host.
+   *
+   * @param host    the host address
+   * @return  the number of requests
+   */
+  public int getNewsFeedRequests(String host) {
+    return getCount(host, NEWS_FEEDS);
+  }
+
+  /**
+   * Gets the number of page views made by the given host.
+   *
+   * @param host    the host address
+   * @return  the number of requests
+   */
+  public int getPageViews(String host) {
+    return getCount(host, PAGE_VIEWS);
+  }
+
+  /**
+   * Gets the number of file downloads made by the given host.
+   *
+   * @param host    the host address
+   * @return  the number of requests
+   */
+  public int getFileDownloads(String host) {
+    return getCount(host, FILE_DOWNLOADS);
+  }
+
+  private int getCount(String host, int type) {
+    int[] counts = hosts.get(host);
+    return counts != null ? counts[type] : 0;
+  }
+
+  private int[] getHost(String name) {
+    int[] host = hosts.get(name);
+    if (host == null) {
+      host = new int[5];
+      hosts.put(name, host);
+    }
+
+    return host;
+  }
+
+  private static void increment(Map<String,Integer> map, String key, int count) {
+    Integer current = map.get(key);
+    map.put(key, current == null ? count : current + count);
+  }
+
+  /**
+   * Writes these statistics in a simple, tab separated, format.
+   *
+   * @param writer    the Writer to write to
+   */
+  void write(Writer writer) throws IOException {
+    writer.write("T\t" + totalRequests + "\n");
+    for (int hour = 0; hour < 24; hour++) {
+      if (requestsPerHour[hour] > 0) {
+        writer.write("H\t" + hour + "\t" + requestsPerHour[hour] + "\n");
+      }
+    }
+    write(writer, "R", referers);
+    write(writer, "Q", requests);
+    write(writer, "A", userAgents);
+    for (String name : hosts.keySet()) {
+      int[] host = hosts.get(name);
+      writer.write("I\t" + host[REQUESTS] + "\t" + host[NEWS_FEEDS] + "\t" + host[PAGE_VIEWS] + "\t" +
+          host[FILE_DOWNLOADS] + "\t" + host[HOURS] + "\t" + name + "\n");
+    }
+  }
+
+  private void write(Writer writer, String type, Map<String,Integer> map) throws IOException {
+    for (String key : map.keySet()) {
+      writer.write(type + "\t" + map.get(key) + "\t" + key + "\n");
+    }
+  }
+
+  /**
+   * Reads statistics previously written with write().
+   *
+   * @param reader    the Reader to read from
+   */
+  void read(Reader reader) throws IOException {
+    BufferedReader in = new BufferedReader(reader);
+    String line = in.readLine();
+    while (line != null) {
+      String[] fields;
+      if (line.startsWith("I\t")) {
+        fields = line.split("\t", 7);
+        int[] host = getHost(fields[6]);
+        host[REQUESTS] += Integer.parseInt(fields[1]);
+        host[NEWS_FEEDS] += Integer.parseInt(fields[2]);
+        host[PAGE_VIEWS] += Integer.parseInt(fields[3]);
+        host[FILE_DOWNLOADS] += Integer.parseInt(fields[4]);
+        host[HOURS] |= Integer.parseInt(fields[5]);
+      } else if (line.startsWith("T\t")) {
+        totalRequests += Integer.parseInt(line.substring(2));
+      } else {
+        fields = line.split("\t", 3);
+        if (fields.length == 3) {
+          int count = Integer.parseInt(fields[1]);
+          if (fields[0].equals("H")) {
+            requestsPerHour[Integer.parseInt(fields[1])] += Integer.parseInt(fields[2]);
+          } else if (fields[0].equals("R")) {
+            increment(referers, fields[2], count);
+          } else if (fields[0].equals("Q")) {
+            increment(requests, fields[2], count);
+          } else if (fields[0].equals("A")) {
+            increment(userAgents, fields[2], count);
+          }
+        }
+      }
+      line = in.readLine();
+    }
+  }
+
+}
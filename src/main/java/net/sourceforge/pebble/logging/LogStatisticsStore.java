@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.domain.Blog;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Keeps per-day log statistics up to date as entries are written, storing
+ * them alongside the log files so that reports don't have to re-parse the
+ * raw logs. Stored statistics record how much of the raw log they cover, and
+ * anything logged after that (e.g. before a crash) is parsed from the raw log
+ * when they are next loaded. Loading happens in the background, so that
+ * entries can be added without waiting for it.
+ *
+ * @author    Simon Brown
+ */
+class LogStatisticsStore {
+
+  private static final org.apache.commons.logging.Log log = LogFactory.getLog(LogStatisticsStore.class);
+
+  /** how long to wait before saving changed statistics, in milliseconds */
+  private static final long SAVE_DELAY = 30 * 1000;
+
+  /** the number of days of statistics kept in memory */
+  private static final int CACHED_DAYS = 64;
+
+  /** the prefix of the first line of a statistics file, holding its high-water mark */
+  private static final String MARK = "L\t";
+
+  private static final int LINE_SEPARATOR_LENGTH = System.getProperty("line.separator").length();
+
+  private static final Timer timer = new Timer(true);
+
+  private final Blog blog;
+  private final SimpleDateFormat filenameFormat = new SimpleDateFormat("'blog-'yyyyMMdd'.stats'");
+  private final SimpleDateFormat logFilenameFormat = new SimpleDateFormat("'blog-'yyyyMMdd'.log'");
+
+  private final Map<String,Day> days = new LinkedHashMap<String,Day>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String,Day> eldest) {
+      if (size() > CACHED_DAYS && eldest.getValue().loaded && !changed.contains(eldest.getKey())) {
+        return true;
+      }
+      return false;
+    }
+  };
+  private final Set<String> changed = new HashSet<String>();
+  private TimerTask saveTask;
+
+  /**
+   * Creates a new store for the given blog.
+   *
+   * @param blog      the Blog being logged
+   */
+  LogStatisticsStore(Blog blog) {
+    this.blog = blog;
+    this.filenameFormat.setTimeZone(blog.getTimeZone());
+    this.logFilenameFormat.setTimeZone(blog.getTimeZone());
+  }
+
+  /**
+   * Adds a log entry to the statistics for its day. This should be called
+   * before the entry is written to the raw log.
+   *
+   * @param logEntry    a LogEntry instance
+   * @param line        the line being written to the raw log for the entry
+   */
+  synchronized void add(LogEntry logEntry, String line) {
+    String filename = filenameFormat.format(logEntry.getDate());
+    Day day = getDay(filename, logEntry.getDate());
+    day.statistics.add(logEntry);
+    day.mark += line.getBytes().length + LINE_SEPARATOR_LENGTH;
+    changed.add(filename);
+    scheduleSave();
+  }
+
+  /**
+   * Gets the statistics for a given year, month and day, waiting for them
+   * to be loaded if necessary.
+   *
+   * @param year    the year
+   * @param month   the month
+   * @param day     the day
+   * @return  a copy of the statistics for that day
+   */
+  synchronized LogStatistics getLogStatistics(int year, int month, int day) {
+    Calendar cal = blog.getCalendar();
+    cal.set(Calendar.YEAR, year);
+    cal.set(Calendar.MONTH, month-1);
+    cal.set(Calendar.DAY_OF_MONTH, day);
+    Date date = cal.getTime();
+
+    Day d = getDay(filenameFormat.format(date), date);
+    while (!d.loaded) {
+      try {
+        wait();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    LogStatistics statistics = new LogStatistics(blog);
+    statistics.add(d.statistics);
+
+    return statistics;
+  }
+
+  private Day getDay(String filename, Date date) {
+    Day day = days.get(filename);
+    if (day == null) {
+      File file = new File(blog.getLogsDirectory(), filename);
+      File logFile = new File(blog.getLogsDirectory(), logFilenameFormat.format(date));
+      day = new Day(new LogStatistics(blog), logFile.length());
+      days.put(filename, day);
+
+      if (file.exists() || logFile.exists()) {
+        scheduleLoad(filename, date, day);
+      } else {
+        day.loaded = true;
+      }
+    }
+
+    return day;
+  }
+
+  private void scheduleLoad(final String filename, final Date date, final Day day) {
+    timer.schedule(new TimerTask() {
+      public void run() {
+        try {
+          load(filename, date, day);
+        } catch (Exception e) {
+          // the timer is shared, so don't let it die
+          log.error("Could not load log statistics from " + filename, e);
+          loaded(filename, day, new LogStatistics(blog), 0, false, false);
+        }
+      }
+    }, 0);
+  }
+
+  /**
+   * Loads the stored statistics for a day, and parses any of the raw log
+   * that they don't cover. This is only called from the timer thread, and
+   * doesn't hold the lock while reading files.
+   */
+  private void load(String filename, Date date, Day day) throws IOException {
+    LogStatistics statistics = new LogStatistics(blog);
+    long mark = read(new File(blog.getLogsDirectory(), filename), statistics);
+    if (mark < 0) {
+      // no usable statistics, so build them from the raw log for that day
+      statistics = new LogStatistics(blog);
+      mark = 0;
+    }
+
+    boolean caughtUp = false;
+    if (mark < day.base) {
+      parse(new File(blog.getLogsDirectory(), logFilenameFormat.format(date)), statistics, mark, day.base);
+      caughtUp = true;
+    }
+
+    loaded(filename, day, statistics, Math.max(mark, day.base), caughtUp, true);
+  }
+
+  private synchronized void loaded(String filename, Day day, LogStatistics statistics, long mark, boolean caughtUp, boolean complete) {
+    // and add the entries that were added while loading
+    statistics.add(day.statistics);
+    day.statistics = statistics;
+    day.mark += mark;
+    day.loaded = true;
+    day.complete = complete;
+
+    if (caughtUp) {
+      changed.add(filename);
+    }
+    if (changed.contains(filename)) {
+      scheduleSave();
+    }
+
+    notifyAll();
+  }
+
+  /**
+   * Reads stored statistics.
+   *
+   * @return  the number of bytes of the raw log that they cover,
+   *          or -1 if there are none that can be used
+   */
+  private long read(File file, LogStatistics statistics) {
+    if (!file.exists()) {
+      return -1;
+    }
+
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(MARK)) {
+          // saved without a high-water mark, so there's no telling what they cover
+          return -1;
+        }
+
+        long mark = Long.parseLong(line.substring(MARK.length()));
+        statistics.read(reader);
+        return mark;
+      } finally {
+        reader.close();
+      }
+    } catch (Exception e) {
+      log.warn("Could not read " + file.getAbsolutePath() + ", rebuilding from the log", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Parses the part of a raw log between two byte offsets.
+   */
+  private void parse(File file, LogStatistics statistics, long from, long to) throws IOException {
+    CombinedFormatLogEntryFormat format = new CombinedFormatLogEntryFormat(blog);
+    InputStream in = new FileInputStream(file);
+    try {
+      long skipped = 0;
+      while (skipped < from) {
+        long n = in.skip(from - skipped);
+        if (n <= 0) {
+          return;
+        }
+        skipped += n;
+      }
+
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new BoundedInputStream(in, to - from)));
+      String line = reader.readLine();
+      while (line != null) {
+        try {
+          statistics.add(format.parse(line));
+        } catch (Exception e) {
+          log.warn("Skipping unreadable log entry in " + file.getAbsolutePath() + " : " + line);
+        }
+        line = reader.readLine();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private void scheduleSave() {
+    if (saveTask == null) {
+      saveTask = new TimerTask() {
+        public void run() {
+          save();
+        }
+      };
+      timer.schedule(saveTask, SAVE_DELAY);
+    }
+  }
+
+  /**
+   * Saves any statistics that have changed since they were last saved.
+   */
+  synchronized void save() {
+    if (saveTask != null) {
+      saveTask.cancel();
+      saveTask = null;
+    }
+
+    Iterator<String> it = changed.iterator();
+    while (it.hasNext()) {
+      String filename = it.next();
+      Day day = days.get(filename);
+      if (!day.loaded) {
+        // this will be saved once loading has finished
+        continue;
+      }
+
+      it.remove();
+      if (!day.complete) {
+        // leave the stored statistics for the next load to catch up from
+        continue;
+      }
+
+      File file = new File(blog.getLogsDirectory(), filename);
+      File tmp = new File(blog.getLogsDirectory(), filename + ".tmp");
+      try {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+          writer.write(MARK + day.mark + "\n");
+          day.statistics.write(writer);
+        } finally {
+          writer.close();
+        }
+        if (!tmp.renameTo(file)) {
+          file.delete();
+          tmp.renameTo(file);
+        }
+      } catch (IOException ioe) {
+        log.error("Could not save " + file.getAbsolutePath(), ioe);
+      }
+    }
+  }
+
+  /**
+   * The statistics for a single day, along with how much of the raw log
+   * they cover.
+   */
+  private static class Day {
+
+    /** the statistics, which only hold entries added since the day was asked for until it has been loaded */
+    LogStatistics statistics;
+
+    /** the number of bytes of the raw log covered by the statistics */
+    long mark;
+
+    /** the length of the raw log when the day was first asked for */
+    final long base;
+
+    boolean loaded;
+    boolean complete;
+
+    Day(LogStatistics statistics, long base) {
+      this.statistics = statistics;
+      this.base = base;
+    }
+
+  }
+
+  /**
+   * Stops reading after a given number of bytes, so that only the part of
+   * the raw log that existed when a day was first asked for is parsed.
+   */
+  private static class BoundedInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    BoundedInputStream(InputStream in, long limit) {
+      super(in);
+      this.remaining = limit;
+    }
+
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int b = super.read();
+      if (b != -1) {
+        remaining--;
+      }
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int n = super.read(b, off, (int)Math.min(len, remaining));
+      if (n > 0) {
+        remaining -= n;
+      }
+      return n;
+    }
+
+  }
+
+}
@@ -39,6 +39,7 @@ import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Generates permalinks based upon the blog entry title. This implementation
@@ -58,17 +59,17 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
   /**
    * the regex used to check for a day request
    */
-  private static final String DAY_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d/\\d\\d";
+  private static final Pattern DAY_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d/\\d\\d");
 
   /**
    * the regex used to check for a monthly blog request
    */
-  private static final String MONTH_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d";
+  private static final Pattern MONTH_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d");
 
   /**
    * the regex used to check for a blog entry permalink
    */
-  private static final String BLOG_ENTRY_PERMALINK_REGEX = "/[\\w-]*";
+  private static final Pattern BLOG_ENTRY_PERMALINK_PATTERN = Pattern.compile("/[\\w-]*");
 
   /**
    * the Blog associated with this provider instance
@@ -146,7 +147,7 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
 
   public boolean isBlogEntryPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(BLOG_ENTRY_PERMALINK_REGEX);
+      return BLOG_ENTRY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
@@ -192,7 +193,7 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
    */
   public boolean isMonthPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(MONTH_PERMALINK_REGEX);
+      return MONTH_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
@@ -232,7 +233,7 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
    */
   public boolean isDayPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(DAY_PERMALINK_REGEX);
+      return DAY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
@@ -38,6 +38,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Generates permalinks based upon the blog entry title. This implementation
@@ -56,7 +57,7 @@ import java.util.List;
 public class TitlePermalinkProvider extends PermalinkProviderSupport {
 
   /** the regex used to check for a blog entry permalink */
-  private static final String BLOG_ENTRY_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d/\\d\\d/[\\w]*.html";
+  private static final Pattern BLOG_ENTRY_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d/\\d\\d/[\\w]*.html");
 
   /**
    * Gets the permalink for a blog entry.
@@ -139,7 +140,7 @@ public class TitlePermalinkProvider extends PermalinkProviderSupport {
    */
   public boolean isBlogEntryPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(BLOG_ENTRY_PERMALINK_REGEX);
+      return BLOG_ENTRY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
@@ -56,6 +56,9 @@ public class SearchResults {
   /** the collection of search results */
   private List hits = new ArrayList();
 
+  /** the total number of hits, if only some of them are held */
+  private int numberOfHits = -1;
+
   /**
    * Gets the query that was used to generate these results.
    *
@@ -104,16 +107,30 @@ public class SearchResults {
   }
 
   /**
-   * Gets the number of hits that the query returned.
+   * Gets the number of hits that the query returned. This may be more than
+   * the number of hits held, if only a single page was requested.
    *
    * @return  the number of hits as an int
    */
   public int getNumberOfHits() {
-    return hits.size();
+    if (numberOfHits >= 0) {
+      return numberOfHits;
+    } else {
+      return hits.size();
+    }
+  }
+
+  /**
+   * Sets the total number of hits that the query returned.
+   *
+   * @param numberOfHits    the number of hits as an int
+   */
+  public void setNumberOfHits(int numberOfHits) {
+    this.numberOfHits = numberOfHits;
   }
 
   /**
-   * Gets a collection containing all of the hits.
+   * Gets a collection containing the hits held.
    *
    * @return  a Collection of SearchHit instances
    */
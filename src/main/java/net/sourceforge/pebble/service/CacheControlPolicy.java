@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.service;
+
+/**
+ * Describes the Cache-Control header sent for a type of route.
+ *
+ * @author Simon Brown
+ */
+public class CacheControlPolicy {
+
+  private int maxAge;
+  private int staleWhileRevalidate;
+  private boolean mustRevalidate;
+
+  /** the header values, built when the policy changes rather than on every request */
+  private String publicHeader;
+  private String privateHeader;
+
+  public CacheControlPolicy() {
+    buildHeaders();
+  }
+
+  public CacheControlPolicy(int maxAge, int staleWhileRevalidate) {
+    this.maxAge = maxAge;
+    this.staleWhileRevalidate = staleWhileRevalidate;
+    buildHeaders();
+  }
+
+  private void buildHeaders() {
+    StringBuffer buf = new StringBuffer();
+    buf.append("max-age=");
+    buf.append(maxAge);
+    if (staleWhileRevalidate > 0) {
+      buf.append(", stale-while-revalidate=");
+      buf.append(staleWhileRevalidate);
+    }
+    if (mustRevalidate) {
+      buf.append(", must-revalidate");
+    }
+
+    publicHeader = "public, " + buf;
+    privateHeader = "private, " + buf;
+  }
+
+  /**
+   * Gets the value of the Cache-Control header.
+   *
+   * @param shared  true if the response may be stored by shared caches,
+   *                false if it's specific to the (authenticated) user
+   * @return  the header value
+   */
+  public String getHeaderValue(boolean shared) {
+    return shared ? publicHeader : privateHeader;
+  }
+
+  public int getMaxAge() {
+    return maxAge;
+  }
+
+  /**
+   * Sets the number of seconds for which a response is considered fresh.
+   */
+  public void setMaxAge(int maxAge) {
+    this.maxAge = maxAge;
+    buildHeaders();
+  }
+
+  public int getStaleWhileRevalidate() {
+    return staleWhileRevalidate;
+  }
+
+  /**
+   * Sets the number of seconds after the response becomes stale for which
+   * a cache may continue to use it while revalidating in the background.
+   */
+  public void setStaleWhileRevalidate(int staleWhileRevalidate) {
+    this.staleWhileRevalidate = staleWhileRevalidate;
+    buildHeaders();
+  }
+
+  public boolean isMustRevalidate() {
+    return mustRevalidate;
+  }
+
+  public void setMustRevalidate(boolean mustRevalidate) {
+    this.mustRevalidate = mustRevalidate;
+    buildHeaders();
+  }
+
+}
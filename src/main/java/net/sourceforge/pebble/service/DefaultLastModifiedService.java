@@ -46,13 +46,27 @@ public class DefaultLastModifiedService implements LastModifiedService {
 
   public boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response,
                                              Date lastModified, Date expires) {
+    return process(request, response, lastModified, null, expires);
+  }
+
+  public boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response,
+                                             Date lastModified, String eTag, RouteType routeType) {
+    return process(request, response, lastModified, eTag, null);
+  }
+
+  private boolean process(HttpServletRequest request, HttpServletResponse response,
+                          Date lastModified, String eTag, Date expires) {
 
     SimpleDateFormat httpFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z");
     httpFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
 
+    if (eTag == null) {
+      eTag = "\"" + httpFormat.format(lastModified) + "\"";
+    }
+
     // Set the headers
     response.setDateHeader("Last-Modified", lastModified.getTime());
-    response.setHeader("ETag", "\"" + httpFormat.format(lastModified) + "\"");
+    response.setHeader("ETag", eTag);
     if (expires != null) {
       response.setHeader("Expires", httpFormat.format(expires));
     }
@@ -63,7 +77,7 @@ public class DefaultLastModifiedService implements LastModifiedService {
 
     if (ifModifiedSince != null && ifModifiedSince.equals(httpFormat.format(lastModified))) {
       return true;
-    } else if (ifNoneMatch != null && ifNoneMatch.equals("\"" + httpFormat.format(lastModified) + "\"")) {
+    } else if (ifNoneMatch != null && ifNoneMatch.equals(eTag)) {
       return true;
     } else {
       return false;
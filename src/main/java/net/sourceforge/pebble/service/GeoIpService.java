@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.service;
+
+import com.maxmind.geoip.LookupService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks up the countries that visitors' IP addresses belong to. The GeoIP
+ * database is loaded into memory once and shared by every blog, and recently
+ * resolved addresses are remembered in a bounded, least recently used cache.
+ *
+ * @author Simon Brown
+ */
+public class GeoIpService {
+
+  private static final Log log = LogFactory.getLog(GeoIpService.class);
+
+  /** the default number of addresses whose countries are remembered */
+  public static final int DEFAULT_CACHE_SIZE = 50000;
+
+  /** the classpath resource (or file) holding the GeoIP database */
+  private String database = "/geo-ip.dat";
+
+  /** the maximum number of addresses whose countries are remembered */
+  private int cacheSize = DEFAULT_CACHE_SIZE;
+
+  private LookupService lookupService;
+
+  /** host -> country name, in access order so that the eldest can be evicted */
+  private final LinkedHashMap<String,String> countries = new LinkedHashMap<String,String>(1024, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String,String> eldest) {
+      return size() > cacheSize;
+    }
+  };
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Loads the GeoIP database. A database that can't be loaded is logged
+   * rather than stopping the application, and loading is tried again on the
+   * next lookup.
+   */
+  public void start() {
+    try {
+      getLookupService();
+    } catch (IOException ioe) {
+      log.error("Could not load GeoIP database from " + database, ioe);
+    }
+  }
+
+  /**
+   * Closes the GeoIP database and forgets any cached countries.
+   */
+  public synchronized void stop() {
+    if (lookupService != null) {
+      lookupService.close();
+      lookupService = null;
+    }
+    countries.clear();
+  }
+
+  /**
+   * Gets the name of the country that the specified host belongs to.
+   *
+   * @param host    an IP address
+   * @return  the country name, "N/A" if the country isn't known
+   * @throws IOException  if the GeoIP database can't be loaded
+   */
+  public String getCountry(String host) throws IOException {
+    return getCountries(Collections.singleton(host)).get(host);
+  }
+
+  /**
+   * Gets the names of the countries that the specified hosts belong to.
+   * Cached countries are gathered under a single lock, and the rest are
+   * resolved against the in-memory database without holding it.
+   *
+   * @param hosts   a collection of IP addresses
+   * @return  a Map of host to country name
+   * @throws IOException  if the GeoIP database can't be loaded
+   */
+  public Map<String,String> getCountries(Collection<String> hosts) throws IOException {
+    Map<String,String> result = new HashMap<String,String>();
+    Set<String> unresolved = new LinkedHashSet<String>();
+
+    synchronized (countries) {
+      for (String host : hosts) {
+        String country = countries.get(host);
+        if (country != null) {
+          result.put(host, country);
+        } else {
+          unresolved.add(host);
+        }
+      }
+    }
+
+    hits.addAndGet(result.size());
+    misses.addAndGet(unresolved.size());
+    if (unresolved.isEmpty()) {
+      return result;
+    }
+
+    // lookups against the memory cached database only read from a byte array,
+    // so they can run concurrently
+    LookupService service = getLookupService();
+    Map<String,String> resolved = new HashMap<String,String>();
+    for (String host : unresolved) {
+      resolved.put(host, service.getCountry(host).getName());
+    }
+
+    synchronized (countries) {
+      countries.putAll(resolved);
+    }
+    result.putAll(resolved);
+
+    return result;
+  }
+
+  private synchronized LookupService getLookupService() throws IOException {
+    if (lookupService == null) {
+      long start = System.currentTimeMillis();
+      lookupService = new LookupService(getDatabaseFile(), LookupService.GEOIP_MEMORY_CACHE);
+      log.info("Loaded GeoIP database in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    return lookupService;
+  }
+
+  private File getDatabaseFile() throws IOException {
+    URL url = getClass().getResource(database);
+    if (url != null && "file".equals(url.getProtocol())) {
+      return new File(URLDecoder.decode(url.getFile(), "UTF-8"));
+    }
+
+    File file = new File(database);
+    if (!file.exists()) {
+      throw new IOException("GeoIP database " + database + " could not be found");
+    }
+
+    return file;
+  }
+
+  public void setDatabase(String database) {
+    this.database = database;
+  }
+
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+  }
+
+  /**
+   * Gets the number of lookups answered from the cache.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Gets the number of lookups that had to be resolved against the database.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Gets the number of hosts whose countries are currently cached.
+   */
+  public int getNumberOfCachedHosts() {
+    synchronized (countries) {
+      return countries.size();
+    }
+  }
+
+}
@@ -54,4 +54,19 @@ public interface LastModifiedService {
    */
   boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response, Date lastModified,
                                       Date expires);
+
+  /**
+   * Work out whether this request should return not modified, given the date and an entity tag that identifies
+   * the content
+   *
+   * @param request      The request to check and process
+   * @param response     The response to go with the request.  This can be used to set the etag, last modified
+   *                     and cache control headers, but should not be used to set the status code.
+   * @param lastModified The date to check and process
+   * @param eTag         The quoted entity tag of the content, or null to derive one from the date
+   * @param routeType    The type of route, which determines the caching policy
+   * @return True        If it should return not modified
+   */
+  boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response, Date lastModified,
+                                      String eTag, RouteType routeType);
 }
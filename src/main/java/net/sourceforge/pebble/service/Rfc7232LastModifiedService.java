@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Implementation of the last modified service that evaluates conditional
+ * requests as described by RFC 7232.
+ * <ul>
+ * <li>If-None-Match takes precedence over If-Modified-Since, may contain a
+ * list of entity tags (or *) and uses the weak comparison function.</li>
+ * <li>If-Modified-Since is compared as a date, at the granularity of a
+ * second, so that any of the HTTP date formats is understood.</li>
+ * <li>Only GET and HEAD requests result in not modified.</li>
+ * </ul>
+ * Dates are formatted and parsed by the servlet container, so that no
+ * date formats are created per request. A Cache-Control header is added
+ * according to the policy configured for the type of route.
+ *
+ * @author Simon Brown
+ */
+public class Rfc7232LastModifiedService implements LastModifiedService {
+
+  private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+  private static final String WEAK_PREFIX = "W/";
+
+  private final Map<RouteType,CacheControlPolicy> policies = new EnumMap<RouteType,CacheControlPolicy>(RouteType.class);
+
+  public Rfc7232LastModifiedService() {
+    policies.put(RouteType.PAGE, new CacheControlPolicy(0, 0));
+    policies.put(RouteType.FEED, new CacheControlPolicy(300, 600));
+    policies.put(RouteType.FILE, new CacheControlPolicy(60 * 60 * 24 * 30, 60 * 60 * 24));
+  }
+
+  public boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response,
+                                             Date lastModified, Date expires) {
+    setValidators(response, lastModified, null);
+    if (expires != null) {
+      response.setDateHeader("Expires", expires.getTime());
+    }
+
+    return isNotModified(request, lastModified.getTime(), getETag(lastModified, null));
+  }
+
+  public boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response,
+                                             Date lastModified, String eTag, RouteType routeType) {
+    setValidators(response, lastModified, eTag);
+
+    CacheControlPolicy policy = routeType != null ? policies.get(routeType) : null;
+    if (policy != null) {
+      response.setHeader("Cache-Control", policy.getHeaderValue(request.getRemoteUser() == null));
+    }
+
+    return isNotModified(request, lastModified.getTime(), getETag(lastModified, eTag));
+  }
+
+  private void setValidators(HttpServletResponse response, Date lastModified, String eTag) {
+    response.setDateHeader("Last-Modified", lastModified.getTime());
+    response.setHeader("ETag", getETag(lastModified, eTag));
+  }
+
+  /**
+   * Gets the entity tag to use, deriving a weak one from the date if
+   * no entity tag has been supplied.
+   */
+  private String getETag(Date lastModified, String eTag) {
+    if (eTag != null) {
+      return eTag;
+    } else {
+      return "W/\"" + Long.toHexString(lastModified.getTime() / 1000) + "\"";
+    }
+  }
+
+  /**
+   * Evaluates the preconditions of a request.
+   *
+   * @param request       the HttpServletRequest
+   * @param lastModified  the time that the resource was last modified, in milliseconds
+   * @param eTag          the current entity tag of the resource
+   * @return  true if the client's copy is current, false otherwise
+   */
+  boolean isNotModified(HttpServletRequest request, long lastModified, String eTag) {
+    String method = request.getMethod();
+    if (method != null && !method.equals("GET") && !method.equals("HEAD")) {
+      return false;
+    }
+
+    String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER);
+    if (ifNoneMatch != null) {
+      // If-Modified-Since must be ignored when If-None-Match is present
+      return matches(ifNoneMatch, eTag);
+    }
+
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE_HEADER);
+    } catch (IllegalArgumentException iae) {
+      // an invalid date is ignored
+      return false;
+    }
+
+    if (ifModifiedSince < 0 || ifModifiedSince > System.currentTimeMillis()) {
+      // absent, or later than the current time, which is invalid
+      return false;
+    }
+
+    // HTTP dates only have a granularity of one second
+    return (lastModified / 1000) <= (ifModifiedSince / 1000);
+  }
+
+  /**
+   * Determines whether the list of entity tags in an If-None-Match header
+   * contains the specified entity tag, using weak comparison. The header is
+   * scanned in place rather than being split into separate strings.
+   *
+   * @param header  the value of the If-None-Match header
+   * @param eTag    the entity tag to look for
+   * @return  true if the entity tag (or *) is in the list, false otherwise
+   */
+  static boolean matches(String header, String eTag) {
+    int eTagStart = eTag.startsWith(WEAK_PREFIX) ? WEAK_PREFIX.length() : 0;
+    int eTagLength = eTag.length() - eTagStart;
+
+    int length = header.length();
+    int i = 0;
+    while (i < length) {
+      char c = header.charAt(i);
+      if (c == ' ' || c == '\t' || c == ',') {
+        i++;
+      } else if (c == '*') {
+        return true;
+      } else {
+        if (header.startsWith(WEAK_PREFIX, i)) {
+          i += WEAK_PREFIX.length();
+        }
+
+        // the opaque tag, including its quotes
+        int start = i;
+        if (i < length && header.charAt(i) == '"') {
+          int end = header.indexOf('"', i + 1);
+          i = (end == -1) ? length : end + 1;
+        } else {
+          while (i < length && header.charAt(i) != ',') {
+            i++;
+          }
+        }
+
+        if ((i - start) == eTagLength && header.regionMatches(start, eTag, eTagStart, eTagLength)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Gets the caching policy for a type of route.
+   *
+   * @param routeType   the type of route
+   * @return  a CacheControlPolicy, or null if no Cache-Control header is sent
+   */
+  public CacheControlPolicy getPolicy(RouteType routeType) {
+    return policies.get(routeType);
+  }
+
+  /**
+   * Sets the caching policy for a type of route.
+   *
+   * @param routeType   the type of route
+   * @param policy      a CacheControlPolicy, or null to not send a Cache-Control header
+   */
+  public void setPolicy(RouteType routeType, CacheControlPolicy policy) {
+    if (policy != null) {
+      policies.put(routeType, policy);
+    } else {
+      policies.remove(routeType);
+    }
+  }
+
+  public void setPagePolicy(CacheControlPolicy policy) {
+    setPolicy(RouteType.PAGE, policy);
+  }
+
+  public void setFeedPolicy(CacheControlPolicy policy) {
+    setPolicy(RouteType.FEED, policy);
+  }
+
+  public void setFilePolicy(CacheControlPolicy policy) {
+    setPolicy(RouteType.FILE, policy);
+  }
+
+}
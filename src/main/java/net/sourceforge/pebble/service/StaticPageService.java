@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Service that encompasses all functionality related to getting, putting
@@ -99,10 +100,11 @@ public class StaticPageService {
 
         DAOFactory factory = DAOFactory.getConfiguredFactory();
         StaticPageDAO dao = factory.getStaticPageDAO();
+        long version = cache.getVersion(blog);
         staticPage = dao.loadStaticPage(blog, pageId);
         if (staticPage != null) {
           staticPage.setPersistent(true);
-          cache.putStaticPage(staticPage);
+          cache.putStaticPage(staticPage, version);
         }
       }
     } catch (PersistenceException pe) {
@@ -141,26 +143,37 @@ public class StaticPageService {
     StaticPageDAO dao = factory.getStaticPageDAO();
     Blog blog = staticPage.getBlog();
 
-    synchronized (blog) {
-      try {
-        StaticPage sp = getStaticPageById(blog, staticPage.getId());
+    Lock structureLock = blog.getStructureLock().readLock();
+    structureLock.lock();
+    try {
+      while (true) {
+        Lock lock = blog.getContentLock(staticPage.getId());
+        lock.lock();
+        try {
+          StaticPage sp = getStaticPageById(blog, staticPage.getId());
+
+          if (!staticPage.isPersistent() && sp != null) {
+            // the static page is new but one exists with the same ID already
+            // - increment the date/ID and try again, under the lock for the new ID
+            staticPage.setDate(new Date(staticPage.getDate().getTime() + 1));
+            continue;
+          }
 
-        if (!staticPage.isPersistent() && sp != null) {
-          // the static page is new but one exists with the same ID already
-          // - increment the date/ID and try again
-          staticPage.setDate(new Date(staticPage.getDate().getTime() + 1));
-          putStaticPage(staticPage);
-        } else {
           dao.storeStaticPage(staticPage);
           staticPage.setPersistent(true);
           cache.removeStaticPage(staticPage);
-        }
 
-        staticPage.getBlog().getSearchIndex().index(staticPage);
-        staticPage.getBlog().getStaticPageIndex().index(staticPage);
-      } catch (PersistenceException pe) {
-        throw new StaticPageServiceException(blog, pe);
+          staticPage.getBlog().getSearchIndex().index(staticPage);
+          staticPage.getBlog().getStaticPageIndex().index(staticPage);
+          return;
+        } finally {
+          lock.unlock();
+        }
       }
+    } catch (PersistenceException pe) {
+      throw new StaticPageServiceException(blog, pe);
+    } finally {
+      structureLock.unlock();
     }
   }
 
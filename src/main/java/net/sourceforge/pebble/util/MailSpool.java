@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded spool of outgoing e-mails for a single blog. Each message is
+ * written to disk before it is queued, so that nothing is lost if the server
+ * is stopped, and is only deleted once it has been sent. A small number of
+ * workers send the queued messages in batches, reusing one SMTP connection
+ * for each batch. Messages that can't be sent are retried with an
+ * exponential backoff.
+ *
+ * @author Simon Brown
+ */
+public class MailSpool {
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(MailSpool.class);
+
+  /** the default number of messages that can be waiting to be sent */
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  /** the default number of workers sending messages for each blog */
+  public static final int DEFAULT_THREADS = 2;
+
+  /** the maximum number of messages sent over a single connection */
+  static final int BATCH_SIZE = 50;
+
+  /** the number of times a message is tried before it is dropped */
+  static final int MAXIMUM_ATTEMPTS = 5;
+
+  /** the suffix given to spooled messages */
+  private static final String SUFFIX = ".eml";
+
+  /** the threads that messages are sent on, shared by all spools */
+  private static final ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "Pebble mail spool");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /** the timer used to wake the spool up when retries are due */
+  private static final Timer timer = new Timer(true);
+
+  /** the directory that messages are spooled to */
+  private final File directory;
+
+  /** the maximum number of messages that can be waiting */
+  private final int capacity;
+
+  /** the maximum number of workers */
+  private final int threads;
+
+  /** the delay before the first retry, which doubles with each attempt */
+  private long retryDelay = 60 * 1000;
+
+  /** the messages waiting to be sent */
+  private final LinkedList<SpooledMessage> pending = new LinkedList<SpooledMessage>();
+
+  /** the number of messages currently being sent */
+  private int inFlight = 0;
+
+  /** the number of workers currently running */
+  private int activeWorkers = 0;
+
+  /** used to give each spooled message a unique name */
+  private long sequence = 0;
+
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong connections = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong rejections = new AtomicLong();
+
+  /**
+   * Creates a new spool.
+   *
+   * @param directory   the directory that messages are spooled to
+   * @param capacity    the maximum number of messages that can be waiting
+   * @param threads     the maximum number of workers sending messages
+   */
+  public MailSpool(File directory, int capacity, int threads) {
+    this.directory = directory;
+    this.capacity = capacity;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Queues any messages left in the spool directory, for example because
+   * the server was stopped before they could be sent.
+   *
+   * @param session   the JavaMail Session to send them with
+   */
+  public void recover(Session session) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    // messages are named by the time they were spooled
+    Arrays.sort(files);
+    int recovered = 0;
+    synchronized (this) {
+      for (File file : files) {
+        if (!file.getName().endsWith(SUFFIX)) {
+          continue;
+        }
+
+        try {
+          InputStream in = new BufferedInputStream(new FileInputStream(file));
+          try {
+            pending.add(new SpooledMessage(file, session, new MimeMessage(session, in)));
+            recovered++;
+          } finally {
+            in.close();
+          }
+        } catch (Exception e) {
+          log.error("Spooled e-mail " + file.getAbsolutePath() + " could not be read", e);
+        }
+      }
+
+      startWorkers();
+    }
+
+    if (recovered > 0) {
+      log.info(recovered + " spooled e-mails recovered from " + directory.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Writes a message to the spool and queues it to be sent.
+   *
+   * @param session   the JavaMail Session to send the message with
+   * @param message   the message to send
+   * @return  true if the message was queued, false if the spool is full
+   * @throws MessagingException   if the message can't be written
+   * @throws IOException          if the message can't be written
+   */
+  public boolean enqueue(Session session, MimeMessage message) throws MessagingException, IOException {
+    String name;
+    synchronized (this) {
+      if (pending.size() + inFlight >= capacity) {
+        rejections.incrementAndGet();
+        log.error("Mail spool " + directory.getAbsolutePath() + " is full (" + capacity + " messages), e-mail not sent");
+        return false;
+      }
+      name = System.currentTimeMillis() + "-" + (sequence++) + SUFFIX;
+    }
+
+    if (!directory.exists()) {
+      directory.mkdirs();
+    }
+
+    message.saveChanges();
+    File file = new File(directory, name);
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      message.writeTo(out);
+    } finally {
+      out.close();
+    }
+
+    synchronized (this) {
+      pending.add(new SpooledMessage(file, session, message));
+      startWorkers();
+    }
+
+    return true;
+  }
+
+  /**
+   * Starts as many workers as are needed (and allowed). Must be called
+   * while holding the lock on this spool.
+   */
+  private void startWorkers() {
+    while (activeWorkers < threads && activeWorkers < pending.size()) {
+      activeWorkers++;
+      workers.execute(new Worker());
+    }
+  }
+
+  /**
+   * Takes the next batch of messages that are due to be sent, all of which
+   * share a session (and so a connection). If there are none, the calling
+   * worker is stopped and a wake-up is scheduled for the next retry.
+   *
+   * @return  a List of messages, or null if there are none to send
+   */
+  private synchronized List<SpooledMessage> nextBatch() {
+    long now = System.currentTimeMillis();
+    List<SpooledMessage> batch = new ArrayList<SpooledMessage>();
+    long nextRetry = Long.MAX_VALUE;
+    Iterator<SpooledMessage> it = pending.iterator();
+    while (it.hasNext() && batch.size() < BATCH_SIZE) {
+      SpooledMessage message = it.next();
+      if (message.notBefore > now) {
+        nextRetry = Math.min(nextRetry, message.notBefore);
+      } else if (batch.isEmpty() || batch.get(0).session == message.session) {
+        batch.add(message);
+        it.remove();
+      }
+    }
+
+    if (batch.isEmpty()) {
+      activeWorkers--;
+      if (nextRetry != Long.MAX_VALUE) {
+        timer.schedule(new TimerTask() {
+          public void run() {
+            synchronized (MailSpool.this) {
+              startWorkers();
+            }
+          }
+        }, nextRetry - now);
+      }
+      return null;
+    }
+
+    inFlight += batch.size();
+    return batch;
+  }
+
+  /**
+   * Sends a batch of messages over a single connection.
+   *
+   * @param batch   a List of messages sharing the same session
+   */
+  private void send(List<SpooledMessage> batch) {
+    Transport transport = null;
+    int next = 0;
+    try {
+      while (next < batch.size()) {
+        SpooledMessage message = batch.get(next);
+        Address[] recipients = message.message.getAllRecipients();
+        if (recipients == null || recipients.length == 0) {
+          log.error("Spooled e-mail " + message.file.getName() + " has no recipients");
+          dropped(message);
+        } else {
+          if (transport == null) {
+            transport = message.session.getTransport(recipients[0]);
+          }
+          if (!transport.isConnected()) {
+            transport.connect();
+            connections.incrementAndGet();
+          }
+
+          try {
+            transport.sendMessage(message.message, recipients);
+            sent(message);
+          } catch (SendFailedException sfe) {
+            // the server refused the recipients, so trying again won't help
+            log.error("E-mail could not be sent to " + Arrays.asList(recipients), sfe);
+            dropped(message);
+          }
+        }
+        next++;
+      }
+    } catch (Exception e) {
+      // the connection failed, so retry this message and the rest of the batch
+      log.warn("E-mails could not be sent, retrying", e);
+      for (int i = next; i < batch.size(); i++) {
+        failed(batch.get(i));
+      }
+    } finally {
+      if (transport != null) {
+        try {
+          transport.close();
+        } catch (MessagingException me) {
+          // do nothing, the messages have been handled
+        }
+      }
+    }
+  }
+
+  private synchronized void sent(SpooledMessage message) {
+    inFlight--;
+    sent.incrementAndGet();
+    delete(message);
+  }
+
+  private synchronized void dropped(SpooledMessage message) {
+    inFlight--;
+    failures.incrementAndGet();
+    delete(message);
+  }
+
+  private synchronized void failed(SpooledMessage message) {
+    inFlight--;
+    message.attempts++;
+    if (message.attempts >= MAXIMUM_ATTEMPTS) {
+      log.error("Spooled e-mail " + message.file.getName() + " dropped after " + message.attempts + " attempts");
+      failures.incrementAndGet();
+      delete(message);
+    } else {
+      retries.incrementAndGet();
+      message.notBefore = System.currentTimeMillis() + (retryDelay << (message.attempts - 1));
+      pending.add(message);
+    }
+  }
+
+  private void delete(SpooledMessage message) {
+    if (!message.file.delete() && message.file.exists()) {
+      log.warn("Spooled e-mail " + message.file.getAbsolutePath() + " could not be deleted");
+    }
+  }
+
+  /**
+   * Gets the number of messages waiting to be, or being, sent.
+   *
+   * @return  the number of messages
+   */
+  public synchronized int getQueueSize() {
+    return pending.size() + inFlight;
+  }
+
+  /**
+   * Gets the number of messages that have been sent.
+   *
+   * @return  the number of messages
+   */
+  public long getSent() {
+    return sent.get();
+  }
+
+  /**
+   * Gets the number of SMTP connections that have been opened.
+   *
+   * @return  the number of connections
+   */
+  public long getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * Gets the number of times a message has been queued to be tried again.
+   *
+   * @return  the number of retries
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /**
+   * Gets the number of messages that have been given up on.
+   *
+   * @return  the number of messages
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * Gets the number of messages turned away because the spool was full.
+   *
+   * @return  the number of messages
+   */
+  public long getRejections() {
+    return rejections.get();
+  }
+
+  void setRetryDelay(long retryDelay) {
+    this.retryDelay = retryDelay;
+  }
+
+  /**
+   * Sends batches of messages until there are none left that are due.
+   */
+  private class Worker implements Runnable {
+
+    public void run() {
+      List<SpooledMessage> batch;
+      while ((batch = nextBatch()) != null) {
+        send(batch);
+      }
+    }
+
+  }
+
+  /**
+   * A message in the spool, along with its delivery state.
+   */
+  private static class SpooledMessage {
+
+    private final File file;
+    private final Session session;
+    private final MimeMessage message;
+    private int attempts = 0;
+    private long notBefore = 0;
+
+    SpooledMessage(File file, Session session, MimeMessage message) {
+      this.file = file;
+      this.session = session;
+      this.message = message;
+    }
+
+  }
+
+}
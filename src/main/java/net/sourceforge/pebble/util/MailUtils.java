@@ -36,20 +36,21 @@ import net.sourceforge.pebble.domain.State;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import net.sourceforge.pebble.web.validation.ValidationContext;
+import net.sourceforge.pebble.Configuration;
 import net.sourceforge.pebble.PebbleContext;
 
 import javax.mail.Message;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeUtility;
 import javax.naming.Context;
 import javax.naming.InitialContext;
+import java.io.File;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utilities for e-mail related functions.
@@ -62,8 +63,8 @@ public class MailUtils {
   private static Log log = LogFactory.getLog(MailUtils.class);
   private static String ENCODING = "UTF-8";
 
-  /** thread pool used to send e-mail */
-  private static ExecutorService pool = Executors.newFixedThreadPool(1);
+  /** the spools that e-mail is sent through, keyed by spool directory */
+  private static final ConcurrentMap<String,MailSpool> spools = new ConcurrentHashMap<String,MailSpool>();
 
   /**
    * Get the prefix to be used for blog entry emails
@@ -184,101 +185,111 @@ public class MailUtils {
    * @param message       the body of the e-mail
    */
   public static void sendMail(Session session, Blog blog, Collection to, Collection cc, Collection bcc, String subject, String message) {
-    Runnable r = new SendMailRunnable(session, blog, to, cc, bcc, subject, message);
-    pool.execute(r);
+    try {
+      MimeMessage msg = createMessage(session, blog, to, cc, bcc, subject, message);
+      getMailSpool(blog, session).enqueue(session, msg);
+    } catch (Exception e) {
+      log.error("Notification e-mail could not be sent", e);
+    }
   }
 
   /**
-   * A thread allowing the e-mail to be sent asynchronously, so the requesting
-   * thread (and therefore the user) isn't held up.
+   * Gets the spool that e-mails for the given blog are sent through,
+   * creating it (and recovering any e-mails left over from a previous run)
+   * if necessary.
+   *
+   * @param blog      the notifying blog
+   * @param session   a JavaMail Session instance
+   * @return  a MailSpool instance
    */
-  static class SendMailRunnable implements Runnable {
-
-    /** the JavaMail session */
-    private Session session;
-
-    /** the notifying blog */
-    private Blog blog;
-
-    /** the e-mail addresses of the recipients in the TO field */
-    private Collection to;
-
-    /** the e-mail addresses of the recipients in the CC field */
-    private Collection cc;
-
-    /** the e-mail addresses of the recipients in the BCC field */
-    private Collection bcc;
+  public static MailSpool getMailSpool(Blog blog, Session session) {
+    String directory = blog.getMailSpoolDirectory();
+    MailSpool spool = spools.get(directory);
+    if (spool == null) {
+      int capacity = MailSpool.DEFAULT_CAPACITY;
+      int threads = MailSpool.DEFAULT_THREADS;
+      Configuration configuration = PebbleContext.getInstance().getConfiguration();
+      if (configuration != null) {
+        capacity = configuration.getMailSpoolSize();
+        threads = configuration.getMailThreads();
+      }
 
-    /** the subject of the e-mail */
-    private String subject;
+      MailSpool newSpool = new MailSpool(new File(directory), capacity, threads);
+      spool = spools.putIfAbsent(directory, newSpool);
+      if (spool == null) {
+        spool = newSpool;
+        spool.recover(session);
+      }
+    }
 
-    /** the body of the e-mail */
-    private String message;
+    return spool;
+  }
 
-    /**
-     * Creates a new thread to send a new e-mail.
-     *
-     * @param session   a JavaMail Session instance
-     * @param blog    the notifying blog
-     * @param to     the e-mail addresses of the recipients in the TO field
-     * @param cc     the e-mail addresses of the recipients in the CC field
-     * @param bcc     the e-mail addresses of the recipients in the BCC field
-     * @param subject       the subject of the e-mail
-     * @param message       the body of the e-mail
-     */
-    public SendMailRunnable(Session session, Blog blog, Collection to, Collection cc, Collection bcc, String subject, String message) {
-      this.session = session;
-      this.blog = blog;
-      this.to = to;
-      this.cc = cc;
-      this.bcc = bcc;
-      this.subject = subject;
-      this.message = message;
+  /**
+   * Sends any e-mails left in the spool of the given blog from a previous
+   * run, without waiting for the blog to send another e-mail.
+   *
+   * @param blog    the blog being started
+   */
+  public static void recoverMailSpool(Blog blog) {
+    File[] files = new File(blog.getMailSpoolDirectory()).listFiles();
+    if (files == null || files.length == 0) {
+      return;
     }
 
-    /**
-     * Performs the processing associated with this thread.
-     */
-    public void run() {
-      try {
-        // create a message and try to send it
-        Message msg = new MimeMessage(session);
-        msg.setFrom(new InternetAddress(blog.getFirstEmailAddress(), MimeUtility.encodeText(blog.getName(), ENCODING, "B")));
-        Collection internetAddresses = new HashSet();
-        Iterator it = to.iterator();
-        while (it.hasNext()) {
-          internetAddresses.add(new InternetAddress(it.next().toString()));
-        }
-        msg.addRecipients(Message.RecipientType.TO, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
+    try {
+      getMailSpool(blog, createSession());
+    } catch (Exception e) {
+      log.error("Spooled e-mails for " + blog.getId() + " could not be recovered", e);
+    }
+  }
 
-        internetAddresses = new HashSet();
-        it = cc.iterator();
-        while (it.hasNext()) {
-          internetAddresses.add(new InternetAddress(it.next().toString()));
-        }
-        msg.addRecipients(Message.RecipientType.CC, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
+  /**
+   * Creates an e-mail.
+   *
+   * @param session   a JavaMail Session instance
+   * @param blog    the notifying blog
+   * @param to     the e-mail addresses of the recipients in the TO field
+   * @param cc     the e-mail addresses of the recipients in the CC field
+   * @param bcc     the e-mail addresses of the recipients in the BCC field
+   * @param subject       the subject of the e-mail
+   * @param message       the body of the e-mail
+   * @return  a MimeMessage instance
+   * @throws Exception    if the e-mail can't be created
+   */
+  static MimeMessage createMessage(Session session, Blog blog, Collection to, Collection cc, Collection bcc, String subject, String message) throws Exception {
+    MimeMessage msg = new MimeMessage(session);
+    msg.setFrom(new InternetAddress(blog.getFirstEmailAddress(), MimeUtility.encodeText(blog.getName(), ENCODING, "B")));
+    Collection internetAddresses = new HashSet();
+    Iterator it = to.iterator();
+    while (it.hasNext()) {
+      internetAddresses.add(new InternetAddress(it.next().toString()));
+    }
+    msg.addRecipients(Message.RecipientType.TO, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
 
-        internetAddresses = new HashSet();
-        it = bcc.iterator();
-        while (it.hasNext()) {
-          internetAddresses.add(new InternetAddress(it.next().toString()));
-        }
-        msg.addRecipients(Message.RecipientType.BCC, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
+    internetAddresses = new HashSet();
+    it = cc.iterator();
+    while (it.hasNext()) {
+      internetAddresses.add(new InternetAddress(it.next().toString()));
+    }
+    msg.addRecipients(Message.RecipientType.CC, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
 
-        msg.setSubject(MimeUtility.encodeText(subject, ENCODING, "B"));
-        msg.setSentDate(new Date());
-        msg.setContent(message, "text/html; charset=" + ENCODING);
+    internetAddresses = new HashSet();
+    it = bcc.iterator();
+    while (it.hasNext()) {
+      internetAddresses.add(new InternetAddress(it.next().toString()));
+    }
+    msg.addRecipients(Message.RecipientType.BCC, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
 
-        log.debug("From : " + blog.getName() + " (" + blog.getFirstEmailAddress() + ")");
-        log.debug("Subject : " + subject);
-        log.debug("Message : " + message);
+    msg.setSubject(MimeUtility.encodeText(subject, ENCODING, "B"));
+    msg.setSentDate(new Date());
+    msg.setContent(message, "text/html; charset=" + ENCODING);
 
-        Transport.send(msg);
-      } catch (Exception e) {
-        log.error("Notification e-mail could not be sent", e);
-      }
-    }
+    log.debug("From : " + blog.getName() + " (" + blog.getFirstEmailAddress() + ")");
+    log.debug("Subject : " + subject);
+    log.debug("Message : " + message);
 
+    return msg;
   }
 
   /**
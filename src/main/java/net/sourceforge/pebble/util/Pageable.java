@@ -48,6 +48,12 @@ public class Pageable<T> {
   /** the list over which this class is paging */
   private List<T> list;
 
+  /** the size of the whole list, which may be larger than the list held */
+  private int size;
+
+  /** the index in the whole list of the first item held */
+  private int listOffset = 0;
+
   /** the page size */
   private int pageSize = DEFAULT_PAGE_SIZE;
 
@@ -70,19 +76,40 @@ public class Pageable<T> {
    */
   public Pageable(List<T> list) {
     this.list = list;
+    this.size = list.size();
     this.page = 1;
     this.maxPages = 1;
 
     calculatePages();
   }
 
+  /**
+   * Creates a new instance for a single page of a larger list, where only
+   * the items on that page have been loaded (e.g. a page of search results).
+   *
+   * @param listForPage   the items on the given page
+   * @param size          the size of the whole list
+   * @param pageSize      the page size
+   * @param page          the page that the items are from
+   */
+  public Pageable(List<T> listForPage, int size, int pageSize, int page) {
+    this.list = listForPage;
+    this.size = size;
+    this.page = 1;
+    this.maxPages = 1;
+
+    setPageSize(pageSize);
+    setPage(page);
+    this.listOffset = startingIndex;
+  }
+
   private void calculatePages() {
     if (pageSize > 0) {
       // calculate how many pages there are
-      if (list.size() % pageSize == 0) {
-        maxPages = list.size() / pageSize;
+      if (size % pageSize == 0) {
+        maxPages = size / pageSize;
       } else {
-        maxPages = (list.size() / pageSize) + 1;
+        maxPages = (size / pageSize) + 1;
       }
     }
   }
@@ -102,7 +129,7 @@ public class Pageable<T> {
    * @return  a List
    */
   public List<T> getListForPage() {
-    return list.subList(startingIndex, endingIndex);
+    return list.subList(startingIndex - listOffset, Math.min(endingIndex - listOffset, list.size()));
   }
 
   /**
@@ -153,8 +180,8 @@ public class Pageable<T> {
       startingIndex = 0;
     }
     endingIndex = startingIndex + pageSize;
-    if (endingIndex > list.size()) {
-      endingIndex = list.size();
+    if (endingIndex > size) {
+      endingIndex = size;
     }
   }
 
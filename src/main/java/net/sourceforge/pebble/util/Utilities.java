@@ -121,9 +121,10 @@ public class Utilities {
    * @param blog    a Blog instance
    */
   public static void fixHtmlInResponses(Blog blog) {
+    BlogService service = new BlogService();
     Iterator blogEntries = blog.getBlogEntries().iterator();
     while (blogEntries.hasNext()) {
-      BlogEntry blogEntry = (BlogEntry)blogEntries.next();
+      BlogEntry blogEntry = service.getBlogEntryForUpdate((BlogEntry)blogEntries.next());
       log.info("Processing " + blogEntry.getTitle() + " (" + blogEntry.getDate() + ")");
       Iterator comments = blogEntry.getComments().iterator();
       while (comments.hasNext()) {
@@ -144,7 +145,6 @@ public class Utilities {
         }
       }
       try {
-        BlogService service = new BlogService();
         service.putBlogEntry(blogEntry);
       } catch (BlogServiceException e) {
         log.error("Error storing " + blogEntry.getTitle() + " (" + blogEntry.getDate() + ")");
@@ -192,6 +192,7 @@ public class Utilities {
    * @param blog    a Blog instance
    */
   public static void moveBlogEntriesFromCategory(Blog blog, Category from, Category to) {
+    BlogService service = new BlogService();
     Iterator blogEntries = blog.getBlogEntries().iterator();
     while (blogEntries.hasNext()) {
       BlogEntry blogEntry = (BlogEntry)blogEntries.next();
@@ -199,12 +200,12 @@ public class Utilities {
 
       Collection categories = blogEntry.getCategories();
       if (categories.contains(from)) {
+        blogEntry = service.getBlogEntryForUpdate(blogEntry);
         categories.remove(from);
         categories.add(to);
         blogEntry.setCategories(categories);
 
         try {
-          BlogService service = new BlogService();
           service.putBlogEntry(blogEntry);
         } catch (BlogServiceException e) {
           log.info("Error storing " + blogEntry.getTitle() + " (" + blogEntry.getDate() + ")");
@@ -268,13 +269,21 @@ public class Utilities {
     TimeZone gmt = TimeZone.getTimeZone("GMT");
     FileBlogEntryDAO dao = new FileBlogEntryDAO();
     File root = new File(blog.getRoot());
+
+    // move the binary files too, so they stay alongside the XML files they supersede
+    FilenameFilter blogEntryFilter = new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.matches("\\d+(\\.xml|\\.dat)\\z");
+      }
+    };
+
     File years[] = root.listFiles(new FourDigitFilenameFilter());
     for (File year : years) {
       File months[] = year.listFiles(new TwoDigitFilenameFilter());
       for (File month : months) {
         File days[] = month.listFiles(new TwoDigitFilenameFilter());
         for (File day : days) {
-          File blogEntryFiles[] = day.listFiles(new BlogEntryFilenameFilter());
+          File blogEntryFiles[] = day.listFiles(blogEntryFilter);
           for (File blogEntryFile : blogEntryFiles) {
             String filename = blogEntryFile.getName();
             String id = filename.substring(0, filename.indexOf('.'));
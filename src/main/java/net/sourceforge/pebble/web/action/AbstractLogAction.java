@@ -36,6 +36,7 @@ import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.Month;
 import net.sourceforge.pebble.domain.Day;
 import net.sourceforge.pebble.logging.Log;
+import net.sourceforge.pebble.logging.LogStatistics;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -50,57 +51,54 @@ import java.util.Calendar;
  */
 public abstract class AbstractLogAction extends SecureAction {
 
+  /** indexes into the period returned by getPeriod() */
+  private static final int YEAR = 0;
+  private static final int MONTH = 1;
+  private static final int DAY = 2;
+
   protected Log getLog(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    int[] period = getPeriod(request);
 
-    String yearAsString = request.getParameter("year");
-    String monthAsString = request.getParameter("month");
-    String dayAsString = request.getParameter("day");
+    if (period[DAY] > 0) {
+      return blog.getLogger().getLog(period[YEAR], period[MONTH], period[DAY]);
+    } else {
+      return blog.getLogger().getLog(period[YEAR], period[MONTH]);
+    }
+  }
 
-    Calendar cal = blog.getCalendar();
-    Log log = null;
-    String logPeriod = "";
+  protected String getLogFile(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    int[] period = getPeriod(request);
 
-    if (yearAsString != null && yearAsString.length() > 0 &&
-        monthAsString != null && monthAsString.length() > 0 &&
-        dayAsString != null && dayAsString.length() > 0) {
-      int year = Integer.parseInt(yearAsString);
-      int month = Integer.parseInt(monthAsString);
-      int day = Integer.parseInt(dayAsString);
-      cal.set(Calendar.YEAR, year);
-      cal.set(Calendar.MONTH, month-1);
-      cal.set(Calendar.DAY_OF_MONTH, day);
-      log = blog.getLogger().getLog(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH)+1, cal.get(Calendar.DAY_OF_MONTH));
-      SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMMM yyyy", blog.getLocale());
-      dateFormat.setTimeZone(blog.getTimeZone());
-      registerObjectsForNavigation(blog, blog.getBlogForDay(year, month, day));
-      logPeriod = dateFormat.format(cal.getTime());
-    } else if (yearAsString != null && yearAsString.length() > 0 &&
-          monthAsString != null && monthAsString.length() > 0) {
-      int year = Integer.parseInt(yearAsString);
-      int month = Integer.parseInt(monthAsString);
-      cal.set(Calendar.YEAR, year);
-      cal.set(Calendar.MONTH, month-1);
-      log = blog.getLogger().getLog(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH)+1);
-      SimpleDateFormat dateFormat = new SimpleDateFormat("MMMM yyyy", blog.getLocale());
-      dateFormat.setTimeZone(blog.getTimeZone());
-      registerObjectsForNavigation(blog, blog.getBlogForMonth(year, month));
-      logPeriod = dateFormat.format(cal.getTime());
+    if (period[DAY] > 0) {
+      return blog.getLogger().getLogFile(period[YEAR], period[MONTH], period[DAY]);
     } else {
-      // get the log for today
-      log = blog.getLogger().getLog();
-      SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMMM yyyy", blog.getLocale());
-      dateFormat.setTimeZone(blog.getTimeZone());
-      registerObjectsForNavigation(blog, blog.getBlogForToday());
-      logPeriod = dateFormat.format(cal.getTime());
+      return blog.getLogger().getLogFile(period[YEAR], period[MONTH]);
     }
+  }
 
-    getModel().put("logPeriod", logPeriod);
+  protected LogStatistics getLogStatistics(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    int[] period = getPeriod(request);
 
-    return log;
+    if (period[DAY] > 0) {
+      return blog.getLogger().getLogStatistics(period[YEAR], period[MONTH], period[DAY]);
+    } else {
+      return blog.getLogger().getLogStatistics(period[YEAR], period[MONTH]);
+    }
   }
 
-  protected String getLogFile(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+  /**
+   * Works out which period (a day or a whole month) has been asked for,
+   * defaulting to today, and registers the objects needed to display and
+   * navigate around it.
+   *
+   * @param request   the HttpServletRequest instance
+   * @return  the year, month (1-12) and day, where the day is 0 if a whole
+   *          month has been asked for
+   */
+  private int[] getPeriod(HttpServletRequest request) {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
 
     String yearAsString = request.getParameter("year");
@@ -108,8 +106,8 @@ public abstract class AbstractLogAction extends SecureAction {
     String dayAsString = request.getParameter("day");
 
     Calendar cal = blog.getCalendar();
-    String log = null;
-    String logPeriod = "";
+    boolean wholeMonth = false;
+    SimpleDateFormat dateFormat;
 
     if (yearAsString != null && yearAsString.length() > 0 &&
         monthAsString != null && monthAsString.length() > 0 &&
@@ -120,34 +118,31 @@ public abstract class AbstractLogAction extends SecureAction {
       cal.set(Calendar.YEAR, year);
       cal.set(Calendar.MONTH, month-1);
       cal.set(Calendar.DAY_OF_MONTH, day);
-      log = blog.getLogger().getLogFile(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH)+1, cal.get(Calendar.DAY_OF_MONTH));
-      SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMMM yyyy", blog.getLocale());
-      dateFormat.setTimeZone(blog.getTimeZone());
+      dateFormat = new SimpleDateFormat("dd MMMM yyyy", blog.getLocale());
       registerObjectsForNavigation(blog, blog.getBlogForDay(year, month, day));
-      logPeriod = dateFormat.format(cal.getTime());
     } else if (yearAsString != null && yearAsString.length() > 0 &&
           monthAsString != null && monthAsString.length() > 0) {
       int year = Integer.parseInt(yearAsString);
       int month = Integer.parseInt(monthAsString);
       cal.set(Calendar.YEAR, year);
       cal.set(Calendar.MONTH, month-1);
-      log = blog.getLogger().getLogFile(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH)+1);
-      SimpleDateFormat dateFormat = new SimpleDateFormat("MMMM yyyy", blog.getLocale());
-      dateFormat.setTimeZone(blog.getTimeZone());
+      wholeMonth = true;
+      dateFormat = new SimpleDateFormat("MMMM yyyy", blog.getLocale());
       registerObjectsForNavigation(blog, blog.getBlogForMonth(year, month));
-      logPeriod = dateFormat.format(cal.getTime());
     } else {
-      // get the log for today
-      log = blog.getLogger().getLogFile();
-      SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMMM yyyy", blog.getLocale());
-      dateFormat.setTimeZone(blog.getTimeZone());
+      // today
+      dateFormat = new SimpleDateFormat("dd MMMM yyyy", blog.getLocale());
       registerObjectsForNavigation(blog, blog.getBlogForToday());
-      logPeriod = dateFormat.format(cal.getTime());
     }
 
-    getModel().put("logPeriod", logPeriod);
+    dateFormat.setTimeZone(blog.getTimeZone());
+    getModel().put("logPeriod", dateFormat.format(cal.getTime()));
 
-    return log;
+    return new int[] {
+        cal.get(Calendar.YEAR),
+        cal.get(Calendar.MONTH)+1,
+        wholeMonth ? 0 : cal.get(Calendar.DAY_OF_MONTH)
+    };
   }
 
   private void registerObjectsForNavigation(Blog blog, Month month) {
@@ -83,7 +83,7 @@ public class AddTrackBackAction extends Action {
         return new TrackBackResponseView();
       } else {
         BlogService service = new BlogService();
-        blogEntry = service.getBlogEntry(blog, entry);
+        blogEntry = service.getBlogEntryForUpdate(blog, entry);
 
         // only add the TrackBack if they are enabled for the entry
         if (blogEntry.isTrackBacksEnabled()) {
@@ -74,7 +74,7 @@ public class ConfirmCommentAction extends AbstractCommentAction {
 
     BlogService service = new BlogService();
     try {
-      blogEntry = service.getBlogEntry(blog, entry);
+      blogEntry = service.getBlogEntryForUpdate(blog, entry);
     } catch (BlogServiceException e) {
       throw new ServletException(e);
     }
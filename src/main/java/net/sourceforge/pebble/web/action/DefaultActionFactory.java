@@ -47,6 +47,8 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A factory class from which to look up and retrieve an instance
@@ -62,6 +64,9 @@ public class DefaultActionFactory implements ActionFactory, ApplicationContextAw
   /** the collection of actions that we know about */
   private final Map<String, String> actions = new HashMap<String, String>();
 
+  /** the action classes that have been loaded so far, keyed by action name */
+  private final ConcurrentMap<String, Class<? extends Action>> actionClasses = new ConcurrentHashMap<String, Class<? extends Action>>();
+
   /** the name of the action mapping file */
   private String actionMappingFileName;
 
@@ -104,9 +109,14 @@ public class DefaultActionFactory implements ActionFactory, ApplicationContextAw
   public Action getAction(String name) throws ActionNotFoundException {
     try {
       // instantiate the appropriate class to handle the request
-      if (actions.containsKey(name)) {
+      Class<? extends Action> actionClass = actionClasses.get(name);
+      if (actionClass == null && actions.containsKey(name)) {
         Class<?> c = getClass().getClassLoader().loadClass((String)actions.get(name));
-        Class<? extends Action> actionClass = c.asSubclass(Action.class);
+        actionClass = c.asSubclass(Action.class);
+        actionClasses.put(name, actionClass);
+      }
+
+      if (actionClass != null) {
         return (Action) beanFactory.createBean(actionClass, AutowireCapableBeanFactory.AUTOWIRE_NO, false);
       } else {
         throw new ActionNotFoundException("An action called " + name + " could not be found");
@@ -33,6 +33,10 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.comparator.BlogEntryComparator;
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.dao.file.BinaryBlogEntryDAO;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.web.view.ForwardView;
@@ -64,13 +68,23 @@ public class ExportBlogAction extends SecureAction {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     String flavor = request.getParameter("flavor");
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
 
     if (flavor != null && flavor.equalsIgnoreCase("zip")) {
+      // blog entries stored in binary format are exported to XML too, so
+      // that the backup can be restored whichever DAOFactory is in use
+      BlogEntryDAO dao = DAOFactory.getConfiguredFactory().getBlogEntryDAO();
+      if (dao instanceof BinaryBlogEntryDAO) {
+        try {
+          ((BinaryBlogEntryDAO)dao).exportBlogEntries(blog);
+        } catch (PersistenceException pe) {
+          throw new ServletException(pe);
+        }
+      }
+
       return new ForwardView("/zipDirectory.secureaction?type=blogData");
     }
 
-    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
-
     response.setContentType("application/xml; charset=" + blog.getCharacterEncoding());
 
     List<BlogEntry> blogEntries = blog.getBlogEntries();
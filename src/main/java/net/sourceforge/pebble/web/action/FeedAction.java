@@ -31,13 +31,17 @@
  */
 package net.sourceforge.pebble.web.action;
 
+import net.sourceforge.pebble.CachedFeed;
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
 import net.sourceforge.pebble.comparator.BlogEntryComparator;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.service.LastModifiedService;
+import net.sourceforge.pebble.service.RouteType;
 import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.AbstractRomeFeedView;
+import net.sourceforge.pebble.web.view.impl.CachedFeedView;
 import net.sourceforge.pebble.web.view.impl.FeedView;
 import net.sourceforge.pebble.web.view.impl.RdfView;
 
@@ -48,7 +52,8 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.*;
 
 /**
- * Gets the RSS for a blog.
+ * Gets the RSS for a blog. Rendered feeds are cached per blog, so that
+ * polling newsreaders can be answered without loading any blog entries.
  *
  * @author Simon Brown
  */
@@ -67,14 +72,35 @@ public class FeedAction extends Action {
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     AbstractBlog blog = (AbstractBlog) getModel().get(Constants.BLOG_KEY);
     String flavor = request.getParameter("flavor");
+    String s = request.getParameter("includeAggregatedContent");
+    boolean includeAggregatedContent = (s == null || s.equalsIgnoreCase("true"));
+
+    FeedCache feedCache = null;
+    String feedCacheKey = null;
+    long feedCacheVersion = 0;
+    if (blog instanceof Blog) {
+      feedCache = ((Blog) blog).getFeedCache();
+      feedCacheKey = FeedCache.getKey(request.getScheme(), getFlavor(flavor), request.getParameter("tag"),
+          request.getParameter("category"), getAuthor(request), includeAggregatedContent);
+
+      CachedFeed feed = feedCache.get(feedCacheKey);
+      if (feed != null) {
+        if (lastModifiedService.checkAndProcessLastModified(request, response, feed.getLastModified(), feed.getETag(), RouteType.FEED)) {
+          return new NotModifiedView();
+        } else {
+          return new CachedFeedView(feed);
+        }
+      }
 
-    if (lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null)) {
+      feedCacheVersion = feedCache.getVersion();
+    }
+
+    Date lastModified = blog.getLastModified();
+    if (lastModifiedService.checkAndProcessLastModified(request, response, lastModified, null, RouteType.FEED)) {
       return new NotModifiedView();
     }
 
     List<BlogEntry> blogEntries;
-    String s = request.getParameter("includeAggregatedContent");
-    boolean includeAggregatedContent = (s == null || s.equalsIgnoreCase("true"));
 
     if (blog instanceof Blog) {
       Tag tag = getTag((Blog) blog, request);
@@ -115,11 +141,39 @@ public class FeedAction extends Action {
         Locale.ENGLISH);
 
     if (flavor != null && flavor.equalsIgnoreCase("atom")) {
-      return new FeedView(AbstractRomeFeedView.FeedType.ATOM);
+      FeedView view = new FeedView(AbstractRomeFeedView.FeedType.ATOM);
+      if (feedCache != null) {
+        view.cacheIn(feedCache, feedCacheKey, feedCacheVersion, lastModified);
+      }
+      return view;
+    } else if (flavor != null && flavor.equalsIgnoreCase("rdf")) {
+      RdfView view = new RdfView();
+      if (feedCache != null) {
+        view.cacheIn(feedCache, feedCacheKey, feedCacheVersion, lastModified);
+      }
+      return view;
+    } else {
+      FeedView view = new FeedView(AbstractRomeFeedView.FeedType.RSS);
+      if (feedCache != null) {
+        view.cacheIn(feedCache, feedCacheKey, feedCacheVersion, lastModified);
+      }
+      return view;
+    }
+  }
+
+  /**
+   * Helper method to normalise the flavor of feed requested.
+   *
+   * @param flavor  the flavor request parameter
+   * @return  atom, rdf or rss20
+   */
+  private String getFlavor(String flavor) {
+    if (flavor != null && flavor.equalsIgnoreCase("atom")) {
+      return "atom";
     } else if (flavor != null && flavor.equalsIgnoreCase("rdf")) {
-      return new RdfView();
+      return "rdf";
     } else {
-      return new FeedView(AbstractRomeFeedView.FeedType.RSS);
+      return "rss20";
     }
   }
 
@@ -36,6 +36,7 @@ import net.sourceforge.pebble.domain.MultiBlog;
 import net.sourceforge.pebble.domain.FileManager;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.service.LastModifiedService;
+import net.sourceforge.pebble.service.RouteType;
 import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.web.view.*;
 import org.apache.commons.logging.Log;
@@ -46,7 +47,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.util.Calendar;
 import java.util.Date;
 
 /**
@@ -98,15 +98,20 @@ public class FileAction extends Action {
       return new ForwardView("/viewFiles.secureaction?type=" + type + "&path=" + name);
     }
 
-    Date lastModified = new Date(file.lastModified());
-    Calendar expires = blog.getCalendar();
-    expires.add(Calendar.MONTH, 1);
+    // the validators only need the file's attributes, not its content
+    long length = file.length();
+    long lastModified = file.lastModified();
+    String eTag = FileView.getETag(length, lastModified);
 
-    if (lastModifiedService.checkAndProcessLastModified(request, response, lastModified, expires.getTime())) {
+    if (lastModifiedService.checkAndProcessLastModified(request, response, new Date(lastModified), eTag, RouteType.FILE)) {
       return new NotModifiedView();
     } else {
-      return new FileView(file);
+      return new FileView(file, length, lastModified);
     }
   }
 
-}
\ No newline at end of file
+  public void setLastModifiedService(LastModifiedService lastModifiedService) {
+    this.lastModifiedService = lastModifiedService;
+  }
+
+}
@@ -74,7 +74,7 @@ public class ManageBlogEntryAction extends SecureAction {
     BlogService service = new BlogService();
     BlogEntry blogEntry = null;
     try {
-      blogEntry = service.getBlogEntry(blog, id);
+      blogEntry = service.getBlogEntryForUpdate(blog, id);
     } catch (BlogServiceException e) {
       throw new ServletException(e);
     }
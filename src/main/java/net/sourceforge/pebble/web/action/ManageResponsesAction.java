@@ -138,7 +138,7 @@ public class ManageResponsesAction extends SecureAction {
     BlogService service = new BlogService();
     BlogEntry blogEntry = null;
     try {
-      blogEntry = service.getBlogEntry(blog, blogEntryId);
+      blogEntry = service.getBlogEntryForUpdate(blog, blogEntryId);
     } catch (BlogServiceException e) {
       throw new ServletException(e);
     }
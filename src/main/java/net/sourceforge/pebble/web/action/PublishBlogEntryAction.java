@@ -75,7 +75,7 @@ public class PublishBlogEntryAction extends SecureAction {
     BlogService service = new BlogService();
     BlogEntry blogEntry = null;
     try {
-      blogEntry = service.getBlogEntry(blog, id);
+      blogEntry = service.getBlogEntryForUpdate(blog, id);
     } catch (BlogServiceException e) {
       throw new ServletException(e);
     }
@@ -73,7 +73,7 @@ public class RemoveEmailAddressAction extends Action {
 
     BlogService service = new BlogService();
     try {
-      blogEntry = service.getBlogEntry(blog, entry);
+      blogEntry = service.getBlogEntryForUpdate(blog, entry);
     } catch (BlogServiceException e) {
       throw new ServletException(e);
     }
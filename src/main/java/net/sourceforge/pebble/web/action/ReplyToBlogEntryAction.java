@@ -111,7 +111,7 @@ public class ReplyToBlogEntryAction extends AbstractCommentAction {
       // are we replying to an existing comment?
       String parentCommentId = request.getParameter("comment");
       if (parentCommentId != null && parentCommentId.length() > 0) {
-        Comment parentComment = blogEntry.getComment(Long.parseLong(parentCommentId));
+        Comment parentComment = (Comment)blogEntry.getComment(Long.parseLong(parentCommentId)).clone();
         blog.getContentDecoratorChain().decorate(decoratorContext, parentComment);
         getModel().put("parentComment", parentComment);
       }
@@ -34,6 +34,7 @@ package net.sourceforge.pebble.web.action;
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.service.LastModifiedService;
+import net.sourceforge.pebble.service.RouteType;
 import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.*;
@@ -65,7 +66,7 @@ public class ResponseFeedAction extends Action {
     Blog blog = (Blog) getModel().get(Constants.BLOG_KEY);
     String flavor = request.getParameter("flavor");
 
-    if (lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null)) {
+    if (lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null, RouteType.FEED)) {
       return new NotModifiedView();
     }
     List<Response> responses = new ArrayList<Response>();
@@ -138,7 +138,7 @@ public class SaveBlogEntryAction extends SecureAction {
     if (persistent != null && persistent.equalsIgnoreCase("true")) {
       BlogService service = new BlogService();
       try {
-        return service.getBlogEntry(blog, id);
+        return service.getBlogEntryForUpdate(blog, id);
       } catch (BlogServiceException e) {
         throw new ServletException(e);
       }
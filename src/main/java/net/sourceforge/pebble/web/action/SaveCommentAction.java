@@ -84,7 +84,7 @@ public class SaveCommentAction extends AbstractCommentAction {
 
     BlogService service = new BlogService();
     try {
-      blogEntry = service.getBlogEntry(blog, entry);
+      blogEntry = service.getBlogEntryForUpdate(blog, entry);
     } catch (BlogServiceException e) {
       throw new ServletException(e);
     }
@@ -92,8 +92,20 @@ public class SearchAction extends Action {
       }
     }
 
+    if (page < 1 || page > Integer.MAX_VALUE / PAGE_SIZE) {
+      page = 1;
+    }
+
+    // only the hits for the requested page are loaded from the index
+    boolean sortByDate = "date".equalsIgnoreCase(request.getParameter("sort"));
+
     try {
-      SearchResults results = blog.getSearchIndex().search(query);
+      SearchResults results = blog.getSearchIndex().search(query, sortByDate, (page-1) * PAGE_SIZE, PAGE_SIZE);
+      if (results.getNumberOfHits() > 0 && results.getHits().isEmpty()) {
+        // the requested page is past the end, so show the last page instead
+        page = ((results.getNumberOfHits() - 1) / PAGE_SIZE) + 1;
+        results = blog.getSearchIndex().search(query, sortByDate, (page-1) * PAGE_SIZE, PAGE_SIZE);
+      }
 
       if (results.getNumberOfHits() == 1) {
         // if there is only one hit, redirect the user to it without the
@@ -101,17 +113,8 @@ public class SearchAction extends Action {
         SearchHit hit = (SearchHit)results.getHits().get(0);
         return new RedirectView(hit.getPermalink());
       } else {
-        // show all results on the search results page
-        String sort = request.getParameter("sort");
-        if (sort != null && sort.equalsIgnoreCase("date")) {
-          results.sortByDateDescending();
-        } else {
-          results.sortByScoreDescending();
-        }
-
-        Pageable pageable = new Pageable(results.getHits());
-        pageable.setPageSize(PAGE_SIZE);
-        pageable.setPage(page);
+        // show the page of results on the search results page
+        Pageable pageable = new Pageable(results.getHits(), results.getNumberOfHits(), PAGE_SIZE, page);
 
         try {
           getModel().put("searchResults", results);
@@ -33,6 +33,8 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.decorator.ThumbnailDecorator;
+import net.sourceforge.pebble.decorator.ThumbnailPipeline;
 import net.sourceforge.pebble.domain.FileManager;
 import net.sourceforge.pebble.domain.FileMetaData;
 import net.sourceforge.pebble.domain.Blog;
@@ -80,6 +82,10 @@ public abstract class UploadFileAction extends AbstractFileAction {
 
     FileManager fileManager = new FileManager(blog, type);
 
+    // thumbnails of uploaded images are created straight away, rather than when they're first viewed
+    boolean createThumbnails = type.equals(FileMetaData.BLOG_IMAGE) &&
+        blog.getContentDecorators().contains(ThumbnailDecorator.class.getName());
+
     try {
       boolean isMultipart = FileUpload.isMultipartContent(request);
 
@@ -136,6 +142,10 @@ public abstract class UploadFileAction extends AbstractFileAction {
               log.debug("Writing file " + filenames[index] + ", size is " + item.getSize());
               writeFile(fileManager, path, filenames[index], item);
 
+              if (createThumbnails) {
+                ThumbnailPipeline.getInstance().submit(file, ThumbnailDecorator.getThumbnailSize(blog));
+              }
+
               // if it's a theme file, also create a copy in blog.dir/theme
               if (type.equals(FileMetaData.THEME_FILE)) {
                 writeFile(new FileManager(blog, FileMetaData.BLOG_DATA), "/theme" + path, filenames[index], item);
@@ -171,7 +181,12 @@ public abstract class UploadFileAction extends AbstractFileAction {
     destinationDirectory.mkdirs();
 
     File file = new File(destinationDirectory, filename);
-    item.write(file);
+    long previousLength = file.length();
+    try {
+      item.write(file);
+    } finally {
+      fileManager.updateUsage(file, previousLength);
+    }
   }
 
   /**
@@ -31,15 +31,14 @@
  */
 package net.sourceforge.pebble.web.action;
 
-import com.maxmind.geoip.LookupService;
-import net.sourceforge.pebble.logging.Log;
-import net.sourceforge.pebble.logging.LogEntry;
-import net.sourceforge.pebble.logging.Request;
+import net.sourceforge.pebble.logging.LogStatistics;
+import net.sourceforge.pebble.service.GeoIpService;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.CountriesView;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.Constants;
 
+import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -53,6 +52,9 @@ import java.util.*;
  */
 public class ViewCountriesAction extends AbstractLogAction {
 
+  @Inject
+  private GeoIpService geoIpService;
+
   /**
    * Peforms the processing associated with this action.
    *
@@ -62,7 +64,7 @@ public class ViewCountriesAction extends AbstractLogAction {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
-    Log log = getLog(request, response);
+    LogStatistics statistics = getLogStatistics(request, response);
 
     Set<String> countries = new TreeSet<String>(new Comparator<String>() {
       public int compare(String s1, String s2) {
@@ -74,38 +76,30 @@ public class ViewCountriesAction extends AbstractLogAction {
     Map<String,Integer> countriesForPageViews = new HashMap<String,Integer>();
     Map<String,Integer> countriesForFileDownloads = new HashMap<String,Integer>();
 
-    LookupService lookupService = null;
-
     try {
-      String filename = getClass().getResource("/geo-ip.dat").toExternalForm().substring(5);
-      lookupService = new LookupService(filename, LookupService.GEOIP_MEMORY_CACHE);
+      // resolve all of the hosts in one go, rather than one at a time
+      Map<String,String> countriesForHosts = geoIpService.getCountries(statistics.getHosts());
 
-      for (LogEntry logEntry : log.getLogEntries()) {
-        String country = lookupService.getCountry(logEntry.getHost()).getName();
+      for (String host : statistics.getHosts()) {
+        String country = countriesForHosts.get(host);
         countries.add(country);
         register(country, countriesForNewsFeeds);
         register(country, countriesForPageViews);
         register(country, countriesForFileDownloads);
         register(country, consolidatedCountries);
 
-        Request req = new Request(logEntry.getRequestUri(), blog);
-        if (req.isNewsFeed()) {
-          increment(country, countriesForNewsFeeds);
-          increment(country, consolidatedCountries);
-        } else if (req.isPageView()) {
-          increment(country, countriesForPageViews);
-          increment(country, consolidatedCountries);
-        } else if (req.isFileDownload()) {
-          increment(country, countriesForFileDownloads);
-          increment(country, consolidatedCountries);
-        }
+        int newsFeedRequests = statistics.getNewsFeedRequests(host);
+        increment(country, countriesForNewsFeeds, newsFeedRequests);
+        increment(country, consolidatedCountries, newsFeedRequests);
+        int pageViews = statistics.getPageViews(host);
+        increment(country, countriesForPageViews, pageViews);
+        increment(country, consolidatedCountries, pageViews);
+        int fileDownloads = statistics.getFileDownloads(host);
+        increment(country, countriesForFileDownloads, fileDownloads);
+        increment(country, consolidatedCountries, fileDownloads);
       }
     } catch (IOException ioe) {
       throw new ServletException(ioe);
-    } finally {
-      if (lookupService != null) {
-        lookupService.close();
-      }
     }
 
     getModel().put("logAction", "viewCountries");
@@ -126,10 +120,14 @@ public class ViewCountriesAction extends AbstractLogAction {
     map.put(country, count);
   }
 
-  private void increment(String country, Map<String,Integer> map) {
+  private void increment(String country, Map<String,Integer> map, int increment) {
     Integer count = map.get(country);
-    count = count + 1;
+    count = count + increment;
     map.put(country, count);
   }
 
+  public void setGeoIpService(GeoIpService geoIpService) {
+    this.geoIpService = geoIpService;
+  }
+
 }
\ No newline at end of file
@@ -35,7 +35,7 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.comparator.CountedUrlByCountComparator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.logging.CountedUrl;
-import net.sourceforge.pebble.logging.Log;
+import net.sourceforge.pebble.logging.LogStatistics;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.ReferersView;
 
@@ -65,10 +65,10 @@ public class ViewReferersAction extends AbstractLogAction {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
-    Log log = getLog(request, response);
+    LogStatistics statistics = getLogStatistics(request, response);
 
     String filter = request.getParameter("filter");
-    List referers = new ArrayList(log.getReferers());
+    List referers = new ArrayList(statistics.getReferers());
     if (filter == null || filter.equalsIgnoreCase("true")) {
       referers = blog.getRefererFilterManager().filter(referers);
     }
@@ -36,7 +36,7 @@ import net.sourceforge.pebble.comparator.CountedUrlByCountComparator;
 import net.sourceforge.pebble.comparator.CountedUrlByNameComparator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.logging.CountedUrl;
-import net.sourceforge.pebble.logging.Log;
+import net.sourceforge.pebble.logging.LogStatistics;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.RequestsView;
 
@@ -64,9 +64,9 @@ public class ViewRequestsAction extends AbstractLogAction {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
-    Log log = getLog(request, response);
+    LogStatistics statistics = getLogStatistics(request, response);
 
-    List requests = new ArrayList(log.getRequests());
+    List requests = new ArrayList(statistics.getRequests());
 
     String sort = request.getParameter("sort");
     if (sort == null || sort.trim().equals("")) {
@@ -33,18 +33,13 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.logging.Log;
-import net.sourceforge.pebble.logging.LogEntry;
-import net.sourceforge.pebble.logging.Request;
+import net.sourceforge.pebble.logging.LogStatistics;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.RequestsByTypeView;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * Gets the statistics for the specified time period.
@@ -62,49 +57,44 @@ public class ViewRequestsByTypeAction extends AbstractLogAction {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
-    Log log = getLog(request, response);
+    LogStatistics statistics = getLogStatistics(request, response);
 
-    Collection<Request> requests = log.getRequests();
-    Set<String> uniqueIps = new HashSet<String>();
-    Set<String> uniqueIpsForNewsFeeds = new HashSet<String>();
-    Set<String> uniqueIpsForPageViews = new HashSet<String>();
-    Set<String> uniqueIpsForFileDownloads = new HashSet<String>();
+    int uniqueIpsForNewsFeeds = 0;
+    int uniqueIpsForPageViews = 0;
+    int uniqueIpsForFileDownloads = 0;
     int totalNewsFeedRequests = 0;
     int totalPageViews = 0;
     int totalFileDownloads = 0;
 
-    for (Request aRequest : requests) {
-      for (LogEntry logEntry : aRequest.getLogEntries()) {
-        uniqueIps.add(logEntry.getHost());
+    for (String host : statistics.getHosts()) {
+      int newsFeedRequests = statistics.getNewsFeedRequests(host);
+      if (newsFeedRequests > 0) {
+        totalNewsFeedRequests += newsFeedRequests;
+        uniqueIpsForNewsFeeds++;
       }
 
-      if (aRequest.isNewsFeed()) {
-        totalNewsFeedRequests += aRequest.getCount();
-        for (LogEntry logEntry : aRequest.getLogEntries()) {
-          uniqueIpsForNewsFeeds.add(logEntry.getHost());
-        }
-      } else if (aRequest.isPageView()) {
-        totalPageViews += aRequest.getCount();
-        for (LogEntry logEntry : aRequest.getLogEntries()) {
-          uniqueIpsForPageViews.add(logEntry.getHost());
-        }
-      } else if (aRequest.isFileDownload()) {
-        totalFileDownloads += aRequest.getCount();
-        for (LogEntry logEntry : aRequest.getLogEntries()) {
-          uniqueIpsForFileDownloads.add(logEntry.getHost());
-        }
+      int pageViews = statistics.getPageViews(host);
+      if (pageViews > 0) {
+        totalPageViews += pageViews;
+        uniqueIpsForPageViews++;
+      }
+
+      int fileDownloads = statistics.getFileDownloads(host);
+      if (fileDownloads > 0) {
+        totalFileDownloads += fileDownloads;
+        uniqueIpsForFileDownloads++;
       }
     }
 
     getModel().put("logAction", "viewRequestsByType");
-    getModel().put("totalRequests", log.getTotalLogEntries());
-    getModel().put("uniqueIps", uniqueIps.size());
+    getModel().put("totalRequests", statistics.getTotalRequests());
+    getModel().put("uniqueIps", statistics.getHosts().size());
     getModel().put("totalNewsfeedRequests", totalNewsFeedRequests);
-    getModel().put("uniqueIpsForNewsFeeds", uniqueIpsForNewsFeeds.size());
+    getModel().put("uniqueIpsForNewsFeeds", uniqueIpsForNewsFeeds);
     getModel().put("totalPageViews", totalPageViews);
-    getModel().put("uniqueIpsForPageViews", uniqueIpsForPageViews.size());
+    getModel().put("uniqueIpsForPageViews", uniqueIpsForPageViews);
     getModel().put("totalFileDownloads", totalFileDownloads);
-    getModel().put("uniqueIpsForFileDownloads", uniqueIpsForFileDownloads.size());
+    getModel().put("uniqueIpsForFileDownloads", uniqueIpsForFileDownloads);
 
     return new RequestsByTypeView();
   }
@@ -33,9 +33,7 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.logging.Log;
-import net.sourceforge.pebble.logging.LogEntry;
-import net.sourceforge.pebble.logging.UserAgentConsolidator;
+import net.sourceforge.pebble.logging.LogStatistics;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.UserAgentsView;
 
@@ -62,7 +60,7 @@ public class ViewUserAgentsAction extends AbstractLogAction {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
-    Log log = getLog(request, response);
+    LogStatistics statistics = getLogStatistics(request, response);
 
     Map<String, Integer> userAgents = new TreeMap<String, Integer>(new Comparator<String>() {
       public int compare(String s1, String s2) {
@@ -76,27 +74,8 @@ public class ViewUserAgentsAction extends AbstractLogAction {
       }
     });
 
-    for (LogEntry logEntry : log.getLogEntries()) {
-      String userAgent = logEntry.getAgent();
-      if (userAgent == null) {
-        userAgent = "";
-      }
-
-      Integer count = userAgents.get(userAgent);
-      if (count == null) {
-        count = 0;
-      }
-      count = count+1;
-      userAgents.put(userAgent, count);
-
-      String consolidatedUserAgent = UserAgentConsolidator.consolidate(userAgent);
-      Integer consolidatedCount = consolidatedUserAgents.get(consolidatedUserAgent);
-      if (consolidatedCount == null) {
-        consolidatedCount = 0;
-      }
-      consolidatedCount = consolidatedCount+1;
-      consolidatedUserAgents.put(consolidatedUserAgent, consolidatedCount);
-    }
+    userAgents.putAll(statistics.getUserAgents());
+    consolidatedUserAgents.putAll(statistics.getConsolidatedUserAgents());
 
     getModel().put("logAction", "viewUserAgents");
     getModel().put("userAgents", userAgents);
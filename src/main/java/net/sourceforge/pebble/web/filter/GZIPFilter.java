@@ -33,24 +33,44 @@ package net.sourceforge.pebble.web.filter;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.AbstractBlog;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
+/**
+ * Compresses responses for clients that accept gzip encoding. Responses
+ * smaller than the "threshold" init parameter (in bytes) are sent as they
+ * are, and compressed copies of unchanged cacheable responses are kept in
+ * a cache whose size is set by the "cacheSize" init parameter. Requests
+ * for a byte range are passed through uncompressed.
+ */
 public class GZIPFilter implements Filter {
 
+  private static final Log log = LogFactory.getLog(GZIPFilter.class);
+
+  static final int DEFAULT_THRESHOLD = 1024;
+  static final long DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+  static final int DEFAULT_MAXIMUM_CACHED_SIZE = 256 * 1024;
+
+  private int threshold = DEFAULT_THRESHOLD;
+  private GZIPResponseCache cache;
+
   public void doFilter(ServletRequest req, ServletResponse res,
                        FilterChain chain) throws IOException, ServletException {
 
       HttpServletRequest request = (HttpServletRequest) req;
       HttpServletResponse response = (HttpServletResponse) res;
 
+      // the Content-Range of a partial response counts bytes of the
+      // uncompressed content, so range requests are never compressed
       String ae = request.getHeader("Accept-Encoding");
-      if (ae != null && ae.indexOf("gzip") != -1) {
+      if (ae != null && ae.indexOf("gzip") != -1 && request.getHeader("Range") == null) {
         String encoding = ((AbstractBlog)request.getAttribute(Constants.BLOG_KEY)).getCharacterEncoding();
-        GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response, encoding);
+        GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response, encoding, request, threshold, cache);
         chain.doFilter(req, wrappedResponse);
         wrappedResponse.finishResponse();
       } else {
@@ -59,9 +79,34 @@ public class GZIPFilter implements Filter {
   }
 
   public void init(FilterConfig filterConfig) {
+    threshold = getInitParameter(filterConfig, "threshold", DEFAULT_THRESHOLD);
+    long cacheSize = getInitParameter(filterConfig, "cacheSize", DEFAULT_CACHE_SIZE);
+    if (cacheSize > 0) {
+      cache = new GZIPResponseCache(cacheSize, (int)Math.min(cacheSize, DEFAULT_MAXIMUM_CACHED_SIZE));
+    }
+  }
+
+  private long getInitParameter(FilterConfig filterConfig, String name, long defaultValue) {
+    String value = filterConfig.getInitParameter(name);
+    if (value != null && value.trim().length() > 0) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException nfe) {
+        log.warn("Invalid value for GZIPFilter " + name + " : " + value);
+      }
+    }
+
+    return defaultValue;
+  }
+
+  private int getInitParameter(FilterConfig filterConfig, String name, int defaultValue) {
+    return (int)getInitParameter(filterConfig, name, (long)defaultValue);
   }
 
   public void destroy() {
+    if (cache != null) {
+      cache.clear();
+    }
   }
 
 }
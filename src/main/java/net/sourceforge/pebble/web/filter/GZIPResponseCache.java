@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of compressed response bodies, so that resources that haven't
+ * changed (identified by their ETag or Last-Modified header) don't have to
+ * be compressed again on every request. The least recently used entries
+ * are discarded once the cache reaches its maximum size.
+ *
+ * @author Simon Brown
+ */
+public class GZIPResponseCache {
+
+  private final long maximumSize;
+  private final int maximumEntrySize;
+  private long size;
+
+  private final Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maximumSize       the maximum number of bytes held by the cache
+   * @param maximumEntrySize  the largest compressed body that will be cached
+   */
+  public GZIPResponseCache(long maximumSize, int maximumEntrySize) {
+    this.maximumSize = maximumSize;
+    this.maximumEntrySize = maximumEntrySize;
+  }
+
+  public int getMaximumEntrySize() {
+    return maximumEntrySize;
+  }
+
+  public synchronized byte[] get(String key) {
+    return entries.get(key);
+  }
+
+  public synchronized void put(String key, byte[] bytes) {
+    if (bytes.length > maximumEntrySize || bytes.length > maximumSize) {
+      return;
+    }
+
+    byte[] previous = entries.put(key, bytes);
+    if (previous != null) {
+      size -= previous.length;
+    }
+    size += bytes.length;
+
+    Iterator<byte[]> it = entries.values().iterator();
+    while (size > maximumSize && it.hasNext()) {
+      size -= it.next().length;
+      it.remove();
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    size = 0;
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+}
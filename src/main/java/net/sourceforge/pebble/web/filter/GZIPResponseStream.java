@@ -36,34 +36,122 @@ import java.util.zip.GZIPOutputStream;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
+/**
+ * Compresses a response as it is written. Output is held back until it
+ * reaches the threshold size, below which it is sent uncompressed. Above
+ * it, compressed output is streamed to the client as it's produced and,
+ * if the response can be cached, kept so that later requests for the same
+ * unchanged resource can be sent without compressing it again.
+ */
 public class GZIPResponseStream extends ServletOutputStream {
 
-  protected ByteArrayOutputStream baos = null;
+  private static final int BUFFER_SIZE = 8192;
+
   protected GZIPOutputStream gzipstream = null;
   protected boolean closed = false;
   protected HttpServletResponse response = null;
   protected ServletOutputStream output = null;
 
+  private final int threshold;
+  private final GZIPResponseCache cache;
+  private final GZIPResponseWrapper wrapper;
+
+  /** uncompressed output held back until it reaches the threshold */
+  private ByteArrayOutputStream buffer;
+
+  /** a copy of the compressed output, for the cache */
+  private ByteArrayOutputStream copy;
+  private String cacheKey;
+
+  /** the compressed body of an identical response, taken from the cache */
+  private byte[] cached;
+
   public GZIPResponseStream(HttpServletResponse response) throws IOException {
+    this(response, 0, null, null);
+  }
+
+  /**
+   * Creates a new stream.
+   *
+   * @param response    the response being compressed
+   * @param threshold   the size in bytes below which responses aren't compressed
+   * @param cache       a cache of compressed responses, or null
+   * @param wrapper     the wrapper that provides the cache key, or null
+   */
+  GZIPResponseStream(HttpServletResponse response, int threshold, GZIPResponseCache cache, GZIPResponseWrapper wrapper) throws IOException {
     closed = false;
     this.response = response;
     this.output = response.getOutputStream();
-    baos = new ByteArrayOutputStream();
-    gzipstream = new GZIPOutputStream(baos);
+    this.threshold = threshold;
+    this.cache = cache;
+    this.wrapper = wrapper;
+    buffer = new ByteArrayOutputStream(Math.min(threshold + 1, BUFFER_SIZE));
+  }
+
+  /**
+   * Starts compressing, writing the output held back so far. If the same
+   * response has already been compressed, the cached copy is used instead.
+   */
+  private void startCompression() throws IOException {
+    if (cache != null && wrapper != null) {
+      cacheKey = wrapper.getCacheKey();
+      if (cacheKey != null) {
+        cached = cache.get(cacheKey);
+        if (cached != null) {
+          buffer = null;
+          return;
+        }
+        copy = new ByteArrayOutputStream(BUFFER_SIZE);
+      }
+    }
+
+    response.addHeader("Content-Encoding", "gzip");
+    response.addHeader("Vary", "Accept-Encoding");
+    gzipstream = new GZIPOutputStream(new OutputStream() {
+      public void write(int b) throws IOException {
+        write(new byte[] { (byte)b }, 0, 1);
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException {
+        output.write(b, off, len);
+        if (copy != null) {
+          copy.write(b, off, len);
+          if (copy.size() > cache.getMaximumEntrySize()) {
+            // too big to cache, so stop keeping a copy
+            copy = null;
+          }
+        }
+      }
+
+      public void flush() throws IOException {
+        output.flush();
+      }
+    }, BUFFER_SIZE);
+    buffer.writeTo(gzipstream);
+    buffer = null;
   }
 
   public void close() throws IOException {
     if (closed) {
       throw new IOException("This output stream has already been closed");
     }
-    gzipstream.finish();
-    gzipstream.flush();
-    gzipstream.close();
 
-    byte[] bytes = baos.toByteArray();
-    response.setContentLength(bytes.length);
-    response.addHeader("Content-Encoding", "gzip");
-    output.write(bytes);
+    if (cached != null) {
+      response.addHeader("Content-Encoding", "gzip");
+      response.addHeader("Vary", "Accept-Encoding");
+      response.setContentLength(cached.length);
+      output.write(cached);
+    } else if (gzipstream != null) {
+      gzipstream.finish();
+      if (copy != null) {
+        cache.put(cacheKey, copy.toByteArray());
+      }
+    } else {
+      // too small to be worth compressing
+      response.setContentLength(buffer.size());
+      buffer.writeTo(output);
+    }
+
     output.flush();
     output.close();
     closed = true;
@@ -73,14 +161,13 @@ public class GZIPResponseStream extends ServletOutputStream {
     if (closed) {
       throw new IOException("Cannot flush a closed output stream");
     }
-    gzipstream.flush();
+    if (gzipstream != null) {
+      gzipstream.flush();
+    }
   }
 
   public void write(int b) throws IOException {
-    if (closed) {
-      throw new IOException("Cannot write to a closed output stream");
-    }
-    gzipstream.write((byte) b);
+    write(new byte[] { (byte)b }, 0, 1);
   }
 
   public void write(byte b[]) throws IOException {
@@ -91,6 +178,15 @@ public class GZIPResponseStream extends ServletOutputStream {
     if (closed) {
       throw new IOException("Cannot write to a closed output stream");
     }
-    gzipstream.write(b, off, len);
+
+    if (gzipstream != null) {
+      gzipstream.write(b, off, len);
+    } else if (buffer != null) {
+      buffer.write(b, off, len);
+      if (buffer.size() > threshold) {
+        startCompression();
+      }
+    }
+    // otherwise the cached copy is being sent, so the output is discarded
   }
-}
\ No newline at end of file
+}
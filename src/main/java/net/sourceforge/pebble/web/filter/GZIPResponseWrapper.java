@@ -32,6 +32,7 @@
 package net.sourceforge.pebble.web.filter;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
@@ -42,21 +43,42 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 
   private final HttpServletResponse wrappedResponse;
   private final String encoding;
+  private final HttpServletRequest request;
+  private final int threshold;
+  private final GZIPResponseCache cache;
 
   private ServletOutputStream stream;
   private PrintWriter writer;
   private int status;
   private Integer contentLength;
+  private String eTag;
+  private String lastModified;
 
   public GZIPResponseWrapper(HttpServletResponse wrappedResponse, String encoding) {
+    this(wrappedResponse, encoding, null, 0, null);
+  }
+
+  /**
+   * Creates a new wrapper.
+   *
+   * @param wrappedResponse   the response to compress
+   * @param encoding          the character encoding used by getWriter()
+   * @param request           the request being responded to
+   * @param threshold         the size in bytes below which responses aren't compressed
+   * @param cache             a cache of compressed responses, or null
+   */
+  public GZIPResponseWrapper(HttpServletResponse wrappedResponse, String encoding, HttpServletRequest request, int threshold, GZIPResponseCache cache) {
     super(wrappedResponse);
     this.wrappedResponse = wrappedResponse;
     this.encoding = encoding;
+    this.request = request;
+    this.threshold = threshold;
+    this.cache = cache;
   }
 
   public ServletOutputStream createOutputStream() throws IOException {
     if (shouldGzipResponse()) {
-      return (new GZIPResponseStream(wrappedResponse));
+      return (new GZIPResponseStream(wrappedResponse, threshold, cache, this));
     } else {
       // If we aren't zipping the response, then we need to pass on the content length
       if (contentLength != null) {
@@ -69,7 +91,44 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
   private boolean shouldGzipResponse() {
     // PEBBLE-43 We shouldn't zip responses that are not allowed to have any content, because a zipped
     // empty response is actually 20 bytes long
-    return status != HttpServletResponse.SC_NOT_MODIFIED && status != HttpServletResponse.SC_NO_CONTENT;
+    // - nor partial responses, whose Content-Range refers to the uncompressed bytes
+    return status != HttpServletResponse.SC_NOT_MODIFIED && status != HttpServletResponse.SC_NO_CONTENT &&
+        status != HttpServletResponse.SC_PARTIAL_CONTENT &&
+        status != HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE &&
+        (contentLength == null || contentLength > threshold);
+  }
+
+  /**
+   * Gets the key under which the compressed body of this response can be
+   * cached. Only successful responses to anonymous GET requests that carry
+   * an ETag or Last-Modified header are cached, since those identify the
+   * version of the content being sent.
+   *
+   * @return  the key, or null if this response shouldn't be cached
+   */
+  String getCacheKey() {
+    if (request == null || !"GET".equals(request.getMethod()) || request.getRemoteUser() != null) {
+      return null;
+    }
+    if ((status != 0 && status != HttpServletResponse.SC_OK) || (eTag == null && lastModified == null)) {
+      return null;
+    }
+
+    StringBuffer key = new StringBuffer();
+    key.append(request.getServerName());
+    key.append(request.getRequestURI());
+    if (request.getQueryString() != null) {
+      key.append("?");
+      key.append(request.getQueryString());
+    }
+    key.append("|");
+    key.append(eTag);
+    key.append("|");
+    key.append(lastModified);
+    key.append("|");
+    key.append(getContentType());
+
+    return key.toString();
   }
 
   public void finishResponse() {
@@ -120,6 +179,38 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
     contentLength = length;
   }
 
+  @Override
+  public void setHeader(String name, String value) {
+    recordValidator(name, value);
+    super.setHeader(name, value);
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    recordValidator(name, value);
+    super.addHeader(name, value);
+  }
+
+  @Override
+  public void setDateHeader(String name, long date) {
+    recordValidator(name, "" + date);
+    super.setDateHeader(name, date);
+  }
+
+  @Override
+  public void addDateHeader(String name, long date) {
+    recordValidator(name, "" + date);
+    super.addDateHeader(name, date);
+  }
+
+  private void recordValidator(String name, String value) {
+    if ("ETag".equalsIgnoreCase(name)) {
+      eTag = value;
+    } else if ("Last-Modified".equalsIgnoreCase(name)) {
+      lastModified = value;
+    }
+  }
+
   @Override
   public void setStatus(int sc) {
     this.status = sc;
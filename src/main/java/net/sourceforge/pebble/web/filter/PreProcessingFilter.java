@@ -39,10 +39,6 @@ import net.sourceforge.pebble.util.HttpsURLRewriter;
 import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.util.UrlRewriter;
 import net.sourceforge.pebble.util.Utilities;
-import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
-import net.sourceforge.pebble.comparator.BlogEntryComparator;
-import net.sourceforge.pebble.comparator.BlogByLastModifiedDateComparator;
-import net.sourceforge.pebble.decorator.ContentDecoratorChain;
 import net.sourceforge.pebble.domain.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,8 +47,6 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.jstl.core.Config;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
 import java.util.Locale;
 
 /**
@@ -111,31 +105,18 @@ public class PreProcessingFilter implements Filter {
         // do nothing
     } else {
       AbstractBlog blog = (AbstractBlog)request.getAttribute(Constants.BLOG_KEY);
+      boolean sidebar = rendersSidebar(externalUri);
       if (blog instanceof Blog) {
         Blog b = (Blog)blog;
-        ContentDecoratorContext context = new ContentDecoratorContext();
-        context.setView(ContentDecoratorContext.SUMMARY_VIEW);
-        context.setMedia(ContentDecoratorContext.HTML_PAGE);
-
-        List<BlogEntry> blogEntries = b.getRecentPublishedBlogEntries();
-        ContentDecoratorChain.decorate(context, blogEntries);
-        Collections.sort(blogEntries, new BlogEntryComparator());
-        httpRequest.setAttribute(Constants.RECENT_BLOG_ENTRIES, blogEntries);
-
-        List<Response> recentApprovedResponses = b.getRecentApprovedResponses();
-        for (Response r : recentApprovedResponses) {
-          if (r instanceof Comment) {
-            b.getContentDecoratorChain().decorate(context, (Comment)r);
-          } else if (r instanceof TrackBack){
-            b.getContentDecoratorChain().decorate(context, (TrackBack)r);
-          }
+        if (sidebar) {
+          SidebarSnapshot snapshot = b.getSidebarSnapshot();
+          httpRequest.setAttribute(Constants.RECENT_BLOG_ENTRIES, snapshot.getRecentBlogEntries());
+          httpRequest.setAttribute(Constants.RECENT_RESPONSES, snapshot.getRecentResponses());
+          httpRequest.setAttribute(Constants.CATEGORIES, b.getCategories());
+          httpRequest.setAttribute(Constants.TAGS, snapshot.getTags());
+          httpRequest.setAttribute(Constants.ARCHIVES, snapshot.getArchives());
         }
-        httpRequest.setAttribute(Constants.RECENT_RESPONSES, recentApprovedResponses);
-
-        httpRequest.setAttribute(Constants.CATEGORIES, b.getCategories());
-        httpRequest.setAttribute(Constants.TAGS, b.getTags());
         httpRequest.setAttribute(Constants.PLUGIN_PROPERTIES, b.getPluginProperties());
-        httpRequest.setAttribute(Constants.ARCHIVES, b.getArchives());
         httpRequest.setAttribute(Constants.BLOG_TYPE, "singleblog");
       } else {
         httpRequest.setAttribute(Constants.BLOG_TYPE, "multiblog");
@@ -145,9 +126,9 @@ public class PreProcessingFilter implements Filter {
         httpRequest.setAttribute(Constants.MULTI_BLOG_KEY, BlogManager.getInstance().getMultiBlog());
         httpRequest.setAttribute(Constants.MULTI_BLOG_URL, Utilities.calcBaseUrl(request.getScheme(), BlogManager.getInstance().getMultiBlog().getUrl()));
 
-        List<Blog> blogs = BlogManager.getInstance().getPublicBlogs();
-        Collections.sort(blogs, new BlogByLastModifiedDateComparator());
-        httpRequest.setAttribute(Constants.BLOGS, blogs);
+        if (sidebar) {
+          httpRequest.setAttribute(Constants.BLOGS, BlogManager.getInstance().getPublicBlogsByLastModifiedDate());
+        }
       }
 
       // change the character encoding so that we can successfully get
@@ -177,4 +158,20 @@ public class PreProcessingFilter implements Filter {
     	UrlRewriter.clear();
     }
   }
+
+  /**
+   * Determines whether the page at the specified URI may render the sidebar;
+   * binary files, feeds and XML-RPC calls never do.
+   *
+   * @param externalUri   the external URI of the request
+   * @return  true if the sidebar may be rendered, false otherwise
+   */
+  static boolean rendersSidebar(String externalUri) {
+    return !(externalUri.startsWith("/files/") ||
+        externalUri.startsWith("/images/") ||
+        externalUri.startsWith("/xmlrpc") ||
+        externalUri.startsWith("/feed.action") ||
+        externalUri.endsWith(".xml"));
+  }
+
 }
\ No newline at end of file
@@ -58,6 +58,9 @@ public class TransformingFilter implements Filter {
   /** the log used by this class */
   private static Log log = LogFactory.getLog(TransformingFilter.class);
 
+  /** the transformer, whose routing table is shared between requests */
+  private final UriTransformer transformer = new UriTransformer();
+
   /**
    * Initialises this instance.
    *
@@ -120,7 +123,6 @@ public class TransformingFilter implements Filter {
     httpRequest.setAttribute(Constants.ORIGINAL_URI, uri);
     httpRequest.setAttribute(Constants.EXTERNAL_URI, externalUri);
 
-    UriTransformer transformer = new UriTransformer();
     String internalUri;
 
     if (blog instanceof Blog) {
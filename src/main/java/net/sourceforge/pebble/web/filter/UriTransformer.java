@@ -37,8 +37,17 @@ import net.sourceforge.pebble.api.permalink.PermalinkProvider;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
 /**
  * Responsible for converting an incoming URI to a real URI used by Pebble.
+ * The fixed URI patterns are compiled into a routing table once, keyed by
+ * the first segment of the URI, so that a request only needs to try the
+ * routes that could possibly match it.
  *
  * @author    Simon Brown
  */
@@ -47,24 +56,161 @@ public class UriTransformer {
   /** literal used at the start of category URIs */
   private static final String CATEGORIES = "/categories";
 
-  /** literal used at the start of category URIs, in regex form */
-  private static final String CATEGORIES_REGEX = "\\/categories\\/";
-
   /** literal used at the start of tag URIs */
   private static final String TAGS = "/tags/";
 
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String TAGS_REGEX = "\\/tags\\/";
-
   /** literal used at the start of author URIs */
   private static final String AUTHORS = "/authors/";
 
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String AUTHORS_REGEX = "\\/authors\\/";
+  /** the pattern for help pages, of the form /help/xyz.html */
+  private static final Pattern HELP_PATTERN = Pattern.compile("\\/help\\/\\w*\\.html");
 
   /** the log used by this class */
   private static Log log = LogFactory.getLog(UriTransformer.class);
 
+  /** URIs that are transformed as a whole */
+  private static final Map<String,String> EXACT_ROUTES = new HashMap<String,String>();
+
+  /** routes for single blogs, keyed by the first segment of the URI */
+  private static final Map<String,Route> ROUTES = new HashMap<String,Route>();
+
+  /** URIs that are transformed as a whole, for multi-blogs */
+  private static final Map<String,String> MULTI_BLOG_EXACT_ROUTES = new HashMap<String,String>();
+
+  /** routes for multi-blogs, keyed by the first segment of the URI */
+  private static final Map<String,Route> MULTI_BLOG_ROUTES = new HashMap<String,Route>();
+
+  /** the default permalink provider for each blog, used for backwards compatibility */
+  private static final Map<Blog,DefaultPermalinkProvider> defaultPermalinkProviders =
+      Collections.synchronizedMap(new WeakHashMap<Blog,DefaultPermalinkProvider>());
+
+  static {
+    EXACT_ROUTES.put("/", "/viewHomePage.action");
+    EXACT_ROUTES.put("/index.jsp", "/viewHomePage.action");
+    EXACT_ROUTES.put("/index.html", "/viewHomePage.action");
+    EXACT_ROUTES.put("/categories", "/viewCategories.action");
+    EXACT_ROUTES.put("/categories/", "/viewCategories.action");
+    EXACT_ROUTES.put("/tags", "/viewTags.action");
+    EXACT_ROUTES.put("/tags/", "/viewTags.action");
+    EXACT_ROUTES.put("/pages", "/viewStaticPage.action?name=index");
+    EXACT_ROUTES.put("/pages/", "/viewStaticPage.action?name=index");
+    EXACT_ROUTES.put("/help", "/viewHelp.secureaction?name=index");
+    EXACT_ROUTES.put("/help/", "/viewHelp.secureaction?name=index");
+    EXACT_ROUTES.put("/responses/rss.xml", "/responseFeed.action?flavor=rss20");
+    EXACT_ROUTES.put("/today.html", "/viewDay.action");
+    EXACT_ROUTES.put("/about.html", "/about.action");
+
+    ROUTES.put("categories", new Route() {
+      String getUri(String uri) {
+        if (uri.startsWith(CATEGORIES + "/") && uri.indexOf("/", CATEGORIES.length() + 1) > -1 && uri.endsWith("xml")) {
+          // URI of the form /category[/subcategories]/[rss|rdf|atom].xml
+          int indexOfLastSlash = uri.lastIndexOf("/");
+          String categoryId = uri.substring(CATEGORIES.length(), indexOfLastSlash);
+
+          return "/feed.action?category=" + categoryId + getFlavor(uri);
+        } else {
+          // URI of the form /categories/category/
+          String category = uri.substring(CATEGORIES.length(), uri.length());
+          if (category.endsWith("/")) {
+            category = category.substring(0, category.length()-1);
+          }
+          return "/viewCategory.action?category=" + category;
+        }
+      }
+    });
+    ROUTES.put("tags", new Route() {
+      String getUri(String uri) {
+        if (!uri.startsWith(TAGS)) {
+          return null;
+        } else if (uri.indexOf("/", TAGS.length()) > -1 && uri.endsWith("xml")) {
+          // URI of the form /tags/tag/[rss|rdf|atom].xml
+          int indexOfLastSlash = uri.lastIndexOf("/");
+          String tag = uri.substring(TAGS.length(), indexOfLastSlash);
+
+          return "/feed.action?tag=" + tag + getFlavor(uri);
+        } else {
+          // URI of the form /tags/tag/
+          String tag = uri.substring(TAGS.length(), uri.length());
+          if (tag.endsWith("/")) {
+            tag = tag.substring(0, tag.length()-1);
+          }
+          return "/viewTag.action?tag=" + Tag.encode(tag);
+        }
+      }
+    });
+    ROUTES.put("authors", new Route() {
+      String getUri(String uri) {
+        if (!uri.startsWith(AUTHORS)) {
+          return null;
+        } else if (uri.indexOf("/", AUTHORS.length()) > -1 && uri.endsWith("xml")) {
+          // URI of the form /authors/username/[rss|rdf|atom].xml
+          int indexOfLastSlash = uri.lastIndexOf("/");
+          String author = uri.substring(AUTHORS.length(), indexOfLastSlash);
+
+          return "/feed.action?author=" + author + getFlavor(uri);
+        } else {
+          // URI of the form /authors/usename/
+          String author = uri.substring(AUTHORS.length(), uri.length());
+          if (author.endsWith("/")) {
+            author = author.substring(0, author.length()-1);
+          }
+          return "/aboutAuthor.action?user=" + author;
+        }
+      }
+    });
+    ROUTES.put("pages", new Route() {
+      String getUri(String uri) {
+        if (uri.startsWith("/pages/")) {
+          // url matches /pages/xyz.html
+          return "/viewStaticPage.action?name=" + uri.substring(7, uri.length()-5);
+        } else {
+          return null;
+        }
+      }
+    });
+    ROUTES.put("images", new FileRoute("/images/", FileMetaData.BLOG_IMAGE));
+    ROUTES.put("files", new FileRoute("/files/", FileMetaData.BLOG_FILE));
+    ROUTES.put("theme", new FileRoute("/theme/", FileMetaData.THEME_FILE));
+    ROUTES.put("help", new HelpRoute());
+    ROUTES.put("responses", new Route() {
+      String getUri(String uri) {
+        if (uri.startsWith("/responses/rss.xml?entry=")) {
+          // url is for a response feed
+          return "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
+        } else if (uri.startsWith("/responses/atom.xml")) {
+          // url is for a response feed
+          return "/responseFeed.action?flavor=atom";
+        } else {
+          return null;
+        }
+      }
+    });
+    ROUTES.put("rss.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    ROUTES.put("feed.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    ROUTES.put("rdf.xml", new FixedRoute("/feed.action?flavor=rdf"));
+    ROUTES.put("atom.xml", new FixedRoute("/feed.action?flavor=atom"));
+    ROUTES.put("blogentries", new Route() {
+      String getUri(String uri) {
+        if (uri.startsWith("/blogentries/")) {
+          // view blog entries by page /blogentries/1.html
+          return "/viewBlogEntriesByPage.action?page=" + uri.substring(13, uri.length()-5);
+        } else {
+          return null;
+        }
+      }
+    });
+
+    MULTI_BLOG_EXACT_ROUTES.put("/", "/viewHomePage.action");
+    MULTI_BLOG_EXACT_ROUTES.put("/index.jsp", "/viewHomePage.action");
+    MULTI_BLOG_EXACT_ROUTES.put("/index.html", "/viewHomePage.action");
+
+    MULTI_BLOG_ROUTES.put("rss.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    MULTI_BLOG_ROUTES.put("feed.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    MULTI_BLOG_ROUTES.put("rdf.xml", new FixedRoute("/feed.action?flavor=rdf"));
+    MULTI_BLOG_ROUTES.put("atom.xml", new FixedRoute("/feed.action?flavor=atom"));
+    MULTI_BLOG_ROUTES.put("help", new HelpRoute());
+  }
+
   /**
    * Checks for URI patterns and converts them to the appropriate action.
    *
@@ -76,8 +222,6 @@ public class UriTransformer {
    */
   public String getUri(String uri, Blog blog) {
     PermalinkProvider permalinkProvider = blog.getPermalinkProvider();
-    DefaultPermalinkProvider defaultPermalinkProvider = new DefaultPermalinkProvider();
-    defaultPermalinkProvider.setBlog(permalinkProvider.getBlog());
 
     log.trace("URI before transformation : " + uri);
 
@@ -87,147 +231,14 @@ public class UriTransformer {
 
     // try to transform the URI with the permalink provider in use
     String result = getUri(uri, permalinkProvider);
-    if (result == null) {
+    if (result == null && permalinkProvider.getClass() != DefaultPermalinkProvider.class) {
       // for backwards compatibility, try the default permalink provider
-      result = getUri(uri, defaultPermalinkProvider);
+      result = getUri(uri, getDefaultPermalinkProvider(blog));
     }
 
     // if the result is still null, try the other URL patterns to transform the URI
     if (result == null) {
-      if (uri.equals("/categories") || uri.equals("/categories/")) {
-        // URI of the form /categories/
-        result = "/viewCategories.action";
-      } else if (uri.matches(CATEGORIES_REGEX + ".*\\/.*xml")) {
-          // URI of the form /category[/subcategories]/[rss|rdf|atom].xml
-          int indexOfLastSlash = uri.lastIndexOf("/");
-          String categoryId = uri.substring(CATEGORIES.length(), indexOfLastSlash);
-
-          if (uri.endsWith("rdf.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=rdf";
-          } else if (uri.endsWith("atom.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=atom";
-          } else {
-            result = "/feed.action?category=" + categoryId + "&flavor=rss20";
-          }
-      } else if (uri.startsWith(CATEGORIES)) {
-        // URI of the form /categories/category/
-        String category = uri.substring(CATEGORIES.length(), uri.length());
-        if (category.endsWith("/")) {
-          category = category.substring(0, category.length()-1);
-        }
-        result = "/viewCategory.action?category=" + category;
-      } else if (uri.equals("/tags") || uri.equals("/tags/")) {
-          // URI of the form /tags/
-          result = "/viewTags.action";
-      } else if (uri.matches(TAGS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /tags/tag/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String tag = uri.substring(TAGS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=atom";
-        } else {
-          result = "/feed.action?tag=" + tag + "&flavor=rss20";
-        }
-      } else if (uri.matches(AUTHORS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /authors/username/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String author = uri.substring(AUTHORS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=atom";
-        } else {
-          result = "/feed.action?author=" + author + "&flavor=rss20";
-        }
-      } else if (uri.startsWith(TAGS)) {
-        // URI of the form /tags/tag/
-        String tag = uri.substring(TAGS.length(), uri.length());
-        if (tag.endsWith("/")) {
-          tag = tag.substring(0, tag.length()-1);
-        }
-        result = "/viewTag.action?tag=" + Tag.encode(tag);
-      } else if (uri.startsWith(AUTHORS)) {
-        // URI of the form /authors/usename/
-        String author = uri.substring(AUTHORS.length(), uri.length());
-        if (author.endsWith("/")) {
-          author = author.substring(0, author.length()-1);
-        }
-        result = "/aboutAuthor.action?user=" + author;
-      } else if (uri.equals("/pages/") || uri.equals("/pages")) {
-        result = "/viewStaticPage.action?name=index";
-      } else if (uri.startsWith("/pages/")) {
-        // url matches /pages/xyz.html
-        String name = uri.substring(7, uri.length()-5);
-
-        result = "/viewStaticPage.action?name=";
-        result += name;
-      } else if (uri.startsWith("/images/")) {
-        // url matches /images/xyz.xyz
-        String name = uri.substring(7, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/files/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/theme/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.THEME_FILE + "&name=";
-        result += name;
-      } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-        // url matches /help/xyz.html
-        String name = uri.substring(6, uri.length());
-
-        result = "/viewHelp.secureaction?name=";
-        result += name.substring(0, name.length()-5);
-      } else if (uri.equals("/help") || uri.equals("/help/")) {
-        // url matches /help/
-        result = "/viewHelp.secureaction?name=index";
-      } else if (uri.equals("/responses/rss.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20";
-      } else if (uri.startsWith("/responses/rss.xml?entry=")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
-      } else if (uri.startsWith("/rss.xml")) {
-        // url matches rss.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/feed.xml")) {
-        // url matches feed.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/rdf.xml")) {
-        // url matches rdf.xml
-        result = "/feed.action?flavor=rdf";
-      } else if (uri.startsWith("/responses/atom.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=atom";
-      } else if (uri.startsWith("/atom.xml")) {
-        // url matches atom.xml
-        result = "/feed.action?flavor=atom";
-      } else if (uri.equals("/today.html")) {
-        // URI of the form /today.html
-        result = "/viewDay.action";
-      } else if (uri.equals("/about.html")) {
-        // URI of the form /about.html
-        result = "/about.action";
-      } else if (uri.startsWith("/blogentries/")) {
-        // view blog entries by page /blogentries/1.html
-        String page = uri.substring(13, uri.length()-5);
-        result = "/viewBlogEntriesByPage.action?page=" + page;
-      } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-          result = "/viewHomePage.action";
-      } else {
-        result = uri;
-      }
+      result = route(uri, EXACT_ROUTES, ROUTES);
     }
 
     log.trace("URI after transformation : " + result);
@@ -245,43 +256,60 @@ public class UriTransformer {
    *            the same)
    */
   public String getUri(String uri, MultiBlog blog) {
-    String result;
-
     log.trace("URI before transformation : " + uri);
 
     if (uri == null || uri.trim().equals("")) {
       uri = "/";
     }
 
-    if (uri.startsWith("/rss.xml")) {
-      // url matches rss.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/feed.xml")) {
-      // url matches feed.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/rdf.xml")) {
-      // url matches rdf.xml
-      result = "/feed.action?flavor=rdf";
-    } else if (uri.startsWith("/atom.xml")) {
-      // url matches atom.xml
-      result = "/feed.action?flavor=atom";
-    } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-        result = "/viewHomePage.action";
-    } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-      // url matches /help/xyz.html
-      String name = uri.substring(6, uri.length());
-
-      result = "/viewHelp.secureaction?name=";
-      result += name.substring(0, name.length()-5);
-    } else {
-      result = uri;
-    }
+    String result = route(uri, MULTI_BLOG_EXACT_ROUTES, MULTI_BLOG_ROUTES);
 
     log.trace("URI after transformation : " + result);
 
     return result;
   }
 
+  /**
+   * Looks up the route for a URI, first as a whole and then by its first
+   * segment.
+   *
+   * @return  the transformed URI, or the URI itself if no route matches
+   */
+  private String route(String uri, Map<String,String> exactRoutes, Map<String,Route> routes) {
+    String result = exactRoutes.get(uri);
+    if (result != null) {
+      return result;
+    }
+
+    // the first segment runs up to the next slash or query string
+    int end = 1;
+    while (end < uri.length() && uri.charAt(end) != '/' && uri.charAt(end) != '?') {
+      end++;
+    }
+
+    Route route = routes.get(uri.substring(1, end));
+    if (route != null) {
+      result = route.getUri(uri);
+    }
+
+    return result != null ? result : uri;
+  }
+
+  /**
+   * Gets the default permalink provider for the specified blog, creating it
+   * if necessary.
+   */
+  private DefaultPermalinkProvider getDefaultPermalinkProvider(Blog blog) {
+    DefaultPermalinkProvider provider = defaultPermalinkProviders.get(blog);
+    if (provider == null || provider.getBlog() != blog) {
+      provider = new DefaultPermalinkProvider();
+      provider.setBlog(blog);
+      defaultPermalinkProviders.put(blog, provider);
+    }
+
+    return provider;
+  }
+
   /**
    * Checks for URI patterns and converts them to the appropriate action, using
    * the specified permalink provider.
@@ -321,4 +349,86 @@ public class UriTransformer {
     return result;
   }
 
-}
\ No newline at end of file
+  private static String getFlavor(String uri) {
+    if (uri.endsWith("rdf.xml")) {
+      return "&flavor=rdf";
+    } else if (uri.endsWith("atom.xml")) {
+      return "&flavor=atom";
+    } else {
+      return "&flavor=rss20";
+    }
+  }
+
+  /**
+   * A route for all URIs starting with a given segment.
+   */
+  private static abstract class Route {
+
+    /**
+     * Transforms the URI.
+     *
+     * @return  the transformed URI, or null if this route doesn't apply
+     */
+    abstract String getUri(String uri);
+
+  }
+
+  /**
+   * A route to a fixed URI.
+   */
+  private static class FixedRoute extends Route {
+
+    private final String result;
+
+    FixedRoute(String result) {
+      this.result = result;
+    }
+
+    String getUri(String uri) {
+      return result;
+    }
+
+  }
+
+  /**
+   * A route for images, files and theme files.
+   */
+  private static class FileRoute extends Route {
+
+    private final String prefix;
+    private final String type;
+
+    FileRoute(String prefix, String type) {
+      this.prefix = prefix;
+      this.type = type;
+    }
+
+    String getUri(String uri) {
+      if (uri.startsWith(prefix)) {
+        // url matches /files/xyz.xyz, keeping the leading slash of the name
+        return "/file.action?type=" + type + "&name=" + uri.substring(prefix.length()-1, uri.length());
+      } else {
+        return null;
+      }
+    }
+
+  }
+
+  /**
+   * A route for help pages.
+   */
+  private static class HelpRoute extends Route {
+
+    String getUri(String uri) {
+      if (HELP_PATTERN.matcher(uri).matches()) {
+        // url matches /help/xyz.html
+        String name = uri.substring(6, uri.length());
+        return "/viewHelp.secureaction?name=" + name.substring(0, name.length()-5);
+      } else {
+        return null;
+      }
+    }
+
+  }
+
+}
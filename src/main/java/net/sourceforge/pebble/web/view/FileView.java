@@ -33,8 +33,6 @@ package net.sourceforge.pebble.web.view;
 
 import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.domain.AbstractBlog;
-import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.FileMetaData;
 import net.sourceforge.pebble.Constants;
 
 import javax.servlet.ServletContext;
@@ -42,12 +40,22 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
 
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 
 /**
  * Represents a binary view component and prepares the model for display.
+ * Single and multiple byte range requests (RFC 7233) are supported,
+ * including If-Range, and the file is copied to the response through a
+ * single large buffer.
  *
  * @author    Simon Brown
  */
@@ -56,10 +64,48 @@ public class FileView extends BinaryView {
   /** the log used by this class */
   private static Log log = LogFactory.getLog(FileView.class);
 
+  /** the size of the buffer used to copy files to the response */
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  /** the maximum number of ranges honoured before the whole file is sent */
+  static final int MAXIMUM_NUMBER_OF_RANGES = 16;
+
+  private static final String BYTES_UNIT = "bytes=";
+  private static final String CRLF = "\r\n";
+
   private File file;
+  private long length;
+  private long lastModified;
 
   public FileView(File file) {
+    this(file, file.length(), file.lastModified());
+  }
+
+  /**
+   * Creates a view for a file whose size and last modified date have
+   * already been read, so that the response is consistent with the
+   * validators that have been sent.
+   *
+   * @param file          the File to send
+   * @param length        the length of the file, in bytes
+   * @param lastModified  the time the file was last modified, in milliseconds
+   */
+  public FileView(File file, long length, long lastModified) {
     this.file = file;
+    this.length = length;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Gets the entity tag for a file, which is derived from its size and
+   * last modified date so that the file doesn't need to be opened.
+   *
+   * @param length        the length of the file, in bytes
+   * @param lastModified  the time the file was last modified, in milliseconds
+   * @return  a strong entity tag, including quotes
+   */
+  public static String getETag(long length, long lastModified) {
+    return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
   }
 
   /**
@@ -82,7 +128,7 @@ public class FileView extends BinaryView {
   }
 
   public long getContentLength() {
-    return file.length();
+    return length;
   }
 
   /**
@@ -93,25 +139,244 @@ public class FileView extends BinaryView {
    * @param context
    */
   public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
-    response.setContentLength((int)getContentLength());
+    int status = HttpServletResponse.SC_OK;
+    response.setHeader("Accept-Ranges", "bytes");
+
+    List<long[]> ranges = null;
+    if (isRangeApplicable(request)) {
+      ranges = parseRanges(request.getHeader("Range"), length);
+    }
+
+    FileChannel channel = null;
     try {
-      BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
-      BufferedOutputStream out = new BufferedOutputStream(response.getOutputStream());
-
-      byte[] buf = new byte[1024];
-      int len = in.read(buf);
-      while (len > 0) {
-          out.write(buf, 0, len);
-          len = in.read(buf);
+      if (ranges != null && ranges.isEmpty()) {
+        status = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+        response.setStatus(status);
+        response.setHeader("Content-Range", "bytes */" + length);
+        setContentLength(response, 0);
+        return;
       }
 
-      in.close();
-      out.close();
+      boolean head = "HEAD".equals(request.getMethod());
+      if (ranges == null) {
+        setContentLength(response, length);
+        if (!head) {
+          channel = new FileInputStream(file).getChannel();
+          copy(channel, 0, length, response.getOutputStream());
+        }
+      } else if (ranges.size() == 1) {
+        long[] range = ranges.get(0);
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        response.setStatus(status);
+        response.setHeader("Content-Range", getContentRange(range));
+        setContentLength(response, range[1] - range[0] + 1);
+        if (!head) {
+          channel = new FileInputStream(file).getChannel();
+          copy(channel, range[0], range[1] - range[0] + 1, response.getOutputStream());
+        }
+      } else {
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        String contentType = getContentType();
+
+        // the headers of each part are worked out up front for the content length
+        List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+          String partHeader = CRLF + "--" + boundary + CRLF +
+              "Content-Type: " + contentType + CRLF +
+              "Content-Range: " + getContentRange(range) + CRLF + CRLF;
+          byte[] bytes = partHeader.getBytes("ISO-8859-1");
+          partHeaders.add(bytes);
+          contentLength += bytes.length + (range[1] - range[0] + 1);
+        }
+        byte[] end = (CRLF + "--" + boundary + "--" + CRLF).getBytes("ISO-8859-1");
+        contentLength += end.length;
+
+        response.setStatus(status);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        setContentLength(response, contentLength);
+        if (!head) {
+          channel = new FileInputStream(file).getChannel();
+          OutputStream out = response.getOutputStream();
+          for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            copy(channel, range[0], range[1] - range[0] + 1, out);
+          }
+          out.write(end);
+        }
+      }
     } catch (IOException ioe) {
       log.warn(ioe);
     } finally {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ioe) {
+          log.warn(ioe);
+        }
+      }
+
       AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
-      blog.log(request, HttpServletResponse.SC_OK);
+      blog.log(request, status);
+    }
+  }
+
+  /**
+   * Determines whether the Range header of a request should be used,
+   * taking into account the request method and any If-Range header.
+   */
+  private boolean isRangeApplicable(HttpServletRequest request) {
+    String method = request.getMethod();
+    if (request.getHeader("Range") == null || (method != null && !method.equals("GET") && !method.equals("HEAD"))) {
+      return false;
+    }
+
+    String ifRange = request.getHeader("If-Range");
+    if (ifRange == null) {
+      return true;
+    } else if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // entity tags are compared using the strong comparison function
+      return ifRange.equals(getETag(length, lastModified));
+    } else {
+      try {
+        // HTTP dates only have a granularity of one second
+        long date = request.getDateHeader("If-Range");
+        return date >= 0 && (date / 1000) == (lastModified / 1000);
+      } catch (IllegalArgumentException iae) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Parses the value of a Range header into a list of inclusive byte
+   * ranges, each represented as a two element array. Ranges are sorted, and
+   * those that overlap or are adjacent are coalesced.
+   *
+   * @param header    the value of the Range header
+   * @param length    the length of the file, in bytes
+   * @return  a List of ranges, an empty List if none of the ranges can be
+   *          satisfied, or null if the header should be ignored
+   */
+  static List<long[]> parseRanges(String header, long length) {
+    if (header == null || !header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+      return null;
+    }
+
+    List<long[]> ranges = new ArrayList<long[]>();
+    String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+    if (specs.length > MAXIMUM_NUMBER_OF_RANGES) {
+      return null;
+    }
+
+    for (String spec : specs) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash == -1) {
+        return null;
+      }
+
+      long first;
+      long last;
+      try {
+        if (dash == 0) {
+          // a suffix range, such as -500 for the last 500 bytes
+          long suffixLength = Long.parseLong(spec.substring(1));
+          if (suffixLength < 0) {
+            return null;
+          } else if (suffixLength == 0) {
+            continue;
+          }
+          first = Math.max(0, length - suffixLength);
+          last = length - 1;
+        } else {
+          first = Long.parseLong(spec.substring(0, dash));
+          if (dash == spec.length() - 1) {
+            last = length - 1;
+          } else {
+            last = Long.parseLong(spec.substring(dash + 1));
+            if (last < first) {
+              return null;
+            }
+          }
+        }
+      } catch (NumberFormatException nfe) {
+        return null;
+      }
+
+      if (first < 0) {
+        return null;
+      } else if (first < length) {
+        ranges.add(new long[] { first, Math.min(last, length - 1) });
+      }
+    }
+
+    if (ranges.size() > 1) {
+      Collections.sort(ranges, new Comparator<long[]>() {
+        public int compare(long[] r1, long[] r2) {
+          return r1[0] < r2[0] ? -1 : (r1[0] == r2[0] ? 0 : 1);
+        }
+      });
+
+      List<long[]> coalesced = new ArrayList<long[]>(ranges.size());
+      long[] current = ranges.get(0);
+      for (int i = 1; i < ranges.size(); i++) {
+        long[] range = ranges.get(i);
+        if (range[0] <= current[1] + 1) {
+          current = new long[] { current[0], Math.max(current[1], range[1]) };
+        } else {
+          coalesced.add(current);
+          current = range;
+        }
+      }
+      coalesced.add(current);
+      ranges = coalesced;
+    }
+
+    return ranges;
+  }
+
+  private String getContentRange(long[] range) {
+    return "bytes " + range[0] + "-" + range[1] + "/" + length;
+  }
+
+  private void setContentLength(HttpServletResponse response, long contentLength) {
+    if (contentLength <= Integer.MAX_VALUE) {
+      response.setContentLength((int)contentLength);
+    } else {
+      response.setHeader("Content-Length", "" + contentLength);
+    }
+  }
+
+  /**
+   * Copies part of a file to an output stream. The servlet API only
+   * exposes a stream, so the file is read through one large buffer that is
+   * written straight to the response, rather than through a pair of
+   * buffered streams.
+   *
+   * @param channel   the FileChannel to read from
+   * @param position  the position of the first byte to copy
+   * @param count     the number of bytes to copy
+   * @param out       the OutputStream to write to
+   */
+  static void copy(FileChannel channel, long position, long count, OutputStream out) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, Math.max(count, 1)));
+    while (count > 0) {
+      buffer.clear();
+      if (count < buffer.capacity()) {
+        buffer.limit((int)count);
+      }
+
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of file after " + position + " bytes");
+      }
+
+      out.write(buffer.array(), 0, read);
+      position += read;
+      count -= read;
     }
   }
 
@@ -31,12 +31,21 @@
  */
 package net.sourceforge.pebble.web.view.impl;
 
+import net.sourceforge.pebble.CachedFeed;
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 import net.sourceforge.pebble.decorator.ContentDecoratorChain;
 import net.sourceforge.pebble.domain.AbstractBlog;
 import net.sourceforge.pebble.web.view.XmlView;
 
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -46,6 +55,27 @@ import java.util.List;
  */
 public abstract class AbstractFeedView extends XmlView {
 
+  private FeedCache feedCache;
+  private String feedCacheKey;
+  private long feedCacheVersion;
+  private Date lastModified;
+  private ContentDecoratorContext decoratorContext;
+
+  /**
+   * Requests that the rendered feed is put into the specified cache.
+   *
+   * @param feedCache     the FeedCache to put the feed into
+   * @param key           the key of the feed
+   * @param version       the version of the cache before the blog entries were loaded
+   * @param lastModified  the date that the feed was last modified
+   */
+  public void cacheIn(FeedCache feedCache, String key, long version, Date lastModified) {
+    this.feedCache = feedCache;
+    this.feedCacheKey = key;
+    this.feedCacheVersion = version;
+    this.lastModified = lastModified;
+  }
+
   /**
    * Gets the content type of this view.
    *
@@ -60,13 +90,52 @@ public abstract class AbstractFeedView extends XmlView {
    * Prepares the view for presentation.
    */
   public void prepare() {
-    ContentDecoratorContext context = new ContentDecoratorContext();
-    context.setView(ContentDecoratorContext.SUMMARY_VIEW);
-    context.setMedia(ContentDecoratorContext.NEWS_FEED);
+    decoratorContext = new ContentDecoratorContext();
+    decoratorContext.setView(ContentDecoratorContext.SUMMARY_VIEW);
+    decoratorContext.setMedia(ContentDecoratorContext.NEWS_FEED);
 
     List blogEntries = (List)getModel().get(Constants.BLOG_ENTRIES);
-    ContentDecoratorChain.decorate(context, blogEntries);
+    ContentDecoratorChain.decorate(decoratorContext, blogEntries);
     getModel().put(Constants.BLOG_ENTRIES, blogEntries);
   }
 
+  /**
+   * Determines whether the rendered feed should be put into the cache; it
+   * shouldn't if any of the blog entries were only provisionally decorated.
+   *
+   * @return  true if the feed should be cached, false otherwise
+   */
+  private boolean isCacheable() {
+    return feedCache != null && (decoratorContext == null || decoratorContext.isCacheable());
+  }
+
+  /**
+   * Dispatches this view, rendering the feed into the cache if requested.
+   *
+   * @param request  the HttpServletRequest instance
+   * @param response the HttpServletResponse instance
+   * @param context  the ServletContext instance
+   */
+  public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
+    if (!isCacheable()) {
+      super.dispatch(request, response, context);
+      return;
+    }
+
+    AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
+    try {
+      BufferingResponseWrapper wrapper = new BufferingResponseWrapper(response, blog.getCharacterEncoding());
+      RequestDispatcher dispatcher = context.getRequestDispatcher(getUri());
+      dispatcher.include(request, wrapper);
+
+      CachedFeed feed = new CachedFeed(getContentType(), wrapper.toByteArray(), lastModified);
+      feedCache.put(feedCacheKey, feed, feedCacheVersion);
+      CachedFeedView.write(response, feed);
+    } catch (IOException ioe) {
+      throw new ServletException(ioe);
+    } finally {
+      blog.log(request, HttpServletResponse.SC_OK);
+    }
+  }
+
 }
\ No newline at end of file
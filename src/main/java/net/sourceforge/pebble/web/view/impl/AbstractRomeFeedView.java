@@ -34,7 +34,9 @@ package net.sourceforge.pebble.web.view.impl;
 import com.sun.syndication.feed.synd.*;
 import com.sun.syndication.io.FeedException;
 import com.sun.syndication.io.SyndFeedOutput;
+import net.sourceforge.pebble.CachedFeed;
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 import net.sourceforge.pebble.decorator.ContentDecoratorChain;
 import net.sourceforge.pebble.domain.*;
@@ -45,6 +47,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -58,23 +61,44 @@ public abstract class AbstractRomeFeedView extends View {
   private final FeedType feedType;
   private final SimpleDateFormat idDateFormat;
 
+  private FeedCache feedCache;
+  private String feedCacheKey;
+  private long feedCacheVersion;
+  private Date lastModified;
+  private ContentDecoratorContext decoratorContext;
+
   protected AbstractRomeFeedView(FeedType feedType) {
     this.feedType = feedType;
     this.idDateFormat = new SimpleDateFormat("yyyy-MM-dd");
     idDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
   }
 
+  /**
+   * Requests that the rendered feed is put into the specified cache.
+   *
+   * @param feedCache     the FeedCache to put the feed into
+   * @param key           the key of the feed
+   * @param version       the version of the cache before the blog entries were loaded
+   * @param lastModified  the date that the feed was last modified
+   */
+  public void cacheIn(FeedCache feedCache, String key, long version, Date lastModified) {
+    this.feedCache = feedCache;
+    this.feedCacheKey = key;
+    this.feedCacheVersion = version;
+    this.lastModified = lastModified;
+  }
+
   /**
    * Prepares the view for presentation.
    */
   @SuppressWarnings("unchecked")
   public void prepare() {
-    ContentDecoratorContext context = new ContentDecoratorContext();
-    context.setView(ContentDecoratorContext.SUMMARY_VIEW);
-    context.setMedia(ContentDecoratorContext.NEWS_FEED);
+    decoratorContext = new ContentDecoratorContext();
+    decoratorContext.setView(ContentDecoratorContext.SUMMARY_VIEW);
+    decoratorContext.setMedia(ContentDecoratorContext.NEWS_FEED);
 
     List<BlogEntry> blogEntries = (List<BlogEntry>) getModel().get(Constants.BLOG_ENTRIES);
-    ContentDecoratorChain.decorate(context, blogEntries);
+    ContentDecoratorChain.decorate(decoratorContext, blogEntries);
     getModel().put(Constants.BLOG_ENTRIES, blogEntries);
   }
 
@@ -88,6 +112,16 @@ public abstract class AbstractRomeFeedView extends View {
     return feedType.getContentType() + "; charset=" + blog.getCharacterEncoding();
   }
 
+  /**
+   * Determines whether the rendered feed should be put into the cache; it
+   * shouldn't if any of the blog entries were only provisionally decorated.
+   *
+   * @return  true if the feed should be cached, false otherwise
+   */
+  private boolean isCacheable() {
+    return feedCache != null && (decoratorContext == null || decoratorContext.isCacheable());
+  }
+
   /**
    * Dispatch the view using ROME
    *
@@ -103,7 +137,17 @@ public abstract class AbstractRomeFeedView extends View {
     SyndFeedOutput output = new SyndFeedOutput();
 
     try {
-      output.output(syndFeed, response.getWriter());
+      if (!isCacheable()) {
+        output.output(syndFeed, response.getWriter());
+      } else {
+        AbstractBlog blog = (AbstractBlog) getModel().get(Constants.BLOG_KEY);
+        StringWriter writer = new StringWriter();
+        output.output(syndFeed, writer);
+
+        CachedFeed feed = new CachedFeed(getContentType(), writer.toString().getBytes(blog.getCharacterEncoding()), lastModified);
+        feedCache.put(feedCacheKey, feed, feedCacheVersion);
+        CachedFeedView.write(response, feed);
+      }
     } catch (IOException e) {
       throw new ServletException("Error generating feed", e);
     } catch (FeedException e) {
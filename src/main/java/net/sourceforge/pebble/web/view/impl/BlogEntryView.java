@@ -48,8 +48,10 @@ public class BlogEntryView extends HtmlView {
     context.setView(ContentDecoratorContext.DETAIL_VIEW);
     context.setMedia(ContentDecoratorContext.HTML_PAGE);
 
+    // the blog entry may be shared via the content cache, so use a decorated copy
     BlogEntry blogEntry = (BlogEntry)getModel().get(Constants.BLOG_ENTRY_KEY);
-    blogEntry.getBlog().getContentDecoratorChain().decorate(context, blogEntry);
+    blogEntry = blogEntry.getBlog().getContentDecoratorChain().getDecoratedBlogEntry(context, blogEntry);
+    getModel().put(Constants.BLOG_ENTRY_KEY, blogEntry);
   }
 
   /**
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * A response wrapper that captures the body in memory, so that JSP based
+ * views can be rendered once and cached.
+ *
+ * @author    Simon Brown
+ */
+class BufferingResponseWrapper extends HttpServletResponseWrapper {
+
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final String characterEncoding;
+  private ServletOutputStream outputStream;
+  private PrintWriter writer;
+
+  BufferingResponseWrapper(HttpServletResponse response, String characterEncoding) {
+    super(response);
+    this.characterEncoding = characterEncoding;
+  }
+
+  public ServletOutputStream getOutputStream() {
+    if (outputStream == null) {
+      outputStream = new ServletOutputStream() {
+        public void write(int b) {
+          buffer.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+          buffer.write(b, off, len);
+        }
+      };
+    }
+
+    return outputStream;
+  }
+
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      writer = new PrintWriter(new OutputStreamWriter(buffer, characterEncoding));
+    }
+
+    return writer;
+  }
+
+  public void flushBuffer() {
+    if (writer != null) {
+      writer.flush();
+    }
+  }
+
+  public void resetBuffer() {
+    flushBuffer();
+    buffer.reset();
+  }
+
+  public void reset() {
+    super.reset();
+    resetBuffer();
+  }
+
+  public void setContentLength(int length) {
+    // the length is set when the buffered content is written
+  }
+
+  /**
+   * Gets the content that has been written to this response.
+   *
+   * @return  an array of bytes
+   */
+  byte[] toByteArray() {
+    flushBuffer();
+    return buffer.toByteArray();
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.CachedFeed;
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.AbstractBlog;
+import net.sourceforge.pebble.web.view.View;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Represents a newsfeed that has already been rendered, and is simply
+ * written back to the client.
+ *
+ * @author    Simon Brown
+ */
+public class CachedFeedView extends View {
+
+  private final CachedFeed feed;
+
+  public CachedFeedView(CachedFeed feed) {
+    this.feed = feed;
+  }
+
+  /**
+   * Gets the content type of this view.
+   *
+   * @return the content type as a String
+   */
+  public String getContentType() {
+    return feed.getContentType();
+  }
+
+  /**
+   * Dispatches this view.
+   *
+   * @param request  the HttpServletRequest instance
+   * @param response the HttpServletResponse instance
+   * @param context  the ServletContext instance
+   */
+  public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
+    try {
+      write(response, feed);
+    } catch (IOException ioe) {
+      throw new ServletException(ioe);
+    } finally {
+      AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
+      blog.log(request, HttpServletResponse.SC_OK);
+    }
+  }
+
+  /**
+   * Writes a rendered feed, along with its entity tag, to the response.
+   */
+  static void write(HttpServletResponse response, CachedFeed feed) throws IOException {
+    response.setHeader("ETag", feed.getETag());
+    response.setContentLength(feed.getContent().length);
+    response.getOutputStream().write(feed.getContent());
+  }
+
+}
@@ -254,7 +254,7 @@ public class BloggerAPIHandler extends AbstractAPIHandler {
       postid = getPostId(postid);
       authenticate(blog, username, password);
       BlogService service = new BlogService();
-      BlogEntry entry = service.getBlogEntry(blog, postid);
+      BlogEntry entry = service.getBlogEntryForUpdate(blog, postid);
 
       if (entry != null) {
         populateEntry(entry, content, username);
@@ -295,7 +295,7 @@ public class BloggerAPIHandler extends AbstractAPIHandler {
       postid = getPostId(postid);
       authenticate(blog, username, password);
       BlogService service = new BlogService();
-      BlogEntry blogEntry = service.getBlogEntry(blog, postid);
+      BlogEntry blogEntry = service.getBlogEntryForUpdate(blog, postid);
 
       if (blogEntry != null) {
         service.removeBlogEntry(blogEntry);
@@ -448,7 +448,7 @@ public class BloggerAPIHandler extends AbstractAPIHandler {
       postid = getPostId(postid);
       authenticate(blog, username, password);
       BlogService service = new BlogService();
-      BlogEntry entry = service.getBlogEntry(blog, postid);
+      BlogEntry entry = service.getBlogEntryForUpdate(blog, postid);
 
       if (entry != null) {
         Category c = entry.getBlog().getCategory(category);
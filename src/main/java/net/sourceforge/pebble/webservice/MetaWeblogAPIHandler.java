@@ -312,7 +312,7 @@ public class MetaWeblogAPIHandler extends AbstractAPIHandler {
       postid = getPostId(postid);
       authenticate(blog, username, password);
       BlogService service = new BlogService();
-      BlogEntry entry = service.getBlogEntry(blog, postid);
+      BlogEntry entry = service.getBlogEntryForUpdate(blog, postid);
 
       if (entry != null) {
         populateEntry(entry, struct, username);
@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.webservice;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.util.StringUtils;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends update notifications (weblogUpdates.ping XML-RPC calls and
+ * PubSubHubBub publish requests) to other sites. Notifications for a blog
+ * are held for a short window, so that several updates in quick succession
+ * result in a single request to each site, and are then sent to all of the
+ * sites at once on a small pool of background threads, each request being
+ * bounded by connect and read timeouts. The latency and failures of each
+ * site are recorded.
+ *
+ * @author    Simon Brown
+ */
+public class NotificationFanOut {
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(NotificationFanOut.class);
+
+  /** how long notifications are held for, in milliseconds */
+  public static final long DEFAULT_COALESCE_WINDOW = 5 * 1000;
+
+  /** the default connect timeout, in milliseconds */
+  public static final int DEFAULT_CONNECT_TIMEOUT = 5 * 1000;
+
+  /** the default read timeout, in milliseconds */
+  public static final int DEFAULT_READ_TIMEOUT = 10 * 1000;
+
+  /** the number of requests that can be in progress at once */
+  static final int NUMBER_OF_THREADS = 8;
+
+  /** the number of requests that can be waiting */
+  static final int QUEUE_CAPACITY = 1000;
+
+  /** the name of the method to call via XML-RPC */
+  private static final String WEBLOGS_METHOD_NAME = "weblogUpdates.ping";
+
+  private static final Pattern FLERROR_PATTERN = Pattern.compile("<name>\\s*flerror\\s*</name>\\s*<value>\\s*<boolean>\\s*(\\S+?)\\s*</boolean>", Pattern.DOTALL);
+  private static final Pattern MESSAGE_PATTERN = Pattern.compile("<name>\\s*message\\s*</name>\\s*<value>\\s*(?:<string>)?(.*?)(?:</string>)?\\s*</value>", Pattern.DOTALL);
+
+  /** the HTTP parameters used for PubSubHubBub */
+  private static final String HUB_MODE_PARAM = "hub.mode";
+  private static final String HUB_URL_PARAM = "hub.url";
+  private static final String HUB_MODE = "publish";
+
+  /** the singleton instance */
+  private static final NotificationFanOut instance = new NotificationFanOut(DEFAULT_COALESCE_WINDOW, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+
+  /** the timer used to send held notifications */
+  private static final Timer timer = new Timer(true);
+
+  private final long coalesceWindow;
+  private final int connectTimeout;
+  private final int readTimeout;
+  private final ThreadPoolExecutor executor;
+
+  /** the held notifications, keyed by blog ID */
+  private final Map<String,PendingNotifications> pending = new HashMap<String,PendingNotifications>();
+
+  /** the statistics for each site, keyed by URL */
+  private final ConcurrentMap<String,EndpointStatistics> statistics = new ConcurrentHashMap<String,EndpointStatistics>();
+
+  NotificationFanOut(long coalesceWindow, int connectTimeout, int readTimeout) {
+    this.coalesceWindow = coalesceWindow;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.executor = new ThreadPoolExecutor(NUMBER_OF_THREADS, NUMBER_OF_THREADS, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Pebble update notifications");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  /**
+   * Gets the singleton instance of this class.
+   *
+   * @return  a NotificationFanOut instance
+   */
+  public static NotificationFanOut getInstance() {
+    return instance;
+  }
+
+  /**
+   * Queues a weblogUpdates.ping to each of the specified sites.
+   *
+   * @param blog    the Blog representing the updated blog
+   * @param url     the URL to send the ping for
+   * @param sites   the list of sites (URLs) to ping
+   */
+  public void ping(Blog blog, String url, String[] sites) {
+    synchronized (pending) {
+      PendingNotifications notifications = getPendingNotifications(blog);
+      for (String site : sites) {
+        site = site.trim();
+        if (site.length() > 0) {
+          notifications.pings.put(site, url);
+        }
+      }
+    }
+  }
+
+  /**
+   * Queues a PubSubHubBub publish request to each of the specified hubs.
+   *
+   * @param blog      the Blog representing the updated blog
+   * @param hubs      the list of hubs (URLs) to notify
+   * @param topics    the URLs of the feeds that have been updated
+   */
+  public void publish(Blog blog, Collection<String> hubs, Collection<String> topics) {
+    synchronized (pending) {
+      PendingNotifications notifications = getPendingNotifications(blog);
+      for (String hub : hubs) {
+        hub = hub.trim();
+        if (hub.length() > 0) {
+          Set<String> hubTopics = notifications.topics.get(hub);
+          if (hubTopics == null) {
+            hubTopics = new LinkedHashSet<String>();
+            notifications.topics.put(hub, hubTopics);
+          }
+          hubTopics.addAll(topics);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the notifications being held for the given blog, starting a new
+   * window if there are none. Must be called while holding the lock on
+   * the pending map.
+   */
+  private PendingNotifications getPendingNotifications(Blog blog) {
+    final String key = blog.getId();
+    PendingNotifications notifications = pending.get(key);
+    if (notifications == null) {
+      notifications = new PendingNotifications(blog);
+      pending.put(key, notifications);
+      timer.schedule(new TimerTask() {
+        public void run() {
+          send(key);
+        }
+      }, coalesceWindow);
+    }
+
+    return notifications;
+  }
+
+  /**
+   * Sends all of the notifications held for a blog.
+   *
+   * @param key   the blog ID
+   */
+  private void send(String key) {
+    final PendingNotifications notifications;
+    synchronized (pending) {
+      notifications = pending.remove(key);
+    }
+    if (notifications == null) {
+      return;
+    }
+
+    for (final Map.Entry<String,String> ping : notifications.pings.entrySet()) {
+      submit(ping.getKey(), new Runnable() {
+        public void run() {
+          sendPing(notifications.blog, ping.getKey(), ping.getValue());
+        }
+      });
+    }
+    for (final Map.Entry<String,Set<String>> hub : notifications.topics.entrySet()) {
+      submit(hub.getKey(), new Runnable() {
+        public void run() {
+          sendPublish(notifications.blog, hub.getKey(), hub.getValue());
+        }
+      });
+    }
+  }
+
+  private void submit(String endpoint, Runnable request) {
+    try {
+      executor.execute(request);
+    } catch (RejectedExecutionException ree) {
+      log.warn("Too many update notifications waiting, not notifying " + endpoint);
+      getStatistics(endpoint, true).failed(0, "Not sent, too many notifications waiting");
+    }
+  }
+
+  private void sendPing(Blog blog, String site, String url) {
+    log.info("Sending XML-RPC ping to " + site);
+    blog.info("Sending XML-RPC ping to " + StringUtils.transformHTML(site));
+
+    StringBuffer request = new StringBuffer();
+    request.append("<?xml version=\"1.0\"?>");
+    request.append("<methodCall><methodName>");
+    request.append(WEBLOGS_METHOD_NAME);
+    request.append("</methodName><params>");
+    request.append("<param><value><string>");
+    request.append(StringUtils.transformHTML(blog.getName()));
+    request.append("</string></value></param>");
+    request.append("<param><value><string>");
+    request.append(StringUtils.transformHTML(url));
+    request.append("</string></value></param>");
+    request.append("</params></methodCall>");
+
+    EndpointStatistics stats = getStatistics(site, true);
+    long start = System.currentTimeMillis();
+    PostMethod method = new PostMethod(site);
+    try {
+      method.setRequestEntity(new StringRequestEntity(request.toString(), "text/xml", "UTF-8"));
+      int rc = createHttpClient().executeMethod(method);
+      if (rc != HttpStatus.SC_OK) {
+        throw new IOException("Unexpected response code " + rc + " " + method.getStatusText());
+      }
+
+      String response = method.getResponseBodyAsString();
+      if (response == null || response.indexOf("<fault>") > -1) {
+        throw new IOException("XML-RPC fault returned");
+      }
+
+      String flerror = find(FLERROR_PATTERN, response);
+      String message = find(MESSAGE_PATTERN, response);
+      log.info("Result of XML-RPC ping to " + site + " was " + flerror + ", " + message);
+      blog.info("Result of XML-RPC ping to " + StringUtils.transformHTML(site) + " was " + StringUtils.transformHTML(flerror) + ", " + StringUtils.transformHTML(message));
+      if ("1".equals(flerror) || "true".equals(flerror)) {
+        stats.failed(System.currentTimeMillis() - start, message);
+      } else {
+        stats.succeeded(System.currentTimeMillis() - start);
+      }
+    } catch (Exception e) {
+      stats.failed(System.currentTimeMillis() - start, e.getMessage());
+      log.error("Exception when sending XML-RPC ping to " + site, e);
+      blog.warn("Error sending XML-RPC ping to " + StringUtils.transformHTML(site) + ". Message: " + StringUtils.transformHTML(e.getMessage()));
+    } finally {
+      method.releaseConnection();
+    }
+  }
+
+  private void sendPublish(Blog blog, String hub, Set<String> topics) {
+    EndpointStatistics stats = getStatistics(hub, true);
+    long start = System.currentTimeMillis();
+    PostMethod method = new PostMethod(hub);
+    try {
+      method.addParameter(HUB_MODE_PARAM, HUB_MODE);
+      for (String topic : topics) {
+        method.addParameter(HUB_URL_PARAM, topic);
+      }
+
+      int rc = createHttpClient().executeMethod(method);
+      if (rc == HttpStatus.SC_NO_CONTENT) {
+        stats.succeeded(System.currentTimeMillis() - start);
+      } else {
+        String errorMessage = "Unexpected response code received from hub: " + hub + " - " + rc + " " + method.getStatusText();
+        stats.failed(System.currentTimeMillis() - start, errorMessage);
+        log.warn(errorMessage);
+        blog.warn(errorMessage);
+      }
+    } catch (Exception e) {
+      stats.failed(System.currentTimeMillis() - start, e.getMessage());
+      log.error("Error posting to hub: " + hub, e);
+      blog.warn("Error publishing to hub: " + hub + ". Message: " + e.getMessage());
+    } finally {
+      method.releaseConnection();
+    }
+  }
+
+  private HttpClient createHttpClient() {
+    HttpClient httpClient = new HttpClient();
+    HttpConnectionManagerParams params = httpClient.getHttpConnectionManager().getParams();
+    params.setConnectionTimeout(connectTimeout);
+    params.setSoTimeout(readTimeout);
+    return httpClient;
+  }
+
+  private static String find(Pattern pattern, String s) {
+    Matcher m = pattern.matcher(s);
+    if (m.find()) {
+      return m.group(1).trim();
+    } else {
+      return null;
+    }
+  }
+
+  private EndpointStatistics getStatistics(String endpoint, boolean create) {
+    EndpointStatistics stats = statistics.get(endpoint);
+    if (stats == null && create) {
+      EndpointStatistics newStats = new EndpointStatistics(endpoint);
+      stats = statistics.putIfAbsent(endpoint, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+
+    return stats;
+  }
+
+  /**
+   * Gets the statistics for a given site.
+   *
+   * @param endpoint    the URL of the site
+   * @return  an EndpointStatistics instance, or null if the site hasn't
+   *          been notified
+   */
+  public EndpointStatistics getStatistics(String endpoint) {
+    return getStatistics(endpoint, false);
+  }
+
+  /**
+   * Gets the statistics for all sites that have been notified.
+   *
+   * @return  a Collection of EndpointStatistics instances
+   */
+  public Collection<EndpointStatistics> getStatistics() {
+    return new ArrayList<EndpointStatistics>(statistics.values());
+  }
+
+  /**
+   * The notifications held for a single blog.
+   */
+  private static class PendingNotifications {
+
+    private final Blog blog;
+
+    /** the URL to ping for, keyed by site */
+    private final Map<String,String> pings = new LinkedHashMap<String,String>();
+
+    /** the updated feeds, keyed by hub */
+    private final Map<String,Set<String>> topics = new LinkedHashMap<String,Set<String>>();
+
+    PendingNotifications(Blog blog) {
+      this.blog = blog;
+    }
+
+  }
+
+  /**
+   * The number of requests made to a site, along with their latency and
+   * failures.
+   */
+  public static class EndpointStatistics {
+
+    private final String endpoint;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private volatile long lastLatency;
+    private volatile String lastError;
+
+    EndpointStatistics(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    void succeeded(long latency) {
+      record(latency);
+    }
+
+    void failed(long latency, String error) {
+      record(latency);
+      failures.incrementAndGet();
+      lastError = error;
+    }
+
+    private void record(long latency) {
+      requests.incrementAndGet();
+      totalLatency.addAndGet(latency);
+      lastLatency = latency;
+    }
+
+    public String getEndpoint() {
+      return endpoint;
+    }
+
+    public long getRequests() {
+      return requests.get();
+    }
+
+    public long getFailures() {
+      return failures.get();
+    }
+
+    public long getLastLatency() {
+      return lastLatency;
+    }
+
+    public long getAverageLatency() {
+      long n = requests.get();
+      return n == 0 ? 0 : totalLatency.get() / n;
+    }
+
+    public String getLastError() {
+      return lastError;
+    }
+
+  }
+
+}
@@ -110,7 +110,8 @@ public class PebbleAPIHandler extends AbstractAPIHandler {
    * @return  a Hashtable representing the major properties of the entry
    */
   private Hashtable adaptBlogEntry(BlogEntry entry) {
-    // first apply decorators - we don't want to go out naked :-)
+    // first apply decorators (to a copy) - we don't want to go out naked :-)
+    entry = (BlogEntry)entry.clone();
     ContentDecoratorContext context = new ContentDecoratorContext();
     context.setView(ContentDecoratorContext.DETAIL_VIEW);
     context.setMedia(ContentDecoratorContext.XML_RPC);
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * Tests for the ContentCache class.
+ *
+ * @author    Simon Brown
+ */
+public class ContentCacheTest extends SingleBlogTestCase {
+
+  private ContentCache cache;
+  private long maximumSize;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    cache = ContentCache.getInstance();
+    cache.clear();
+    maximumSize = cache.getMaximumSize();
+  }
+
+  protected void tearDown() throws Exception {
+    cache.setMaximumSize(maximumSize);
+    cache.clear();
+
+    super.tearDown();
+  }
+
+  /**
+   * Tests that hits and misses are counted.
+   */
+  public void testHitsAndMisses() {
+    BlogEntry blogEntry = createBlogEntry(0);
+    long hits = cache.getHits();
+    long misses = cache.getMisses();
+
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+    assertEquals(misses + 1, cache.getMisses());
+
+    cache.putBlogEntry(blogEntry);
+    assertSame(blogEntry, cache.getBlogEntry(blog, blogEntry.getId()));
+    assertEquals(hits + 1, cache.getHits());
+
+    cache.removeBlogEntry(blogEntry);
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+    assertEquals(0, cache.getSize());
+  }
+
+  /**
+   * Tests that the size of the cache is tracked as content is replaced.
+   */
+  public void testSizeIsTracked() {
+    BlogEntry blogEntry = createBlogEntry(0);
+    cache.putBlogEntry(blogEntry);
+    long size = cache.getSize();
+    assertTrue(size > 0);
+
+    cache.putBlogEntry(blogEntry);
+    assertEquals(size, cache.getSize());
+    assertEquals(1, cache.getNumberOfElements());
+  }
+
+  /**
+   * Tests that the least recently used content is evicted when the cache
+   * grows beyond its maximum size.
+   */
+  public void testLeastRecentlyUsedContentIsEvicted() {
+    BlogEntry blogEntry1 = createBlogEntry(0);
+    BlogEntry blogEntry2 = createBlogEntry(1);
+    BlogEntry blogEntry3 = createBlogEntry(2);
+    long evictions = cache.getEvictions();
+
+    cache.setMaximumSize((ContentCache.estimateSize(blogEntry1) * 3) - 1);
+    cache.putBlogEntry(blogEntry1);
+    cache.putBlogEntry(blogEntry2);
+    cache.getBlogEntry(blog, blogEntry1.getId());
+    cache.putBlogEntry(blogEntry3);
+
+    assertNotNull(cache.getBlogEntry(blog, blogEntry1.getId()));
+    assertNull(cache.getBlogEntry(blog, blogEntry2.getId()));
+    assertTrue(cache.getSize() <= cache.getMaximumSize());
+    assertTrue(cache.getEvictions() > evictions);
+  }
+
+  /**
+   * Tests that content loaded before a removal isn't cached, and that
+   * removals only affect content loaded for the same blog.
+   */
+  public void testRemovalsOnlyAffectLoadsForTheSameBlog() {
+    File otherBlogDirectory = new File(TEST_BLOG_LOCATION, "blogs/other");
+    otherBlogDirectory.mkdir();
+    Blog otherBlog = new Blog(otherBlogDirectory.getAbsolutePath());
+    otherBlog.setId("other");
+
+    BlogEntry blogEntry1 = createBlogEntry(0);
+    BlogEntry blogEntry2 = createBlogEntry(1);
+    long version = cache.getVersion(blog);
+
+    cache.removeBlogEntry(otherBlog, "123");
+    cache.putBlogEntry(blogEntry1, version);
+    assertNotNull(cache.getBlogEntry(blog, blogEntry1.getId()));
+
+    cache.removeBlogEntry(blog, "123");
+    cache.putBlogEntry(blogEntry2, version);
+    assertNull(cache.getBlogEntry(blog, blogEntry2.getId()));
+  }
+
+  private BlogEntry createBlogEntry(long offset) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(1000000 + offset));
+
+    return blogEntry;
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import junit.framework.TestCase;
+
+import java.util.Date;
+
+/**
+ * Tests for the FeedCache class.
+ *
+ * @author    Simon Brown
+ */
+public class FeedCacheTest extends TestCase {
+
+  private FeedCache cache;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    cache = new FeedCache();
+  }
+
+  private CachedFeed createFeed(String content) {
+    return new CachedFeed("application/xml; charset=UTF-8", content.getBytes(), new Date(1000));
+  }
+
+  /**
+   * Tests that feeds can be put into and retrieved from the cache.
+   */
+  public void testPutAndGet() {
+    String key = FeedCache.getKey("http", "rss20", null, null, null, true);
+    CachedFeed feed = createFeed("<rss/>");
+    cache.put(key, feed, cache.getVersion());
+
+    assertSame(feed, cache.get(key));
+    assertNull(cache.get(FeedCache.getKey("http", "atom", null, null, null, true)));
+    assertNull(cache.get(FeedCache.getKey("http", "rss20", "java", null, null, true)));
+    assertNull(cache.get(FeedCache.getKey("http", "rss20", null, null, null, false)));
+  }
+
+  /**
+   * Tests that a feed rendered before the cache was cleared isn't cached.
+   */
+  public void testStaleFeedIsNotCached() {
+    String key = FeedCache.getKey("http", "rss20", null, null, null, true);
+    long version = cache.getVersion();
+    cache.clear();
+    cache.put(key, createFeed("<rss/>"), version);
+
+    assertNull(cache.get(key));
+  }
+
+  /**
+   * Tests that the cache doesn't grow beyond its maximum size.
+   */
+  public void testCacheIsBounded() {
+    for (int i = 0; i < FeedCache.MAXIMUM_SIZE + 10; i++) {
+      cache.put(FeedCache.getKey("http", "rss20", "tag" + i, null, null, true), createFeed("<rss/>"), cache.getVersion());
+    }
+
+    assertEquals(FeedCache.MAXIMUM_SIZE, cache.size());
+  }
+
+  /**
+   * Tests that the entity tag depends on the content of the feed.
+   */
+  public void testETagIsHashOfContent() {
+    assertEquals(createFeed("<rss/>").getETag(), createFeed("<rss/>").getETag());
+    assertFalse(createFeed("<rss/>").getETag().equals(createFeed("<rss></rss>").getETag()));
+    assertTrue(createFeed("<rss/>").getETag().startsWith("\""));
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.file;
+
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Tests for the BinaryBlogEntryDAO class.
+ *
+ * @author    Simon Brown
+ */
+public class BinaryBlogEntryDAOTest extends SingleBlogTestCase {
+
+  private BinaryBlogEntryDAO dao = new BinaryBlogEntryDAO();
+  private Locale defaultLocale;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    defaultLocale = Locale.getDefault();
+    Locale.setDefault(Locale.ENGLISH);
+  }
+
+  public void tearDown() throws Exception {
+    super.tearDown();
+
+    Locale.setDefault(defaultLocale);
+  }
+
+  /**
+   * Tests that an existing XML file is converted when it's first loaded.
+   */
+  public void testLoadBlogEntryConvertsFromXml() throws Exception {
+    File source = new File(TEST_RESOURCE_LOCATION, "1081203335000.xml");
+    File destination = new File(blog.getRoot(), "2004/04/05/");
+    destination.mkdirs();
+    FileUtils.copyFile(source, new File(destination, "1081203335000.xml"));
+    File binaryFile = new File(destination, "1081203335000.dat");
+    binaryFile.delete();
+
+    Category category1 = new Category("/category1", "Category 1");
+    blog.addCategory(category1);
+    Category category2 = new Category("/category2", "Category 2");
+    blog.addCategory(category2);
+
+    BlogEntry fromXml = dao.loadBlogEntry(blog, "1081203335000");
+    assertTrue(binaryFile.exists());
+
+    BlogEntry fromBinary = dao.loadBlogEntry(blog, "1081203335000");
+    assertEquals(fromXml.getTitle(), fromBinary.getTitle());
+    assertEquals(fromXml.getSubtitle(), fromBinary.getSubtitle());
+    assertEquals(fromXml.getExcerpt(), fromBinary.getExcerpt());
+    assertEquals(fromXml.getBody(), fromBinary.getBody());
+    assertEquals(fromXml.getDate(), fromBinary.getDate());
+    assertEquals(fromXml.getTimeZoneId(), fromBinary.getTimeZoneId());
+    assertTrue(fromBinary.isUnpublished());
+    assertEquals(fromXml.getAuthor(), fromBinary.getAuthor());
+    assertEquals(fromXml.getCategories(), fromBinary.getCategories());
+    assertEquals(fromXml.getTags(), fromBinary.getTags());
+    assertEquals(fromXml.getAttachment(), fromBinary.getAttachment());
+
+    List<Comment> comments = fromBinary.getComments();
+    assertEquals(2, comments.size());
+    assertEquals("Comment title 1", comments.get(0).getTitle());
+    assertEquals("<p>Comment 1.</p>", comments.get(0).getBody());
+    assertTrue(comments.get(0).isApproved());
+    assertFalse(comments.get(0).isAuthenticated());
+    assertTrue(comments.get(1).isPending());
+    assertTrue(comments.get(1).isAuthenticated());
+
+    List<TrackBack> trackBacks = fromBinary.getTrackBacks();
+    assertEquals(2, trackBacks.size());
+    assertEquals("TrackBack title 1", trackBacks.get(0).getTitle());
+    assertEquals("http://www.author1.com/entry", trackBacks.get(0).getUrl());
+    assertTrue(trackBacks.get(1).isPending());
+  }
+
+  /**
+   * Tests that a blog entry, with nested comments, can be stored and loaded.
+   */
+  public void testStoreAndLoadBlogEntry() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body \u00e9");
+    blogEntry.setDate(new Date(1081203335000L));
+    Comment comment1 = blogEntry.createComment("Title 1", "Body 1", "Author", "me@example.com", "http://www.example.com", "", "127.0.0.1", new Date(1081203336000L), State.APPROVED);
+    blogEntry.addComment(comment1);
+    Comment comment2 = blogEntry.createComment("Title 2", "Body 2", "Author", "me@example.com", "http://www.example.com", "", "127.0.0.1", new Date(1081203337000L), State.PENDING);
+    comment2.setParent(comment1);
+    blogEntry.addComment(comment2);
+
+    dao.storeBlogEntry(blogEntry);
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+
+    assertEquals("A title", loaded.getTitle());
+    assertEquals("Some body \u00e9", loaded.getBody());
+    assertNull(loaded.getSubtitle());
+    assertEquals(2, loaded.getComments().size());
+    Comment loadedComment = loaded.getComment(comment2.getId());
+    assertEquals(comment1.getId(), loadedComment.getParent().getId());
+    assertTrue(loadedComment.isPending());
+  }
+
+  /**
+   * Tests that blog entries can be exported to XML.
+   */
+  public void testExportBlogEntry() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(1081203335000L));
+    dao.storeBlogEntry(blogEntry);
+
+    dao.exportBlogEntry(blogEntry);
+    BlogEntry loaded = new FileBlogEntryDAO().loadBlogEntry(blog, blogEntry.getId());
+    assertEquals("A title", loaded.getTitle());
+    assertEquals("Some body", loaded.getBody());
+
+    // the exported XML file is superseded by the binary file, so isn't converted again
+    File binaryFile = getFile(blogEntry, ".dat");
+    binaryFile.setLastModified(1000000000000L);
+    loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals("A title", loaded.getTitle());
+    assertEquals(1000000000000L, binaryFile.lastModified());
+    assertTrue(getFile(blogEntry, ".xml").exists());
+  }
+
+  /**
+   * Tests that storing a blog entry removes the XML file, which would
+   * otherwise be out of date.
+   */
+  public void testStoreBlogEntryRemovesXmlFile() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setDate(new Date(1081203335000L));
+    new FileBlogEntryDAO().storeBlogEntry(blogEntry);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    loaded.setTitle("Another title");
+    dao.storeBlogEntry(loaded);
+    assertFalse(getFile(blogEntry, ".xml").exists());
+    assertEquals("Another title", dao.loadBlogEntry(blog, blogEntry.getId()).getTitle());
+  }
+
+  /**
+   * Tests that an XML file that has changed since the binary file was written
+   * is used, whatever the timestamps on the files say - e.g. after restoring
+   * a backup, or editing the blog entry using the FileBlogEntryDAO.
+   */
+  public void testChangedXmlFileIsConvertedAgain() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setDate(new Date(1081203335000L));
+    dao.storeBlogEntry(blogEntry);
+    dao.exportBlogEntry(blogEntry);
+
+    blogEntry.setTitle("Restored title");
+    new FileBlogEntryDAO().storeBlogEntry(blogEntry);
+    File xmlFile = getFile(blogEntry, ".xml");
+    File binaryFile = getFile(blogEntry, ".dat");
+    binaryFile.setLastModified(xmlFile.lastModified() + 60000);
+
+    assertEquals("Restored title", dao.loadBlogEntry(blog, blogEntry.getId()).getTitle());
+    assertEquals("Restored title", dao.loadBlogEntry(blog, blogEntry.getId()).getTitle());
+  }
+
+  /**
+   * Compares the latency of loading and storing 10,000 blog entries with
+   * comments in binary format against the XML format used by the
+   * FileBlogEntryDAO. This only runs when the pebble.benchmarks system
+   * property is set to true.
+   */
+  public void testLatencyAgainstXml() throws Exception {
+    if (!Boolean.getBoolean("pebble.benchmarks")) {
+      return;
+    }
+
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    for (int i = 0; i < 10000; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setTitle("Title " + i);
+      blogEntry.setBody("<p>Body of blog entry " + i + "</p>");
+      blogEntry.setDate(new Date(1081203335000L + (i * 60000L)));
+      for (int j = 1; j <= 5; j++) {
+        blogEntry.addComment(blogEntry.createComment("Title " + j, "<p>Comment " + j + "</p>", "Author", "me@example.com", "http://www.example.com", "", "127.0.0.1", new Date(blogEntry.getDate().getTime() + (j * 1000L)), State.APPROVED));
+      }
+      blogEntries.add(blogEntry);
+    }
+
+    // the binary files are written first, so there are no XML files to supersede
+    long binaryStore = store(dao, blogEntries);
+    long binaryLoad = load(dao, blogEntries);
+    FileBlogEntryDAO xmlDao = new FileBlogEntryDAO();
+    long xmlStore = store(xmlDao, blogEntries);
+    long xmlLoad = load(xmlDao, blogEntries);
+
+    String durations = "binary load/store took " + binaryLoad + "/" + binaryStore + " ms, XML load/store took " + xmlLoad + "/" + xmlStore + " ms";
+    assertTrue(durations, binaryLoad < xmlLoad);
+  }
+
+  private long store(BlogEntryDAO blogEntryDAO, List<BlogEntry> blogEntries) throws Exception {
+    long start = System.currentTimeMillis();
+    for (BlogEntry blogEntry : blogEntries) {
+      blogEntryDAO.storeBlogEntry(blogEntry);
+    }
+
+    return System.currentTimeMillis() - start;
+  }
+
+  private long load(BlogEntryDAO blogEntryDAO, List<BlogEntry> blogEntries) throws Exception {
+    long start = System.currentTimeMillis();
+    for (BlogEntry blogEntry : blogEntries) {
+      BlogEntry loaded = blogEntryDAO.loadBlogEntry(blog, blogEntry.getId());
+      assertEquals(5, loaded.getComments().size());
+    }
+
+    return System.currentTimeMillis() - start;
+  }
+
+  private File getFile(BlogEntry blogEntry, String extension) {
+    File path = new File(new FileBlogEntryDAO().getPath(blog, blogEntry.getId(), TimeZone.getTimeZone("GMT")));
+    return new File(path, blogEntry.getId() + extension);
+  }
+
+  /**
+   * Tests that corrupt files are rejected.
+   */
+  public void testCorruptFileIsRejected() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(1081203335000L));
+
+    byte[] bytes = dao.toByteArray(blogEntry, -1, 0);
+    byte[] truncated = new byte[bytes.length - 4];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    try {
+      dao.readBlogEntry(blog, ByteBuffer.wrap(truncated));
+      fail();
+    } catch (IOException ioe) {
+      // expected
+    }
+  }
+
+}
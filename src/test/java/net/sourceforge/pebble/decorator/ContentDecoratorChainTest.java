@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.UncachedContentDecorator;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.Date;
+
+/**
+ * Tests for the ContentDecoratorChain class.
+ *
+ * @author    Simon Brown
+ */
+public class ContentDecoratorChainTest extends SingleBlogTestCase {
+
+  private ContentDecoratorChain chain;
+  private CountingDecorator cached;
+  private UncachedCountingDecorator uncached;
+  private ContentDecoratorContext context;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    chain = new ContentDecoratorChain(blog);
+    cached = new CountingDecorator();
+    uncached = new UncachedCountingDecorator();
+    chain.add(uncached);
+    chain.add(cached);
+    context = new ContentDecoratorContext();
+    context.setView(ContentDecoratorContext.DETAIL_VIEW);
+  }
+
+  private BlogEntry createBlogEntry() {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Title");
+    blogEntry.setBody("Body");
+    blogEntry.setExcerpt("Excerpt");
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1"));
+    return blogEntry;
+  }
+
+  public void testDecoratedContentIsReused() {
+    BlogEntry blogEntry = createBlogEntry();
+    chain.decorate(context, blogEntry);
+    assertEquals("Body!", blogEntry.getBody());
+    assertEquals("Comment!", blogEntry.getComments().get(0).getBody());
+
+    // a fresh copy of the same blog entry is decorated from the cache
+    BlogEntry copy = createBlogEntry();
+    copy.setDate(blogEntry.getDate());
+    copy.getComments().get(0).setDate(blogEntry.getComments().get(0).getDate());
+    chain.decorate(context, copy);
+    assertEquals("Body!", copy.getBody());
+    assertEquals("Excerpt!", copy.getExcerpt());
+    assertEquals("Comment!", copy.getComments().get(0).getBody());
+    assertEquals(1, cached.count);
+
+    // but uncached decorators are run every time
+    assertEquals(2, uncached.count);
+  }
+
+  public void testChangedContentIsDecoratedAgain() {
+    BlogEntry blogEntry = createBlogEntry();
+    chain.decorate(context, blogEntry);
+
+    BlogEntry copy = createBlogEntry();
+    copy.setDate(blogEntry.getDate());
+    copy.setBody("Another body");
+    chain.decorate(context, copy);
+    assertEquals("Another body!", copy.getBody());
+    assertEquals(2, cached.count);
+  }
+
+  public void testInvalidate() {
+    BlogEntry blogEntry = createBlogEntry();
+    chain.decorate(context, blogEntry);
+    chain.invalidate(blogEntry.getId());
+
+    BlogEntry copy = createBlogEntry();
+    copy.setDate(blogEntry.getDate());
+    copy.getComments().get(0).setDate(blogEntry.getComments().get(0).getDate());
+    chain.decorate(context, copy);
+    assertEquals(2, cached.count);
+  }
+
+  public void testPreviewsAreNotCached() {
+    context.setView(ContentDecoratorContext.PREVIEW);
+    BlogEntry blogEntry = createBlogEntry();
+    chain.decorate(context, blogEntry);
+    chain.decorate(context, createBlogEntry());
+    assertEquals(2, cached.count);
+  }
+
+  public void testDecoratedCopiesAreShared() {
+    BlogEntry blogEntry = createBlogEntry();
+    BlogEntry decorated = chain.getDecoratedBlogEntry(context, blogEntry);
+    assertNotSame(blogEntry, decorated);
+    assertEquals("Body", blogEntry.getBody());
+    assertEquals("Body!", decorated.getBody());
+    assertEquals("Comment!", decorated.getComments().get(0).getBody());
+
+    assertSame(decorated, chain.getDecoratedBlogEntry(context, blogEntry));
+    assertEquals(1, cached.count);
+    assertEquals(0, uncached.count);
+  }
+
+  public void testDecoratedCopiesAreNotSharedBetweenInstances() {
+    BlogEntry blogEntry = createBlogEntry();
+    BlogEntry decorated = chain.getDecoratedBlogEntry(context, blogEntry);
+
+    // an updated blog entry is a new instance, which may have new responses
+    BlogEntry copy = createBlogEntry();
+    copy.setDate(blogEntry.getDate());
+    copy.getComments().get(0).setDate(blogEntry.getComments().get(0).getDate());
+    BlogEntry decoratedCopy = chain.getDecoratedBlogEntry(context, copy);
+    assertNotSame(decorated, decoratedCopy);
+    assertEquals("Body!", decoratedCopy.getBody());
+    assertEquals(1, cached.count);
+  }
+
+  public void testUncachedDecoratorsGetTheirOwnCopy() {
+    uncached.applies = true;
+    BlogEntry blogEntry = createBlogEntry();
+    BlogEntry decorated = chain.getDecoratedBlogEntry(context, blogEntry);
+    BlogEntry decoratedAgain = chain.getDecoratedBlogEntry(context, blogEntry);
+    assertNotSame(decorated, decoratedAgain);
+    assertEquals("Body!", decoratedAgain.getBody());
+    assertEquals(1, cached.count);
+    assertEquals(2, uncached.count);
+  }
+
+  /**
+   * Decorates the same blog entries from 1, 8 and 32 threads, as pages
+   * showing them are requested concurrently. This only runs when the
+   * pebble.benchmarks system property is set to true.
+   */
+  public void testDecorationThroughput() throws Exception {
+    if (!Boolean.getBoolean("pebble.benchmarks")) {
+      return;
+    }
+
+    final BlogEntry[] blogEntries = new BlogEntry[20];
+    for (int i = 0; i < blogEntries.length; i++) {
+      blogEntries[i] = createBlogEntry();
+      blogEntries[i].setDate(new Date(i * 1000L));
+    }
+    final int iterations = 10000;
+
+    for (int numberOfThreads : new int[] { 1, 8, 32 }) {
+      Thread[] threads = new Thread[numberOfThreads];
+      final Exception[] failures = new Exception[numberOfThreads];
+      for (int i = 0; i < numberOfThreads; i++) {
+        final int thread = i;
+        threads[i] = new Thread() {
+          public void run() {
+            try {
+              ContentDecoratorContext context = new ContentDecoratorContext();
+              context.setView(ContentDecoratorContext.SUMMARY_VIEW);
+              for (int j = 0; j < iterations; j++) {
+                BlogEntry blogEntry = blogEntries[j % blogEntries.length];
+                if (!"Body!".equals(chain.getDecoratedBlogEntry(context, blogEntry).getBody())) {
+                  throw new IllegalStateException("Blog entry " + blogEntry.getId() + " wasn't decorated");
+                }
+              }
+            } catch (Exception e) {
+              failures[thread] = e;
+            }
+          }
+        };
+      }
+
+      long start = System.currentTimeMillis();
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      long duration = System.currentTimeMillis() - start;
+
+      for (Exception failure : failures) {
+        if (failure != null) {
+          throw failure;
+        }
+      }
+
+      // each blog entry is only decorated once, and on average taking a
+      // shared copy should take well under 10 microseconds
+      long decorations = (long)numberOfThreads * iterations;
+      assertEquals(blogEntries.length, cached.count);
+      assertTrue(numberOfThreads + " threads took " + duration + " ms for " + decorations + " decorations", duration * 100 < decorations);
+    }
+  }
+
+  static class CountingDecorator extends ContentDecoratorSupport {
+
+    int count;
+
+    public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
+      count++;
+      blogEntry.setBody(blogEntry.getBody() + "!");
+      blogEntry.setExcerpt(blogEntry.getExcerpt() + "!");
+    }
+
+    public void decorate(ContentDecoratorContext context, Comment comment) {
+      comment.setBody(comment.getBody() + "!");
+    }
+  }
+
+  static class UncachedCountingDecorator extends CountingDecorator implements UncachedContentDecorator {
+
+    boolean applies;
+
+    public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
+      count++;
+    }
+
+    public boolean appliesTo(ContentDecoratorContext context, BlogEntry blogEntry) {
+      return applies;
+    }
+
+    public void decorate(ContentDecoratorContext context, Comment comment) {
+    }
+  }
+
+}
@@ -126,6 +126,27 @@ public class HideUnapprovedResponsesDecoratorTest extends SingleBlogTestCase {
     assertEquals(1, blogEntry.getTrackBacks().size());
   }
 
+  /**
+   * Tests that the decorator only applies to blog entries that it would
+   * change, so that other blog entries can be shared.
+   */
+  public void testAppliesOnlyWhenUnapprovedResponsesWouldBeRemoved() throws Exception {
+    HideUnapprovedResponsesDecorator decorator = new HideUnapprovedResponsesDecorator();
+    ContentDecoratorContext context = new ContentDecoratorContext();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    Comment comment = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    blogEntry.addComment(comment);
+
+    SecurityUtils.runAsAnonymous();
+    assertFalse(decorator.appliesTo(context, blogEntry));
+
+    comment.setPending();
+    assertTrue(decorator.appliesTo(context, blogEntry));
+
+    SecurityUtils.runAsBlogContributor();
+    assertFalse(decorator.appliesTo(context, blogEntry));
+  }
+
   public void testUnapprovedNestedResponsesRemovedWhenNotLoggedIn() throws Exception {
     BlogEntry blogEntry = new BlogEntry(blog);
     Comment comment1 = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
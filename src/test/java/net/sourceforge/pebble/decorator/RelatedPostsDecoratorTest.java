@@ -74,6 +74,16 @@ public class RelatedPostsDecoratorTest extends SingleBlogTestCase {
     blogEntrySeven = new BlogEntry(blog);
     blogEntryEight = new BlogEntry(blog);
 
+    // related posts are found through the tag index, which only contains published blog entries
+    blogEntryOne.setPublished(true);
+    blogEntryTwo.setPublished(true);
+    blogEntryThree.setPublished(true);
+    blogEntryFour.setPublished(true);
+    blogEntryFive.setPublished(true);
+    blogEntrySix.setPublished(true);
+    blogEntrySeven.setPublished(true);
+    blogEntryEight.setPublished(true);
+
     service = new BlogService();
 
     decorator = new RelatedPostsDecorator();
@@ -255,4 +265,78 @@ public class RelatedPostsDecoratorTest extends SingleBlogTestCase {
     assertEquals("Body - body one" + relatedPosts, blogEntryOne.getBody());
   }
 
-}
+  /**
+   * Tests that unpublished blog entries aren't shown as related posts.
+   */
+  public void testUnpublishedBlogEntriesAreNotRelatedPosts() throws Exception {
+
+    context.setMedia(ContentDecoratorContext.HTML_PAGE);
+
+    blogEntryOne.setDate(new Date(1));
+    blogEntryOne.setTitle("Title - title one");
+    blogEntryOne.setBody("Body - body one");
+    blogEntryOne.setTags("one");
+    blogEntryOne.setPublished(false);
+    service.putBlogEntry(blogEntryOne);
+
+    blogEntryTwo.setDate(new Date(2));
+    blogEntryTwo.setTitle("Title - title two");
+    blogEntryTwo.setBody("Body - body two");
+    blogEntryTwo.setTags("one");
+    service.putBlogEntry(blogEntryTwo);
+
+    decorator.decorate(context, blogEntryTwo);
+
+    StringBuffer relatedPosts = new StringBuffer();
+    relatedPosts.append("<p><b>Related Posts</b><br />");
+    relatedPosts.append("<i>There are no related posts for this blog entry</i>");
+    relatedPosts.append("</p><br />");
+
+    assertEquals("Body - body two" + relatedPosts, blogEntryTwo.getBody());
+  }
+
+  /**
+   * Tests that posts sharing rarer tags are ranked above those sharing
+   * common ones.
+   */
+  public void testRarerSharedTagsRankHigher() throws Exception {
+
+    context.setMedia(ContentDecoratorContext.HTML_PAGE);
+    blog.getPluginProperties().setProperty(RelatedPostsDecorator.MAX_POSTS, "1");
+
+    blogEntryOne.setDate(new Date(1));
+    blogEntryOne.setTitle("Title - title one");
+    blogEntryOne.setBody("Body - body one");
+    blogEntryOne.setTags("java, rare");
+    service.putBlogEntry(blogEntryOne);
+
+    blogEntryTwo.setDate(new Date(2));
+    blogEntryTwo.setTitle("Title - title two");
+    blogEntryTwo.setBody("Body - body two");
+    blogEntryTwo.setTags("java");
+    service.putBlogEntry(blogEntryTwo);
+
+    blogEntryThree.setDate(new Date(3));
+    blogEntryThree.setTitle("Title - title three");
+    blogEntryThree.setBody("Body - body three");
+    blogEntryThree.setTags("java");
+    service.putBlogEntry(blogEntryThree);
+
+    blogEntryFour.setDate(new Date(4));
+    blogEntryFour.setTitle("Title - title four");
+    blogEntryFour.setBody("Body - body four");
+    blogEntryFour.setTags("java, rare");
+    service.putBlogEntry(blogEntryFour);
+
+    decorator.decorate(context, blogEntryFour);
+
+    StringBuffer relatedPosts = new StringBuffer();
+    relatedPosts.append("<p><b>Related Posts</b><br />");
+    relatedPosts
+        .append("<a href=\"http://www.yourdomain.com/blog/1970/01/01/1.html\" rel=\"bookmark\" title=\"Title - title one\">Title - title one</a><br />");
+    relatedPosts.append("</p><br />");
+
+    assertEquals("Body - body four" + relatedPosts, blogEntryFour.getBody());
+  }
+
+}
\ No newline at end of file
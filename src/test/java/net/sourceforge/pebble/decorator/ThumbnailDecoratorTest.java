@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Tests for the ThumbnailDecorator class.
+ *
+ * @author    Simon Brown
+ */
+public class ThumbnailDecoratorTest extends SingleBlogTestCase {
+
+  private ThumbnailDecorator decorator;
+  private ContentDecoratorContext context;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    decorator = new ThumbnailDecorator();
+    context = new ContentDecoratorContext();
+    blogEntry = new BlogEntry(blog);
+
+    File images = new File(blog.getRoot(), "images");
+    images.mkdirs();
+    ImageIO.write(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "png", new File(images, "photo.png"));
+  }
+
+  /**
+   * Tests that the original image is shown until the thumbnail is ready,
+   * rather than decoration waiting for it.
+   */
+  public void testOriginalImageShownUntilThumbnailIsReady() throws Exception {
+    blogEntry.setBody("<thumbnail src=\"images/photo.png\" alt=\"A photo\" thumbSize=\"120\"/>");
+    decorator.decorate(context, blogEntry);
+    assertTrue(blogEntry.getBody().indexOf("<img src=\"images/photo.png\" alt=\"A photo\" class=\"thumbnailImage\" style=\"max-width:120px;max-height:120px\"/>") > -1);
+
+    assertTrue(ThumbnailPipeline.getInstance().awaitIdle(10000));
+
+    blogEntry.setBody("<thumbnail src=\"images/photo.png\" alt=\"A photo\" thumbSize=\"120\"/>");
+    decorator.decorate(context, blogEntry);
+    String thumbnail = new File(new File(new File("images", "thumbnails"), "120"), "photo.png").toString();
+    assertTrue(blogEntry.getBody().indexOf("<img src=\"" + thumbnail + "\" alt=\"A photo\" class=\"thumbnailImage\"/>") > -1);
+  }
+
+  /**
+   * Tests that the original image isn't cached by the decorator chain, so
+   * that the thumbnail is shown once it's ready.
+   */
+  public void testOriginalImageIsNotCachedUntilThumbnailIsReady() throws Exception {
+    ContentDecoratorChain chain = new ContentDecoratorChain(blog);
+    chain.add(decorator);
+    blogEntry.setBody("<thumbnail src=\"images/photo.png\" alt=\"A photo\" thumbSize=\"150\"/>");
+
+    BlogEntry decorated = (BlogEntry)blogEntry.clone();
+    chain.decorate(context, decorated);
+    assertTrue(decorated.getBody().indexOf("<img src=\"images/photo.png\" alt=\"A photo\" class=\"thumbnailImage\" style=\"max-width:150px;max-height:150px\"/>") > -1);
+
+    assertTrue(ThumbnailPipeline.getInstance().awaitIdle(10000));
+
+    decorated = (BlogEntry)blogEntry.clone();
+    chain.decorate(context, decorated);
+    String thumbnail = new File(new File(new File("images", "thumbnails"), "150"), "photo.png").toString();
+    assertTrue(decorated.getBody().indexOf("<img src=\"" + thumbnail + "\" alt=\"A photo\" class=\"thumbnailImage\"/>") > -1);
+  }
+
+  public void testMissingImage() throws Exception {
+    blogEntry.setBody("<thumbnail src=\"images/missing.png\"/>");
+    decorator.decorate(context, blogEntry);
+    assertEquals("<!-- ERROR: invalid thumbnail src \"images/missing.png\" -->", blogEntry.getBody());
+  }
+
+}
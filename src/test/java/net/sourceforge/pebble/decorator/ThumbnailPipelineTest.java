@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+
+/**
+ * Tests for the ThumbnailPipeline class.
+ *
+ * @author    Simon Brown
+ */
+public class ThumbnailPipelineTest extends SingleBlogTestCase {
+
+  private ThumbnailPipeline pipeline;
+  private File image;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    pipeline = new ThumbnailPipeline(1, 10);
+    File images = new File(blog.getRoot(), "images");
+    images.mkdirs();
+    image = new File(images, "photo.png");
+    ImageIO.write(new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB), "png", image);
+  }
+
+  public void testThumbnailIsCreatedInTheBackground() throws Exception {
+    assertNull(pipeline.getThumbnail(image, 200));
+    assertTrue(pipeline.awaitIdle(10000));
+
+    File thumbnail = pipeline.getThumbnail(image, 200);
+    assertEquals(ThumbnailPipeline.getThumbnailFile(image, 200), thumbnail);
+    BufferedImage scaled = ImageIO.read(thumbnail);
+    assertEquals(200, scaled.getWidth());
+    assertEquals(100, scaled.getHeight());
+  }
+
+  public void testDuplicateJobsAreOnlyRunOnce() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      assertTrue(pipeline.submit(image, 200));
+    }
+    assertTrue(pipeline.awaitIdle(10000));
+
+    assertEquals(1, pipeline.getCreated());
+    assertEquals(0, pipeline.getFailures());
+  }
+
+  public void testMultipleSizesAreKeptSeparately() throws Exception {
+    pipeline.submit(image, 200);
+    pipeline.submit(image, 80);
+    assertTrue(pipeline.awaitIdle(10000));
+
+    assertEquals(200, ImageIO.read(pipeline.getThumbnail(image, 200)).getWidth());
+    assertEquals(80, ImageIO.read(pipeline.getThumbnail(image, 80)).getWidth());
+    assertEquals(2, pipeline.getCreated());
+  }
+
+  public void testThumbnailIsRecreatedWhenImageChanges() throws Exception {
+    pipeline.submit(image, 200);
+    assertTrue(pipeline.awaitIdle(10000));
+
+    ImageIO.write(new BufferedImage(400, 800, BufferedImage.TYPE_INT_RGB), "png", image);
+    image.setLastModified(System.currentTimeMillis() + 10000);
+    assertNull(pipeline.getThumbnail(image, 200));
+    assertTrue(pipeline.awaitIdle(10000));
+
+    assertEquals(100, ImageIO.read(pipeline.getThumbnail(image, 200)).getWidth());
+    assertEquals(2, pipeline.getCreated());
+  }
+
+  public void testFailuresAreNotRetried() throws Exception {
+    File notAnImage = new File(image.getParentFile(), "broken.png");
+    FileWriter writer = new FileWriter(notAnImage);
+    writer.write("not an image");
+    writer.close();
+
+    assertTrue(pipeline.submit(notAnImage, 200));
+    assertTrue(pipeline.awaitIdle(10000));
+
+    assertTrue(pipeline.hasFailed(notAnImage, 200));
+    assertFalse(pipeline.submit(notAnImage, 200));
+    assertEquals(1, pipeline.getFailures());
+  }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stress tests for concurrent writes through the BlogService class.
+ *
+ * @author    Simon Brown
+ */
+public class BlogServiceConcurrencyTest extends SingleBlogTestCase {
+
+  private static final int NUMBER_OF_THREADS = 8;
+  private static final int NUMBER_OF_BLOG_ENTRIES = 32;
+  private static final int COMMENTS_PER_BLOG_ENTRY = 10;
+
+  private BlogService service;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    service = new BlogService();
+  }
+
+  /**
+   * Tests that new blog entries stored concurrently with the same date are
+   * all given unique IDs.
+   */
+  public void testConcurrentNewBlogEntriesGetUniqueIds() throws Exception {
+    final Date date = new Date();
+    final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+
+    run(new Work() {
+      public void run(int thread) throws Exception {
+        for (int i = 0; i < 5; i++) {
+          BlogEntry blogEntry = new BlogEntry(blog);
+          blogEntry.setTitle("Thread " + thread + ", entry " + i);
+          blogEntry.setDate(date);
+          service.putBlogEntry(blogEntry);
+          ids.add(blogEntry.getId());
+        }
+      }
+    });
+
+    assertEquals(NUMBER_OF_THREADS * 5, ids.size());
+    assertEquals(ids.size(), new HashSet<String>(ids).size());
+    for (String id : ids) {
+      assertNotNull(service.getBlogEntry(blog, id));
+    }
+  }
+
+  /**
+   * Posts comments concurrently across many blog entries, checking that
+   * none are lost.
+   */
+  public void testConcurrentCommentsAcrossBlogEntries() throws Exception {
+    postComments(COMMENTS_PER_BLOG_ENTRY);
+  }
+
+  /**
+   * Posts many more comments concurrently, to measure the write throughput.
+   * This only runs when the pebble.benchmarks system property is set to
+   * true. Only the public API is used, so it can be run against older
+   * versions for comparison.
+   */
+  public void testCommentThroughput() throws Exception {
+    if (!Boolean.getBoolean("pebble.benchmarks")) {
+      return;
+    }
+
+    int comments = 100;
+    long start = System.currentTimeMillis();
+    postComments(comments);
+    long duration = System.currentTimeMillis() - start;
+
+    // every comment is a full write of its blog entry, but should still take
+    // well under 10 ms on average
+    int writes = NUMBER_OF_BLOG_ENTRIES * comments;
+    assertTrue("Posted " + writes + " comments from " + NUMBER_OF_THREADS + " threads in " + duration + " ms", duration < writes * 10L);
+  }
+
+  /**
+   * Posts the given number of comments to each of a number of blog entries,
+   * from several threads at once, and checks that none are lost.
+   */
+  private void postComments(final int commentsPerBlogEntry) throws Exception {
+    final List<String> ids = new ArrayList<String>();
+    long time = System.currentTimeMillis();
+    for (int i = 0; i < NUMBER_OF_BLOG_ENTRIES; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setTitle("Blog entry " + i);
+      blogEntry.setDate(new Date(time - (i * 1000)));
+      blogEntry.setPublished(true);
+      service.putBlogEntry(blogEntry);
+      ids.add(blogEntry.getId());
+    }
+
+    run(new Work() {
+      public void run(int thread) throws Exception {
+        // each thread owns a slice of the blog entries, but the threads
+        // interleave their writes across the whole blog
+        for (int comment = 0; comment < commentsPerBlogEntry; comment++) {
+          for (int i = thread; i < ids.size(); i += NUMBER_OF_THREADS) {
+            BlogEntry blogEntry = service.getBlogEntryForUpdate(blog, ids.get(i));
+            blogEntry.addComment(blogEntry.createComment("Title", "Comment " + comment, "Author", "me@somedomain.com", "http://www.google.com", null, "127.0.0.1"));
+            service.putBlogEntry(blogEntry);
+          }
+        }
+      }
+    });
+
+    Set<String> responses = new HashSet<String>();
+    for (String id : ids) {
+      BlogEntry blogEntry = service.getBlogEntry(blog, id);
+      assertEquals(commentsPerBlogEntry, blogEntry.getComments().size());
+      for (Comment comment : blogEntry.getComments()) {
+        responses.add(comment.getGuid());
+      }
+    }
+    assertEquals(NUMBER_OF_BLOG_ENTRIES * commentsPerBlogEntry, responses.size());
+  }
+
+  /**
+   * Tests that blog entries written while the blog is being reindexed
+   * aren't lost from the index.
+   */
+  public void testBlogEntriesWrittenDuringReindexingAreIndexed() throws Exception {
+    final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+
+    run(new Work() {
+      public void run(int thread) throws Exception {
+        for (int i = 0; i < 5; i++) {
+          if (thread == 0) {
+            blog.reindexBlogEntries();
+          } else {
+            BlogEntry blogEntry = new BlogEntry(blog);
+            blogEntry.setTitle("Thread " + thread + ", entry " + i);
+            service.putBlogEntry(blogEntry);
+            ids.add(blogEntry.getId());
+          }
+        }
+      }
+    });
+
+    assertEquals((NUMBER_OF_THREADS - 1) * 5, ids.size());
+    assertTrue(blog.getBlogEntryIndex().getBlogEntries().containsAll(ids));
+  }
+
+  /**
+   * Tests that categories can be added while blog entries are being written.
+   */
+  public void testCategoriesCanBeAddedDuringWrites() throws Exception {
+    run(new Work() {
+      public void run(int thread) throws Exception {
+        for (int i = 0; i < 5; i++) {
+          blog.addCategory(new Category("/thread" + thread + "/category" + i, "Category " + i));
+
+          BlogEntry blogEntry = new BlogEntry(blog);
+          blogEntry.setTitle("Thread " + thread + ", entry " + i);
+          blogEntry.addCategory(blog.getCategory("/thread" + thread + "/category" + i));
+          service.putBlogEntry(blogEntry);
+        }
+      }
+    });
+
+    for (int thread = 0; thread < NUMBER_OF_THREADS; thread++) {
+      for (int i = 0; i < 5; i++) {
+        assertNotNull(blog.getCategory("/thread" + thread + "/category" + i));
+      }
+    }
+  }
+
+  /**
+   * Runs the given work on a number of threads at once, failing if any of
+   * them throws an exception.
+   */
+  private void run(final Work work) throws Exception {
+    final CountDownLatch ready = new CountDownLatch(1);
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    Thread[] threads = new Thread[NUMBER_OF_THREADS];
+
+    for (int i = 0; i < threads.length; i++) {
+      final int thread = i;
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            ready.await();
+            work.run(thread);
+          } catch (Throwable t) {
+            errors.add(t);
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    ready.countDown();
+    for (Thread thread : threads) {
+      thread.join(60000);
+    }
+
+    if (!errors.isEmpty()) {
+      Throwable t = errors.get(0);
+      t.printStackTrace();
+      fail(t.toString());
+    }
+  }
+
+  private interface Work {
+    void run(int thread) throws Exception;
+  }
+
+}
@@ -529,4 +529,25 @@ public class BlogServiceTest extends SingleBlogTestCase {
     assertEquals(trackBack2, trackBacks.get(1));
     assertEquals(trackBack3, trackBacks.get(2));
   }
+
+  /**
+   * Tests that readers share the cached blog entry, while updates work on
+   * a copy that doesn't affect readers until it has been stored.
+   */
+  public void testBlogEntriesAreCopiedOnlyForUpdate() throws Exception {
+    service.putBlogEntry(blogEntry);
+
+    BlogEntry snapshot = service.getBlogEntry(blog, blogEntry.getId());
+    assertSame(snapshot, service.getBlogEntry(blog, blogEntry.getId()));
+
+    BlogEntry copy = service.getBlogEntryForUpdate(blog, blogEntry.getId());
+    assertNotSame(snapshot, copy);
+    assertTrue(copy.isPersistent());
+
+    copy.setTitle("A new title");
+    assertEquals("A title", service.getBlogEntry(blog, blogEntry.getId()).getTitle());
+
+    service.putBlogEntry(copy);
+    assertEquals("A new title", service.getBlogEntry(blog, blogEntry.getId()).getTitle());
+  }
 }
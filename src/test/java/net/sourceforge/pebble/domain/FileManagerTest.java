@@ -521,4 +521,84 @@ public class FileManagerTest extends SingleBlogTestCase {
     themeDirectory.delete();
   }
 
+  /**
+   * Tests that the space used is adjusted as files are saved, copied,
+   * renamed and deleted.
+   */
+  public void testUsageIsAdjustedIncrementally() throws Exception {
+    double usage = FileManager.getCurrentUsage(blog);
+
+    fileManager.saveFile("/a.txt", new byte[2048]);
+    assertEquals(usage + 2, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.saveFile("/a.txt", new byte[1024]);
+    assertEquals(usage + 1, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.copyFile("/", "a.txt", "b.txt");
+    assertEquals(usage + 2, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.renameFile("/", "b.txt", "c.txt");
+    assertEquals(usage + 2, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.deleteFile("/", "a.txt");
+    fileManager.deleteFile("/", "c.txt");
+    assertEquals(usage, FileManager.getCurrentUsage(blog), 0.001);
+  }
+
+  /**
+   * Tests that only files moved into or out of the images, files and theme
+   * directories change the space used.
+   */
+  public void testUsageOnlyCountsImagesFilesAndTheme() throws Exception {
+    double usage = FileManager.getCurrentUsage(blog);
+
+    fileManager = new FileManager(blog, FileMetaData.BLOG_DATA);
+    fileManager.saveFile("/a.txt", new byte[1024]);
+    assertEquals(usage, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.renameFile("/", "a.txt", "files/a.txt");
+    assertEquals(usage + 1, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.renameFile("/files", "a.txt", "../a.txt");
+    assertEquals(usage, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.deleteFile("/", "a.txt");
+    assertEquals(usage, FileManager.getCurrentUsage(blog), 0.001);
+  }
+
+  /**
+   * Tests that reconciliation picks up files changed behind the file
+   * manager's back.
+   */
+  public void testReconciliationCorrectsDrift() throws Exception {
+    double usage = FileManager.getCurrentUsage(blog);
+
+    BufferedWriter writer = new BufferedWriter(new FileWriter(new File(blog.getFilesDirectory(), "a.txt")));
+    writer.write(new char[1024]);
+    writer.close();
+    assertEquals(usage, FileManager.getCurrentUsage(blog), 0.001);
+
+    blog.getFileUsageLedger().reconcile();
+    assertEquals(usage + 1, FileManager.getCurrentUsage(blog), 0.001);
+  }
+
+  /**
+   * Tests that the space used is loaded from the snapshot saved by the
+   * previous ledger, rather than being calculated.
+   */
+  public void testUsageIsLoadedFromSnapshot() throws Exception {
+    long usage = blog.getFileUsageLedger().getUsage();
+    assertTrue(new File(blog.getRoot(), FileUsageLedger.SNAPSHOT_FILENAME).exists());
+
+    BufferedWriter writer = new BufferedWriter(new FileWriter(new File(blog.getFilesDirectory(), "a.txt")));
+    writer.write(new char[1024]);
+    writer.close();
+
+    FileUsageLedger ledger = new FileUsageLedger(blog);
+    ledger.start();
+    assertEquals(usage, ledger.getUsage());
+    assertEquals(usage + 1024, ledger.reconcile());
+    ledger.stop();
+  }
+
 }
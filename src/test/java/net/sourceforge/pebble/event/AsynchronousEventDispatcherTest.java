@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.api.event.AsynchronousListener;
+import net.sourceforge.pebble.api.event.RetryableListener;
+import net.sourceforge.pebble.api.event.blog.BlogEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.event.blogentry.BlogEntryListenerSupport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for the AsynchronousEventDispatcher class.
+ *
+ * @author Simon Brown
+ */
+public class AsynchronousEventDispatcherTest extends SingleBlogTestCase {
+
+  private AsynchronousEventDispatcher dispatcher;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    dispatcher = new AsynchronousEventDispatcher();
+    dispatcher.setEventListenerList(new EventListenerList());
+    dispatcher.setRetryDelay(1);
+
+    blogEntry = new BlogEntry(blog);
+  }
+
+  protected void tearDown() throws Exception {
+    stop();
+
+    super.tearDown();
+  }
+
+  private void stop() {
+    dispatcher.fireBlogEvent(new BlogEvent(blog, BlogEvent.BLOG_STOPPED));
+  }
+
+  /**
+   * Tests that asynchronous listeners are called on another thread, after
+   * the other listeners, and in the order the events were fired.
+   */
+  public void testAsynchronousListenersReceiveEventsInOrder() {
+    RecordingListener synchronousListener = new RecordingListener();
+    AsynchronousRecordingListener asynchronousListener = new AsynchronousRecordingListener();
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+    dispatcher.getEventListenerList().addBlogEntryListener(synchronousListener);
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_PUBLISHED));
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED));
+
+    // the synchronous listener has been called before the events were fired
+    assertEquals(3, synchronousListener.events.size());
+    assertSame(Thread.currentThread(), synchronousListener.threads.get(0));
+
+    // and stopping waits for the asynchronous listener to catch up
+    stop();
+    assertEquals(3, asynchronousListener.events.size());
+    assertEquals(BlogEntryEvent.BLOG_ENTRY_ADDED, asynchronousListener.events.get(0).getType());
+    assertEquals(BlogEntryEvent.BLOG_ENTRY_PUBLISHED, asynchronousListener.events.get(1).getType());
+    assertEquals(BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED, asynchronousListener.events.get(2).getType());
+    assertNotSame(Thread.currentThread(), asynchronousListener.threads.get(0));
+    assertEquals(3, dispatcher.getDeliveries());
+    assertEquals(0, dispatcher.getQueueDepth());
+    assertTrue(dispatcher.getMaximumQueueDepth() >= 1);
+  }
+
+  /**
+   * Tests that asynchronous listeners don't receive vetoed events.
+   */
+  public void testVetoedEventsAreNotDeliveredAsynchronously() {
+    AsynchronousRecordingListener asynchronousListener = new AsynchronousRecordingListener();
+    dispatcher.getEventListenerList().addBlogEntryListener(new BlogEntryListenerSupport() {
+      public void blogEntryAdded(BlogEntryEvent event) {
+        event.veto();
+      }
+    });
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+
+    stop();
+    assertEquals(0, asynchronousListener.events.size());
+  }
+
+  /**
+   * Tests that asynchronous listeners are given a copy of the blog entry, as
+   * it was when the event was fired.
+   */
+  public void testAsynchronousListenersReceiveASnapshotOfTheBlogEntry() {
+    AsynchronousRecordingListener asynchronousListener = new AsynchronousRecordingListener();
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+
+    blogEntry.setTitle("Before");
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+    blogEntry.setTitle("After");
+
+    stop();
+    BlogEntry snapshot = asynchronousListener.events.get(0).getBlogEntry();
+    assertNotSame(blogEntry, snapshot);
+    assertEquals(blogEntry.getId(), snapshot.getId());
+    assertEquals("Before", snapshot.getTitle());
+  }
+
+  /**
+   * Tests that a failing asynchronous listener is only called once, unless
+   * it is retryable.
+   */
+  public void testFailingListenerIsNotRetriedUnlessRetryable() {
+    AsynchronousRecordingListener asynchronousListener = new AsynchronousRecordingListener();
+    asynchronousListener.failures = 2;
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+
+    stop();
+    assertEquals(1, asynchronousListener.events.size());
+    assertEquals(0, dispatcher.getRetries());
+    assertEquals(1, dispatcher.getFailures());
+    assertEquals(0, dispatcher.getDeliveries());
+  }
+
+  /**
+   * Tests that a failing retryable listener is retried.
+   */
+  public void testFailingListenerIsRetried() {
+    RetryableRecordingListener asynchronousListener = new RetryableRecordingListener();
+    asynchronousListener.failures = 2;
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+
+    stop();
+    assertEquals(3, asynchronousListener.events.size());
+    assertEquals(2, dispatcher.getRetries());
+    assertEquals(0, dispatcher.getFailures());
+    assertEquals(1, dispatcher.getDeliveries());
+  }
+
+  /**
+   * Tests that an event is dropped once a retryable listener has failed on
+   * every attempt.
+   */
+  public void testEventIsDroppedAfterTooManyFailures() {
+    RetryableRecordingListener asynchronousListener = new RetryableRecordingListener();
+    asynchronousListener.failures = Integer.MAX_VALUE;
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+
+    stop();
+    assertEquals(AsynchronousEventDispatcher.MAXIMUM_ATTEMPTS, asynchronousListener.events.size());
+    assertEquals(1, dispatcher.getFailures());
+    assertEquals(0, dispatcher.getDeliveries());
+  }
+
+  /**
+   * Tests that events are delivered on the calling thread once the blog has
+   * been stopped.
+   */
+  public void testEventsAreDeliveredInlineWhenStopped() {
+    AsynchronousRecordingListener asynchronousListener = new AsynchronousRecordingListener();
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+    stop();
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+
+    assertEquals(1, asynchronousListener.events.size());
+    assertSame(Thread.currentThread(), asynchronousListener.threads.get(0));
+  }
+
+  /**
+   * Tests that an event fired while its lane is full waits for space rather
+   * than overtaking the events already queued, and is dropped if none
+   * becomes free in time.
+   */
+  public void testEventsAreNotDeliveredOutOfOrderWhenALaneIsFull() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    AsynchronousRecordingListener asynchronousListener = new AsynchronousRecordingListener() {
+      public void blogEntryAdded(BlogEntryEvent event) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+        super.blogEntryAdded(event);
+      }
+    };
+    dispatcher.getEventListenerList().addBlogEntryListener(asynchronousListener);
+    dispatcher.setSubmitTimeout(10);
+
+    // block the lane, and then fill its queue
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+    started.await();
+    for (int i = 0; i < AsynchronousEventDispatcher.LANE_CAPACITY; i++) {
+      dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_PUBLISHED));
+    }
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED));
+    assertEquals(1, dispatcher.getRejections());
+
+    release.countDown();
+    stop();
+    assertEquals(AsynchronousEventDispatcher.LANE_CAPACITY + 1, asynchronousListener.events.size());
+    assertEquals(BlogEntryEvent.BLOG_ENTRY_ADDED, asynchronousListener.events.get(0).getType());
+    for (Thread thread : asynchronousListener.threads) {
+      assertNotSame(Thread.currentThread(), thread);
+    }
+  }
+
+  class RecordingListener extends BlogEntryListenerSupport {
+
+    List<BlogEntryEvent> events = Collections.synchronizedList(new ArrayList<BlogEntryEvent>());
+    List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+    int failures = 0;
+
+    private void record(BlogEntryEvent event) {
+      events.add(event);
+      threads.add(Thread.currentThread());
+      if (failures > 0) {
+        failures--;
+        throw new IllegalStateException("Failing as requested");
+      }
+    }
+
+    public void blogEntryAdded(BlogEntryEvent event) {
+      record(event);
+    }
+
+    public void blogEntryPublished(BlogEntryEvent event) {
+      record(event);
+    }
+
+    public void blogEntryUnpublished(BlogEntryEvent event) {
+      record(event);
+    }
+
+  }
+
+  class AsynchronousRecordingListener extends RecordingListener implements AsynchronousListener {
+  }
+
+  class RetryableRecordingListener extends RecordingListener implements RetryableListener {
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.api.event.blog.BlogEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Date;
+
+/**
+ * Tests for the ContentCacheListener class.
+ *
+ * @author Simon Brown
+ */
+public class ContentCacheListenerTest extends SingleBlogTestCase {
+
+  private ContentCacheListener listener;
+  private ContentCache cache;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    listener = new ContentCacheListener();
+    cache = ContentCache.getInstance();
+    cache.clear();
+
+    blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(1000000));
+  }
+
+  protected void tearDown() throws Exception {
+    listener.blogStopped(new BlogEvent(blog, BlogEvent.BLOG_STOPPED));
+    cache.clear();
+
+    super.tearDown();
+  }
+
+  /**
+   * Tests that a blog entry is removed from the cache when it changes.
+   */
+  public void testBlogEntryChangedRemovesFromCache() {
+    cache.putBlogEntry(blogEntry);
+    listener.blogEntryChanged(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_CHANGED));
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+  }
+
+  /**
+   * Tests that a blog entry is removed from the cache when a comment is added.
+   */
+  public void testCommentAddedRemovesFromCache() {
+    Comment comment = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    blogEntry.addComment(comment);
+    cache.putBlogEntry(blogEntry);
+    listener.commentAdded(new CommentEvent(comment, CommentEvent.COMMENT_ADDED));
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+  }
+
+  /**
+   * Tests that blog entries changed on disk are removed from the cache.
+   */
+  public void testBlogEntryChangedOnDiskRemovesFromCache() throws Exception {
+    File directory = new File(blog.getRoot(), "1970/01/01");
+    directory.mkdirs();
+    File file = new File(directory, blogEntry.getId() + ".xml");
+    file.delete();
+
+    listener.blogStarted(new BlogEvent(blog, BlogEvent.BLOG_STARTED));
+    cache.putBlogEntry(blogEntry);
+    listener.checkForChanges();
+    assertNotNull(cache.getBlogEntry(blog, blogEntry.getId()));
+
+    FileWriter writer = new FileWriter(file);
+    writer.write("<blogEntry/>");
+    writer.close();
+    listener.checkForChanges();
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+
+    cache.putBlogEntry(blogEntry);
+    file.delete();
+    listener.checkForChanges();
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+  }
+
+}
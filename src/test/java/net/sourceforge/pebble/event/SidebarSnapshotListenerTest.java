@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.api.event.blog.BlogEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.SidebarSnapshot;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.Date;
+
+/**
+ * Tests for the SidebarSnapshotListener class.
+ *
+ * @author Simon Brown
+ */
+public class SidebarSnapshotListenerTest extends SingleBlogTestCase {
+
+  private SidebarSnapshotListener listener;
+  private BlogService service;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    listener = new SidebarSnapshotListener(blog);
+    service = new BlogService();
+  }
+
+  protected void tearDown() throws Exception {
+    listener.blogStopped(new BlogEvent(blog, BlogEvent.BLOG_STOPPED));
+
+    super.tearDown();
+  }
+
+  private BlogEntry addBlogEntry(String title, long date) throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle(title);
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(date));
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+
+    return blogEntry;
+  }
+
+  /**
+   * Tests that a snapshot is built the first time that one is requested.
+   */
+  public void testSnapshotBuiltWhenFirstRequested() throws Exception {
+    addBlogEntry("Title 1", 1000000);
+
+    SidebarSnapshot snapshot = listener.getSnapshot();
+    assertEquals(1, snapshot.getRecentBlogEntries().size());
+    assertEquals("Title 1", snapshot.getRecentBlogEntries().get(0).getTitle());
+    assertFalse(snapshot.isStale());
+  }
+
+  /**
+   * Tests that the same snapshot is returned until it has been rebuilt.
+   */
+  public void testSnapshotReusedUntilRebuilt() throws Exception {
+    addBlogEntry("Title 1", 1000000);
+    SidebarSnapshot snapshot = listener.getSnapshot();
+
+    addBlogEntry("Title 2", 2000000);
+    assertSame(snapshot, listener.getSnapshot());
+
+    listener.rebuild();
+    snapshot = listener.getSnapshot();
+    assertEquals(2, snapshot.getRecentBlogEntries().size());
+    assertEquals("Title 2", snapshot.getRecentBlogEntries().get(0).getTitle());
+  }
+
+  /**
+   * Tests that blog entry events cause the snapshot to be rebuilt
+   * in the background.
+   */
+  public void testBlogEntryAddedRebuildsSnapshot() throws Exception {
+    SidebarSnapshot snapshot = listener.getSnapshot();
+    assertEquals(0, snapshot.getRecentBlogEntries().size());
+
+    BlogEntry blogEntry = addBlogEntry("Title 1", 1000000);
+    listener.blogEntryAdded(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+
+    long timeout = System.currentTimeMillis() + 10000;
+    while (listener.getSnapshot() == snapshot && System.currentTimeMillis() < timeout) {
+      Thread.sleep(50);
+    }
+    assertEquals(1, listener.getSnapshot().getRecentBlogEntries().size());
+  }
+
+  /**
+   * Tests that the snapshot can't be modified by the pages that use it.
+   */
+  public void testSnapshotIsUnmodifiable() throws Exception {
+    addBlogEntry("Title 1", 1000000);
+    try {
+      listener.getSnapshot().getRecentBlogEntries().clear();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.response;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the CompiledRegexList class.
+ *
+ * @author Simon Brown
+ */
+public class CompiledRegexListTest extends TestCase {
+
+  public void testNullAndEmptyLists() {
+    assertEquals(0, new CompiledRegexList(null).countMatches("poker", 10));
+    assertEquals(0, new CompiledRegexList("").countMatches("poker", 10));
+    assertEquals(0, new CompiledRegexList(" , ").countMatches("poker", 10));
+    assertEquals(0, new CompiledRegexList("poker").countMatches(null, 10));
+  }
+
+  public void testLiteralsAreMatchedIgnoringCase() {
+    CompiledRegexList list = new CompiledRegexList("casinos, poker, drugs");
+    assertEquals(0, list.countMatches("Some content", 10));
+    assertEquals(1, list.countMatches("Some content about POKER", 10));
+    assertEquals(3, list.countMatches("poker, Casinos and drugs", 10));
+  }
+
+  public void testOverlappingEntriesAreCountedSeparately() {
+    // as with separate patterns, each entry counts its own matches
+    CompiledRegexList list = new CompiledRegexList("penis, penis enlargement, hold em, old");
+    assertEquals(2, list.countMatches("penis enlargement", 10));
+    assertEquals(2, list.countMatches("hold em", 10));
+    assertEquals(3, new CompiledRegexList("she, he, hers").countMatches("ushers", 10));
+  }
+
+  public void testMatchesOfOneEntryDontOverlap() {
+    assertEquals(1, new CompiledRegexList("aa").countMatches("aaa", 10));
+    assertEquals(2, new CompiledRegexList("aa").countMatches("aaaa", 10));
+    assertEquals(2, new CompiledRegexList("abab").countMatches("abababab", 10));
+  }
+
+  public void testRegularExpressionsAreMatched() {
+    CompiledRegexList list = new CompiledRegexList("poker, &\\#.*;, ca.ino");
+    assertEquals(1, list.countMatches("&#1234;", 10));
+    assertEquals(2, list.countMatches("Poker at the CASINO", 10));
+  }
+
+  public void testInvalidRegularExpressionsAreIgnored() {
+    CompiledRegexList list = new CompiledRegexList("poker, [unclosed");
+    assertEquals(1, list.countMatches("poker [unclosed", 10));
+  }
+
+  public void testCountingStopsOnceLimitIsExceeded() {
+    CompiledRegexList list = new CompiledRegexList("poker");
+    assertEquals(2, list.countMatches("poker poker poker poker", 1));
+  }
+
+}
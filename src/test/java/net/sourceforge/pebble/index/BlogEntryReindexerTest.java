@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.Date;
+
+/**
+ * Tests for the BlogEntryReindexer class.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntryReindexerTest extends SingleBlogTestCase {
+
+  private static final int NUMBER_OF_BLOG_ENTRIES = (BlogEntryReindexer.BATCH_SIZE * 2) + 5;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    BlogEntryDAO dao = DAOFactory.getConfiguredFactory().getBlogEntryDAO();
+    long time = new Date().getTime();
+    for (int i = 0; i < NUMBER_OF_BLOG_ENTRIES; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setDate(new Date(time - (i * 60 * 1000)));
+      blogEntry.setTitle("Title " + i);
+      blogEntry.setBody("Some body about reindexing");
+      blogEntry.setAuthor(i % 2 == 0 ? "sbrown" : "another");
+      blogEntry.setTags("junit");
+      blogEntry.setPublished(i % 5 != 0);
+      dao.storeBlogEntry(blogEntry);
+    }
+  }
+
+  /**
+   * Tests that all blog entries are streamed into all of the indexes.
+   */
+  public void testReindexBuildsAllIndexes() throws Exception {
+    blog.getBlogEntryIndex().clear();
+    blog.getTagIndex().clear();
+    blog.getAuthorIndex().clear();
+    blog.getSearchIndex().clear();
+
+    int count = new BlogEntryReindexer(blog, 3).reindex();
+    int published = NUMBER_OF_BLOG_ENTRIES - ((NUMBER_OF_BLOG_ENTRIES + 4) / 5);
+
+    assertEquals(NUMBER_OF_BLOG_ENTRIES, count);
+    assertEquals(NUMBER_OF_BLOG_ENTRIES, blog.getBlogEntryIndex().getNumberOfBlogEntries());
+    assertEquals(published, blog.getBlogEntryIndex().getNumberOfPublishedBlogEntries());
+    assertEquals(published, blog.getTagIndex().getTag("junit").getNumberOfBlogEntries());
+    assertEquals(published, blog.getAuthorIndex().getRecentBlogEntries("sbrown").size()
+        + blog.getAuthorIndex().getRecentBlogEntries("another").size());
+    assertEquals(published, blog.getSearchIndex().search("reindexing").getNumberOfHits());
+  }
+
+  /**
+   * Tests that the blog entry index is kept in reverse order, even though
+   * blog entries are loaded concurrently.
+   */
+  public void testReindexKeepsBlogEntriesInOrder() throws Exception {
+    blog.getBlogEntryIndex().clear();
+
+    new BlogEntryReindexer(blog, 4).reindex();
+
+    String previous = null;
+    for (String blogEntryId : blog.getBlogEntryIndex().getBlogEntries()) {
+      if (previous != null) {
+        assertTrue(Long.parseLong(previous) > Long.parseLong(blogEntryId));
+      }
+      previous = blogEntryId;
+    }
+  }
+
+  /**
+   * Tests that progress and throughput are reported to the blog.
+   */
+  public void testReindexReportsToMessageLog() throws Exception {
+    blog.clearMessages();
+
+    new BlogEntryReindexer(blog, 2).reindex();
+
+    assertTrue(blog.getMessages().get(0).getText().startsWith("Blog entries reindexed - " + NUMBER_OF_BLOG_ENTRIES + " entries"));
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the IndexJournal class, and for the indexes that use it.
+ *
+ * @author    Simon Brown
+ */
+public class IndexJournalTest extends SingleBlogTestCase {
+
+  private File file;
+  private IndexJournal journal;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    file = new File(blog.getIndexesDirectory(), "test.journal");
+    journal = new IndexJournal(file, new Runnable() {
+      public void run() {
+      }
+    });
+  }
+
+  /**
+   * Tests that appended changes can be read back.
+   */
+  public void testAppendAndRead() {
+    journal.append("A", "123", "some tag");
+    journal.append("R", "456");
+
+    List<String[]> changes = new IndexJournal(file, null).read();
+    assertEquals(2, changes.size());
+    assertTrue(Arrays.equals(new String[] {"A", "123", "some tag"}, changes.get(0)));
+    assertTrue(Arrays.equals(new String[] {"R", "456"}, changes.get(1)));
+  }
+
+  /**
+   * Tests that a partially written last change is ignored.
+   */
+  public void testPartialChangeIsIgnored() throws Exception {
+    journal.append("A", "123");
+    journal.clear();
+
+    FileWriter writer = new FileWriter(file);
+    writer.write("A\t123\nA\t45");
+    writer.close();
+
+    List<String[]> changes = journal.read();
+    assertEquals(1, changes.size());
+    assertEquals("123", changes.get(0)[1]);
+  }
+
+  /**
+   * Tests that clearing the journal removes the file.
+   */
+  public void testClear() {
+    journal.append("A", "123");
+    assertTrue(file.exists());
+    assertEquals(1, journal.getNumberOfChanges());
+
+    journal.clear();
+    assertFalse(file.exists());
+    assertEquals(0, journal.getNumberOfChanges());
+  }
+
+  /**
+   * Tests that an index file can be replaced, leaving no temporary file.
+   */
+  public void testReplace() throws Exception {
+    File indexFile = new File(blog.getIndexesDirectory(), "test.index");
+    IndexJournal.replace(indexFile, Arrays.asList("1", "2"));
+    IndexJournal.replace(indexFile, Arrays.asList("3"));
+
+    BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+    assertEquals("3", reader.readLine());
+    assertNull(reader.readLine());
+    reader.close();
+    assertFalse(new File(blog.getIndexesDirectory(), "test.index.tmp").exists());
+  }
+
+  /**
+   * Tests that changes made since the index files were written are
+   * recovered from the journal when the index is loaded again.
+   */
+  public void testIndexIsRecoveredFromJournal() {
+    BlogEntry blogEntry1 = new BlogEntry(blog);
+    blogEntry1.setPublished(true);
+    BlogEntry blogEntry2 = new BlogEntry(blog);
+    blogEntry2.setDate(new Date(blogEntry1.getDate().getTime() + 1000));
+    blogEntry2.setPublished(true);
+
+    BlogEntryIndex index = new BlogEntryIndex(blog);
+    index.clear();
+    index.index(blogEntry1);
+    index.index(blogEntry2);
+    index.unindex(blogEntry1);
+
+    index = new BlogEntryIndex(blog);
+    assertEquals(1, index.getNumberOfPublishedBlogEntries());
+    assertEquals(blogEntry2.getId(), index.getPublishedBlogEntries().get(0));
+
+    // and replaying again after the files have been written is harmless
+    index.flush();
+    index = new BlogEntryIndex(blog);
+    assertEquals(1, index.getNumberOfBlogEntries());
+  }
+
+}
@@ -32,8 +32,11 @@
 package net.sourceforge.pebble.index;
 
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
 
+import java.util.Date;
+
 /**
  * Tests for the SearchResults class.
  *
@@ -62,6 +65,7 @@ public class SearchIndexTest extends SingleBlogTestCase {
        blogEntry.setTitle("Some JSP topic");
        blogEntry.setPublished(true);
        index.index(blogEntry);
+       index.commit();
 
        results = index.search("jsp");
        assertEquals(1, results.getNumberOfHits());
@@ -83,6 +87,7 @@ public class SearchIndexTest extends SingleBlogTestCase {
        blogEntry.setBody("Some JSP topic");
        blogEntry.setPublished(true);
        index.index(blogEntry);
+       index.commit();
 
        results = index.search("jsp");
        assertEquals(1, results.getNumberOfHits());
@@ -107,6 +112,7 @@ public class SearchIndexTest extends SingleBlogTestCase {
        blogEntry.addCategory(blog.getCategory("/category1"));
        blogEntry.setPublished(true);
        index.index(blogEntry);
+       index.commit();
 
        results = index.search("category:/category1");
        assertEquals(1, results.getNumberOfHits());
@@ -114,6 +120,7 @@ public class SearchIndexTest extends SingleBlogTestCase {
        // and add another category
        blogEntry.addCategory(blog.getCategory("/category2"));
        index.index(blogEntry);
+       index.commit();
 
        results = index.search("category:/category1");
        assertEquals(1, results.getNumberOfHits());
@@ -137,6 +144,7 @@ public class SearchIndexTest extends SingleBlogTestCase {
        blogEntry.addCategory(blog.getCategory("/category1"));
        blogEntry.setPublished(true);
        index.index(blogEntry);
+       index.commit();
 
        // should be no hits returned yet
        results = index.search("swing");
@@ -146,12 +154,14 @@ public class SearchIndexTest extends SingleBlogTestCase {
      Comment comment = blogEntry.createComment("Comment title", "Comment body", "Some author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1");
        blogEntry.addComment(comment);
        index.index(blogEntry);
+       index.commit();
        results = index.search("swing");
        assertEquals(0, results.getNumberOfHits());
 
        comment = blogEntry.createComment("Comment title", "Comment body with Swing in it", "Some author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1");
        blogEntry.addComment(comment);
        index.index(blogEntry);
+       index.commit();
        results = index.search("swing");
        assertEquals(1, results.getNumberOfHits());
      } catch (Exception e) {
@@ -169,6 +179,7 @@ public class SearchIndexTest extends SingleBlogTestCase {
        blogEntry.setTitle("Some JSP topic");
        blogEntry.setPublished(true);
        index.index(blogEntry);
+       index.commit();
 
        SearchResults results = index.search("jsp");
        assertEquals(1, results.getNumberOfHits());
@@ -176,6 +187,7 @@ public class SearchIndexTest extends SingleBlogTestCase {
        // and now remove the blog entry, checking that the search no longer
        // returns that hit
        index.unindex(blogEntry);
+       index.commit();
        results = index.search("jsp");
        assertEquals(0, results.getNumberOfHits());
      } catch (Exception e) {
@@ -184,4 +196,79 @@ public class SearchIndexTest extends SingleBlogTestCase {
      }
    }
 
+   /**
+    * Tests that updates are queued until they are committed, rather than
+    * being written to the index straight away.
+    */
+   public void testUpdatesAreQueuedUntilCommitted() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Some JSP topic");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     // searching doesn't commit queued updates, on this or another instance
+     SearchIndex other = new SearchIndex(blog);
+     assertEquals(0, index.search("jsp").getNumberOfHits());
+     assertEquals(0, other.search("jsp").getNumberOfHits());
+
+     index.commit();
+     assertEquals(1, index.search("jsp").getNumberOfHits());
+     assertEquals(1, other.search("jsp").getNumberOfHits());
+   }
+
+   /**
+    * Tests that closing the index commits any queued updates.
+    */
+   public void testCloseCommitsQueuedUpdates() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Some JSP topic");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+     index.close();
+
+     assertEquals(1, new SearchIndex(blog).search("jsp").getNumberOfHits());
+   }
+
+   /**
+    * Tests that a single page of hits can be requested.
+    */
+   public void testSearchForPage() throws Exception {
+     long time = System.currentTimeMillis();
+     for (int i = 0; i < 5; i++) {
+       BlogEntry blogEntry = new BlogEntry(blog);
+       blogEntry.setDate(new Date(time - (i * 1000)));
+       blogEntry.setTitle("Some JSP topic " + i);
+       blogEntry.setPublished(true);
+       index.index(blogEntry);
+     }
+     index.commit();
+
+     SearchResults results = index.search("jsp", true, 2, 2);
+     assertEquals(5, results.getNumberOfHits());
+     assertEquals(2, results.getHits().size());
+     SearchHit hit = (SearchHit)results.getHits().get(0);
+     assertEquals(3, hit.getNumber());
+     assertEquals("" + (time - 2000), hit.getId());
+
+     // the last page is partial, and a page past the end is empty
+     assertEquals(1, index.search("jsp", true, 4, 2).getHits().size());
+     assertEquals(0, index.search("jsp", true, 6, 2).getHits().size());
+   }
+
+   /**
+    * Tests that cached hits aren't returned once the index has changed.
+    */
+   public void testSearchSeesChangesAfterCaching() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Some JSP topic");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+     index.commit();
+     assertEquals(1, index.search("jsp", false, 0, 10).getNumberOfHits());
+
+     index.unindex(blogEntry);
+     index.commit();
+     assertEquals(0, index.search("jsp", false, 0, 10).getNumberOfHits());
+   }
+
 }
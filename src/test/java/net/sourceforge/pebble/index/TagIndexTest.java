@@ -33,6 +33,9 @@ package net.sourceforge.pebble.index;
 
 import net.sourceforge.pebble.domain.*;
 
+import java.util.Date;
+import java.util.List;
+
 /**
  * Tests for the TagIndex class.
  *
@@ -77,6 +80,41 @@ public class TagIndexTest extends SingleBlogTestCase {
     assertEquals(0, index.getTags().size());
   }
 
+  /**
+   * Tests that related blog entries are ranked by the tags they share, and
+   * that the cached result is dropped when the tagging changes.
+   */
+  public void testRelatedBlogEntries() throws Exception {
+    BlogEntry blogEntry1 = new BlogEntry(blog);
+    blogEntry1.setDate(new Date(1));
+    blogEntry1.setTags("java, junit");
+    blogEntry1.setPublished(true);
+    index.index(blogEntry1);
+
+    BlogEntry blogEntry2 = new BlogEntry(blog);
+    blogEntry2.setDate(new Date(2));
+    blogEntry2.setTags("java");
+    blogEntry2.setPublished(true);
+    index.index(blogEntry2);
+
+    BlogEntry blogEntry3 = new BlogEntry(blog);
+    blogEntry3.setDate(new Date(3));
+    blogEntry3.setTags("java, junit");
+    blogEntry3.setPublished(true);
+    index.index(blogEntry3);
+
+    List<String> related = index.getRelatedBlogEntries(blogEntry3, 5);
+    assertEquals(2, related.size());
+    assertEquals(blogEntry1.getId(), related.get(0));
+    assertEquals(blogEntry2.getId(), related.get(1));
+    assertEquals(1, index.getRelatedBlogEntries(blogEntry3, 1).size());
+
+    index.unindex(blogEntry1);
+    related = index.getRelatedBlogEntries(blogEntry3, 5);
+    assertEquals(1, related.size());
+    assertEquals(blogEntry2.getId(), related.get(0));
+  }
+
 //  /**
 //   * Tests that category/tag statistics are updated.
 //   */
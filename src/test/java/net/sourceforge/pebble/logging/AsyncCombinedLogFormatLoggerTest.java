@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+
+import java.util.Calendar;
+
+/**
+ * Tests for the AsyncCombinedLogFormatLogger class.
+ *
+ * @author Simon Brown
+ */
+public class AsyncCombinedLogFormatLoggerTest extends SingleBlogTestCase {
+
+  private AsyncCombinedLogFormatLogger logger;
+  private MockHttpServletRequest request;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    this.logger = new AsyncCombinedLogFormatLogger(blog);
+    this.request = new MockHttpServletRequest();
+    request.setAttribute(Constants.EXTERNAL_URI, "/index.html");
+  }
+
+  protected void tearDown() throws Exception {
+    logger.stop();
+
+    super.tearDown();
+  }
+
+  public void testEntriesWrittenWhenStopped() {
+    logger.start();
+    for (int i = 0; i < 10; i++) {
+      logger.log(request, 200);
+    }
+    logger.stop();
+
+    assertEquals(10, logger.getNumberOfEntriesWritten());
+    assertEquals(0, logger.getNumberOfEntriesDropped());
+
+    Calendar cal = blog.getCalendar();
+    Log log = logger.getLog(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
+    assertEquals(10, log.getLogEntries().size());
+  }
+
+  public void testEntriesDroppedWhenBufferFull() {
+    logger.configure(2, AsyncCombinedLogFormatLogger.DROP_POLICY);
+    for (int i = 0; i < 5; i++) {
+      logger.log(request, 200);
+    }
+
+    assertEquals(3, logger.getNumberOfEntriesDropped());
+    logger.stop();
+    assertEquals(2, logger.getNumberOfEntriesWritten());
+  }
+
+  public void testEntriesLoggedAfterStopAreCountedAsDropped() {
+    blog.getPluginProperties().setProperty(AsyncCombinedLogFormatLogger.BUFFER_SIZE_KEY, "2");
+    blog.getPluginProperties().setProperty(AsyncCombinedLogFormatLogger.OVERFLOW_POLICY_KEY, AsyncCombinedLogFormatLogger.BLOCK_POLICY);
+    logger.start();
+    logger.log(request, 200);
+    logger.stop();
+
+    logger.log(request, 200);
+    logger.log(request, 200);
+    logger.log(request, 200);
+
+    assertEquals(1, logger.getNumberOfEntriesWritten());
+    assertEquals(3, logger.getNumberOfEntriesDropped());
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Calendar;
+
+/**
+ * Tests for the LogStatisticsStore class.
+ *
+ * @author Simon Brown
+ */
+public class LogStatisticsStoreTest extends SingleBlogTestCase {
+
+  private CombinedFormatLogEntryFormat format;
+  private Calendar cal;
+  private File logFile;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    format = new CombinedFormatLogEntryFormat(blog);
+    cal = blog.getCalendar();
+    cal.set(2011, Calendar.MARCH, 14, 12, 0, 0);
+    new File(blog.getLogsDirectory()).mkdirs();
+    logFile = new File(blog.getLogsDirectory(), "blog-20110314.log");
+  }
+
+  public void testStatisticsAreBuiltFromTheLog() throws Exception {
+    log(null, 4);
+
+    LogStatisticsStore store = new LogStatisticsStore(blog);
+    assertEquals(4, store.getLogStatistics(2011, 3, 14).getTotalRequests());
+  }
+
+  public void testEntriesAddedWhileLoadingAreCountedOnce() throws Exception {
+    log(null, 2);
+
+    LogStatisticsStore store = new LogStatisticsStore(blog);
+    log(store, 3);
+    assertEquals(5, store.getLogStatistics(2011, 3, 14).getTotalRequests());
+  }
+
+  /**
+   * Tests that entries written to the log after the statistics were last
+   * saved (e.g. before a crash) are picked up when they are next loaded.
+   */
+  public void testEntriesLoggedAfterTheLastSaveAreRecovered() throws Exception {
+    LogStatisticsStore store = new LogStatisticsStore(blog);
+    log(store, 3);
+    store.save();
+
+    // these never make it into the saved statistics
+    log(null, 2);
+
+    store = new LogStatisticsStore(blog);
+    assertEquals(5, store.getLogStatistics(2011, 3, 14).getTotalRequests());
+
+    // and once the recovered statistics are saved, they aren't counted twice
+    store.save();
+    store = new LogStatisticsStore(blog);
+    assertEquals(5, store.getLogStatistics(2011, 3, 14).getTotalRequests());
+  }
+
+  private void log(LogStatisticsStore store, int numberOfEntries) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true));
+    try {
+      for (int i = 0; i < numberOfEntries; i++) {
+        LogEntry entry = new LogEntry();
+        entry.setHost("127.0.0.1");
+        entry.setDate(cal.getTime());
+        entry.setRequest("GET /index.html HTTP/1.1");
+        entry.setStatusCode(200);
+        entry.setAgent("Mozilla/5.0");
+        String line = format.format(entry);
+        if (store != null) {
+          store.add(entry, line);
+        }
+        writer.write(line);
+        writer.newLine();
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+}
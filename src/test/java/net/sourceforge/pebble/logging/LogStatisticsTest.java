@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Calendar;
+
+/**
+ * Tests for the LogStatistics class.
+ *
+ * @author Simon Brown
+ */
+public class LogStatisticsTest extends SingleBlogTestCase {
+
+  private LogStatistics statistics;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    statistics = new LogStatistics(blog);
+    statistics.add(createLogEntry("127.0.0.1", 9, "GET /rss.xml", null, "Mozilla/5.0"));
+    statistics.add(createLogEntry("127.0.0.1", 10, "GET /", "http://www.google.com", "Mozilla/5.0"));
+    statistics.add(createLogEntry("127.0.0.2", 10, "GET /", null, null));
+  }
+
+  private LogEntry createLogEntry(String host, int hour, String request, String referer, String agent) {
+    Calendar cal = blog.getCalendar();
+    cal.set(Calendar.HOUR_OF_DAY, hour);
+    LogEntry logEntry = new LogEntry();
+    logEntry.setHost(host);
+    logEntry.setDate(cal.getTime());
+    logEntry.setRequest(request);
+    logEntry.setReferer(referer);
+    logEntry.setAgent(agent);
+
+    return logEntry;
+  }
+
+  public void testCounts() {
+    assertEquals(3, statistics.getTotalRequests());
+    assertEquals(1, statistics.getRequestsPerHour()[9]);
+    assertEquals(2, statistics.getRequestsPerHour()[10]);
+    assertEquals(2, statistics.getUniqueIpsPerHour()[10]);
+    assertEquals(2, statistics.getHosts().size());
+    assertEquals(1, statistics.getNewsFeedRequests("127.0.0.1"));
+    assertEquals(1, statistics.getPageViews("127.0.0.1"));
+    assertEquals(2, statistics.getReferers().size());
+    assertEquals(2, statistics.getRequests().size());
+    assertEquals(new Integer(2), statistics.getUserAgents().get("Mozilla/5.0"));
+    assertEquals(new Integer(1), statistics.getUserAgents().get(""));
+  }
+
+  public void testWriteAndRead() throws Exception {
+    StringWriter writer = new StringWriter();
+    statistics.write(writer);
+
+    LogStatistics read = new LogStatistics(blog);
+    read.read(new StringReader(writer.toString()));
+    assertEquals(3, read.getTotalRequests());
+    assertEquals(2, read.getUniqueIpsPerHour()[10]);
+    assertEquals(1, read.getNewsFeedRequests("127.0.0.1"));
+    assertEquals(new Integer(1), read.getUserAgents().get(""));
+    for (Referer referer : read.getReferers()) {
+      if (referer.getUrl() == null) {
+        assertEquals(2, referer.getCount());
+      } else {
+        assertEquals(1, referer.getCount());
+      }
+    }
+  }
+
+  public void testMerge() {
+    LogStatistics merged = new LogStatistics(blog);
+    merged.add(statistics);
+    merged.add(statistics);
+    assertEquals(6, merged.getTotalRequests());
+    assertEquals(2, merged.getHosts().size());
+    assertEquals(2, merged.getUniqueIpsPerHour()[10]);
+    assertEquals(4, merged.getPageViews("127.0.0.2") + merged.getPageViews("127.0.0.1"));
+  }
+
+}
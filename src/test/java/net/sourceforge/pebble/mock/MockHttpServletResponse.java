@@ -58,6 +58,7 @@ public class MockHttpServletResponse implements HttpServletResponse {
   private Properties headers = new Properties();
 
   private PrintWriter writer = new PrintWriter(new StringWriter());
+  private ServletOutputStream outputStream;
   private String sendRedirect;
 
   public void addCookie(Cookie cookie) {
@@ -143,7 +144,11 @@ public class MockHttpServletResponse implements HttpServletResponse {
   }
 
   public ServletOutputStream getOutputStream() throws IOException {
-    return null;
+    return this.outputStream;
+  }
+
+  public void setOutputStream(ServletOutputStream outputStream) {
+    this.outputStream = outputStream;
   }
 
   public PrintWriter getWriter() throws IOException {
@@ -156,6 +161,7 @@ public class MockHttpServletResponse implements HttpServletResponse {
   }
 
   public void setContentLength(int i) {
+    setHeader("Content-Length", "" + i);
   }
 
   public void setContentType(String s) {
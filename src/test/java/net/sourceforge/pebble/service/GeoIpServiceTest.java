@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the GeoIpService class.
+ *
+ * @author Simon Brown
+ */
+public class GeoIpServiceTest {
+
+  private GeoIpService service;
+
+  @Before
+  public void setUp() {
+    service = new GeoIpService();
+    service.start();
+  }
+
+  @Test
+  public void countriesAreResolved() throws Exception {
+    Map<String,String> countries = service.getCountries(Arrays.asList("8.8.8.8", "81.2.69.160", "127.0.0.1"));
+
+    assertEquals(3, countries.size());
+    assertEquals("United States", countries.get("8.8.8.8"));
+    assertEquals("United Kingdom", countries.get("81.2.69.160"));
+    assertEquals("N/A", countries.get("127.0.0.1"));
+  }
+
+  @Test
+  public void repeatedLookupsAreCached() throws Exception {
+    service.getCountries(Arrays.asList("8.8.8.8", "81.2.69.160"));
+    assertEquals(0, service.getHits());
+    assertEquals(2, service.getMisses());
+
+    assertEquals("United States", service.getCountry("8.8.8.8"));
+    assertEquals(1, service.getHits());
+    assertEquals(2, service.getMisses());
+  }
+
+  @Test
+  public void cacheIsBounded() throws Exception {
+    service.setCacheSize(2);
+    service.getCountries(Arrays.asList("8.8.8.8", "81.2.69.160", "127.0.0.1"));
+
+    assertEquals(2, service.getNumberOfCachedHosts());
+  }
+
+  @Test
+  public void missingDatabaseIsReportedOnLookup() throws Exception {
+    service.stop();
+    service.setDatabase("/no-such-geo-ip.dat");
+    service.start();
+
+    try {
+      service.getCountry("8.8.8.8");
+      fail();
+    } catch (IOException ioe) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.service;
+
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the Rfc7232LastModifiedService class.
+ *
+ * @author Simon Brown
+ */
+public class Rfc7232LastModifiedServiceTest {
+
+  private static final Date LAST_MODIFIED = new Date(10000000);
+  private static final String ETAG = "\"abc123\"";
+
+  private Rfc7232LastModifiedService service;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+
+  @Before
+  public void setUp() {
+    service = new Rfc7232LastModifiedService();
+    request = new MockHttpServletRequest();
+    response = new MockHttpServletResponse();
+  }
+
+  @Test
+  public void testResponseHeaders() {
+    assertFalse(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+    assertEquals(ETAG, response.getHeader("ETag"));
+    assertNotNull(response.getHeader("Last-Modified"));
+    assertEquals("public, max-age=300, stale-while-revalidate=600", response.getHeader("Cache-Control"));
+  }
+
+  @Test
+  public void testWeakETagDerivedFromDate() {
+    service.checkAndProcessLastModified(request, response, LAST_MODIFIED, null, RouteType.FEED);
+    assertEquals("W/\"" + Long.toHexString(10000) + "\"", response.getHeader("ETag"));
+  }
+
+  @Test
+  public void testIfModifiedSinceComparedAsDate() {
+    // same second
+    request.setHeader("If-Modified-Since", "" + (LAST_MODIFIED.getTime() + 500));
+    assertTrue(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+
+    // later
+    request.setHeader("If-Modified-Since", "" + (LAST_MODIFIED.getTime() + 60000));
+    assertTrue(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+
+    // earlier
+    request.setHeader("If-Modified-Since", "" + (LAST_MODIFIED.getTime() - 1000));
+    assertFalse(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+  }
+
+  @Test
+  public void testIfModifiedSinceInTheFutureIsIgnored() {
+    request.setHeader("If-Modified-Since", "" + (System.currentTimeMillis() + 1000 * 60 * 60));
+    assertFalse(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+  }
+
+  @Test
+  public void testIfNoneMatchList() {
+    request.setHeader("If-None-Match", "\"xyz\", \"abc123\"");
+    assertTrue(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+
+    request.setHeader("If-None-Match", "\"xyz\",\"abc\"");
+    assertFalse(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+  }
+
+  @Test
+  public void testIfNoneMatchUsesWeakComparison() {
+    request.setHeader("If-None-Match", "W/\"abc123\"");
+    assertTrue(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+  }
+
+  @Test
+  public void testIfNoneMatchStar() {
+    request.setHeader("If-None-Match", "*");
+    assertTrue(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+  }
+
+  @Test
+  public void testIfNoneMatchTakesPrecedenceOverIfModifiedSince() {
+    request.setHeader("If-None-Match", "\"xyz\"");
+    request.setHeader("If-Modified-Since", "" + LAST_MODIFIED.getTime());
+    assertFalse(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FEED));
+  }
+
+  @Test
+  public void testPolicyIsConfigurablePerRouteType() {
+    service.setFilePolicy(new CacheControlPolicy(60, 0));
+    service.checkAndProcessLastModified(request, response, LAST_MODIFIED, ETAG, RouteType.FILE);
+    assertEquals("public, max-age=60", response.getHeader("Cache-Control"));
+  }
+
+  @Test
+  public void testExpires() {
+    assertFalse(service.checkAndProcessLastModified(request, response, LAST_MODIFIED, new Date(999999999)));
+    assertNotNull(response.getHeader("Expires"));
+  }
+
+}
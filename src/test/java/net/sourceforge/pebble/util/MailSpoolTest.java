@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.OutputStream;
+
+/**
+ * Tests for the MailSpool class, sending e-mail to an in-process SMTP server.
+ *
+ * @author Simon Brown
+ */
+public class MailSpoolTest extends SingleBlogTestCase {
+
+  private SmtpStub smtp;
+  private Session session;
+  private File directory;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    smtp = new SmtpStub();
+    session = smtp.createSession();
+    directory = new File(blog.getMailSpoolDirectory());
+    directory.mkdirs();
+  }
+
+  protected void tearDown() throws Exception {
+    smtp.close();
+
+    super.tearDown();
+  }
+
+  /**
+   * Tests that queued messages are sent, and removed from the spool.
+   */
+  public void testMessagesAreSentAndRemovedFromSpool() throws Exception {
+    MailSpool spool = new MailSpool(directory, 100, 2);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(spool.enqueue(session, createMessage("reader" + i + "@example.com")));
+    }
+
+    waitUntilEmpty(spool);
+    assertEquals(5, spool.getSent());
+    assertEquals(5, smtp.getMessages().size());
+    assertEquals(0, getSpooledFiles().length);
+  }
+
+  /**
+   * Tests that messages left in the spool are recovered, and that a batch
+   * of messages is sent over a single connection.
+   */
+  public void testSpooledMessagesAreRecoveredAndSentOverOneConnection() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      OutputStream out = new FileOutputStream(new File(directory, "1-" + i + ".eml"));
+      createMessage("reader" + i + "@example.com").writeTo(out);
+      out.close();
+    }
+
+    MailSpool spool = new MailSpool(directory, 100, 1);
+    spool.recover(session);
+
+    waitUntilEmpty(spool);
+    assertEquals(10, spool.getSent());
+    assertEquals(10, smtp.getMessages().size());
+    assertEquals(1, smtp.getConnections());
+    assertEquals(1, spool.getConnections());
+    assertEquals(0, getSpooledFiles().length);
+  }
+
+  /**
+   * Tests that messages are retried when the server is unavailable.
+   */
+  public void testMessagesAreRetriedWhenServerUnavailable() throws Exception {
+    smtp.setAvailable(false);
+    MailSpool spool = new MailSpool(directory, 100, 1);
+    spool.setRetryDelay(50);
+    spool.enqueue(session, createMessage("reader@example.com"));
+
+    long timeout = System.currentTimeMillis() + 10000;
+    while (spool.getRetries() == 0 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertTrue(spool.getRetries() > 0);
+    assertEquals(1, getSpooledFiles().length);
+
+    smtp.setAvailable(true);
+    waitUntilEmpty(spool);
+    assertEquals(1, spool.getSent());
+    assertEquals(0, spool.getFailures());
+    assertEquals(0, getSpooledFiles().length);
+  }
+
+  /**
+   * Tests that messages refused by the server aren't retried.
+   */
+  public void testRejectedRecipientsAreNotRetried() throws Exception {
+    smtp.reject("nobody@example.com");
+    MailSpool spool = new MailSpool(directory, 100, 1);
+    spool.setRetryDelay(10);
+    spool.enqueue(session, createMessage("nobody@example.com"));
+
+    waitUntilEmpty(spool);
+    assertEquals(0, spool.getSent());
+    assertEquals(1, spool.getFailures());
+    assertEquals(0, spool.getRetries());
+    assertEquals(0, getSpooledFiles().length);
+  }
+
+  /**
+   * Tests that messages are turned away once the spool is full.
+   */
+  public void testFullSpoolRejectsMessages() throws Exception {
+    smtp.setAvailable(false);
+    MailSpool spool = new MailSpool(directory, 1, 1);
+    spool.setRetryDelay(60 * 1000);
+
+    assertTrue(spool.enqueue(session, createMessage("reader1@example.com")));
+    assertFalse(spool.enqueue(session, createMessage("reader2@example.com")));
+    assertEquals(1, spool.getRejections());
+    assertEquals(1, spool.getQueueSize());
+  }
+
+  private MimeMessage createMessage(String to) throws Exception {
+    MimeMessage message = new MimeMessage(session);
+    message.setFrom(new InternetAddress("blog@example.com"));
+    message.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+    message.setSubject("A blog entry");
+    message.setText("Some text");
+    return message;
+  }
+
+  private File[] getSpooledFiles() {
+    return directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".eml");
+      }
+    });
+  }
+
+  private void waitUntilEmpty(MailSpool spool) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 10000;
+    while (spool.getQueueSize() > 0 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, spool.getQueueSize());
+  }
+
+}
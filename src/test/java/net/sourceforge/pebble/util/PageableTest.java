@@ -187,4 +187,15 @@ public class PageableTest extends TestCase {
     assertEquals(13, pageable.getMaxPageRange());
   }
 
+  public void testSinglePageOfLargerList() {
+    List page = list.subList(10, 20);
+    pageable = new Pageable(page, 95, 10, 2);
+
+    assertEquals(2, pageable.getPage());
+    assertEquals(10, pageable.getMaxPages());
+    assertEquals(1, pageable.getPreviousPage());
+    assertEquals(3, pageable.getNextPage());
+    assertEquals(page, pageable.getListForPage());
+  }
+
 }
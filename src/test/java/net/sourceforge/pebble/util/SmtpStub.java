@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import javax.mail.Session;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal, in-process SMTP server for testing e-mail delivery.
+ *
+ * @author Simon Brown
+ */
+public class SmtpStub implements Runnable {
+
+  private final ServerSocket serverSocket;
+  private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+  private final Set<String> rejectedRecipients = Collections.synchronizedSet(new HashSet<String>());
+  private final AtomicInteger connections = new AtomicInteger();
+  private volatile boolean available = true;
+
+  public SmtpStub() throws IOException {
+    serverSocket = new ServerSocket(0);
+    Thread thread = new Thread(this, "SMTP stub");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Creates a JavaMail session that sends e-mail to this server.
+   *
+   * @return  a Session instance
+   */
+  public Session createSession() {
+    Properties props = new Properties();
+    props.put("mail.smtp.host", "localhost");
+    props.put("mail.smtp.port", "" + serverSocket.getLocalPort());
+    return Session.getInstance(props, null);
+  }
+
+  public List<String> getMessages() {
+    return messages;
+  }
+
+  public int getConnections() {
+    return connections.get();
+  }
+
+  public void setAvailable(boolean available) {
+    this.available = available;
+  }
+
+  public void reject(String recipient) {
+    rejectedRecipients.add(recipient);
+  }
+
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+
+  public void run() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket socket = serverSocket.accept();
+        connections.incrementAndGet();
+        Thread thread = new Thread(new Runnable() {
+          public void run() {
+            try {
+              handle(socket);
+            } catch (IOException ioe) {
+              // the client has gone away
+            } finally {
+              try {
+                socket.close();
+              } catch (IOException ioe) {
+                // do nothing
+              }
+            }
+          }
+        }, "SMTP stub connection");
+        thread.setDaemon(true);
+        thread.start();
+      } catch (IOException ioe) {
+        // the server socket has been closed
+      }
+    }
+  }
+
+  private void handle(Socket socket) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+    Writer out = new OutputStreamWriter(socket.getOutputStream(), "ISO-8859-1");
+    if (!available) {
+      reply(out, "421 Service not available");
+      return;
+    }
+
+    reply(out, "220 localhost SMTP stub");
+    String line;
+    while ((line = in.readLine()) != null) {
+      String command = line.toUpperCase();
+      if (command.startsWith("HELO") || command.startsWith("EHLO")) {
+        reply(out, "250 localhost");
+      } else if (command.startsWith("RCPT")) {
+        String recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+        reply(out, rejectedRecipients.contains(recipient) ? "550 No such user" : "250 OK");
+      } else if (command.startsWith("DATA")) {
+        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+        StringBuffer message = new StringBuffer();
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+          message.append(line);
+          message.append("\n");
+        }
+        messages.add(message.toString());
+        reply(out, "250 OK");
+      } else if (command.startsWith("QUIT")) {
+        reply(out, "221 Bye");
+        return;
+      } else if (command.startsWith("MAIL") || command.startsWith("RSET") || command.startsWith("NOOP")) {
+        reply(out, "250 OK");
+      } else {
+        reply(out, "500 Command not recognised");
+      }
+    }
+  }
+
+  private void reply(Writer out, String reply) throws IOException {
+    out.write(reply + "\r\n");
+    out.flush();
+  }
+
+}
@@ -31,11 +31,17 @@
  */
 package net.sourceforge.pebble.web.action;
 
+import net.sourceforge.pebble.domain.FileManager;
 import net.sourceforge.pebble.domain.FileMetaData;
+import net.sourceforge.pebble.service.Rfc7232LastModifiedService;
+import net.sourceforge.pebble.web.view.FileView;
 import net.sourceforge.pebble.web.view.ForwardView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 
 import javax.servlet.ServletException;
+import java.io.File;
+import java.io.FileWriter;
 
 /**
  * Tests for the FileAction class.
@@ -46,6 +52,7 @@ public class FileActionTest extends SingleBlogActionTestCase {
 
   protected void setUp() throws Exception {
     action = new FileAction();
+    ((FileAction)action).setLastModifiedService(new Rfc7232LastModifiedService());
 
     super.setUp();
   }
@@ -83,4 +90,34 @@ public class FileActionTest extends SingleBlogActionTestCase {
     }
   }
 
+  /**
+   * Tests that the entity tag of a file is derived from its size and last
+   * modified date, and that a matching If-None-Match gets a not modified.
+   */
+  public void testNotModifiedFromSizeAndLastModified() throws Exception {
+    File file = new FileManager(blog, FileMetaData.BLOG_FILE).getFile("/test.txt");
+    file.getParentFile().mkdirs();
+    FileWriter writer = new FileWriter(file);
+    writer.write("Some content");
+    writer.close();
+
+    request.setParameter("name", "/test.txt");
+    request.setParameter("type", FileMetaData.BLOG_FILE);
+    View view = action.process(request, response);
+    assertTrue(view instanceof FileView);
+    String eTag = FileView.getETag(file.length(), file.lastModified());
+    assertEquals(eTag, response.getHeader("ETag"));
+
+    request.setHeader("If-None-Match", eTag);
+    view = action.process(request, response);
+    assertTrue(view instanceof NotModifiedView);
+
+    // a different size means a different entity tag
+    writer = new FileWriter(file, true);
+    writer.write(", and some more");
+    writer.close();
+    view = action.process(request, response);
+    assertTrue(view instanceof FileView);
+  }
+
 }
@@ -31,10 +31,26 @@
  */
 package net.sourceforge.pebble.web.action;
 
+import net.sourceforge.pebble.CachedFeed;
+import net.sourceforge.pebble.FeedCache;
+import net.sourceforge.pebble.decorator.ThumbnailDecorator;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
 import net.sourceforge.pebble.service.LastModifiedService;
+import net.sourceforge.pebble.service.RouteType;
 import net.sourceforge.pebble.web.view.NotModifiedView;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.CachedFeedView;
 import net.sourceforge.pebble.web.view.impl.FeedView;
 
+import javax.imageio.ImageIO;
+import javax.servlet.ServletOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+
 import static org.mockito.Mockito.*;
 
 /**
@@ -59,8 +75,83 @@ public class SingleBlogFeedActionTest extends SingleBlogActionTestCase {
   }
 
   public void testStatusIsNotModifiedWhenBlogNotChanged() throws Exception {
-    when(lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null)).thenReturn(true);
+    when(lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null, RouteType.FEED)).thenReturn(true);
+    assertTrue(action.process(request, response) instanceof NotModifiedView);
+  }
+
+  public void testCachedFeedIsReturnedWithoutRendering() throws Exception {
+    CachedFeed feed = cacheFeed();
+    assertTrue(action.process(request, response) instanceof CachedFeedView);
+    verify(lastModifiedService).checkAndProcessLastModified(request, response, feed.getLastModified(), feed.getETag(), RouteType.FEED);
+  }
+
+  public void testStatusIsNotModifiedWhenCachedFeedNotChanged() throws Exception {
+    CachedFeed feed = cacheFeed();
+    when(lastModifiedService.checkAndProcessLastModified(request, response, feed.getLastModified(), feed.getETag(), RouteType.FEED)).thenReturn(true);
     assertTrue(action.process(request, response) instanceof NotModifiedView);
   }
 
+  public void testCachedFeedsAreKeyedByFlavor() throws Exception {
+    cacheFeed();
+    request.setParameter("flavor", "atom");
+    assertTrue(action.process(request, response) instanceof FeedView);
+  }
+
+  /**
+   * Tests that a feed containing provisionally decorated content, such as
+   * the original image shown while a thumbnail is being created, isn't
+   * cached, but that the feed is cached once the thumbnail is ready.
+   */
+  public void testFeedIsNotCachedUntilThumbnailIsReady() throws Exception {
+    File images = new File(blog.getRoot(), "images");
+    images.mkdirs();
+    ImageIO.write(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "png", new File(images, "photo.png"));
+    blog.getContentDecoratorChain().add(new ThumbnailDecorator());
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A photo");
+    blogEntry.setBody("<thumbnail src=\"images/photo.png\" alt=\"A photo\" thumbSize=\"175\"/>");
+    blogEntry.setPublished(true);
+    new BlogService().putBlogEntry(blogEntry);
+
+    String key = FeedCache.getKey(request.getScheme(), "rss20", null, null, null, true);
+    View view = action.process(request, response);
+    assertTrue(view instanceof FeedView);
+    render(view);
+    assertNull(blog.getFeedCache().get(key));
+
+    // the feed is re-rendered until the thumbnail is ready, then cached
+    long timeout = System.currentTimeMillis() + 10000;
+    while (!(view instanceof CachedFeedView) && System.currentTimeMillis() < timeout) {
+      Thread.sleep(100);
+      view = action.process(request, response);
+      if (view instanceof FeedView) {
+        render(view);
+      }
+    }
+    assertTrue(view instanceof CachedFeedView);
+    String thumbnail = new File(new File(new File("images", "thumbnails"), "175"), "photo.png").toString();
+    assertTrue(new String(blog.getFeedCache().get(key).getContent(), "UTF-8").indexOf(thumbnail) > -1);
+  }
+
+  private void render(View view) throws Exception {
+    response.setWriter(new PrintWriter(new StringWriter()));
+    response.setOutputStream(new ServletOutputStream() {
+      public void write(int b) {
+      }
+    });
+    view.setModel(model);
+    view.prepare();
+    view.dispatch(request, response, null);
+  }
+
+  private CachedFeed cacheFeed() {
+    FeedCache feedCache = blog.getFeedCache();
+    String key = FeedCache.getKey(request.getScheme(), "rss20", null, null, null, true);
+    CachedFeed feed = new CachedFeed("application/xml; charset=UTF-8", "<rss/>".getBytes(), new Date(1000));
+    feedCache.put(key, feed, feedCache.getVersion());
+
+    return feed;
+  }
+
 }
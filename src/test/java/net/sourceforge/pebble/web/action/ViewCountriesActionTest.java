@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.action;
+
+import net.sourceforge.pebble.logging.CombinedFormatLogEntryFormat;
+import net.sourceforge.pebble.logging.LogEntry;
+import net.sourceforge.pebble.service.GeoIpService;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.CountriesView;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Tests for the ViewCountriesAction class.
+ *
+ * @author    Simon Brown
+ */
+public class ViewCountriesActionTest extends SingleBlogActionTestCase {
+
+  private static final int BUSY_DAY_LOG_ENTRIES = 100000;
+  private static final int BUSY_DAY_HOSTS = 10000;
+
+  private GeoIpService geoIpService;
+
+  protected void setUp() throws Exception {
+    action = new ViewCountriesAction();
+    geoIpService = new GeoIpService();
+    geoIpService.start();
+    ((ViewCountriesAction)action).setGeoIpService(geoIpService);
+
+    super.setUp();
+  }
+
+  protected void tearDown() throws Exception {
+    geoIpService.stop();
+
+    super.tearDown();
+  }
+
+  public void testViewCountries() throws Exception {
+    View view = action.process(request, response);
+
+    assertTrue(view instanceof CountriesView);
+    assertEquals("viewCountries", model.get("logAction"));
+  }
+
+  /**
+   * Tests that the countries for a day are resolved once, and then served
+   * from the cache.
+   */
+  public void testCountriesAreCachedAcrossRequests() throws Exception {
+    writeSyntheticDay(1000, 100);
+
+    action.process(request, response);
+
+    Collection countries = (Collection)model.get("countries");
+    assertFalse(countries.isEmpty());
+    assertEquals(0, geoIpService.getHits());
+    assertEquals(100, geoIpService.getMisses());
+
+    action.process(request, response);
+
+    assertEquals(100, geoIpService.getHits());
+    assertEquals(100, geoIpService.getMisses());
+  }
+
+  /**
+   * Measures the latency of the countries page for a busy day, both when
+   * the countries have to be resolved and once they've been cached. This
+   * only runs when the pebble.benchmarks system property is set to true.
+   */
+  public void testLatencyForBusyDay() throws Exception {
+    if (!Boolean.getBoolean("pebble.benchmarks")) {
+      return;
+    }
+
+    writeSyntheticDay(BUSY_DAY_LOG_ENTRIES, BUSY_DAY_HOSTS);
+
+    long start = System.currentTimeMillis();
+    action.process(request, response);
+    long cold = System.currentTimeMillis() - start;
+
+    start = System.currentTimeMillis();
+    action.process(request, response);
+    long warm = System.currentTimeMillis() - start;
+
+    assertEquals(BUSY_DAY_HOSTS, geoIpService.getHits());
+    assertEquals(BUSY_DAY_HOSTS, geoIpService.getMisses());
+    assertTrue("Cached request took " + warm + " ms, uncached took " + cold + " ms", warm <= cold);
+  }
+
+  /**
+   * Writes a raw log for 14th March 2011, with requests spread evenly across
+   * the day from a fixed set of random hosts, and asks for that day.
+   */
+  private void writeSyntheticDay(int numberOfLogEntries, int numberOfHosts) throws Exception {
+    Calendar cal = blog.getCalendar();
+    cal.set(2011, Calendar.MARCH, 14, 0, 0, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+
+    Random random = new Random(42);
+    String[] hosts = new String[numberOfHosts];
+    for (int i = 0; i < hosts.length; i++) {
+      // the index keeps the hosts unique
+      hosts[i] = (1 + random.nextInt(223)) + "." + random.nextInt(256) + "." + (i / 256) + "." + (i % 256);
+    }
+    String[] requests = { "GET /rss.xml", "GET /2011/03/14/1300000000000.html", "GET /files/slides.pdf" };
+
+    File logs = new File(blog.getLogsDirectory());
+    logs.mkdirs();
+    CombinedFormatLogEntryFormat format = new CombinedFormatLogEntryFormat(blog);
+    BufferedWriter writer = new BufferedWriter(new FileWriter(new File(logs, "blog-20110314.log")));
+    try {
+      long startOfDay = cal.getTimeInMillis();
+      long interval = (24 * 60 * 60 * 1000L) / numberOfLogEntries;
+      for (int i = 0; i < numberOfLogEntries; i++) {
+        LogEntry entry = new LogEntry();
+        entry.setHost(hosts[i % hosts.length]);
+        entry.setDate(new Date(startOfDay + (i * interval)));
+        entry.setRequest(requests[i % requests.length]);
+        entry.setStatusCode(200);
+        entry.setAgent("Mozilla/5.0");
+        writer.write(format.format(entry));
+        writer.newLine();
+      }
+    } finally {
+      writer.close();
+    }
+
+    request.setParameter("year", "2011");
+    request.setParameter("month", "3");
+    request.setParameter("day", "14");
+  }
+
+}
@@ -80,7 +80,7 @@ public class ViewResponsesActionTest extends SecureActionTestCase {
     BlogService service = new BlogService();
     BlogEntry blogEntry = new BlogEntry(blog);
     service.putBlogEntry(blogEntry);
-    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    blogEntry = service.getBlogEntryForUpdate(blog, blogEntry.getId());
 
     for (int i = 0; i < numberOfComments; i++) {
       Comment comment = blogEntry.createComment("title", "body"+i, "author", "email", "website", "avatar", "127.0.0.1");
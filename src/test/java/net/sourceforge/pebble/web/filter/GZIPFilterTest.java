@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.AbstractBlog;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GZIPFilterTest {
+
+  @Mock
+  private HttpServletRequest request;
+  @Mock
+  private HttpServletResponse response;
+  @Mock
+  private AbstractBlog blog;
+
+  private GZIPFilter filter;
+  private ByteArrayOutputStream output;
+  private byte[] body;
+
+  @Before
+  public void setUp() throws Exception {
+    filter = new GZIPFilter();
+    output = new ByteArrayOutputStream();
+    body = createBody(10000);
+
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      public void write(int b) throws IOException {
+        output.write(b);
+      }
+    });
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getRequestURI()).thenReturn("/files/slides.html");
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+    when(request.getAttribute(Constants.BLOG_KEY)).thenReturn(blog);
+    when(blog.getCharacterEncoding()).thenReturn("UTF-8");
+  }
+
+  @Test
+  public void fullResponsesAreCompressed() throws Exception {
+    filter.doFilter(request, response, new BodyWritingChain(HttpServletResponse.SC_OK));
+
+    verify(response).addHeader("Content-Encoding", "gzip");
+    assertTrue(Arrays.equals(body, decompress(output.toByteArray())));
+  }
+
+  @Test
+  public void rangeRequestsAreNotCompressed() throws Exception {
+    when(request.getHeader("Range")).thenReturn("bytes=0-9999");
+    filter.doFilter(request, response, new BodyWritingChain(HttpServletResponse.SC_PARTIAL_CONTENT));
+
+    verify(response, never()).addHeader("Content-Encoding", "gzip");
+    assertTrue(Arrays.equals(body, output.toByteArray()));
+  }
+
+  @Test
+  public void partialResponsesAreNotCompressed() throws Exception {
+    filter.doFilter(request, response, new BodyWritingChain(HttpServletResponse.SC_PARTIAL_CONTENT));
+
+    verify(response, never()).addHeader("Content-Encoding", "gzip");
+    assertTrue(Arrays.equals(body, output.toByteArray()));
+  }
+
+  @Test
+  public void unsatisfiableRangeResponsesAreNotCompressed() throws Exception {
+    filter.doFilter(request, response, new BodyWritingChain(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE));
+
+    verify(response, never()).addHeader("Content-Encoding", "gzip");
+    assertTrue(Arrays.equals(body, output.toByteArray()));
+  }
+
+  /**
+   * Sends the body with the given status, as a view would.
+   */
+  private class BodyWritingChain implements FilterChain {
+
+    private final int status;
+
+    BodyWritingChain(int status) {
+      this.status = status;
+    }
+
+    public void doFilter(ServletRequest req, ServletResponse res) throws IOException, ServletException {
+      HttpServletResponse response = (HttpServletResponse)res;
+      response.setStatus(status);
+      if (status == HttpServletResponse.SC_PARTIAL_CONTENT) {
+        response.setHeader("Content-Range", "bytes 0-" + (body.length - 1) + "/" + body.length);
+      }
+      response.setContentLength(body.length);
+      response.getOutputStream().write(body);
+    }
+
+  }
+
+  private byte[] createBody(int length) {
+    StringBuffer buf = new StringBuffer();
+    while (buf.length() < length) {
+      buf.append("Some text that compresses well. ");
+    }
+    return buf.toString().getBytes();
+  }
+
+  private byte[] decompress(byte[] bytes) throws IOException {
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int read = in.read(buf);
+    while (read > -1) {
+      out.write(buf, 0, read);
+      read = in.read(buf);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GZIPResponseStreamTest {
+
+  @Mock
+  private HttpServletRequest request;
+  @Mock
+  private HttpServletResponse response;
+
+  private ByteArrayOutputStream output;
+
+  @Before
+  public void setUp() throws Exception {
+    output = new ByteArrayOutputStream();
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      public void write(int b) throws IOException {
+        output.write(b);
+      }
+    });
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getRequestURI()).thenReturn("/theme/screen.css");
+  }
+
+  @Test
+  public void smallResponsesAreNotCompressed() throws Exception {
+    GZIPResponseStream stream = new GZIPResponseStream(response, 1024, null, null);
+    stream.write("body".getBytes());
+    stream.close();
+
+    assertEquals("body", output.toString());
+    verify(response, never()).addHeader("Content-Encoding", "gzip");
+    verify(response).setContentLength(4);
+  }
+
+  @Test
+  public void largeResponsesAreCompressed() throws Exception {
+    byte[] body = createBody(10000);
+    GZIPResponseStream stream = new GZIPResponseStream(response, 1024, null, null);
+    stream.write(body);
+    stream.close();
+
+    verify(response).addHeader("Content-Encoding", "gzip");
+    assertTrue(Arrays.equals(body, decompress(output.toByteArray())));
+  }
+
+  @Test
+  public void compressedResponsesAreCachedWhenUnchanged() throws Exception {
+    GZIPResponseCache cache = new GZIPResponseCache(1024 * 1024, 64 * 1024);
+    byte[] body = createBody(10000);
+
+    GZIPResponseWrapper wrapper = new GZIPResponseWrapper(response, "UTF-8", request, 1024, cache);
+    wrapper.setHeader("ETag", "\"1\"");
+    ServletOutputStream stream = wrapper.getOutputStream();
+    stream.write(body);
+    wrapper.finishResponse();
+    byte[] compressed = output.toByteArray();
+    assertTrue(cache.getSize() > 0);
+
+    output.reset();
+    wrapper = new GZIPResponseWrapper(response, "UTF-8", request, 1024, cache);
+    wrapper.setHeader("ETag", "\"1\"");
+    stream = wrapper.getOutputStream();
+    stream.write(body);
+    wrapper.finishResponse();
+    assertTrue(Arrays.equals(compressed, output.toByteArray()));
+    assertTrue(Arrays.equals(body, decompress(output.toByteArray())));
+  }
+
+  private byte[] createBody(int length) {
+    StringBuffer buf = new StringBuffer();
+    while (buf.length() < length) {
+      buf.append("Some text that compresses well. ");
+    }
+    return buf.toString().getBytes();
+  }
+
+  private byte[] decompress(byte[] bytes) throws IOException {
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int read = in.read(buf);
+    while (read > -1) {
+      out.write(buf, 0, read);
+      read = in.read(buf);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -231,4 +231,54 @@ public class UriTransformerTest extends SingleBlogTestCase {
     assertEquals("/about.action", transformer.getUri("/about.html", blog));
   }
 
+  public void testFileUrlsNeedANameToBeTransformed() throws Exception {
+    assertEquals("/images", transformer.getUri("/images", blog));
+    assertEquals("/files", transformer.getUri("/files", blog));
+  }
+
+  public void testSegmentsThatOnlyStartWithARouteAreNotTransformed() throws Exception {
+    assertEquals("/categoriesx", transformer.getUri("/categoriesx", blog));
+    assertEquals("/categoriesx/category1/", transformer.getUri("/categoriesx/category1/", blog));
+    assertEquals("/rss.xmlfoo", transformer.getUri("/rss.xmlfoo", blog));
+  }
+
+  /**
+   * Routes a corpus of typical URLs repeatedly. This only runs when the
+   * pebble.benchmarks system property is set to true. Only the public API is
+   * used, so it can be run against older versions for comparison.
+   */
+  public void testRoutingThroughput() throws Exception {
+    if (!Boolean.getBoolean("pebble.benchmarks")) {
+      return;
+    }
+
+    BlogService service = new BlogService();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Some title");
+    service.putBlogEntry(blogEntry);
+    String permalink = blog.getPermalinkProvider().getPermalink(blogEntry);
+
+    String[] corpus = {
+        "/", "/index.html", "/rss.xml", "/atom.xml", "/feed.xml", "/responses/rss.xml",
+        "/responses/rss.xml?entry=" + blogEntry.getId(), permalink, "/2003/11.html", "/2003/11/24.html",
+        "/categories/", "/categories/java/", "/categories/java/rss.xml", "/tags/", "/tags/testing/",
+        "/tags/testing/atom.xml", "/authors/sbrown/", "/pages/about.html", "/images/logo.png",
+        "/files/slides.pdf", "/theme/screen.css", "/help/index.html", "/today.html", "/about.html",
+        "/blogentries/2.html", "/viewFeeds.action", "/search.action", "/favicon.ico"
+    };
+
+    int iterations = 10000;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < iterations; i++) {
+      for (String uri : corpus) {
+        assertNotNull(transformer.getUri(uri, blog));
+      }
+    }
+    long duration = System.currentTimeMillis() - start;
+
+    // routing should take well under 100 microseconds per URI
+    int routed = iterations * corpus.length;
+    assertTrue("Routed " + routed + " URIs in " + duration + " ms", duration * 1000 < routed * 100L);
+  }
+
 }
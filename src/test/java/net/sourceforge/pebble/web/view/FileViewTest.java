@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import net.sourceforge.pebble.web.model.Model;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for the FileView class.
+ *
+ * @author    Simon Brown
+ */
+public class FileViewTest extends SingleBlogTestCase {
+
+  private File file;
+  private FileView view;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+  private ByteArrayOutputStream body;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    // 0123456789 repeated, so that the content of any range is predictable
+    file = new File(blog.getRoot(), "test.txt");
+    FileOutputStream out = new FileOutputStream(file);
+    for (int i = 0; i < 100; i++) {
+      out.write('0' + (i % 10));
+    }
+    out.close();
+
+    view = createView(file);
+    request = new MockHttpServletRequest();
+    request.setAttribute(Constants.EXTERNAL_URI, "/images/test.txt");
+    response = new MockHttpServletResponse();
+    body = new ByteArrayOutputStream();
+    response.setOutputStream(new StreamAdapter(body));
+  }
+
+  private FileView createView(File file) {
+    FileView view = new FileView(file);
+    Model model = new Model();
+    model.put(Constants.BLOG_KEY, blog);
+    view.setModel(model);
+
+    return view;
+  }
+
+  public void testWholeFileIsSentWithoutRange() throws Exception {
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    assertEquals("100", response.getHeader("Content-Length"));
+    assertEquals(100, body.size());
+  }
+
+  public void testSingleRange() throws Exception {
+    request.setHeader("Range", "bytes=10-14");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 10-14/100", response.getHeader("Content-Range"));
+    assertEquals("5", response.getHeader("Content-Length"));
+    assertEquals("01234", body.toString());
+  }
+
+  public void testOpenEndedAndSuffixRanges() throws Exception {
+    request.setHeader("Range", "bytes=97-");
+    view.dispatch(request, response, null);
+    assertEquals("bytes 97-99/100", response.getHeader("Content-Range"));
+    assertEquals("789", body.toString());
+
+    body.reset();
+    request.setHeader("Range", "bytes=-2");
+    view.dispatch(request, response, null);
+    assertEquals("bytes 98-99/100", response.getHeader("Content-Range"));
+    assertEquals("89", body.toString());
+  }
+
+  public void testMultipleRangesAreSentAsMultipart() throws Exception {
+    request.setHeader("Range", "bytes=0-1,50-52");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+    String boundary = response.getContentType().substring("multipart/byteranges; boundary=".length());
+    String content = body.toString("ISO-8859-1");
+    assertEquals("" + content.length(), response.getHeader("Content-Length"));
+    assertTrue(content.contains("Content-Range: bytes 0-1/100\r\n\r\n01\r\n--" + boundary));
+    assertTrue(content.contains("Content-Range: bytes 50-52/100\r\n\r\n012\r\n--" + boundary + "--\r\n"));
+  }
+
+  public void testUnsatisfiableRange() throws Exception {
+    request.setHeader("Range", "bytes=100-200");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+    assertEquals("bytes */100", response.getHeader("Content-Range"));
+    assertEquals(0, body.size());
+  }
+
+  public void testInvalidRangeIsIgnored() throws Exception {
+    request.setHeader("Range", "bytes=20-10");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals(100, body.size());
+  }
+
+  public void testIfRange() throws Exception {
+    request.setHeader("Range", "bytes=0-4");
+    request.setHeader("If-Range", "\"stale\"");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals(100, body.size());
+
+    body.reset();
+    request.setHeader("If-Range", FileView.getETag(file.length(), file.lastModified()));
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals(5, body.size());
+
+    body.reset();
+    response.setStatus(HttpServletResponse.SC_OK);
+    request.setDateHeader("If-Range", file.lastModified() - 60000);
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals(100, body.size());
+  }
+
+  public void testRangesAreCoalesced() {
+    List<long[]> ranges = FileView.parseRanges("bytes=50-60, 0-9, 10-19, 55-70", 100);
+    assertEquals(2, ranges.size());
+    assertEquals(0, ranges.get(0)[0]);
+    assertEquals(19, ranges.get(0)[1]);
+    assertEquals(50, ranges.get(1)[0]);
+    assertEquals(70, ranges.get(1)[1]);
+
+    assertNull(FileView.parseRanges("items=0-9", 100));
+    assertNull(FileView.parseRanges("bytes=a-b", 100));
+    assertEquals(0, FileView.parseRanges("bytes=-0", 100).size());
+  }
+
+  /**
+   * Serves a 100MB file to a number of concurrent clients. This only runs
+   * when the pebble.benchmarks system property is set to true, since it
+   * writes the file to disk first.
+   */
+  public void testThroughput() throws Exception {
+    if (!Boolean.getBoolean("pebble.benchmarks")) {
+      return;
+    }
+
+    final long length = 100L * 1024 * 1024;
+    final int clients = 4;
+    final File largeFile = new File(blog.getRoot(), "large.bin");
+    try {
+      RandomAccessFile raf = new RandomAccessFile(largeFile, "rw");
+      try {
+        raf.setLength(length);
+      } finally {
+        raf.close();
+      }
+
+      final AtomicLong bytesSent = new AtomicLong();
+      Thread[] threads = new Thread[clients];
+      final Exception[] failures = new Exception[clients];
+      for (int i = 0; i < clients; i++) {
+        final int client = i;
+        threads[i] = new Thread() {
+          public void run() {
+            try {
+              MockHttpServletRequest request = new MockHttpServletRequest();
+              request.setAttribute(Constants.EXTERNAL_URI, "/images/large.bin");
+              MockHttpServletResponse response = new MockHttpServletResponse();
+              response.setOutputStream(new ServletOutputStream() {
+                public void write(int b) {
+                  bytesSent.incrementAndGet();
+                }
+
+                public void write(byte[] b, int off, int len) {
+                  bytesSent.addAndGet(len);
+                }
+              });
+              createView(largeFile).dispatch(request, response, null);
+            } catch (Exception e) {
+              failures[client] = e;
+            }
+          }
+        };
+      }
+
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      for (Exception failure : failures) {
+        if (failure != null) {
+          throw failure;
+        }
+      }
+      assertEquals(length * clients, bytesSent.get());
+    } finally {
+      largeFile.delete();
+    }
+  }
+
+  /**
+   * Adapts an OutputStream to a ServletOutputStream.
+   */
+  private static class StreamAdapter extends ServletOutputStream {
+
+    private ByteArrayOutputStream out;
+
+    StreamAdapter(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    public void write(int b) {
+      out.write(b);
+    }
+
+    public void write(byte[] b, int off, int len) {
+      out.write(b, off, len);
+    }
+
+  }
+
+}
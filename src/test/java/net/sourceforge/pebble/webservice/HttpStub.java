@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.webservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A minimal, in-process HTTP server that records the bodies of the requests
+ * it receives and answers them all with the same response, for testing
+ * XML-RPC and PubSubHubBub clients.
+ *
+ * @author Simon Brown
+ */
+public class HttpStub implements Runnable {
+
+  private final ServerSocket serverSocket;
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+  private volatile int status = 200;
+  private volatile String body = "";
+  private volatile long delay = 0;
+
+  public HttpStub() throws IOException {
+    serverSocket = new ServerSocket(0);
+    Thread thread = new Thread(this, "HTTP stub");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public String getUrl() {
+    return "http://localhost:" + serverSocket.getLocalPort() + "/";
+  }
+
+  public List<String> getRequests() {
+    return requests;
+  }
+
+  public void setResponse(int status, String body) {
+    this.status = status;
+    this.body = body;
+  }
+
+  public void setDelay(long delay) {
+    this.delay = delay;
+  }
+
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+
+  public void run() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket socket = serverSocket.accept();
+        Thread thread = new Thread(new Runnable() {
+          public void run() {
+            try {
+              handle(socket);
+            } catch (Exception e) {
+              // the client has gone away
+            } finally {
+              try {
+                socket.close();
+              } catch (IOException ioe) {
+                // do nothing
+              }
+            }
+          }
+        }, "HTTP stub connection");
+        thread.setDaemon(true);
+        thread.start();
+      } catch (IOException ioe) {
+        // the server socket has been closed
+      }
+    }
+  }
+
+  private void handle(Socket socket) throws Exception {
+    InputStream in = socket.getInputStream();
+
+    // read the request line and headers
+    int contentLength = 0;
+    String line;
+    while ((line = readLine(in)).length() > 0) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+      }
+    }
+
+    byte[] content = new byte[contentLength];
+    int read = 0;
+    while (read < contentLength) {
+      int n = in.read(content, read, contentLength - read);
+      if (n < 0) {
+        break;
+      }
+      read += n;
+    }
+    requests.add(new String(content, 0, read, "UTF-8"));
+
+    if (delay > 0) {
+      Thread.sleep(delay);
+    }
+
+    byte[] responseBody = body.getBytes("UTF-8");
+    OutputStream out = socket.getOutputStream();
+    out.write(("HTTP/1.0 " + status + " Stub\r\n").getBytes("ISO-8859-1"));
+    out.write("Content-Type: text/xml\r\n".getBytes("ISO-8859-1"));
+    if (status != 204) {
+      out.write(("Content-Length: " + responseBody.length + "\r\n").getBytes("ISO-8859-1"));
+    }
+    out.write("Connection: close\r\n\r\n".getBytes("ISO-8859-1"));
+    if (status != 204) {
+      out.write(responseBody);
+    }
+    out.flush();
+  }
+
+  private String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != -1 && c != '\n') {
+      if (c != '\r') {
+        buf.write(c);
+      }
+    }
+    return buf.toString("ISO-8859-1");
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.webservice;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests for the NotificationFanOut class, sending notifications to
+ * in-process HTTP servers.
+ *
+ * @author Simon Brown
+ */
+public class NotificationFanOutTest extends SingleBlogTestCase {
+
+  private static final String PING_RESPONSE =
+      "<?xml version=\"1.0\"?><methodResponse><params><param><value><struct>" +
+      "<member><name>flerror</name><value><boolean>FLERROR</boolean></value></member>" +
+      "<member><name>message</name><value>Thanks for the ping</value></member>" +
+      "</struct></value></param></params></methodResponse>";
+
+  private NotificationFanOut fanOut;
+  private HttpStub site1;
+  private HttpStub site2;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    fanOut = new NotificationFanOut(100, 1000, 500);
+    site1 = new HttpStub();
+    site1.setResponse(200, PING_RESPONSE.replaceAll("FLERROR", "0"));
+    site2 = new HttpStub();
+    site2.setResponse(200, PING_RESPONSE.replaceAll("FLERROR", "0"));
+  }
+
+  protected void tearDown() throws Exception {
+    site1.close();
+    site2.close();
+
+    super.tearDown();
+  }
+
+  /**
+   * Tests that pings in quick succession result in a single request to
+   * each site.
+   */
+  public void testPingsAreCoalesced() throws Exception {
+    String[] sites = new String[] { site1.getUrl(), " " + site2.getUrl() };
+    fanOut.ping(blog, blog.getUrl(), sites);
+    fanOut.ping(blog, blog.getUrl(), sites);
+    fanOut.ping(blog, blog.getUrl(), sites);
+
+    waitForRequests(site1.getUrl(), 1);
+    waitForRequests(site2.getUrl(), 1);
+
+    assertEquals(1, site1.getRequests().size());
+    assertEquals(1, site2.getRequests().size());
+    String request = site1.getRequests().get(0);
+    assertTrue(request.indexOf("<methodName>weblogUpdates.ping</methodName>") > -1);
+    assertTrue(request.indexOf(blog.getUrl()) > -1);
+    assertEquals(0, fanOut.getStatistics(site1.getUrl()).getFailures());
+  }
+
+  /**
+   * Tests that a site reporting an error is recorded as a failure.
+   */
+  public void testPingErrorIsRecordedAsFailure() throws Exception {
+    site1.setResponse(200, PING_RESPONSE.replaceAll("FLERROR", "1"));
+    fanOut.ping(blog, blog.getUrl(), new String[] { site1.getUrl() });
+
+    waitForRequests(site1.getUrl(), 1);
+    NotificationFanOut.EndpointStatistics stats = fanOut.getStatistics(site1.getUrl());
+    assertEquals(1, stats.getFailures());
+    assertEquals("Thanks for the ping", stats.getLastError());
+  }
+
+  /**
+   * Tests that a slow site times out without holding up the others.
+   */
+  public void testSlowSiteTimesOut() throws Exception {
+    site1.setDelay(5000);
+    long start = System.currentTimeMillis();
+    fanOut.ping(blog, blog.getUrl(), new String[] { site1.getUrl(), site2.getUrl() });
+
+    waitForRequests(site2.getUrl(), 1);
+    assertEquals(0, fanOut.getStatistics(site2.getUrl()).getFailures());
+
+    waitForRequests(site1.getUrl(), 1);
+    assertEquals(1, fanOut.getStatistics(site1.getUrl()).getFailures());
+    assertTrue(System.currentTimeMillis() - start < 5000);
+  }
+
+  /**
+   * Tests that the feeds from rapid updates are sent to a hub together.
+   */
+  public void testHubTopicsAreMerged() throws Exception {
+    site1.setResponse(204, "");
+    fanOut.publish(blog, Arrays.asList(site1.getUrl()), Arrays.asList("http://www.example.com/one/atom.xml"));
+    fanOut.publish(blog, Arrays.asList(site1.getUrl()), Arrays.asList("http://www.example.com/two/atom.xml"));
+
+    waitForRequests(site1.getUrl(), 1);
+    assertEquals(1, site1.getRequests().size());
+    String request = site1.getRequests().get(0);
+    assertTrue(request.indexOf("hub.mode=publish") > -1);
+    assertTrue(request.indexOf("one%2Fatom.xml") > -1);
+    assertTrue(request.indexOf("two%2Fatom.xml") > -1);
+    assertEquals(0, fanOut.getStatistics(site1.getUrl()).getFailures());
+  }
+
+  private void waitForRequests(String endpoint, int requests) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 10000;
+    while (System.currentTimeMillis() < timeout) {
+      NotificationFanOut.EndpointStatistics stats = fanOut.getStatistics(endpoint);
+      if (stats != null && stats.getRequests() >= requests) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    fail("Timed out waiting for " + requests + " requests to " + endpoint);
+  }
+
+}